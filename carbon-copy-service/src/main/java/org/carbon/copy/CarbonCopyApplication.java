@@ -18,6 +18,8 @@
 
 package org.carbon.copy;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import io.dropwizard.Application;
@@ -28,6 +30,7 @@ import org.carbon.copy.calcite.AvaticaServer;
 import org.carbon.copy.calcite.CalciteModule;
 import org.carbon.copy.data.structures.DataStructureModule;
 import org.carbon.copy.data.structures.GalaxyGrid;
+import org.carbon.copy.data.structures.TxnManager;
 import org.carbon.copy.data.structures.TxnManagerModule;
 import org.carbon.copy.health.checks.GalaxyHealthCheck;
 import org.carbon.copy.resources.CarbonCopyResource;
@@ -87,5 +90,13 @@ public class CarbonCopyApplication extends Application<CarbonCopyConfiguration>
 
         // register from the guice injector
         environment.jersey().register(injector.getInstance(CarbonCopyResource.class));
+
+        // contention of local block locks
+        TxnManager txnManager = injector.getInstance(TxnManager.class);
+        environment.metrics().register(MetricRegistry.name(TxnManager.class, "locks", "acquisitions"), (Gauge<Long>) () -> txnManager.getLockContentionStats().getAcquisitions());
+        environment.metrics().register(MetricRegistry.name(TxnManager.class, "locks", "contended"), (Gauge<Long>) () -> txnManager.getLockContentionStats().getContendedAcquisitions());
+        environment.metrics().register(MetricRegistry.name(TxnManager.class, "locks", "timeouts"), (Gauge<Long>) () -> txnManager.getLockContentionStats().getTimeouts());
+        environment.metrics().register(MetricRegistry.name(TxnManager.class, "locks", "waitMillis"), (Gauge<Long>) () -> txnManager.getLockContentionStats().getTotalWaitMillis());
+        environment.metrics().register(MetricRegistry.name(TxnManager.class, "locks", "aborts"), (Gauge<Long>) () -> txnManager.getLockContentionStats().getAborts());
     }
 }
\ No newline at end of file
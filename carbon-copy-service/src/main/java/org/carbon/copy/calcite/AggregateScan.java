@@ -0,0 +1,110 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.Blocks;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * A table scan that aggregates rows right away (and only hands the aggregated rows to calcite).
+ * This is what OptimizerRule.AGGREGATE_SCAN turns an aggregate on top of a TableScan into.
+ * It takes over filter, zone map ranges and projection of the TableScan it replaces.
+ */
+class AggregateScan extends org.apache.calcite.rel.core.TableScan implements EnumerableRel {
+
+    private final CarbonCopyTable carbonCopyTable;
+    private final String javaFilterExpression;
+    private final List<Integer> columnIndexesForThePredicate;
+    private final List<String> zoneMapRanges;
+    private final List<Integer> groupColumnIndexes;
+    // triples of function name, argument column index (null for count(*)) and sql type name of the result
+    private final List<String> aggregates;
+    private final RelDataType aggregateRowType;
+
+    AggregateScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate, List<String> zoneMapRanges, List<Integer> groupColumnIndexes, List<String> aggregates, RelDataType aggregateRowType) {
+        super(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE), table);
+        this.carbonCopyTable = carbonCopyTable;
+        this.javaFilterExpression = javaFilterExpression;
+        this.columnIndexesForThePredicate = columnIndexesForThePredicate;
+        this.zoneMapRanges = zoneMapRanges;
+        this.groupColumnIndexes = groupColumnIndexes;
+        this.aggregates = aggregates;
+        this.aggregateRowType = aggregateRowType;
+    }
+
+    /**
+     * Rows look exactly like the rows of the aggregate this scan replaces.
+     */
+    @Override
+    public RelDataType deriveRowType() {
+        return aggregateRowType;
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .item("javaFilterExpression", javaFilterExpression)
+                .item("columnIndexesForThePredicate", columnIndexesForThePredicate)
+                .item("zoneMapRanges", zoneMapRanges)
+                .item("groupColumnIndexes", groupColumnIndexes)
+                .item("aggregates", aggregates);
+    }
+
+    // the scan does the work of the aggregate on top of it
+    // and saves materializing every single row for calcite
+    // make sure the optimizer knows about that
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        return super.computeSelfCost(planner, mq).multiplyBy(0.1d);
+    }
+
+    // this refers to a method in CarbonCopyTable that does the heavy lifting for us
+    private static final Method AGGREGATE_CALLBACK =
+            Types.lookupMethod(
+                    CarbonCopyTable.class,
+                    "aggregate",
+                    DataContext.class,
+                    String.class,
+                    Integer[].class,
+                    String[].class,
+                    Integer[].class,
+                    String[].class
+            );
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer prefer) {
+        PhysType physType =
+                PhysTypeImpl.of(
+                        implementor.getTypeFactory(),
+                        getRowType(),
+                        prefer.preferArray());
+
+        return implementor.result(
+                physType,
+                Blocks.toBlock(
+                        Expressions.call(table.getExpression(CarbonCopyTable.class),
+                                AGGREGATE_CALLBACK,
+                                implementor.getRootExpression(),
+                                Expressions.constant(javaFilterExpression),
+                                Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                                Expressions.constant(zoneMapRanges.toArray(new String[zoneMapRanges.size()])),
+                                Expressions.constant(groupColumnIndexes.toArray(new Integer[groupColumnIndexes.size()])),
+                                Expressions.constant(aggregates.toArray(new String[aggregates.size()]))
+                        )));
+    }
+}
@@ -0,0 +1,274 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.carbon.copy.data.structures.Tuple;
+import org.carbon.copy.data.structures.TupleBatch;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Computes aggregates (count, sum, min, max, avg) grouped by a couple of columns.
+ * Every batch is aggregated on its own into a partial result.
+ * Partial results are merged afterwards. That way batches can be aggregated in parallel.
+ */
+class CarbonCopyAggregator {
+
+    static final Set<SqlKind> SUPPORTED_FUNCTIONS = EnumSet.of(
+            SqlKind.COUNT,
+            SqlKind.SUM,
+            SqlKind.SUM0,
+            SqlKind.MIN,
+            SqlKind.MAX,
+            SqlKind.AVG
+    );
+
+    private final Integer[] groupColumnIndexes;
+    private final SqlKind[] functions;
+    // null means count(*)
+    private final Integer[] argumentColumnIndexes;
+    private final SqlTypeName[] resultTypes;
+
+    /**
+     * The aggregates come as triples of function name, argument column index and sql type name of the result
+     * (see OptimizerRule.AGGREGATE_SCAN).
+     */
+    CarbonCopyAggregator(Integer[] groupColumnIndexes, String[] aggregates) {
+        if (aggregates.length % 3 != 0) {
+            throw new IllegalArgumentException("Aggregates need to come in triples but I got " + Arrays.toString(aggregates));
+        }
+        int numAggregates = aggregates.length / 3;
+        this.groupColumnIndexes = groupColumnIndexes;
+        this.functions = new SqlKind[numAggregates];
+        this.argumentColumnIndexes = new Integer[numAggregates];
+        this.resultTypes = new SqlTypeName[numAggregates];
+        for (int i = 0; i < numAggregates; i++) {
+            functions[i] = SqlKind.valueOf(aggregates[3 * i]);
+            if (!SUPPORTED_FUNCTIONS.contains(functions[i])) {
+                throw new IllegalArgumentException("I don't know how to compute " + functions[i]);
+            }
+            argumentColumnIndexes[i] = (aggregates[3 * i + 1] != null) ? Integer.valueOf(aggregates[3 * i + 1]) : null;
+            resultTypes[i] = SqlTypeName.valueOf(aggregates[3 * i + 2]);
+        }
+    }
+
+    /**
+     * All columns that need to be read in order to compute the aggregates.
+     */
+    Integer[] getColumnIndexes() {
+        List<Integer> columnIndexes = new ArrayList<>(Arrays.asList(groupColumnIndexes));
+        for (Integer argument : argumentColumnIndexes) {
+            if (argument != null) {
+                columnIndexes.add(argument);
+            }
+        }
+        return columnIndexes.toArray(new Integer[columnIndexes.size()]);
+    }
+
+    /**
+     * Returns one row per group in the shape calcite likes it.
+     * That is the values of the group columns followed by the values of the aggregates.
+     * Single column rows are the value itself.
+     */
+    List<Object> aggregate(Stream<TupleBatch> batches) {
+        Partial partial = batches
+                .map(batch -> new Partial().add(batch))
+                .reduce(Partial::merge)
+                .orElseGet(Partial::new);
+
+        // an aggregate without groups always returns a row (count(*) of an empty table is 0 after all)
+        if (partial.groups.isEmpty() && groupColumnIndexes.length == 0) {
+            partial.groups.put(Collections.emptyList(), newAccumulators());
+        }
+
+        List<Object> rows = new ArrayList<>(partial.groups.size());
+        for (Map.Entry<List<Comparable>, Accumulator[]> group : partial.groups.entrySet()) {
+            Object[] row = new Object[groupColumnIndexes.length + functions.length];
+            for (int i = 0; i < groupColumnIndexes.length; i++) {
+                row[i] = group.getKey().get(i);
+            }
+            Accumulator[] accumulators = group.getValue();
+            for (int i = 0; i < accumulators.length; i++) {
+                row[groupColumnIndexes.length + i] = accumulators[i].result();
+            }
+            rows.add((row.length == 1) ? row[0] : row);
+        }
+        return rows;
+    }
+
+    private Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[functions.length];
+        for (int i = 0; i < functions.length; i++) {
+            accumulators[i] = new Accumulator(functions[i], argumentColumnIndexes[i] == null, resultTypes[i]);
+        }
+        return accumulators;
+    }
+
+    private class Partial {
+        private final Map<List<Comparable>, Accumulator[]> groups = new HashMap<>();
+
+        private Partial add(TupleBatch batch) {
+            for (int i = 0; i < batch.size(); i++) {
+                Tuple tuple = batch.get(i);
+                Comparable[] key = new Comparable[groupColumnIndexes.length];
+                for (int j = 0; j < groupColumnIndexes.length; j++) {
+                    key[j] = tuple.get(groupColumnIndexes[j]);
+                }
+                Accumulator[] accumulators = groups.computeIfAbsent(Arrays.asList(key), k -> newAccumulators());
+                for (int j = 0; j < accumulators.length; j++) {
+                    accumulators[j].add((argumentColumnIndexes[j] != null) ? tuple.get(argumentColumnIndexes[j]) : null);
+                }
+            }
+            return this;
+        }
+
+        private Partial merge(Partial other) {
+            other.groups.forEach((key, otherAccumulators) -> {
+                Accumulator[] accumulators = groups.get(key);
+                if (accumulators == null) {
+                    groups.put(key, otherAccumulators);
+                } else {
+                    for (int i = 0; i < accumulators.length; i++) {
+                        accumulators[i].merge(otherAccumulators[i]);
+                    }
+                }
+            });
+            return this;
+        }
+    }
+
+    // one accumulator fits all functions
+    // it keeps track of a little more than necessary but that's cheaper than a class per function
+    private static class Accumulator {
+        private final SqlKind function;
+        private final boolean isCountStar;
+        private final SqlTypeName resultType;
+        private long count;
+        private long longSum;
+        private double doubleSum;
+        private boolean isFloatingPoint;
+        private Comparable min;
+        private Comparable max;
+
+        private Accumulator(SqlKind function, boolean isCountStar, SqlTypeName resultType) {
+            this.function = function;
+            this.isCountStar = isCountStar;
+            this.resultType = resultType;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void add(Comparable value) {
+            if (isCountStar) {
+                count++;
+                return;
+            }
+            // nulls don't count towards any aggregate
+            if (value == null) {
+                return;
+            }
+
+            count++;
+            switch (function) {
+                case SUM:
+                case SUM0:
+                case AVG:
+                    if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                        doubleSum += ((Number) value).doubleValue();
+                        isFloatingPoint = true;
+                    } else {
+                        longSum += ((Number) value).longValue();
+                    }
+                    break;
+                case MIN:
+                    if (min == null || value.compareTo(min) < 0) {
+                        min = value;
+                    }
+                    break;
+                case MAX:
+                    if (max == null || value.compareTo(max) > 0) {
+                        max = value;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void merge(Accumulator other) {
+            count += other.count;
+            longSum += other.longSum;
+            doubleSum += other.doubleSum;
+            isFloatingPoint |= other.isFloatingPoint;
+            if (other.min != null && (min == null || other.min.compareTo(min) < 0)) {
+                min = other.min;
+            }
+            if (other.max != null && (max == null || other.max.compareTo(max) > 0)) {
+                max = other.max;
+            }
+        }
+
+        private Object result() {
+            switch (function) {
+                case COUNT:
+                    return toResultType(count);
+                case SUM:
+                    return (count == 0) ? null : toResultType(sum());
+                case SUM0:
+                    return toResultType(sum());
+                case AVG:
+                    if (count == 0) {
+                        return null;
+                    }
+                    // the average of integers is an integer in sql
+                    return (isFloatingPoint || isFloatingPoint(resultType)) ? toResultType(sum().doubleValue() / count) : toResultType(longSum / count);
+                case MIN:
+                    return min;
+                case MAX:
+                    return max;
+                default:
+                    throw new IllegalStateException("I don't know how to compute " + function);
+            }
+        }
+
+        private Number sum() {
+            return isFloatingPoint ? (Number) (doubleSum + longSum) : (Number) longSum;
+        }
+
+        private static boolean isFloatingPoint(SqlTypeName type) {
+            return type == SqlTypeName.REAL || type == SqlTypeName.FLOAT || type == SqlTypeName.DOUBLE || type == SqlTypeName.DECIMAL;
+        }
+
+        // calcite is picky about the java types of the values
+        private Object toResultType(Number value) {
+            switch (resultType) {
+                case TINYINT:
+                    return value.byteValue();
+                case SMALLINT:
+                    return value.shortValue();
+                case INTEGER:
+                    return value.intValue();
+                case BIGINT:
+                    return value.longValue();
+                case REAL:
+                    return value.floatValue();
+                case FLOAT:
+                case DOUBLE:
+                    return value.doubleValue();
+                case DECIMAL:
+                    return BigDecimal.valueOf(value.doubleValue());
+                default:
+                    return value;
+            }
+        }
+    }
+}
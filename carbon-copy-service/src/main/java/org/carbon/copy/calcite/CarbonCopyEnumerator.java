@@ -1,35 +1,45 @@
 package org.carbon.copy.calcite;
 
 import org.apache.calcite.linq4j.Enumerator;
+import org.carbon.copy.data.structures.Tuple;
+import org.carbon.copy.data.structures.TupleBatch;
 
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.Iterator;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
+/**
+ * This is where batches turn into rows.
+ * Everything below works on entire batches, calcite wants to see one row at a time.
+ */
 class CarbonCopyEnumerator<T> implements Enumerator<T> {
 
     private AtomicBoolean cancelFlag;
-    private Iterator<Object[]> iterator;
-    private final Class<T> klass;
+    private Stream<TupleBatch> stream;
+    private Iterator<TupleBatch> iterator;
+    // null means all columns
+    private final Integer[] columnIndexesToProjectTo;
+    // I stop after that many rows (negative means never)
+    private final long limit;
+    private long numRows;
+    private TupleBatch batch;
+    private int positionInBatch;
     private T current;
 
-    CarbonCopyEnumerator(Stream<Object[]> stream, AtomicBoolean cancelFlag) {
-        this(stream.iterator(), cancelFlag);
+    CarbonCopyEnumerator(Stream<TupleBatch> stream, AtomicBoolean cancelFlag) {
+        this(stream, null, cancelFlag);
     }
 
-    private CarbonCopyEnumerator(Iterator<Object[]> iterator, AtomicBoolean cancelFlag) {
-        this.iterator = iterator;
-        this.cancelFlag = cancelFlag;
-        this.klass = getParamterKlass();
+    CarbonCopyEnumerator(Stream<TupleBatch> stream, Integer[] columnIndexesToProjectTo, AtomicBoolean cancelFlag) {
+        this(stream, columnIndexesToProjectTo, -1, cancelFlag);
     }
 
-    @SuppressWarnings("unchecked")
-    private Class<T> getParamterKlass() {
-        Type firstSooper = getClass().getGenericInterfaces()[0];
-        sun.reflect.generics.reflectiveObjects.TypeVariableImpl parameterType = (sun.reflect.generics.reflectiveObjects.TypeVariableImpl) ((ParameterizedType)firstSooper).getActualTypeArguments()[0];
-        return (Class<T>)parameterType.getBounds()[0];
+    CarbonCopyEnumerator(Stream<TupleBatch> stream, Integer[] columnIndexesToProjectTo, long limit, AtomicBoolean cancelFlag) {
+        this.stream = stream;
+        this.iterator = stream.iterator();
+        this.columnIndexesToProjectTo = columnIndexesToProjectTo;
+        this.limit = limit;
+        this.cancelFlag = cancelFlag;
     }
 
     @Override
@@ -39,8 +49,25 @@ class CarbonCopyEnumerator<T> implements Enumerator<T> {
 
     @Override
     public boolean moveNext() {
-        if (cancelFlag.get() || !iterator.hasNext()) return false;
-        this.current = convert(iterator.next());
+        if (iterator == null || cancelFlag.get()) return false;
+        if (limit >= 0 && numRows >= limit) {
+            // I have all I need -- don't even look at the next block
+            stream.close();
+            return false;
+        }
+        // batches can be empty when the filter didn't like any of its rows
+        while (batch == null || positionInBatch >= batch.size()) {
+            if (!iterator.hasNext()) {
+                // let go of whatever the stream holds on to (e.g. read snapshots) as early as possible
+                stream.close();
+                batch = null;
+                return false;
+            }
+            batch = iterator.next();
+            positionInBatch = 0;
+        }
+        this.current = convert(batch.get(positionInBatch++), columnIndexesToProjectTo);
+        numRows++;
         return true;
     }
 
@@ -48,11 +75,18 @@ class CarbonCopyEnumerator<T> implements Enumerator<T> {
     // that the value needs to be the object itself
     // for multi-value tuples the returned object
     // is supposed to be a array
-    private T convert(Object[] o) {
-        if (o.length == 1) {
-            return klass.cast(o[0]);
+    @SuppressWarnings("unchecked")
+    static <T> T convert(Tuple tuple, Integer[] columnIndexesToProjectTo) {
+        if (columnIndexesToProjectTo == null) {
+            return (T) ((tuple.getTupleSize() == 1) ? tuple.get(0) : tuple.toObjectArray());
+        } else if (columnIndexesToProjectTo.length == 1) {
+            return (T) tuple.get(columnIndexesToProjectTo[0]);
         } else {
-            return klass.cast(o);
+            Object[] values = new Object[columnIndexesToProjectTo.length];
+            for (int i = 0; i < columnIndexesToProjectTo.length; i++) {
+                values[i] = tuple.get(columnIndexesToProjectTo[i]);
+            }
+            return (T) values;
         }
     }
 
@@ -63,8 +97,13 @@ class CarbonCopyEnumerator<T> implements Enumerator<T> {
 
     @Override
     public void close() {
+        if (stream != null) {
+            stream.close();
+        }
+        this.stream = null;
         this.current = null;
         this.iterator = null;
+        this.batch = null;
         this.cancelFlag = null;
     }
 }
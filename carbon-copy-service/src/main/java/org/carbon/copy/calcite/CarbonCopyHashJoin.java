@@ -0,0 +1,208 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An inner equi-join that builds a hash table on the smaller side and probes it with the other side.
+ * Nobody knows how big either side is going to be. That's why I read both sides in lockstep until one of them runs out.
+ * The one that runs out first is the smaller one and gets hashed. The other one is streamed through.
+ * Integral single column keys (the usual foreign key) go into a hash map with primitive long keys.
+ *
+ * Gotta be public! The generated code calls this.
+ */
+public final class CarbonCopyHashJoin {
+
+    private CarbonCopyHashJoin() {}
+
+    /**
+     * VOODOO!!!
+     * This method is being called from the code HashJoin generates.
+     * Rows of either side are arrays or (if the side has only one column) the value itself.
+     * Rows coming out are arrays with the columns of the left side followed by the columns of the right side.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public static Enumerable<Object> join(Enumerable<Object> left, Enumerable<Object> right, int leftFieldCount, int rightFieldCount, Integer[] leftKeys, Integer[] rightKeys) {
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                Enumerator<Object> leftRows = left.enumerator();
+                Enumerator<Object> rightRows = right.enumerator();
+                List<Object[]> leftBuffer = new ArrayList<>();
+                List<Object[]> rightBuffer = new ArrayList<>();
+                boolean isLeftSmaller;
+                while (true) {
+                    if (!leftRows.moveNext()) {
+                        isLeftSmaller = true;
+                        break;
+                    }
+                    leftBuffer.add(toArray(leftRows.current(), leftFieldCount));
+                    if (!rightRows.moveNext()) {
+                        isLeftSmaller = false;
+                        break;
+                    }
+                    rightBuffer.add(toArray(rightRows.current(), rightFieldCount));
+                }
+
+                HashTable hashTable = isLeftSmaller ? newHashTable(leftBuffer, leftKeys) : newHashTable(rightBuffer, rightKeys);
+                Integer[] probeKeys = isLeftSmaller ? rightKeys : leftKeys;
+                int probeFieldCount = isLeftSmaller ? rightFieldCount : leftFieldCount;
+                Iterator<Object> remainingProbeRows = Linq4j.enumeratorIterator(isLeftSmaller ? rightRows : leftRows);
+                Stream<Object[]> probeRows = Stream.concat(
+                        (isLeftSmaller ? rightBuffer : leftBuffer).stream(),
+                        StreamSupport.stream(Spliterators.spliteratorUnknownSize(remainingProbeRows, Spliterator.ORDERED), false)
+                                .map(row -> toArray(row, probeFieldCount))
+                );
+
+                Stream<Object> joinedRows = probeRows.flatMap(probeRow ->
+                        hashTable.get(probeRow, probeKeys).stream()
+                                .map(buildRow -> isLeftSmaller ? joinRows(buildRow, probeRow) : joinRows(probeRow, buildRow))
+                ).onClose(() -> {
+                    leftRows.close();
+                    rightRows.close();
+                });
+                return new RowStreamEnumerator(joinedRows);
+            }
+        };
+    }
+
+    private static Object[] toArray(Object row, int fieldCount) {
+        return (fieldCount == 1) ? new Object[] { row } : (Object[]) row;
+    }
+
+    private static Object joinRows(Object[] leftRow, Object[] rightRow) {
+        Object[] row = Arrays.copyOf(leftRow, leftRow.length + rightRow.length);
+        System.arraycopy(rightRow, 0, row, leftRow.length, rightRow.length);
+        return row;
+    }
+
+    private static HashTable newHashTable(List<Object[]> rows, Integer[] keys) {
+        if (keys.length == 1 && rows.stream().allMatch(row -> row[keys[0]] == null || isIntegral(row[keys[0]]))) {
+            return new LongKeyHashTable(rows, keys[0]);
+        } else {
+            return new ObjectKeyHashTable(rows, keys);
+        }
+    }
+
+    private static boolean isIntegral(Object o) {
+        return o instanceof Integer || o instanceof Long || o instanceof Short || o instanceof Byte;
+    }
+
+    private interface HashTable {
+        // returns all rows whose keys match the keys of the probe row
+        List<Object[]> get(Object[] probeRow, Integer[] probeKeys);
+    }
+
+    // null keys never match anything (not even other nulls)
+    private static class ObjectKeyHashTable implements HashTable {
+        private final Map<List<Object>, List<Object[]>> rowsByKey = new HashMap<>();
+
+        private ObjectKeyHashTable(List<Object[]> rows, Integer[] keys) {
+            for (Object[] row : rows) {
+                List<Object> key = key(row, keys);
+                if (key != null) {
+                    rowsByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(row);
+                }
+            }
+        }
+
+        @Override
+        public List<Object[]> get(Object[] probeRow, Integer[] probeKeys) {
+            List<Object> key = key(probeRow, probeKeys);
+            List<Object[]> rows = (key != null) ? rowsByKey.get(key) : null;
+            return (rows != null) ? rows : Collections.emptyList();
+        }
+
+        private static List<Object> key(Object[] row, Integer[] keys) {
+            Object[] key = new Object[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                key[i] = row[keys[i]];
+                if (key[i] == null) {
+                    return null;
+                }
+            }
+            return Arrays.asList(key);
+        }
+    }
+
+    // open addressing on primitive longs
+    // every slot points to the first row with this key and rows with the same key are chained
+    // that way there's no boxing of keys and no list per key
+    private static class LongKeyHashTable implements HashTable {
+        private static final int EMPTY = -1;
+
+        private final Object[][] rows;
+        private final long[] slotKeys;
+        private final int[] slotHeads;
+        private final int[] next;
+        private final int mask;
+
+        private LongKeyHashTable(List<Object[]> buildRows, int key) {
+            this.rows = buildRows.toArray(new Object[buildRows.size()][]);
+            int numSlots = Integer.highestOneBit(Math.max(2, rows.length * 2 - 1)) << 1;
+            this.slotKeys = new long[numSlots];
+            this.slotHeads = new int[numSlots];
+            this.next = new int[rows.length];
+            this.mask = numSlots - 1;
+            Arrays.fill(slotHeads, EMPTY);
+
+            for (int i = 0; i < rows.length; i++) {
+                Object value = rows[i][key];
+                if (value == null) {
+                    continue;
+                }
+                long k = ((Number) value).longValue();
+                int slot = findSlot(k);
+                slotKeys[slot] = k;
+                next[i] = slotHeads[slot];
+                slotHeads[slot] = i;
+            }
+        }
+
+        @Override
+        public List<Object[]> get(Object[] probeRow, Integer[] probeKeys) {
+            Object value = probeRow[probeKeys[0]];
+            if (!isIntegral(value)) {
+                return Collections.emptyList();
+            }
+            int slot = findSlot(((Number) value).longValue());
+            if (slotHeads[slot] == EMPTY) {
+                return Collections.emptyList();
+            }
+            List<Object[]> matches = new ArrayList<>(1);
+            for (int i = slotHeads[slot]; i != EMPTY; i = next[i]) {
+                matches.add(rows[i]);
+            }
+            return matches;
+        }
+
+        // returns the slot of this key or the empty slot where it would go
+        private int findSlot(long k) {
+            int slot = hash(k) & mask;
+            while (slotHeads[slot] != EMPTY && slotKeys[slot] != k) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int hash(long k) {
+            // mix the bits a little so that sequential ids don't end up in neighbouring slots
+            long h = k * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -1,9 +1,17 @@
 package org.carbon.copy.calcite;
 
+import org.carbon.copy.data.structures.TupleBatch;
+
 import java.util.function.Predicate;
 
 /**
  * Marker interface used for dynamically compiled code.
  */
 @SuppressWarnings("UnusedDeclaration")
-public interface CarbonCopyPredicate extends Predicate { }
+public interface CarbonCopyPredicate extends Predicate {
+    /**
+     * Drops all rows from the selection of the batch that don't pass the predicate.
+     * Returns the very same batch.
+     */
+    TupleBatch filter(TupleBatch batch);
+}
@@ -5,6 +5,7 @@ import org.apache.calcite.adapter.java.AbstractQueryableTable;
 import org.apache.calcite.linq4j.AbstractEnumerable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.plan.RelOptTable;
@@ -15,13 +16,25 @@ import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.TranslatableTable;
 import org.apache.commons.lang3.tuple.Pair;
 import org.carbon.copy.data.structures.Catalog;
+import org.carbon.copy.data.structures.ColumnRange;
+import org.carbon.copy.data.structures.ReadSnapshot;
 import org.carbon.copy.data.structures.Table;
 import org.carbon.copy.data.structures.Tuple;
+import org.carbon.copy.data.structures.TupleBatch;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Gotta be public! Reflective call will not be able to reach this class iff it's public.
@@ -62,20 +75,19 @@ public class CarbonCopyTable extends AbstractQueryableTable implements Translata
      * This method is being called via reflection from TableScan.
      */
     @SuppressWarnings("UnusedDeclaration unchecked")
-    public Enumerable<Object> scan(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate) {
+    public Enumerable<Object> scan(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, String[] zoneMapRanges) {
 
         if (canDoFilter(booleanJavaSource, columnIndexesForThePredicate)) {
 
             CarbonCopyPredicate predicate = CompilerUtil.compileBooleanExpression(booleanJavaSource);
-            Stream<Object[]> resultStream = table.keys()
-                    .map(table::get)
-                    .filter(predicate::test)
-                    .map(Tuple::toObjectArray);
+            List<ColumnRange> ranges = toColumnRanges(zoneMapRanges);
 
             AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
             return new AbstractEnumerable<Object>() {
                 @Override
                 public Enumerator<Object> enumerator() {
+                    Stream<TupleBatch> resultStream = batchesInSnapshot(null, ranges)
+                            .map(predicate::filter);
                     return new CarbonCopyEnumerator<>(resultStream, cancelFlag);
                 }
             };
@@ -89,20 +101,18 @@ public class CarbonCopyTable extends AbstractQueryableTable implements Translata
      * This method is being called via reflection from TableScan.
      */
     @SuppressWarnings("UnusedDeclaration")
-    public Enumerable<Object> scanAndProject(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, Integer[] columnIndexesToProjectTo) {
+    public Enumerable<Object> scanAndProject(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, String[] zoneMapRanges, Integer[] columnIndexesToProjectTo) {
         if (canDoFilter(booleanJavaSource, columnIndexesForThePredicate) && canDoProject(columnIndexesToProjectTo)) {
             CarbonCopyPredicate predicate = CompilerUtil.compileBooleanExpression(booleanJavaSource);
-            Stream<Object[]> resultStream = table.keys()
-                    .map(table::get)
-                    .filter(predicate::test)
-                    .map(tuple -> tuple.subTuple(columnIndexesToProjectTo))
-                    .map(Tuple::toObjectArray);
+            List<ColumnRange> ranges = toColumnRanges(zoneMapRanges);
 
             AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
             return new AbstractEnumerable<Object>() {
                 @Override
                 public Enumerator<Object> enumerator() {
-                    return new CarbonCopyEnumerator<>(resultStream, cancelFlag);
+                    Stream<TupleBatch> resultStream = batchesInSnapshot(columnIndexes(columnIndexesForThePredicate, columnIndexesToProjectTo), ranges)
+                            .map(predicate::filter);
+                    return new CarbonCopyEnumerator<>(resultStream, columnIndexesToProjectTo, cancelFlag);
                 }
             };
         } else {
@@ -117,16 +127,12 @@ public class CarbonCopyTable extends AbstractQueryableTable implements Translata
     @SuppressWarnings("UnusedDeclaration")
     public Enumerable<Object> project(DataContext dataContext, Integer[] columnIndexesToProjectTo) {
         if (canDoProject(columnIndexesToProjectTo)) {
-            Stream<Object[]> resultStream = table.keys()
-                    .map(table::get)
-                    .map(tuple -> tuple.subTuple(columnIndexesToProjectTo))
-                    .map(Tuple::toObjectArray);
-
             AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
             return new AbstractEnumerable<Object>() {
                 @Override
                 public Enumerator<Object> enumerator() {
-                    return new CarbonCopyEnumerator<>(resultStream, cancelFlag);
+                    Stream<TupleBatch> resultStream = batchesInSnapshot(columnIndexes(columnIndexesToProjectTo), Collections.emptyList());
+                    return new CarbonCopyEnumerator<>(resultStream, columnIndexesToProjectTo, cancelFlag);
                 }
             };
         } else {
@@ -134,21 +140,339 @@ public class CarbonCopyTable extends AbstractQueryableTable implements Translata
         }
     }
 
+    /**
+     * VOODOO!!!
+     * This method is being called via reflection from AggregateScan.
+     * Filters (if there are any) and aggregates rows batch by batch in parallel.
+     * Only the aggregated rows ever make it to calcite.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public Enumerable<Object> aggregate(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, String[] zoneMapRanges, Integer[] groupColumnIndexes, String[] aggregates) {
+        CarbonCopyAggregator aggregator = new CarbonCopyAggregator(groupColumnIndexes, aggregates);
+        boolean isFiltered = canDoFilter(booleanJavaSource, columnIndexesForThePredicate);
+        CarbonCopyPredicate predicate = isFiltered ? CompilerUtil.compileBooleanExpression(booleanJavaSource) : null;
+        List<ColumnRange> ranges = isFiltered ? toColumnRanges(zoneMapRanges) : Collections.emptyList();
+        Set<Integer> columns = isFiltered ? columnIndexes(columnIndexesForThePredicate, aggregator.getColumnIndexes()) : columnIndexes(aggregator.getColumnIndexes());
+
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                try (Stream<TupleBatch> batches = batchesInSnapshot(columns, ranges)) {
+                    Stream<TupleBatch> filteredBatches = (predicate != null) ? batches.parallel().map(predicate::filter) : batches.parallel();
+                    return Linq4j.enumerator(aggregator.aggregate(filteredBatches));
+                }
+            }
+        };
+    }
+
+    /**
+     * VOODOO!!!
+     * This method is being called via reflection from TableScan.
+     * Returns no more than limit rows. Without sort keys these are the first rows that pass the filter.
+     * With sort keys these are the top rows which are found by a bounded heap per batch.
+     * Filter and projection are optional.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public Enumerable<Object> topN(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, String[] zoneMapRanges, Integer[] columnIndexesToProjectTo, long limit, String[] sortKeys) {
+        boolean isFiltered = canDoFilter(booleanJavaSource, columnIndexesForThePredicate);
+        CarbonCopyPredicate predicate = isFiltered ? CompilerUtil.compileBooleanExpression(booleanJavaSource) : null;
+        List<ColumnRange> ranges = isFiltered ? toColumnRanges(zoneMapRanges) : Collections.emptyList();
+        Integer[] projection = canDoProject(columnIndexesToProjectTo) ? columnIndexesToProjectTo : null;
+        CarbonCopyTopN topN = (sortKeys.length > 0) ? new CarbonCopyTopN(limit, sortKeys) : null;
+        Set<Integer> columns = (projection == null)
+                ? null
+                : columnIndexes(
+                        isFiltered ? columnIndexesForThePredicate : new Integer[0],
+                        projection,
+                        (topN != null) ? topN.getColumnIndexes() : new Integer[0]
+                );
+
+        AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                if (topN == null) {
+                    // batches are read lazily so the enumerator stops reading as soon as it has enough rows
+                    Stream<TupleBatch> batches = batchesInSnapshot(columns, ranges);
+                    Stream<TupleBatch> filteredBatches = (predicate != null) ? batches.map(predicate::filter) : batches;
+                    return new CarbonCopyEnumerator<>(filteredBatches, projection, limit, cancelFlag);
+                }
+
+                try (Stream<TupleBatch> batches = batchesInSnapshot(columns, ranges)) {
+                    Stream<TupleBatch> filteredBatches = (predicate != null) ? batches.parallel().map(predicate::filter) : batches.parallel();
+                    List<Object> rows = topN.topN(filteredBatches).stream()
+                            .map(tuple -> CarbonCopyEnumerator.convert(tuple, projection))
+                            .collect(Collectors.toList());
+                    return Linq4j.enumerator(rows);
+                }
+            }
+        };
+    }
+
+    /**
+     * VOODOO!!!
+     * This method is being called via reflection from TableScan.
+     * Returns rows in the order of the local index on a column so that calcite doesn't need to sort them.
+     * Filter, projection and limit are optional.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public Enumerable<Object> orderedScan(DataContext dataContext, String booleanJavaSource, Integer[] columnIndexesForThePredicate, Integer[] columnIndexesToProjectTo, String orderedByColumn, boolean isNullsFirst, long limit) {
+        boolean isFiltered = canDoFilter(booleanJavaSource, columnIndexesForThePredicate);
+        CarbonCopyPredicate predicate = isFiltered ? CompilerUtil.compileBooleanExpression(booleanJavaSource) : null;
+        Integer[] projection = canDoProject(columnIndexesToProjectTo) ? columnIndexesToProjectTo : null;
+
+        AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                ReadSnapshot snapshot = Injector.getTxnManager().beginSnapshot();
+                try {
+                    Table tableInSnapshot = Injector.getDataStructureFactory().loadTable(table.getId(), snapshot);
+                    Stream<TupleBatch> batches = tableInSnapshot.scanBatchesInOrder(orderedByColumn, isNullsFirst).onClose(snapshot::close);
+                    Stream<TupleBatch> filteredBatches = (predicate != null) ? batches.map(predicate::filter) : batches;
+                    return new CarbonCopyEnumerator<>(filteredBatches, projection, limit, cancelFlag);
+                } catch (Exception xcp) {
+                    snapshot.close();
+                    throw xcp;
+                }
+            }
+        };
+    }
+
+    /**
+     * VOODOO!!!
+     * This method is being called via reflection from IndexJoin.
+     * This table is the inner side of the join. For every outer row I look up the matching rows in the local index of the key column.
+     * That way only the rows that actually join are ever read (instead of the entire table).
+     * If the index missed inserts of other nodes since the join was planned, the first lookup builds it anew (see Table.rangeScan).
+     * Rows coming out are arrays with the columns of the outer row followed by the (projected) columns of the inner row.
+     * Filter and projection of the inner side are optional.
+     */
+    @SuppressWarnings({"UnusedDeclaration", "unchecked"})
+    public Enumerable<Object> indexJoin(DataContext dataContext, Enumerable<Object> outer, int outerFieldCount, int outerKey, String booleanJavaSource, Integer[] columnIndexesForThePredicate, Integer[] columnIndexesToProjectTo, int keyColumnIndex) {
+        boolean isFiltered = canDoFilter(booleanJavaSource, columnIndexesForThePredicate);
+        CarbonCopyPredicate predicate = isFiltered ? CompilerUtil.compileBooleanExpression(booleanJavaSource) : null;
+        Integer[] projection = canDoProject(columnIndexesToProjectTo)
+                ? columnIndexesToProjectTo
+                : allColumnIndexes().stream().sorted().toArray(Integer[]::new);
+        String keyColumnName = table.getSortedColumnMetadata().get(keyColumnIndex).getLeft();
+
+        AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                ReadSnapshot snapshot = Injector.getTxnManager().beginSnapshot();
+                Enumerator<Object> outerRows = outer.enumerator();
+                try {
+                    Table tableInSnapshot = Injector.getDataStructureFactory().loadTable(table.getId(), snapshot);
+                    Stream<Object> rows = StreamSupport.stream(Spliterators.spliteratorUnknownSize(Linq4j.enumeratorIterator(outerRows), Spliterator.ORDERED), false)
+                            .filter(outerRow -> !cancelFlag.get())
+                            .flatMap(outerRow -> {
+                                Object[] outerValues = (outerFieldCount == 1) ? new Object[] { outerRow } : (Object[]) outerRow;
+                                Comparable key = (Comparable) outerValues[outerKey];
+                                // nulls don't join with anything
+                                if (key == null) {
+                                    return Stream.empty();
+                                }
+                                return tableInSnapshot.rangeScan(keyColumnName, key, key)
+                                        .map(tableInSnapshot::get)
+                                        // the local index might know rows that aren't in this snapshot or that have a different value by now
+                                        .filter(innerRow -> innerRow != null && innerRow.get(keyColumnIndex) != null && key.compareTo(innerRow.get(keyColumnIndex)) == 0)
+                                        .filter(innerRow -> predicate == null || predicate.test(innerRow))
+                                        .map(innerRow -> {
+                                            Object[] row = Arrays.copyOf(outerValues, outerValues.length + projection.length);
+                                            for (int i = 0; i < projection.length; i++) {
+                                                row[outerValues.length + i] = innerRow.get(projection[i]);
+                                            }
+                                            return row;
+                                        });
+                            });
+                    return new RowStreamEnumerator(rows.onClose(() -> {
+                        outerRows.close();
+                        snapshot.close();
+                    }));
+                } catch (Exception xcp) {
+                    outerRows.close();
+                    snapshot.close();
+                    throw xcp;
+                }
+            }
+        };
+    }
+
+    /**
+     * VOODOO!!!
+     * This method is being called via reflection from ColocatedJoin.
+     * This table is the left side of the join, the other table is the right side. Both are partitioned and joined on their partition keys.
+     * Every node joins its own rows (see Table.joinOnPartitionKey) and only the pairs that join ever travel over the network.
+     * Ranges of either side are dropped on the nodes already. Predicates and projections are applied here.
+     * Both tables are read in the same snapshot.
+     * Rows coming out are arrays with the (projected) columns of the left row followed by the (projected) columns of the right row.
+     */
+    @SuppressWarnings("UnusedDeclaration")
+    public Enumerable<Object> colocatedJoin(DataContext dataContext,
+                                            String booleanJavaSource, Integer[] columnIndexesForThePredicate, String[] zoneMapRanges, Integer[] columnIndexesToProjectTo,
+                                            CarbonCopyTable other,
+                                            String otherBooleanJavaSource, Integer[] otherColumnIndexesForThePredicate, String[] otherZoneMapRanges, Integer[] otherColumnIndexesToProjectTo) {
+        CarbonCopyPredicate predicate = canDoFilter(booleanJavaSource, columnIndexesForThePredicate) ? CompilerUtil.compileBooleanExpression(booleanJavaSource) : null;
+        CarbonCopyPredicate otherPredicate = other.canDoFilter(otherBooleanJavaSource, otherColumnIndexesForThePredicate) ? CompilerUtil.compileBooleanExpression(otherBooleanJavaSource) : null;
+        Integer[] projection = canDoProject(columnIndexesToProjectTo)
+                ? columnIndexesToProjectTo
+                : allColumnIndexes().stream().sorted().toArray(Integer[]::new);
+        Integer[] otherProjection = other.canDoProject(otherColumnIndexesToProjectTo)
+                ? otherColumnIndexesToProjectTo
+                : other.allColumnIndexes().stream().sorted().toArray(Integer[]::new);
+        Set<Integer> columns = columnIndexes(projection, (predicate != null) ? columnIndexesForThePredicate : new Integer[0]);
+        Set<Integer> otherColumns = columnIndexes(otherProjection, (otherPredicate != null) ? otherColumnIndexesForThePredicate : new Integer[0]);
+        List<ColumnRange> ranges = toColumnRanges(zoneMapRanges);
+        List<ColumnRange> otherRanges = other.toColumnRanges(otherZoneMapRanges);
+
+        AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
+        return new AbstractEnumerable<Object>() {
+            @Override
+            public Enumerator<Object> enumerator() {
+                ReadSnapshot snapshot = Injector.getTxnManager().beginSnapshot();
+                try {
+                    Table tableInSnapshot = Injector.getDataStructureFactory().loadTable(table.getId(), snapshot);
+                    Table otherTableInSnapshot = Injector.getDataStructureFactory().loadTable(other.table.getId(), snapshot);
+                    Stream<Object> rows = tableInSnapshot.joinOnPartitionKey(columns, ranges, otherTableInSnapshot, otherColumns, otherRanges)
+                            .filter(pair -> !cancelFlag.get())
+                            .filter(pair -> predicate == null || predicate.test(pair[0]))
+                            .filter(pair -> otherPredicate == null || otherPredicate.test(pair[1]))
+                            .map(pair -> {
+                                Object[] row = new Object[projection.length + otherProjection.length];
+                                for (int i = 0; i < projection.length; i++) {
+                                    row[i] = pair[0].get(projection[i]);
+                                }
+                                for (int i = 0; i < otherProjection.length; i++) {
+                                    row[projection.length + i] = pair[1].get(otherProjection[i]);
+                                }
+                                return row;
+                            });
+                    return new RowStreamEnumerator(rows.onClose(snapshot::close));
+                } catch (Exception xcp) {
+                    snapshot.close();
+                    throw xcp;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns true if this column decides which node a row lives on (see Table.joinOnPartitionKey).
+     */
+    boolean isPartitionedBy(int columnIndex) {
+        String partitionKeyColumn = table.getPartitionKeyColumn();
+        return partitionKeyColumn != null
+                && partitionKeyColumn.equalsIgnoreCase(table.getSortedColumnMetadata().get(columnIndex).getLeft());
+    }
+
+    /**
+     * Returns the name of the column if there's a local index on it that knows about all rows (and null otherwise).
+     * Local indexes miss rows that were inserted on other nodes. Ordered scans and index joins
+     * wouldn't find these rows -- so the optimizer rules fall back to sorting and hash joins.
+     */
+    String getLocalIndexColumnName(int columnIndex) {
+        String columnName = table.getSortedColumnMetadata().get(columnIndex).getLeft();
+        if (!table.getLocalIndexColumns().contains(columnName.toUpperCase())) {
+            return null;
+        }
+        // the table I hold on to might be old -- the latest version knows about all inserts
+        Table latestTable = Injector.getDataStructureFactory().loadTable(table.getId());
+        return latestTable.isLocalIndexComplete(columnName) ? columnName : null;
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     public Enumerable<Object> fullTableScan(DataContext dataContext) {
         AtomicBoolean cancelFlag = DataContext.Variable.CANCEL_FLAG.get(dataContext);
-        Stream<Object[]> resultStream = table.keys()
-                .map(table::get)
-                .map(Tuple::toObjectArray);
 
         return new AbstractEnumerable<Object>() {
             @Override
             public Enumerator<Object> enumerator() {
+                Stream<TupleBatch> resultStream = batchesInSnapshot(null, Collections.emptyList());
                 return new CarbonCopyEnumerator<>(resultStream, cancelFlag);
             }
         };
     }
 
+    // scans can run for a long time
+    // reading the table in a snapshot keeps them from waiting for writers
+    // and from seeing half of what a concurrent transaction did
+    // the snapshot is closed when the stream is closed
+    // only the columns passed in are guaranteed to be filled in (null means all columns)
+    // the ranges let the table skip rows that can't match but they don't filter anything
+    // rows come in batches so that predicates can run over lots of rows at once
+    private Stream<TupleBatch> batchesInSnapshot(Set<Integer> columnIndexes, List<ColumnRange> ranges) {
+        ReadSnapshot snapshot = Injector.getTxnManager().beginSnapshot();
+        try {
+            Table tableInSnapshot = Injector.getDataStructureFactory().loadTable(table.getId(), snapshot);
+            Set<Integer> columns = (columnIndexes != null) ? columnIndexes : allColumnIndexes();
+            Stream<TupleBatch> batches = tableInSnapshot.scanBatches(columns, ranges);
+            return batches.onClose(snapshot::close);
+        } catch (Exception xcp) {
+            snapshot.close();
+            throw xcp;
+        }
+    }
+
+    private static Set<Integer> columnIndexes(Integer[]... columnIndexes) {
+        Set<Integer> union = new HashSet<>();
+        for (Integer[] indexes : columnIndexes) {
+            union.addAll(Arrays.asList(indexes));
+        }
+        return union;
+    }
+
+    private Set<Integer> allColumnIndexes() {
+        return IntStream.range(0, table.getSortedColumnMetadata().size())
+                .boxed()
+                .collect(Collectors.toSet());
+    }
+
+    // the optimizer hands me triples of column index, lower and upper bound as strings
+    // I turn the bounds into values of the type of the column
+    // ranges I can't make sense of are dropped -- they're only a hint after all
+    private List<ColumnRange> toColumnRanges(String[] zoneMapRanges) {
+        List<ColumnRange> ranges = new ArrayList<>();
+        if (zoneMapRanges == null) {
+            return ranges;
+        }
+
+        List<Pair<String, Tuple>> metadata = table.getSortedColumnMetadata();
+        for (int i = 0; i + 2 < zoneMapRanges.length; i += 3) {
+            int columnIndex = Integer.parseInt(zoneMapRanges[i]);
+            String klassName = (String) metadata.get(columnIndex).getRight().get(2);
+            try {
+                ranges.add(new ColumnRange(columnIndex, toValue(klassName, zoneMapRanges[i + 1]), toValue(klassName, zoneMapRanges[i + 2])));
+            } catch (IllegalArgumentException xcp) {
+                // not a range then
+            }
+        }
+        return ranges;
+    }
+
+    private static Comparable toValue(String klassName, String value) {
+        if (value == null) {
+            return null;
+        } else if (String.class.getName().equals(klassName)) {
+            return value;
+        } else if (Integer.class.getName().equals(klassName)) {
+            return Integer.valueOf(value);
+        } else if (Long.class.getName().equals(klassName)) {
+            return Long.valueOf(value);
+        } else if (Double.class.getName().equals(klassName)) {
+            return Double.valueOf(value);
+        } else if (Float.class.getName().equals(klassName)) {
+            return Float.valueOf(value);
+        } else if (Short.class.getName().equals(klassName)) {
+            return Short.valueOf(value);
+        } else if (Byte.class.getName().equals(klassName)) {
+            return Byte.valueOf(value);
+        } else {
+            throw new IllegalArgumentException("Can't turn " + value + " into a " + klassName);
+        }
+    }
+
     private boolean canDoFilter(String booleanJavaSource, Integer[] columnIndexesForThePredicate) {
         return booleanJavaSource != null && !booleanJavaSource.isEmpty()
                 && columnIndexesForThePredicate != null && columnIndexesForThePredicate.length > 0;
@@ -0,0 +1,113 @@
+package org.carbon.copy.calcite;
+
+import org.carbon.copy.data.structures.Tuple;
+import org.carbon.copy.data.structures.TupleBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Finds the top n rows according to a couple of sort keys.
+ * Every batch keeps its own bounded heap of the best n rows it has seen.
+ * Heaps are merged afterwards. That way nobody ever holds on to more than n rows per batch.
+ */
+class CarbonCopyTopN {
+
+    private final int n;
+    private final Integer[] sortColumnIndexes;
+    private final Comparator<Tuple> comparator;
+
+    /**
+     * The sort keys come as triples of column index, direction (ASC or DESC) and null direction (FIRST or LAST)
+     * (see OptimizerRule.SORT_SCAN).
+     */
+    CarbonCopyTopN(long limit, String[] sortKeys) {
+        if (sortKeys.length == 0 || sortKeys.length % 3 != 0) {
+            throw new IllegalArgumentException("Sort keys need to come in triples but I got " + Arrays.toString(sortKeys));
+        }
+        this.n = (int) Math.min(limit, Integer.MAX_VALUE - 1);
+        this.sortColumnIndexes = new Integer[sortKeys.length / 3];
+        Comparator<Tuple> comparator = null;
+        for (int i = 0; i < sortColumnIndexes.length; i++) {
+            sortColumnIndexes[i] = Integer.valueOf(sortKeys[3 * i]);
+            Comparator<Tuple> keyComparator = newKeyComparator(sortColumnIndexes[i], "DESC".equals(sortKeys[3 * i + 1]), "FIRST".equals(sortKeys[3 * i + 2]));
+            comparator = (comparator == null) ? keyComparator : comparator.thenComparing(keyComparator);
+        }
+        this.comparator = comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Tuple> newKeyComparator(int columnIndex, boolean isDescending, boolean isNullsFirst) {
+        return (t1, t2) -> {
+            Comparable v1 = t1.get(columnIndex);
+            Comparable v2 = t2.get(columnIndex);
+            if (v1 == null && v2 == null) {
+                return 0;
+            } else if (v1 == null) {
+                return isNullsFirst ? -1 : 1;
+            } else if (v2 == null) {
+                return isNullsFirst ? 1 : -1;
+            }
+            int cmp = v1.compareTo(v2);
+            return isDescending ? -cmp : cmp;
+        };
+    }
+
+    /**
+     * All columns that need to be read in order to sort.
+     */
+    Integer[] getColumnIndexes() {
+        return sortColumnIndexes;
+    }
+
+    /**
+     * Returns the top n rows in order.
+     */
+    List<Tuple> topN(Stream<TupleBatch> batches) {
+        if (n <= 0) {
+            return Collections.emptyList();
+        }
+
+        PriorityQueue<Tuple> heap = batches
+                .map(this::topNOfBatch)
+                .reduce(this::merge)
+                .orElseGet(this::newHeap);
+        List<Tuple> rows = new ArrayList<>(heap);
+        rows.sort(comparator);
+        return rows;
+    }
+
+    private PriorityQueue<Tuple> topNOfBatch(TupleBatch batch) {
+        PriorityQueue<Tuple> heap = newHeap();
+        for (int i = 0; i < batch.size(); i++) {
+            offer(heap, batch.get(i));
+        }
+        return heap;
+    }
+
+    private PriorityQueue<Tuple> merge(PriorityQueue<Tuple> heap, PriorityQueue<Tuple> other) {
+        for (Tuple tuple : other) {
+            offer(heap, tuple);
+        }
+        return heap;
+    }
+
+    // the head of the heap is the worst row of the best n rows
+    private PriorityQueue<Tuple> newHeap() {
+        return new PriorityQueue<>(Math.min(n, TupleBatch.MAX_SIZE) + 1, comparator.reversed());
+    }
+
+    private void offer(PriorityQueue<Tuple> heap, Tuple tuple) {
+        if (heap.size() < n) {
+            heap.add(tuple);
+        } else if (comparator.compare(tuple, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(tuple);
+        }
+    }
+}
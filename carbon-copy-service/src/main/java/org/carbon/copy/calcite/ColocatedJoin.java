@@ -0,0 +1,124 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.tree.Blocks;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.AbstractRelNode;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * An inner equi-join of two partitioned tables on their partition keys.
+ * Rows with the same partition key live on the same node (no matter which table they belong to).
+ * That's why every node joins its own rows and only the rows that join travel over the network.
+ * This is what OptimizerRule.COLOCATED_JOIN turns a join of two of our TableScans into.
+ * This rel doesn't have any inputs. Both sides are the TableScans it replaces
+ * (that's where filter and projection of both sides come from).
+ */
+class ColocatedJoin extends AbstractRelNode implements EnumerableRel {
+
+    private final TableScan leftScan;
+    private final TableScan rightScan;
+    private final RelDataType joinRowType;
+
+    ColocatedJoin(RelOptCluster cluster, RelTraitSet traitSet, TableScan leftScan, TableScan rightScan, RelDataType joinRowType) {
+        super(cluster, traitSet);
+        this.leftScan = leftScan;
+        this.rightScan = rightScan;
+        this.joinRowType = joinRowType;
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new ColocatedJoin(getCluster(), traitSet, leftScan, rightScan, joinRowType);
+    }
+
+    /**
+     * Rows look exactly like the rows of the join this rel replaces.
+     */
+    @Override
+    public RelDataType deriveRowType() {
+        return joinRowType;
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .item("leftTable", leftScan.getTable().getQualifiedName())
+                .item("leftJavaFilterExpression", leftScan.getJavaFilterExpression())
+                .item("leftZoneMapRanges", leftScan.getZoneMapRanges())
+                .item("leftColumnIndexesToProjectTo", leftScan.getColumnIndexesToProjectTo())
+                .item("rightTable", rightScan.getTable().getQualifiedName())
+                .item("rightJavaFilterExpression", rightScan.getJavaFilterExpression())
+                .item("rightZoneMapRanges", rightScan.getZoneMapRanges())
+                .item("rightColumnIndexesToProjectTo", rightScan.getColumnIndexesToProjectTo());
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        // without statistics I pretend that every left row finds one right row (the foreign key case)
+        return mq.getRowCount(leftScan);
+    }
+
+    // every row of either table is touched exactly once -- just like in the hash join
+    // but the scans of both tables are part of this rel and all nodes join their rows at the same time
+    // that's why this beats a hash join on top of the two scans whenever both tables are partitioned by the join key
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        double rowCount = mq.getRowCount(this) + mq.getRowCount(leftScan) + mq.getRowCount(rightScan);
+        return planner.getCostFactory().makeCost(rowCount, 0, 0).multiplyBy(0.5d);
+    }
+
+    // this refers to a method in CarbonCopyTable that does the heavy lifting for us
+    private static final Method COLOCATED_JOIN_CALLBACK =
+            Types.lookupMethod(
+                    CarbonCopyTable.class,
+                    "colocatedJoin",
+                    DataContext.class,
+                    String.class,
+                    Integer[].class,
+                    String[].class,
+                    Integer[].class,
+                    CarbonCopyTable.class,
+                    String.class,
+                    Integer[].class,
+                    String[].class,
+                    Integer[].class
+            );
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer prefer) {
+        PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.ARRAY);
+        return implementor.result(
+                physType,
+                Blocks.toBlock(
+                        Expressions.call(leftScan.getTable().getExpression(CarbonCopyTable.class),
+                                COLOCATED_JOIN_CALLBACK,
+                                implementor.getRootExpression(),
+                                Expressions.constant(leftScan.getJavaFilterExpression()),
+                                Expressions.constant(leftScan.getColumnIndexesForThePredicate().toArray(new Integer[0])),
+                                Expressions.constant(leftScan.getZoneMapRanges().toArray(new String[0])),
+                                Expressions.constant(leftScan.getColumnIndexesToProjectTo().toArray(new Integer[0])),
+                                rightScan.getTable().getExpression(CarbonCopyTable.class),
+                                Expressions.constant(rightScan.getJavaFilterExpression()),
+                                Expressions.constant(rightScan.getColumnIndexesForThePredicate().toArray(new Integer[0])),
+                                Expressions.constant(rightScan.getZoneMapRanges().toArray(new String[0])),
+                                Expressions.constant(rightScan.getColumnIndexesToProjectTo().toArray(new Integer[0]))
+                        )));
+    }
+}
@@ -84,13 +84,31 @@ class CompilerUtil {
     //         return java.util.Objects.compare("", rowIndexValueMap.get(1), java.lang.Comparable::compareTo) == 0;
     //     }
     // }
+    //
+    // filter runs the very same expression over an entire batch
+    // the loop lives in the generated code so that there's no call per row
     private static final String SOURCE_TEMPLATE =
-            "package %s;\n" +
-            "public final class %s implements org.carbon.copy.calcite.CarbonCopyPredicate {\n" +
+            "package %1$s;\n" +
+            "public final class %2$s implements org.carbon.copy.calcite.CarbonCopyPredicate {\n" +
                     "@Override\n" +
                     "public boolean test(Object o) {\n" +
                         "org.carbon.copy.data.structures.Tuple tuple = (org.carbon.copy.data.structures.Tuple)o;\n" +
-                        "return %s ;\n" +
+                        "return %3$s ;\n" +
+                    "}\n" +
+                    "@Override\n" +
+                    "public org.carbon.copy.data.structures.TupleBatch filter(org.carbon.copy.data.structures.TupleBatch batch) {\n" +
+                        "org.carbon.copy.data.structures.Tuple[] rows = batch.getRows();\n" +
+                        "int[] selection = batch.getSelection();\n" +
+                        "int size = batch.size();\n" +
+                        "int selected = 0;\n" +
+                        "for (int i = 0; i < size; i++) {\n" +
+                            "org.carbon.copy.data.structures.Tuple tuple = rows[selection[i]];\n" +
+                            "if (%3$s) {\n" +
+                                "selection[selected++] = selection[i];\n" +
+                            "}\n" +
+                        "}\n" +
+                        "batch.setSize(selected);\n" +
+                        "return batch;\n" +
                     "}\n" +
             "}\n";
 }
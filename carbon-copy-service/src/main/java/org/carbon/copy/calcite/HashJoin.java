@@ -0,0 +1,98 @@
+package org.carbon.copy.calcite;
+
+import com.google.common.collect.ImmutableSet;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexNode;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * An inner equi-join that hashes one side and probes it with the other.
+ * This is what OptimizerRule.HASH_JOIN turns a join into.
+ * Both sides can be anything calcite can come up with (they don't need to be scans).
+ * All the work happens in CarbonCopyHashJoin.
+ */
+class HashJoin extends Join implements EnumerableRel {
+
+    HashJoin(RelOptCluster cluster, RelTraitSet traitSet, RelNode left, RelNode right, RexNode condition, JoinRelType joinType) {
+        super(cluster, traitSet, left, right, condition, ImmutableSet.of(), joinType);
+    }
+
+    @Override
+    public Join copy(RelTraitSet traitSet, RexNode condition, RelNode left, RelNode right, JoinRelType joinType, boolean semiJoinDone) {
+        return new HashJoin(getCluster(), traitSet, left, right, condition, joinType);
+    }
+
+    // every row of either side is touched exactly once
+    // which side is hashed is decided at runtime so there's no penalty for the wrong side being bigger
+    // make sure the optimizer prefers that to calcite's own join
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        double rowCount = mq.getRowCount(this) + mq.getRowCount(getLeft()) + mq.getRowCount(getRight());
+        return planner.getCostFactory().makeCost(rowCount, 0, 0).multiplyBy(0.5d);
+    }
+
+    // this refers to the method in CarbonCopyHashJoin that does the heavy lifting for us
+    private static final Method HASH_JOIN_METHOD =
+            Types.lookupMethod(
+                    CarbonCopyHashJoin.class,
+                    "join",
+                    Enumerable.class,
+                    Enumerable.class,
+                    int.class,
+                    int.class,
+                    Integer[].class,
+                    Integer[].class
+            );
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer prefer) {
+        BlockBuilder builder = new BlockBuilder();
+        Result leftResult = implementor.visitChild(this, 0, (EnumerableRel) getLeft(), Prefer.ARRAY);
+        Expression leftExpression = toArrays(implementor, getLeft(), leftResult, builder.append("left", leftResult.block));
+        Result rightResult = implementor.visitChild(this, 1, (EnumerableRel) getRight(), Prefer.ARRAY);
+        Expression rightExpression = toArrays(implementor, getRight(), rightResult, builder.append("right", rightResult.block));
+
+        List<Integer> leftKeys = analyzeCondition().leftKeys;
+        List<Integer> rightKeys = analyzeCondition().rightKeys;
+        PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.ARRAY);
+        builder.add(
+                Expressions.call(
+                        HASH_JOIN_METHOD,
+                        leftExpression,
+                        rightExpression,
+                        Expressions.constant(getLeft().getRowType().getFieldCount()),
+                        Expressions.constant(getRight().getRowType().getFieldCount()),
+                        Expressions.constant(leftKeys.toArray(new Integer[leftKeys.size()])),
+                        Expressions.constant(rightKeys.toArray(new Integer[rightKeys.size()]))
+                ));
+        return implementor.result(physType, builder.toBlock());
+    }
+
+    // CarbonCopyHashJoin wants arrays (or the value itself for a single column)
+    // most children do that when asked nicely but some insist on their own format
+    private static Expression toArrays(EnumerableRelImplementor implementor, RelNode child, Result result, Expression expression) {
+        if (result.format == JavaRowFormat.ARRAY || result.format == JavaRowFormat.SCALAR) {
+            return expression;
+        }
+        return result.physType.convertTo(expression, PhysTypeImpl.of(implementor.getTypeFactory(), child.getRowType(), JavaRowFormat.ARRAY));
+    }
+}
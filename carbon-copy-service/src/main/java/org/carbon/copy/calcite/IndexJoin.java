@@ -0,0 +1,130 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.Types;
+import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rel.type.RelDataType;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * An inner equi-join that looks up the matching rows of the inner table in a local index for every outer row.
+ * This is what OptimizerRule.INDEX_JOIN turns a join with one of our TableScans on the right into.
+ * The outer side is the only input of this rel. The inner side is the TableScan it replaces
+ * (that's where filter and projection of the inner side come from).
+ */
+class IndexJoin extends SingleRel implements EnumerableRel {
+
+    private final TableScan innerScan;
+    private final int outerKey;
+    // column index in the inner table (not in the inner scan)
+    private final int innerKeyColumnIndex;
+    private final RelDataType joinRowType;
+
+    IndexJoin(RelOptCluster cluster, RelTraitSet traitSet, RelNode outer, TableScan innerScan, int outerKey, int innerKeyColumnIndex, RelDataType joinRowType) {
+        super(cluster, traitSet, outer);
+        this.innerScan = innerScan;
+        this.outerKey = outerKey;
+        this.innerKeyColumnIndex = innerKeyColumnIndex;
+        this.joinRowType = joinRowType;
+    }
+
+    @Override
+    public RelNode copy(RelTraitSet traitSet, List<RelNode> inputs) {
+        return new IndexJoin(getCluster(), traitSet, sole(inputs), innerScan, outerKey, innerKeyColumnIndex, joinRowType);
+    }
+
+    /**
+     * Rows look exactly like the rows of the join this rel replaces.
+     */
+    @Override
+    public RelDataType deriveRowType() {
+        return joinRowType;
+    }
+
+    @Override
+    public RelWriter explainTerms(RelWriter pw) {
+        return super.explainTerms(pw)
+                .item("innerTable", innerScan.getTable().getQualifiedName())
+                .item("javaFilterExpression", innerScan.getJavaFilterExpression())
+                .item("columnIndexesForThePredicate", innerScan.getColumnIndexesForThePredicate())
+                .item("columnIndexesToProjectTo", innerScan.getColumnIndexesToProjectTo())
+                .item("outerKey", outerKey)
+                .item("innerKeyColumnIndex", innerKeyColumnIndex);
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        // without statistics I pretend that every outer row finds one inner row (the foreign key case)
+        return mq.getRowCount(getInput());
+    }
+
+    // one index lookup per outer row and the inner table is never read in full
+    // a lookup costs more than reading a row though
+    // that's why this only beats the hash join if the outer side is smaller than the inner table
+    @Override
+    public RelOptCost computeSelfCost(RelOptPlanner planner, RelMetadataQuery mq) {
+        double rowCount = mq.getRowCount(this) + 2 * mq.getRowCount(getInput());
+        return planner.getCostFactory().makeCost(rowCount, 0, 0).multiplyBy(0.5d);
+    }
+
+    // this refers to a method in CarbonCopyTable that does the heavy lifting for us
+    private static final Method INDEX_JOIN_CALLBACK =
+            Types.lookupMethod(
+                    CarbonCopyTable.class,
+                    "indexJoin",
+                    DataContext.class,
+                    Enumerable.class,
+                    int.class,
+                    int.class,
+                    String.class,
+                    Integer[].class,
+                    Integer[].class,
+                    int.class
+            );
+
+    @Override
+    public Result implement(EnumerableRelImplementor implementor, Prefer prefer) {
+        BlockBuilder builder = new BlockBuilder();
+        Result outerResult = implementor.visitChild(this, 0, (EnumerableRel) getInput(), Prefer.ARRAY);
+        Expression outerExpression = builder.append("outer", outerResult.block);
+        // the callback wants arrays (or the value itself for a single column)
+        if (outerResult.format != JavaRowFormat.ARRAY && outerResult.format != JavaRowFormat.SCALAR) {
+            outerExpression = outerResult.physType.convertTo(outerExpression, PhysTypeImpl.of(implementor.getTypeFactory(), getInput().getRowType(), JavaRowFormat.ARRAY));
+        }
+
+        List<Integer> columnIndexesForThePredicate = innerScan.getColumnIndexesForThePredicate();
+        List<Integer> columnIndexesToProjectTo = innerScan.getColumnIndexesToProjectTo();
+        PhysType physType = PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.ARRAY);
+        builder.add(
+                Expressions.call(innerScan.getTable().getExpression(CarbonCopyTable.class),
+                        INDEX_JOIN_CALLBACK,
+                        implementor.getRootExpression(),
+                        outerExpression,
+                        Expressions.constant(getInput().getRowType().getFieldCount()),
+                        Expressions.constant(outerKey),
+                        Expressions.constant(innerScan.getJavaFilterExpression()),
+                        Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                        Expressions.constant(columnIndexesToProjectTo.toArray(new Integer[columnIndexesToProjectTo.size()])),
+                        Expressions.constant(innerKeyColumnIndex)
+                ));
+        return implementor.result(physType, builder.toBlock());
+    }
+}
@@ -4,6 +4,7 @@ import com.google.inject.Inject;
 import com.google.inject.Provider;
 import org.carbon.copy.data.structures.Catalog;
 import org.carbon.copy.data.structures.DataStructureFactory;
+import org.carbon.copy.data.structures.TxnManager;
 
 /**
  * Ok, this sucks...a lot!
@@ -18,6 +19,9 @@ class Injector {
     @Inject
     static Provider<DataStructureFactory> dataStructureFactoryProvider;
 
+    @Inject
+    static Provider<TxnManager> txnManagerProvider;
+
     static Catalog getCatalog() {
         return catalogProvider.get();
     }
@@ -25,4 +29,8 @@ class Injector {
     static DataStructureFactory getDataStructureFactory() {
         return dataStructureFactoryProvider.get();
     }
+
+    static TxnManager getTxnManager() {
+        return txnManagerProvider.get();
+    }
 }
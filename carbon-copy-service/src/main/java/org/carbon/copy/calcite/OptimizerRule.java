@@ -1,20 +1,34 @@
 package org.carbon.copy.calcite;
 
 
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
 import org.apache.calcite.plan.RelOptRule;
 import org.apache.calcite.plan.RelOptRuleCall;
 import org.apache.calcite.plan.RelOptRuleOperand;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.core.Aggregate;
+import org.apache.calcite.rel.core.AggregateCall;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.logical.LogicalAggregate;
 import org.apache.calcite.rel.logical.LogicalFilter;
+import org.apache.calcite.rel.logical.LogicalJoin;
 import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.logical.LogicalSort;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexSlot;
 import org.apache.calcite.rex.RexVisitorImpl;
+import org.apache.calcite.sql.SqlKind;
 import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -30,6 +44,24 @@ abstract class OptimizerRule extends RelOptRule {
     static final OptimizerRule PROJECT_SCAN
             = new ProjectScanOptimizerRule();
 
+    static final OptimizerRule AGGREGATE_SCAN
+            = new AggregateScanOptimizerRule();
+
+    static final OptimizerRule SORT_SCAN
+            = new SortScanOptimizerRule();
+
+    static final OptimizerRule INDEX_SORT_SCAN
+            = new IndexSortScanOptimizerRule();
+
+    static final OptimizerRule HASH_JOIN
+            = new HashJoinOptimizerRule();
+
+    static final OptimizerRule INDEX_JOIN
+            = new IndexJoinOptimizerRule();
+
+    static final OptimizerRule COLOCATED_JOIN
+            = new ColocatedJoinOptimizerRule();
+
     private OptimizerRule(RelOptRuleOperand rule, String description) {
         super(rule, "CarbonCopyOptimizerRule:" + description);
     }
@@ -63,6 +95,7 @@ abstract class OptimizerRule extends RelOptRule {
                             scan.getCarbonCopyTable(),
                             javaSource,
                             translator.getColumnIndexesForPredicate(),
+                            zoneMapRanges(filter.getCondition()),
                             columnIndexesToProjectTo
                     )
             );
@@ -90,7 +123,8 @@ abstract class OptimizerRule extends RelOptRule {
                             scan.getTable(),
                             scan.getCarbonCopyTable(),
                             javaSource,
-                            translator.getColumnIndexesForPredicate()
+                            translator.getColumnIndexesForPredicate(),
+                            zoneMapRanges(filter.getCondition())
                     )
             );
         }
@@ -124,6 +158,370 @@ abstract class OptimizerRule extends RelOptRule {
         }
     }
 
+    /**
+     * Folds an aggregate into the scan below it.
+     * Calcite puts a projection between aggregate and scan that the other rules already folded into the scan.
+     * That's why the aggregate refers to the columns of the (projected) scan and not to the columns of the table.
+     */
+    private static class AggregateScanOptimizerRule extends OptimizerRule {
+        private AggregateScanOptimizerRule() {
+            super(operand(
+                    LogicalAggregate.class,
+                    operand(TableScan.class, none())),
+                    "aggregate-scan");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalAggregate aggregate = call.rel(0);
+            TableScan scan = call.rel(1);
+            // grouping sets, cubes and rollups are left to calcite
+            if (aggregate.getGroupType() != Aggregate.Group.SIMPLE || aggregate.indicator) {
+                return;
+            }
+
+            List<Integer> projection = scan.getColumnIndexesToProjectTo();
+            List<Integer> groupColumnIndexes = aggregate.getGroupSet().asList().stream()
+                    .map(idx -> projection.isEmpty() ? idx : projection.get(idx))
+                    .collect(Collectors.toList());
+
+            List<String> aggregates = new ArrayList<>();
+            for (AggregateCall aggregateCall : aggregate.getAggCallList()) {
+                if (aggregateCall.isDistinct() || aggregateCall.filterArg >= 0 || aggregateCall.getArgList().size() > 1) {
+                    return;
+                }
+                SqlKind kind = aggregateCall.getAggregation().getKind();
+                if (!CarbonCopyAggregator.SUPPORTED_FUNCTIONS.contains(kind)) {
+                    return;
+                }
+
+                Integer argument = null;
+                if (!aggregateCall.getArgList().isEmpty()) {
+                    int idx = aggregateCall.getArgList().get(0);
+                    argument = projection.isEmpty() ? idx : projection.get(idx);
+                } else if (kind != SqlKind.COUNT) {
+                    return;
+                }
+                aggregates.add(kind.name());
+                aggregates.add((argument != null) ? String.valueOf(argument) : null);
+                aggregates.add(aggregateCall.getType().getSqlTypeName().name());
+            }
+
+            call.transformTo(
+                    new AggregateScan(
+                            scan.getCluster(),
+                            scan.getTable(),
+                            scan.getCarbonCopyTable(),
+                            scan.getJavaFilterExpression(),
+                            scan.getColumnIndexesForThePredicate(),
+                            scan.getZoneMapRanges(),
+                            groupColumnIndexes,
+                            aggregates,
+                            aggregate.getRowType()
+                    )
+            );
+        }
+    }
+
+    /**
+     * Pushes limits (and top-n with an order by) into the scan below.
+     * The sort stays where it is. It merely sorts a handful of rows then.
+     * That also takes care of the offset which the scan doesn't know about.
+     */
+    private static class SortScanOptimizerRule extends OptimizerRule {
+        private SortScanOptimizerRule() {
+            super(operand(
+                    LogicalSort.class,
+                    operand(TableScan.class, none())),
+                    "sort-scan");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalSort sort = call.rel(0);
+            TableScan scan = call.rel(1);
+            // no limit nothing to push
+            // and don't push the same limit over and over again
+            if (!(sort.fetch instanceof RexLiteral) || scan.hasLimit()) {
+                return;
+            }
+            if (sort.offset != null && !(sort.offset instanceof RexLiteral)) {
+                return;
+            }
+
+            long limit = RexLiteral.intValue(sort.fetch) + ((sort.offset != null) ? RexLiteral.intValue(sort.offset) : 0);
+            List<Integer> projection = scan.getColumnIndexesToProjectTo();
+            List<String> sortKeys = new ArrayList<>();
+            for (RelFieldCollation fieldCollation : sort.getCollation().getFieldCollations()) {
+                int idx = fieldCollation.getFieldIndex();
+                boolean isDescending = fieldCollation.getDirection() == RelFieldCollation.Direction.DESCENDING
+                        || fieldCollation.getDirection() == RelFieldCollation.Direction.STRICTLY_DESCENDING;
+                // that's how calcite sorts nulls (unless told otherwise they go last)
+                boolean isNullsFirst = fieldCollation.nullDirection == RelFieldCollation.NullDirection.FIRST;
+                sortKeys.add(String.valueOf(projection.isEmpty() ? idx : projection.get(idx)));
+                sortKeys.add(isDescending ? "DESC" : "ASC");
+                sortKeys.add(isNullsFirst ? "FIRST" : "LAST");
+            }
+
+            call.transformTo(
+                    sort.copy(
+                            sort.getTraitSet(),
+                            scan.withTopN(limit, sortKeys),
+                            sort.getCollation(),
+                            sort.offset,
+                            sort.fetch
+                    )
+            );
+        }
+    }
+
+    /**
+     * Replaces a sort on a column with a local index by a scan that reads the rows in index order.
+     * Only indexes that know about all rows qualify (see CarbonCopyTable.getLocalIndexColumnName).
+     * Only single column ascending sorts qualify as the index can't be read backwards.
+     * Sorts with a limit stay on top of the ordered scan (they sort a handful of sorted rows then).
+     */
+    private static class IndexSortScanOptimizerRule extends OptimizerRule {
+        private IndexSortScanOptimizerRule() {
+            super(operand(
+                    LogicalSort.class,
+                    operand(TableScan.class, none())),
+                    "index-sort-scan");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalSort sort = call.rel(0);
+            TableScan scan = call.rel(1);
+            List<RelFieldCollation> fieldCollations = sort.getCollation().getFieldCollations();
+            if (scan.isOrdered() || scan.hasLimit() || fieldCollations.size() != 1) {
+                return;
+            }
+            RelFieldCollation fieldCollation = fieldCollations.get(0);
+            if (fieldCollation.getDirection() != RelFieldCollation.Direction.ASCENDING
+                    && fieldCollation.getDirection() != RelFieldCollation.Direction.STRICTLY_ASCENDING) {
+                return;
+            }
+            boolean hasFetch = sort.fetch != null || sort.offset != null;
+            if ((sort.fetch != null && !(sort.fetch instanceof RexLiteral)) || (sort.offset != null && !(sort.offset instanceof RexLiteral))) {
+                return;
+            }
+
+            List<Integer> projection = scan.getColumnIndexesToProjectTo();
+            int idx = fieldCollation.getFieldIndex();
+            String columnName = scan.getCarbonCopyTable().getLocalIndexColumnName(projection.isEmpty() ? idx : projection.get(idx));
+            if (columnName == null) {
+                return;
+            }
+
+            // that's how calcite sorts nulls (unless told otherwise they go last)
+            boolean isNullsFirst = fieldCollation.nullDirection == RelFieldCollation.NullDirection.FIRST;
+            long limit = (sort.fetch != null)
+                    ? RexLiteral.intValue(sort.fetch) + ((sort.offset != null) ? RexLiteral.intValue(sort.offset) : 0)
+                    : -1;
+            TableScan orderedScan = scan.withIndexOrder(sort.getCollation(), columnName, isNullsFirst, limit);
+            if (hasFetch) {
+                call.transformTo(sort.copy(sort.getTraitSet(), orderedScan, sort.getCollation(), sort.offset, sort.fetch));
+            } else {
+                call.transformTo(orderedScan);
+            }
+        }
+    }
+
+    /**
+     * Turns inner equi-joins into hash joins.
+     * Both sides can be anything. They're converted to whatever calcite has to offer.
+     * Outer joins and joins on anything but equality of columns are left to calcite.
+     */
+    private static class HashJoinOptimizerRule extends OptimizerRule {
+        private HashJoinOptimizerRule() {
+            super(operand(
+                    LogicalJoin.class, any()),
+                    "hash-join");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalJoin join = call.rel(0);
+            JoinInfo joinInfo = join.analyzeCondition();
+            if (join.getJoinType() != JoinRelType.INNER || !joinInfo.isEqui() || joinInfo.leftKeys.isEmpty()) {
+                return;
+            }
+
+            RelTraitSet traitSet = join.getTraitSet().replace(EnumerableConvention.INSTANCE);
+            call.transformTo(
+                    new HashJoin(
+                            join.getCluster(),
+                            traitSet,
+                            convert(join.getLeft(), join.getLeft().getTraitSet().replace(EnumerableConvention.INSTANCE)),
+                            convert(join.getRight(), join.getRight().getTraitSet().replace(EnumerableConvention.INSTANCE)),
+                            join.getCondition(),
+                            join.getJoinType()
+                    )
+            );
+        }
+    }
+
+    /**
+     * Turns inner equi-joins on a single column into index nested-loop joins
+     * if the right side is one of our TableScans and the column has a local index that knows about all rows
+     * (see CarbonCopyTable.getLocalIndexColumnName). All other joins stay hash joins.
+     * The left side can be anything. Whether this beats the hash join is up to the costs.
+     */
+    private static class IndexJoinOptimizerRule extends OptimizerRule {
+        private IndexJoinOptimizerRule() {
+            super(operand(
+                    LogicalJoin.class,
+                    operand(RelNode.class, any()),
+                    operand(TableScan.class, none())),
+                    "index-join");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalJoin join = call.rel(0);
+            TableScan scan = call.rel(2);
+            JoinInfo joinInfo = join.analyzeCondition();
+            if (join.getJoinType() != JoinRelType.INNER || !joinInfo.isEqui() || joinInfo.leftKeys.size() != 1) {
+                return;
+            }
+            // the callback only knows about filter and projection of the inner scan
+            if (scan.hasLimit() || scan.isOrdered()) {
+                return;
+            }
+
+            List<Integer> projection = scan.getColumnIndexesToProjectTo();
+            int idx = joinInfo.rightKeys.get(0);
+            int keyColumnIndex = projection.isEmpty() ? idx : projection.get(idx);
+            if (scan.getCarbonCopyTable().getLocalIndexColumnName(keyColumnIndex) == null) {
+                return;
+            }
+
+            RelTraitSet traitSet = join.getTraitSet().replace(EnumerableConvention.INSTANCE);
+            call.transformTo(
+                    new IndexJoin(
+                            join.getCluster(),
+                            traitSet,
+                            convert(join.getLeft(), join.getLeft().getTraitSet().replace(EnumerableConvention.INSTANCE)),
+                            scan,
+                            joinInfo.leftKeys.get(0),
+                            keyColumnIndex,
+                            join.getRowType()
+                    )
+            );
+        }
+    }
+
+    /**
+     * Turns inner equi-joins of two of our TableScans into colocated joins
+     * if both tables are partitioned and the join is on their partition keys (and nothing else).
+     * All rows that join live on the same node then and every node can join its own rows.
+     * Whether this beats the other joins is up to the costs.
+     */
+    private static class ColocatedJoinOptimizerRule extends OptimizerRule {
+        private ColocatedJoinOptimizerRule() {
+            super(operand(
+                    LogicalJoin.class,
+                    operand(TableScan.class, none()),
+                    operand(TableScan.class, none())),
+                    "colocated-join");
+        }
+
+        @Override
+        public void onMatch(RelOptRuleCall call) {
+            LogicalJoin join = call.rel(0);
+            TableScan leftScan = call.rel(1);
+            TableScan rightScan = call.rel(2);
+            JoinInfo joinInfo = join.analyzeCondition();
+            if (join.getJoinType() != JoinRelType.INNER || !joinInfo.isEqui() || joinInfo.leftKeys.size() != 1) {
+                return;
+            }
+            // the callback only knows about filters and projections of the scans
+            if (leftScan.hasLimit() || leftScan.isOrdered() || rightScan.hasLimit() || rightScan.isOrdered()) {
+                return;
+            }
+            if (!isPartitionKey(leftScan, joinInfo.leftKeys.get(0)) || !isPartitionKey(rightScan, joinInfo.rightKeys.get(0))) {
+                return;
+            }
+
+            RelTraitSet traitSet = join.getTraitSet().replace(EnumerableConvention.INSTANCE);
+            call.transformTo(
+                    new ColocatedJoin(
+                            join.getCluster(),
+                            traitSet,
+                            leftScan,
+                            rightScan,
+                            join.getRowType()
+                    )
+            );
+        }
+
+        private static boolean isPartitionKey(TableScan scan, int idx) {
+            List<Integer> projection = scan.getColumnIndexesToProjectTo();
+            int columnIndex = projection.isEmpty() ? idx : projection.get(idx);
+            return scan.getCarbonCopyTable().isPartitionedBy(columnIndex);
+        }
+    }
+
+    /**
+     * Pulls the ranges out of a filter condition that tables can use to skip entire row groups.
+     * Only comparisons of a column with a literal that are and-ed together qualify.
+     * Everything else (ors, column to column comparisons, etc.) is simply left to the predicate.
+     * Ranges are flattened into triples of column index, lower bound and upper bound (null means open).
+     * The table turns them back into proper values when it knows the types of its columns.
+     */
+    private static List<String> zoneMapRanges(RexNode condition) {
+        List<String> ranges = new ArrayList<>();
+        for (RexNode conjunction : RelOptUtil.conjunctions(condition)) {
+            if (!(conjunction instanceof RexCall)) {
+                continue;
+            }
+            RexCall call = (RexCall) conjunction;
+            if (call.getOperands().size() != 2) {
+                continue;
+            }
+            RexNode left = call.getOperands().get(0);
+            RexNode right = call.getOperands().get(1);
+            SqlKind kind = call.getKind();
+            if (left instanceof RexLiteral && right instanceof RexInputRef) {
+                // 5 < x is the same as x > 5
+                RexNode tmp = left;
+                left = right;
+                right = tmp;
+                kind = kind.reverse();
+            }
+            if (!(left instanceof RexInputRef) || !(right instanceof RexLiteral) || ((RexLiteral) right).getValue3() == null) {
+                continue;
+            }
+
+            String column = String.valueOf(((RexInputRef) left).getIndex());
+            String value = ((RexLiteral) right).getValue3().toString();
+            switch (kind) {
+                case EQUALS:
+                    ranges.add(column);
+                    ranges.add(value);
+                    ranges.add(value);
+                    break;
+                case GREATER_THAN:
+                case GREATER_THAN_OR_EQUAL:
+                    // the ranges are inclusive which is a little too wide for ">" but that's alright
+                    ranges.add(column);
+                    ranges.add(value);
+                    ranges.add(null);
+                    break;
+                case LESS_THAN:
+                case LESS_THAN_OR_EQUAL:
+                    ranges.add(column);
+                    ranges.add(null);
+                    ranges.add(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return ranges;
+    }
+
     /**
      * comment about this visitor converting the expression tree into java code
      */
@@ -0,0 +1,54 @@
+package org.carbon.copy.calcite;
+
+import org.apache.calcite.linq4j.Enumerator;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Hands rows that are already in the shape calcite likes (see CarbonCopyEnumerator.convert) to calcite one at a time.
+ * This is what the joins use. Their rows don't come in batches.
+ * The stream is closed as soon as it runs dry (or the enumerator is closed).
+ */
+class RowStreamEnumerator implements Enumerator<Object> {
+
+    private Stream<Object> stream;
+    private Iterator<Object> iterator;
+    private Object current;
+
+    RowStreamEnumerator(Stream<Object> stream) {
+        this.stream = stream;
+        this.iterator = stream.iterator();
+    }
+
+    @Override
+    public Object current() {
+        return current;
+    }
+
+    @Override
+    public boolean moveNext() {
+        if (iterator == null) return false;
+        if (!iterator.hasNext()) {
+            close();
+            return false;
+        }
+        current = iterator.next();
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+        }
+        this.stream = null;
+        this.iterator = null;
+        this.current = null;
+    }
+}
@@ -12,7 +12,10 @@ import org.apache.calcite.linq4j.tree.Types;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptTable;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelWriter;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeField;
@@ -26,14 +29,30 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
     private final CarbonCopyTable carbonCopyTable;
     private final String javaFilterExpression;
     private final List<Integer> columnIndexesForThePredicate;
+    // triples of column index, lower and upper bound (see OptimizerRule.zoneMapRanges)
+    private final List<String> zoneMapRanges;
     private final List<Integer> columnIndexesToProjectTo;
+    // the scan doesn't need to return more than that many rows (negative means all rows)
+    private final long limit;
+    // triples of column index, direction (ASC or DESC) and null direction (FIRST or LAST)
+    // if the scan has a limit and sort keys it returns the top rows according to the sort keys
+    private final List<String> sortKeys;
+    // if this is set the scan returns rows in the order of the local index on this column
+    // the trait set of the scan carries the collation then
+    private final String orderedByColumn;
+    private final boolean isNullsFirst;
 
     TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable) {
         super(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE), table);
         this.carbonCopyTable = carbonCopyTable;
         this.javaFilterExpression = "";
         this.columnIndexesForThePredicate = Collections.emptyList();
+        this.zoneMapRanges = Collections.emptyList();
         this.columnIndexesToProjectTo = Collections.emptyList();
+        this.limit = -1;
+        this.sortKeys = Collections.emptyList();
+        this.orderedByColumn = null;
+        this.isNullsFirst = false;
     }
 
     TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, List<Integer> columnIndexesToProjectTo) {
@@ -41,29 +60,98 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
         this.carbonCopyTable = carbonCopyTable;
         this.javaFilterExpression = "";
         this.columnIndexesForThePredicate = Collections.emptyList();
+        this.zoneMapRanges = Collections.emptyList();
         this.columnIndexesToProjectTo = columnIndexesToProjectTo;
+        this.limit = -1;
+        this.sortKeys = Collections.emptyList();
+        this.orderedByColumn = null;
+        this.isNullsFirst = false;
     }
 
-    TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate) {
+    TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate, List<String> zoneMapRanges) {
         super(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE), table);
         this.carbonCopyTable = carbonCopyTable;
         this.javaFilterExpression = javaFilterExpression;
         this.columnIndexesForThePredicate = columnIndexesForThePredicate;
+        this.zoneMapRanges = zoneMapRanges;
         this.columnIndexesToProjectTo = Collections.emptyList();
+        this.limit = -1;
+        this.sortKeys = Collections.emptyList();
+        this.orderedByColumn = null;
+        this.isNullsFirst = false;
     }
 
-    TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate, List<Integer> columnIndexesToProjectTo) {
+    TableScan(RelOptCluster cluster, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate, List<String> zoneMapRanges, List<Integer> columnIndexesToProjectTo) {
         super(cluster, cluster.traitSetOf(EnumerableConvention.INSTANCE), table);
         this.carbonCopyTable = carbonCopyTable;
         this.javaFilterExpression = javaFilterExpression;
         this.columnIndexesForThePredicate = columnIndexesForThePredicate;
+        this.zoneMapRanges = zoneMapRanges;
         this.columnIndexesToProjectTo = columnIndexesToProjectTo;
+        this.limit = -1;
+        this.sortKeys = Collections.emptyList();
+        this.orderedByColumn = null;
+        this.isNullsFirst = false;
+    }
+
+    private TableScan(RelOptCluster cluster, RelTraitSet traitSet, RelOptTable table, CarbonCopyTable carbonCopyTable, String javaFilterExpression, List<Integer> columnIndexesForThePredicate, List<String> zoneMapRanges, List<Integer> columnIndexesToProjectTo, long limit, List<String> sortKeys, String orderedByColumn, boolean isNullsFirst) {
+        super(cluster, traitSet, table);
+        this.carbonCopyTable = carbonCopyTable;
+        this.javaFilterExpression = javaFilterExpression;
+        this.columnIndexesForThePredicate = columnIndexesForThePredicate;
+        this.zoneMapRanges = zoneMapRanges;
+        this.columnIndexesToProjectTo = columnIndexesToProjectTo;
+        this.limit = limit;
+        this.sortKeys = sortKeys;
+        this.orderedByColumn = orderedByColumn;
+        this.isNullsFirst = isNullsFirst;
+    }
+
+    /**
+     * Returns a copy of this scan that returns at most limit rows.
+     * With sort keys these are the top rows, otherwise it's just any rows.
+     * The scan doesn't sort its result. There still needs to be a sort on top of it.
+     */
+    TableScan withTopN(long limit, List<String> sortKeys) {
+        return new TableScan(getCluster(), getTraitSet(), getTable(), carbonCopyTable, javaFilterExpression, columnIndexesForThePredicate, zoneMapRanges, columnIndexesToProjectTo, limit, sortKeys, orderedByColumn, isNullsFirst);
+    }
+
+    /**
+     * Returns a copy of this scan that reads the rows in the order of the local index on this column.
+     * The copy advertises the collation so that calcite doesn't need to sort anymore.
+     */
+    TableScan withIndexOrder(RelCollation collation, String orderedByColumn, boolean isNullsFirst, long limit) {
+        return new TableScan(getCluster(), getTraitSet().replace(collation), getTable(), carbonCopyTable, javaFilterExpression, columnIndexesForThePredicate, zoneMapRanges, columnIndexesToProjectTo, limit, Collections.emptyList(), orderedByColumn, isNullsFirst);
     }
 
     CarbonCopyTable getCarbonCopyTable() {
         return carbonCopyTable;
     }
 
+    String getJavaFilterExpression() {
+        return javaFilterExpression;
+    }
+
+    List<Integer> getColumnIndexesForThePredicate() {
+        return columnIndexesForThePredicate;
+    }
+
+    List<String> getZoneMapRanges() {
+        return zoneMapRanges;
+    }
+
+    List<Integer> getColumnIndexesToProjectTo() {
+        return columnIndexesToProjectTo;
+    }
+
+    boolean hasLimit() {
+        return limit >= 0;
+    }
+
+    boolean isOrdered() {
+        return orderedByColumn != null;
+    }
+
     /**
      * This tells calcite how CarbonCopy is able to manipulate the query tree.
      * All these rules are being executed during query optimization and the optimizer picks the cheapest of them.
@@ -74,6 +162,12 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
         planner.addRule(OptimizerRule.FILTER_SCAN);
         planner.addRule(OptimizerRule.PROJECT_SCAN);
         planner.addRule(OptimizerRule.PROJECT_FILTER_SCAN);
+        planner.addRule(OptimizerRule.AGGREGATE_SCAN);
+        planner.addRule(OptimizerRule.SORT_SCAN);
+        planner.addRule(OptimizerRule.INDEX_SORT_SCAN);
+        planner.addRule(OptimizerRule.HASH_JOIN);
+        planner.addRule(OptimizerRule.INDEX_JOIN);
+        planner.addRule(OptimizerRule.COLOCATED_JOIN);
     }
 
     /**
@@ -105,7 +199,18 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
         return super.explainTerms(pw)
                 .item("javaFilterExpression", javaFilterExpression)
                 .item("columnIndexesForThePredicate", columnIndexesForThePredicate)
-                .item("columnIndexesToProjectTo", columnIndexesToProjectTo);
+                .item("zoneMapRanges", zoneMapRanges)
+                .item("columnIndexesToProjectTo", columnIndexesToProjectTo)
+                .item("limit", limit)
+                .item("sortKeys", sortKeys)
+                .itemIf("orderedByColumn", orderedByColumn, isOrdered())
+                .itemIf("isNullsFirst", isNullsFirst, isOrdered());
+    }
+
+    @Override
+    public double estimateRowCount(RelMetadataQuery mq) {
+        double rowCount = super.estimateRowCount(mq);
+        return hasLimit() ? Math.min(limit, rowCount) : rowCount;
     }
 
     // this refers to a method in CarbonCopyTable that does the heavy lifting for us
@@ -115,7 +220,8 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
                     "scan",
                     DataContext.class,
                     String.class,
-                    Integer[].class
+                    Integer[].class,
+                    String[].class
             );
 
     private static final Method PROJECT_CALLBACK =
@@ -133,9 +239,36 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
                     DataContext.class,
                     String.class,
                     Integer[].class,
+                    String[].class,
                     Integer[].class
             );
 
+    private static final Method TOP_N_CALLBACK =
+            Types.lookupMethod(
+                    CarbonCopyTable.class,
+                    "topN",
+                    DataContext.class,
+                    String.class,
+                    Integer[].class,
+                    String[].class,
+                    Integer[].class,
+                    long.class,
+                    String[].class
+            );
+
+    private static final Method ORDERED_SCAN_CALLBACK =
+            Types.lookupMethod(
+                    CarbonCopyTable.class,
+                    "orderedScan",
+                    DataContext.class,
+                    String.class,
+                    Integer[].class,
+                    Integer[].class,
+                    String.class,
+                    boolean.class,
+                    long.class
+            );
+
     private static final Method FULL_TABLE_SCAN_CALLBACK =
             Types.lookupMethod(
                     CarbonCopyTable.class,
@@ -158,7 +291,37 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
         // not the prettiest code but this decides on basis of what TableScan instance I am which method on the table to call.
         // I rather have this kind of code here as opposed to on the table (which this will eventually call reflectively).
         // The table just gets all information handed and knows what to do.
-        if (canDoScan() && canDoProject()) {
+        if (isOrdered()) {
+            // filter, projection and limit are optional for this one
+            return implementor.result(
+                    physType,
+                    Blocks.toBlock(
+                            Expressions.call(table.getExpression(CarbonCopyTable.class),
+                                    ORDERED_SCAN_CALLBACK,
+                                    implementor.getRootExpression(),
+                                    Expressions.constant(javaFilterExpression),
+                                    Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                                    Expressions.constant(columnIndexesToProjectTo.toArray(new Integer[columnIndexesToProjectTo.size()])),
+                                    Expressions.constant(orderedByColumn),
+                                    Expressions.constant(isNullsFirst),
+                                    Expressions.constant(limit)
+                            )));
+        } else if (hasLimit()) {
+            // filter and projection are optional for this one
+            return implementor.result(
+                    physType,
+                    Blocks.toBlock(
+                            Expressions.call(table.getExpression(CarbonCopyTable.class),
+                                    TOP_N_CALLBACK,
+                                    implementor.getRootExpression(),
+                                    Expressions.constant(javaFilterExpression),
+                                    Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                                    Expressions.constant(zoneMapRanges.toArray(new String[zoneMapRanges.size()])),
+                                    Expressions.constant(columnIndexesToProjectTo.toArray(new Integer[columnIndexesToProjectTo.size()])),
+                                    Expressions.constant(limit),
+                                    Expressions.constant(sortKeys.toArray(new String[sortKeys.size()]))
+                            )));
+        } else if (canDoScan() && canDoProject()) {
             return implementor.result(
                     physType,
                     Blocks.toBlock(
@@ -167,6 +330,7 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
                                     implementor.getRootExpression(),
                                     Expressions.constant(javaFilterExpression),
                                     Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                                    Expressions.constant(zoneMapRanges.toArray(new String[zoneMapRanges.size()])),
                                     Expressions.constant(columnIndexesToProjectTo.toArray(new Integer[columnIndexesToProjectTo.size()]))
                             )));
         } else if (canDoScan()) {
@@ -177,7 +341,8 @@ class TableScan extends org.apache.calcite.rel.core.TableScan implements Enumera
                                     SCAN_CALLBACK,
                                     implementor.getRootExpression(),
                                     Expressions.constant(javaFilterExpression),
-                                    Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()]))
+                                    Expressions.constant(columnIndexesForThePredicate.toArray(new Integer[columnIndexesForThePredicate.size()])),
+                                    Expressions.constant(zoneMapRanges.toArray(new String[zoneMapRanges.size()]))
                             )));
         } else if (canDoProject()) {
             return implementor.result(
@@ -28,7 +28,7 @@ import java.util.Iterator;
  *  Check out their useful website to learn more about basic data structures.
  *  http://algs4.cs.princeton.edu
  */
-class BTree<Key extends Comparable<Key>, Value> extends DataStructure {
+class BTree<Key extends Comparable<Key>, Value> extends DataStructure implements SortedDataStructure<Key, Value> {
     // max children per B-tree node = MAX_NODE_SIZE - 1
     // (must be even and greater than 2)
     // this is gotta be >= 4
@@ -48,6 +48,9 @@ class BTree<Key extends Comparable<Key>, Value> extends DataStructure {
         addObjectToObjectSize(height);
         root.checkDataStructureRetrieved();
         txn.addToCreatedObjects(this);
+        // puts only touch the tree itself when the root splits
+        // hence I make sure the tree is written at least once with a root in it
+        txn.addToChangedObjects(this);
     }
 
     BTree(Store store, InternalDataStructureFactory dsFactory, long id) {
@@ -135,7 +138,8 @@ class BTree<Key extends Comparable<Key>, Value> extends DataStructure {
     public void put(Key key, Value value, Txn txn) {
         if (key == null) throw new IllegalArgumentException("Key cannot be null");
         checkDataStructureRetrieved();
-        txn.addToChangedObjects(this);
+        // the tree itself only changes when the root splits (see innerPut)
+        txn.addToLockedObjects(this);
         innerPut(key, value, txn);
     }
 
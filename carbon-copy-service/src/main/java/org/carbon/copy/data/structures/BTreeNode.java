@@ -22,6 +22,7 @@ import co.paralleluniverse.galaxy.Store;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Vector;
 
 /**
@@ -147,6 +148,13 @@ class BTreeNode<Key extends Comparable<Key>, Value> extends DataStructure {
         out.writeObject((next != null) ? next.getId() : null, Long.class);
     }
 
+    @Override
+    void clearState() {
+        Collections.fill(entries, null);
+        numChildren = 0;
+        next = null;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     void deserialize(SerializerInputStream in) {
@@ -66,7 +66,7 @@ abstract class BaseMessage {
         }
 
         @Override
-        public void close() throws Exception {
+        public void close() {
             try {
                 kryoPool.release(kryo);
             } finally {
@@ -89,7 +89,7 @@ abstract class BaseMessage {
         }
 
         @Override
-        public void close() throws Exception {
+        public void close() {
             try {
                 kryoPool.release(kryo);
             } finally {
@@ -18,6 +18,12 @@ abstract class BaseMessageListener implements MessageListener {
         }
     }
 
+    // listeners are equal if they listen to the same topic (see the equals methods of the listeners)
+    @Override
+    public int hashCode() {
+        return getTopic().hashCode();
+    }
+
     protected abstract String getTopic();
     protected abstract void handle(short fromNode, byte[] bytes) throws Exception;
 }
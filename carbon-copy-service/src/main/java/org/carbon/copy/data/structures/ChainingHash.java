@@ -58,7 +58,11 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
     }
 
     ChainingHash(Store store, InternalDataStructureFactory dsFactory, long id) {
-        super(store, id);
+        this(store, dsFactory, id, (ReadSnapshot) null);
+    }
+
+    ChainingHash(Store store, InternalDataStructureFactory dsFactory, long id, ReadSnapshot readSnapshot) {
+        super(store, id, readSnapshot);
         this.dsFactory = dsFactory;
         // load data for reads aggressively
         asyncLoadForReads();
@@ -82,14 +86,17 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
     public void put(Key key, Value val, Txn txn) {
         if (txn == null) throw new IllegalArgumentException("Txn cannot be null");
         checkDataStructureRetrieved();
-        txn.addToChangedObjects(this);
+        // most puts only change a data block
+        // the hash itself is only changed if a bucket is added or the hash is resized
+        txn.addToLockedObjects(this);
         innerPut(key, val, txn);
     }
 
     public boolean delete(Key key, Txn txn) {
         if (txn == null) throw new IllegalArgumentException("Txn cannot be null");
         checkDataStructureRetrieved();
-        txn.addToChangedObjects(this);
+        // deletes only ever change a data block
+        txn.addToLockedObjects(this);
         return innerDelete(key, txn);
     }
 
@@ -139,6 +146,7 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
             // I could use putIfPossible here as well
             newDB.put(key, val, txn);
             hashTable.set(i, newDB);
+            txn.addToChangedObjects(this);
         } else {
             if (!db.putIfPossible(key, val, txn)) {
                 resize(hashTableSize * EXPANSION_FACTOR, txn);
@@ -166,7 +174,8 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
         // resizing by copying
         ChainingHash<Key, Value> temp = dsFactory.newChainingHashWithNumBuckets(newNumBuckets, txn);
         for (int i = 0; i < hashTableSize; i++) {
-            DataBlock<Key, Value> db = getDataBlock(i);
+            // these blocks are deleted -- I need them for writes
+            DataBlock<Key, Value> db = getDataBlock(i, txn);
             if (db != null) {
                 db.keys().forEach(k -> temp.put(k, db.get(k), txn));
                 txn.addToDeletedObjects(db);
@@ -197,7 +206,11 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
         // since loading the hash doesn't automatically
         // pull in all data blocks, we need to double-check whether a data block
         // has been loaded by hash or not
-        if (db != null && !db.isLoaded()) {
+        if (db != null && db.isUnloadedProxy() && getReadSnapshot() == null) {
+            // reads of blocks I haven't touched yet go through the node-wide cache
+            // the proxy stays unloaded so that it can still be loaded for writes later
+            return dsFactory.loadSharedDataBlock(db.getId());
+        } else if (db != null && !db.isLoaded()) {
             db.asyncLoadForReads();
             db.checkDataStructureRetrieved();
         }
@@ -236,7 +249,7 @@ class ChainingHash<Key extends Comparable<Key>, Value> extends DataStructure {
 
             for (int i = 0; i < hashTableSize && in.available() > 0; i++) {
                 Long id = (Long) in.readObject();
-                DataBlock<Key, Value> db = (id != null) ? dsFactory.loadDataBlockProxy(id) : null;
+                DataBlock<Key, Value> db = (id != null) ? dsFactory.loadDataBlockProxy(id, getReadSnapshot()) : null;
                 hashTable.set(i, db);
                 addObjectToObjectSize(id);
             }
@@ -0,0 +1,193 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import com.esotericsoftware.kryo.DefaultSerializer;
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The values of one column for a group of rows (see Table.Builder.withColumnarStorage).
+ * Next to the values a chunk keeps track of the smallest and the biggest value and the number of nulls in it.
+ * Chunks are handed out by ChainingHashes and might be shared with other readers. Hence they're never changed in place.
+ * Changing a value creates a new chunk that needs to be put back into the hash.
+ */
+@DefaultSerializer(ColumnChunk.ColumnChunkSerializer.class)
+class ColumnChunk extends Sizable {
+    static final int MAX_ROWS = 256;
+    // a few chunks should fit into one DataBlock
+    private static final int MAX_ENCODED_SIZE = MAX_BYTE_SIZE / 4;
+    // row count, null count, null min, null max and the header of the values tuple
+    private static final int EMPTY_ENCODED_SIZE = 7;
+
+    private final int numRows;
+    private final int nullCount;
+    private final Comparable min;
+    private final Comparable max;
+    // one column per row
+    // the tuple might have more columns than the chunk has rows
+    // these columns belong to whichever chunk appended a row first (see with)
+    private final Tuple values;
+    // roughly the number of bytes this chunk takes up serialized (without the null bitmap)
+    // it's kept up to date with every new value so that I never need to serialize a chunk to find out whether it's full
+    // values are measured on their own which overestimates them a little (see Tuple.TupleSerializer) -- that's fine
+    private final int encodedSize;
+    // appending a row to a chunk is the common case
+    // the first chunk that appends a row gets to reuse the values of this chunk, everybody else copies them
+    private final AtomicBoolean isTailTaken = new AtomicBoolean(false);
+
+    ColumnChunk() {
+        this(0, 0, null, null, new Tuple(null, MAX_ROWS), EMPTY_ENCODED_SIZE);
+    }
+
+    private ColumnChunk(int numRows, int nullCount, Comparable min, Comparable max, Tuple values, int encodedSize) {
+        this.numRows = numRows;
+        this.nullCount = nullCount;
+        this.min = min;
+        this.max = max;
+        this.values = values;
+        this.encodedSize = encodedSize;
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+    int getNullCount() {
+        return nullCount;
+    }
+
+    Comparable getMin() {
+        return min;
+    }
+
+    Comparable getMax() {
+        return max;
+    }
+
+    Comparable get(int row) {
+        return values.get(row);
+    }
+
+    void copyTo(int row, Tuple target, int column) {
+        values.copyColumnTo(row, target, column);
+    }
+
+    boolean isFull() {
+        return numRows >= MAX_ROWS || encodedSize + nullBitmapSize(numRows) >= MAX_ENCODED_SIZE;
+    }
+
+    /**
+     * Returns a new chunk with the value in this row. The row can be an existing row or the next row of this chunk.
+     * Overwriting a value doesn't shrink min and max -- they are bounds not necessarily actual values.
+     */
+    @SuppressWarnings("unchecked")
+    ColumnChunk with(int row, Comparable value) {
+        if (row > numRows || row >= MAX_ROWS) {
+            throw new IllegalArgumentException("Row " + row + " is out of bounds of chunk with " + numRows + " rows");
+        }
+
+        boolean isNewRow = row == numRows;
+        int newNullCount = nullCount;
+        int newEncodedSize = encodedSize + valueSizeOf(value);
+        if (!isNewRow) {
+            if (values.isNull(row)) {
+                newNullCount--;
+            }
+            newEncodedSize -= valueSizeOf(values.get(row));
+        }
+
+        Comparable newMin = min;
+        Comparable newMax = max;
+        if (value == null) {
+            newNullCount++;
+        } else {
+            if (min == null || value.compareTo(min) < 0) {
+                newMin = value;
+                newEncodedSize += boundSizeOf(newMin) - boundSizeOf(min);
+            }
+            if (max == null || value.compareTo(max) > 0) {
+                newMax = value;
+                newEncodedSize += boundSizeOf(newMax) - boundSizeOf(max);
+            }
+        }
+
+        Tuple newValues;
+        if (isNewRow && row < values.getTupleSize() && isTailTaken.compareAndSet(false, true)) {
+            // nobody else can see this row -- it's past the end of this chunk
+            newValues = values;
+        } else {
+            newValues = copyValues(values, numRows);
+        }
+        newValues.put(row, value);
+        return new ColumnChunk(isNewRow ? numRows + 1 : numRows, newNullCount, newMin, newMax, newValues, newEncodedSize);
+    }
+
+    // copies the rows of a chunk into a tuple that has space for all rows a chunk can have
+    private static Tuple copyValues(Tuple values, int numRows) {
+        Tuple newValues = new Tuple(null, MAX_ROWS);
+        for (int i = 0; i < numRows; i++) {
+            values.copyColumnTo(i, newValues, i);
+        }
+        return newValues;
+    }
+
+    // nulls only take up a bit in the null bitmap
+    // everything else is a type tag plus the value
+    private static int valueSizeOf(Comparable value) {
+        return (value == null) ? 0 : 1 + DataStructure.encodedSizeOf(value);
+    }
+
+    // min and max are written with their class
+    private static int boundSizeOf(Comparable bound) {
+        return (bound == null) ? 1 : 1 + DataStructure.encodedSizeOf(bound);
+    }
+
+    private static int nullBitmapSize(int numRows) {
+        return (numRows + 7) / 8;
+    }
+
+    public final static class ColumnChunkSerializer extends Serializer<ColumnChunk> {
+        @Override
+        public void write(Kryo kryo, Output output, ColumnChunk chunk) {
+            output.writeVarInt(chunk.numRows, true);
+            output.writeVarInt(chunk.nullCount, true);
+            kryo.writeClassAndObject(output, chunk.min);
+            kryo.writeClassAndObject(output, chunk.max);
+            // the values might have more columns than rows (see with)
+            kryo.writeObject(output, (chunk.values.getTupleSize() == chunk.numRows) ? chunk.values : chunk.values.subTuple(0, chunk.numRows));
+        }
+
+        @Override
+        public ColumnChunk read(Kryo kryo, Input input, Class<ColumnChunk> aClass) {
+            long start = input.total();
+            int numRows = input.readVarInt(true);
+            int nullCount = input.readVarInt(true);
+            Comparable min = (Comparable) kryo.readClassAndObject(input);
+            Comparable max = (Comparable) kryo.readClassAndObject(input);
+            Tuple values = kryo.readObject(input, Tuple.class);
+            int encodedSize = (int) (input.total() - start) - nullBitmapSize(numRows);
+            return new ColumnChunk(numRows, nullCount, min, max, values, encodedSize);
+        }
+    }
+}
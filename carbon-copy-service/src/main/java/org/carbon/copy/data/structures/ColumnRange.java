@@ -0,0 +1,67 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+/**
+ * A range of values of a column that a scan is interested in.
+ * Both ends of the range are inclusive. A null leaves this end of the range open.
+ * Scans use ranges to skip row groups that can't contain any matching values (see Table.scan).
+ */
+public final class ColumnRange {
+    private final int columnIndex;
+    private final Comparable from;
+    private final Comparable to;
+
+    public ColumnRange(int columnIndex, Comparable from, Comparable to) {
+        this.columnIndex = columnIndex;
+        this.from = from;
+        this.to = to;
+    }
+
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    Comparable getFrom() {
+        return from;
+    }
+
+    Comparable getTo() {
+        return to;
+    }
+
+    /**
+     * Returns false if no value between min and max can be inside of this range.
+     * This is meant to be conservative. If in doubt (e.g. the types don't compare) this returns true.
+     */
+    @SuppressWarnings("unchecked")
+    boolean mightOverlap(Comparable min, Comparable max) {
+        try {
+            return (from == null || max == null || max.compareTo(from) >= 0)
+                    && (to == null || min == null || min.compareTo(to) <= 0);
+        } catch (ClassCastException xcp) {
+            return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return columnIndex + " [" + from + " .. " + to + "]";
+    }
+}
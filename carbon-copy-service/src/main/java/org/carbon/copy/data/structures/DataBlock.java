@@ -37,11 +37,14 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
         Key key;
         Value value;
         Node next;
+        // the number of bytes key and value take up in the serialized block
+        int encodedSize;
 
-        Node(Key key, Value value, Node next) {
+        Node(Key key, Value value, Node next, int encodedSize) {
             this.key = key;
             this.value = value;
             this.next = next;
+            this.encodedSize = encodedSize;
         }
 
         // mostly done for debugging purposes
@@ -53,15 +56,23 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
     }
 
     private Node first;
+    // proxies are placeholders for blocks that haven't been loaded yet
+    private final boolean isProxy;
 
     DataBlock(Store store, Txn txn) {
         super(store);
+        isProxy = false;
         asyncUpsert(txn);
         txn.addToCreatedObjects(this);
     }
 
     DataBlock(Store store, long id, boolean shouldLoad) {
-        super(store, id);
+        this(store, id, shouldLoad, null);
+    }
+
+    DataBlock(Store store, long id, boolean shouldLoad, ReadSnapshot readSnapshot) {
+        super(store, id, readSnapshot);
+        isProxy = !shouldLoad;
         if (shouldLoad) {
             // load data for reads aggressively
             asyncLoadForReads();
@@ -70,10 +81,15 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
 
     DataBlock(Store store, long id, Txn txn) {
         super(store, id);
+        isProxy = false;
         // load data for writes aggressively too
         asyncLoadForWrites(txn);
     }
 
+    boolean isUnloadedProxy() {
+        return isProxy && !isLoaded();
+    }
+
     public Value get(Key key) {
         if (key == null) throw new IllegalArgumentException("key can't be null");
         checkDataStructureRetrieved();
@@ -92,7 +108,7 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
         checkDataStructureRetrieved();
         txn.addToChangedObjects(this);
         if (!innerPutIfPossible(key, val)) {
-            int size = sizeOfObject(key) + sizeOfObject(val);
+            int size = encodedSizeOf(key, val);
             throw new IllegalStateException("Object size is " + (size + size()) + " bytes and exceeds the limit of " + getMaxByteSize() + " bytes");
         }
     }
@@ -142,34 +158,53 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
 
     void innerPut(Key key, Value val) {
         if (key == null) throw new IllegalArgumentException("key can't be null");
-        addObjectToObjectSize(key);
-        addObjectToObjectSize(val);
+        innerPut(find(key), key, val, encodedSizeOf(key, val));
+    }
+
+    boolean innerPutIfPossible(Key key, Value val) {
+        if (key == null) throw new IllegalArgumentException("key can't be null");
+        int size = encodedSizeOf(key, val);
+        Node existing = find(key);
+        // overwriting a value only adds the difference in size
+        int addedSize = (existing == null) ? size : size - existing.encodedSize;
+        if (isUnderMaxByteSize(addedSize)) {
+            innerPut(existing, key, val, size);
+            return true;
+        } else {
+            return false;
+        }
+    }
 
+    private void innerPut(Node existing, Key key, Value val, int encodedSize) {
+        if (existing != null) {
+            addBytesToObjectSize(encodedSize - existing.encodedSize);
+            existing.value = val;
+            existing.encodedSize = encodedSize;
+        } else {
+            // there is no node with the key in question
+            // hence we go and create a new node
+            addBytesToObjectSize(encodedSize);
+            first = new Node(key, val, first, encodedSize);
+        }
+    }
+
+    // iterate through all keys :/
+    // I know, I know
+    private Node find(Key key) {
         Node x = first;
-        // iterate through all keys :/
-        // I know, I know
         while (x != null) {
             if (x.key.equals(key)) {
-                x.value = val;
-                // we're done...let's get out of here
-                return;
+                return x;
             }
             x = x.next;
         }
-
-        // we reached here that means, there is no node with the key in question
-        // hence we go and create a new node
-        first = new Node(key, val, first);
+        return null;
     }
 
-    boolean innerPutIfPossible(Key key, Value val) {
-        int size = sizeOfObject(key) + sizeOfObject(val);
-        if (isUnderMaxByteSize(size)) {
-            innerPut(key, val);
-            return true;
-        } else {
-            return false;
-        }
+    // the size is computed once when a key-value-pair is put into the block
+    // and remembered for as long as the pair lives in the block
+    private static int encodedSizeOf(Object key, Object val) {
+        return DataStructure.encodedSizeOf(key) + DataStructure.encodedSizeOf(val);
     }
 
     boolean innerDelete(Key key) {
@@ -177,6 +212,7 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
         if (first == null) return false;
 
         if (key.equals(first.key)) {
+            addBytesToObjectSize(-first.encodedSize);
             // no need to be afraid of null
             first = first.next;
             return true;
@@ -185,8 +221,7 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
         Node x = first;
         while (x != null) {
             if (x.next != null && x.next.key.equals(key)) {
-                subtractObjectToObjectSize(key);
-                subtractObjectToObjectSize(x.next.value);
+                addBytesToObjectSize(-x.next.encodedSize);
                 x.next = x.next.next;
                 return true;
             }
@@ -219,6 +254,11 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
         }
     }
 
+    @Override
+    void clearState() {
+        first = null;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     void deserialize(SerializerInputStream in) {
@@ -231,14 +271,16 @@ class DataBlock<Key extends Comparable<Key>, Value> extends DataStructure {
                 while (shouldDoIt && in.available() > 0) {
                     // on the upside we don't need to worry
                     // about type information anymore :)
+                    long start = in.bytesRead();
                     Key key = in.readObject(keyKlass);
                     shouldDoIt = key != null;
                     if (shouldDoIt) {
                         // if we have a key, there must be a value
                         Value value = in.readObject(valueKlass);
-                        first = new Node(key, value, first);
-                        addObjectToObjectSize(key);
-                        addObjectToObjectSize(value);
+                        // the stream tells us how many bytes this pair took up
+                        int encodedSize = (int) (in.bytesRead() - start);
+                        first = new Node(key, value, first, encodedSize);
+                        addBytesToObjectSize(encodedSize);
                     }
                 }
             }
@@ -23,24 +23,27 @@ import co.paralleluniverse.galaxy.RefNotFoundException;
 import co.paralleluniverse.galaxy.Store;
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.KryoException;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
+import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
 import com.esotericsoftware.kryo.pool.KryoFactory;
 import com.esotericsoftware.kryo.pool.KryoPool;
 import com.google.common.primitives.Shorts;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
 import de.javakaffee.kryoserializers.UUIDSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xerial.snappy.Snappy;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -59,6 +62,11 @@ import java.util.concurrent.TimeUnit;
  */
 abstract class DataStructure extends Sizable implements Persistable {
     static final int TIMEOUT_SECS = 5;
+    private static final int PAYLOAD_SIZE_HEADER_LENGTH = 2;
+    private static final int RAW_PAYLOAD_FLAG = 0x8000;
+    // blocks smaller than this are never compressed
+    private static final int MIN_COMPRESSIBLE_LENGTH = 64;
+    private static final Logger logger = LoggerFactory.getLogger(DataStructure.class);
     private static KryoFactory kryoFactory = () -> {
         Kryo kryo = new Kryo();
         kryo.setRegistrationRequired(true);
@@ -75,19 +83,44 @@ abstract class DataStructure extends Sizable implements Persistable {
         kryo.register(BTree.class, 14);
         kryo.register(UUID.class, new UUIDSerializer(), 15);
         kryo.register(GUID.class, 16);
+        kryo.register(SibPlusTreeNodeGroup.class, 17);
+        kryo.register(SibPlusTree.class, 18);
+        kryo.register(ColumnChunk.class, 19);
+        // query fragments and their results travel between nodes (see DistHash.execute)
+        kryo.register(DistHash.TupleScanFragment.class, 20);
+        kryo.register(DistHash.TupleJoinFragment.class, 21);
+        kryo.register(ArrayList.class, 22);
+        kryo.register(Long[].class, 23);
+        kryo.register(int[].class, 24);
+        kryo.register(Comparable[].class, 25);
+        kryo.register(Object[].class, 26);
 
         return kryo;
     };
 
     static KryoPool kryoPool = new KryoPool.Builder(kryoFactory).build();
+    // outputs that only exist to measure how many bytes an object takes up (see encodedSizeOf)
+    private static final ThreadLocal<Output> sizingOutputs = ThreadLocal.withInitial(() -> new Output(1024, -1));
 
     private final Store store;
     private long id = -1;
     // future used to load data
-    private ListenableFuture<Persistable> dataFuture = null;
+    // proxies of a table read in parallel (e.g. by aggregations) might be loaded by several threads at once
+    // that's why loading is synchronized and the futures are volatile
+    private volatile ListenableFuture<Persistable> dataFuture = null;
     // future to create a new data structure
-    private ListenableFuture<Long> creationFuture = null;
-    private boolean isLoaded = false;
+    private volatile ListenableFuture<Long> creationFuture = null;
+    private volatile boolean isLoaded = false;
+    // was this data structure changed since it was loaded (or written) last
+    // only dirty data structures are written when a transaction commits
+    private boolean isDirty = false;
+    // shared data structures are handed out to all readers on this node (see DecodedBlockCache)
+    private boolean isShared = false;
+    // if set, this data structure is read as of this snapshot
+    private final ReadSnapshot readSnapshot;
+    // the version of the block when it was read from galaxy (null if it wasn't)
+    // deferred transactions validate their reads against this (see Txn)
+    private volatile Txn.ReadVersion readVersion;
 
     DataStructure(Store store) {
         this(store, -1);
@@ -97,8 +130,16 @@ abstract class DataStructure extends Sizable implements Persistable {
      * Convenience constructor for read-only use
      */
     DataStructure(Store store, long id) {
+        this(store, id, null);
+    }
+
+    /**
+     * Constructor for read-only use in a snapshot
+     */
+    DataStructure(Store store, long id, ReadSnapshot readSnapshot) {
         this.store = store;
         this.id = id;
+        this.readSnapshot = readSnapshot;
     }
 
     public long getId() {
@@ -110,6 +151,36 @@ abstract class DataStructure extends Sizable implements Persistable {
         return isLoaded;
     }
 
+    boolean isDirty() {
+        return isDirty;
+    }
+
+    void markDirty() {
+        isDirty = true;
+    }
+
+    void markClean() {
+        isDirty = false;
+    }
+
+    boolean isShared() {
+        return isShared;
+    }
+
+    void markShared() {
+        isShared = true;
+    }
+
+    // data structures that load other data structures
+    // need to pass this on so that the entire graph is read in the same snapshot
+    ReadSnapshot getReadSnapshot() {
+        return readSnapshot;
+    }
+
+    Txn.ReadVersion getReadVersion() {
+        return readVersion;
+    }
+
     ListenableFuture<Persistable> asyncLoadForReads() {
         try {
             return asyncLoadForReads(this);
@@ -118,28 +189,91 @@ abstract class DataStructure extends Sizable implements Persistable {
         }
     }
 
-    private <T extends DataStructure> ListenableFuture<Persistable> asyncLoadForReads(T o) {
-        if (dataFuture != null) {
-            throw new IllegalStateException("Can't override loadable future");
+    private synchronized <T extends DataStructure> ListenableFuture<Persistable> asyncLoadForReads(T o) {
+        if (isLoaded) {
+            // somebody else was faster
+            return Futures.<Persistable>immediateFuture(o);
+        } else if (dataFuture != null) {
+            // ...or is loading it right now
+            return dataFuture;
+        }
+        if (readSnapshot != null) {
+            dataFuture = readSnapshot.asyncLoad(store, getId(), o);
+        } else {
+            dataFuture = asyncLoadLatest(o);
         }
-        dataFuture = getAsync(getId(), o);
         return dataFuture;
     }
 
+    private <T extends DataStructure> ListenableFuture<Persistable> asyncLoadLatest(T o) {
+        // the version is taken together with the read (see Txn.ReadVersion)
+        long blockId = getId();
+        Txn.ReadVersion beforeLoad = Txn.ReadVersion.capture(store, blockId);
+        // committed blocks that haven't been written by group commit yet
+        // are newer than what galaxy has
+        GroupCommitCoordinator.ParkedBlock parkedBlock = beforeLoad.getParkedBlock();
+        if (parkedBlock != null && !parkedBlock.isDeleted()) {
+            o.read(parkedBlock.getBytes());
+            readVersion = beforeLoad;
+            return Futures.<Persistable>immediateFuture(o);
+        } else {
+            // galaxy only knows the version of a block once it has the block in its cache
+            ListenableFuture<Persistable> load = getAsync(blockId, o);
+            // (mocked stores don't hand out futures)
+            return (load == null) ? null : Futures.transform(load, (Persistable loaded) -> {
+                readVersion = Txn.ReadVersion.afterLoad(beforeLoad, store, blockId);
+                return loaded;
+            }, MoreExecutors.directExecutor());
+        }
+    }
+
+    // a failed transaction puts data structures it changed but didn't load itself
+    // (e.g. ones captured by a doTransactionally lambda) back to what was committed last
+    // that way a retry doesn't build on top of the changes of the failed attempt
+    synchronized void discardChanges() {
+        markClean();
+        clearState();
+        setObjectSize(0);
+        // everybody touching this data structure waits for the reload (see checkDataStructureRetrieved)
+        dataFuture = asyncLoadLatest(this);
+    }
+
+    // data structures that add to their state while deserializing drop it here (see discardChanges)
+    void clearState() { }
+
     ListenableFuture asyncLoadForWrites(Txn txn) {
         return asyncLoadForWrites(this, txn);
     }
 
-    private <T extends DataStructure> ListenableFuture asyncLoadForWrites(T o, Txn txn) {
+    private synchronized <T extends DataStructure> ListenableFuture asyncLoadForWrites(T o, Txn txn) {
         if (dataFuture != null) {
             throw new IllegalStateException("Can't override loadable future");
+        } else if (readSnapshot != null) {
+            throw new IllegalStateException("Can't write to " + toString() + " in " + readSnapshot);
         }
 
         if (getId() == -1) {
             creationFuture = putAsync(o, txn);
             return creationFuture;
+        } else if (txn.defersLocking()) {
+            // deferred transactions read without locking
+            // and only remember which version they've seen
+            dataFuture = Futures.transform(asyncLoadLatest(o), (Persistable loaded) -> {
+                txn.recordReadVersion(getId(), readVersion);
+                return loaded;
+            }, MoreExecutors.directExecutor());
+            return dataFuture;
         } else {
-            dataFuture = getxAsync(getId(), o, txn);
+            GroupCommitCoordinator.ParkedBlock parkedBlock = GroupCommitCoordinator.getParkedBlock(getId());
+            if (parkedBlock != null && !parkedBlock.isDeleted()) {
+                // I still need the exclusive lock but the bytes from galaxy are outdated
+                dataFuture = Futures.<byte[], Persistable>transform(store.getxAsync(getId(), txn.getStoreTransaction()), (byte[] ignored) -> {
+                    o.read(parkedBlock.getBytes());
+                    return o;
+                }, MoreExecutors.directExecutor());
+            } else {
+                dataFuture = getxAsync(getId(), o, txn);
+            }
             return dataFuture;
         }
     }
@@ -187,26 +321,36 @@ abstract class DataStructure extends Sizable implements Persistable {
      * Was the data you ask for retrieved?
      */
     boolean checkDataStructureRetrieved() {
-        if (creationFuture != null) {
+        // other threads might be waiting for the same futures
+        // hence I only wait on local copies and clear them under the lock
+        ListenableFuture<Long> creation = creationFuture;
+        ListenableFuture<Persistable> data = dataFuture;
+        if (creation != null) {
             try {
-                Long id = creationFuture.get(TIMEOUT_SECS, TimeUnit.SECONDS);
-                if (id != null && creationFuture.isDone()) {
-                    this.id = id;
-                    creationFuture = null;
-                    isLoaded = true;
+                Long id = creation.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+                if (id != null) {
+                    synchronized (this) {
+                        this.id = id;
+                        if (creationFuture == creation) {
+                            creationFuture = null;
+                        }
+                        isLoaded = true;
+                    }
                     return true;
                 }
             } catch (Exception xcp) {
                 throw new RuntimeException(xcp);
             }
-        } else if (dataFuture != null) {
+        } else if (data != null) {
             try {
-                dataFuture.get(TIMEOUT_SECS, TimeUnit.SECONDS);
-                if (dataFuture.isDone()) {
-                    dataFuture = null;
+                data.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+                synchronized (this) {
+                    if (dataFuture == data) {
+                        dataFuture = null;
+                    }
                     isLoaded = true;
-                    return true;
                 }
+                return true;
             } catch (Exception xcp) {
                 throw new RuntimeException(xcp);
             }
@@ -217,17 +361,26 @@ abstract class DataStructure extends Sizable implements Persistable {
 
     // has to be public because of Galaxy
     public void write(ByteBuffer compressedBB) {
-        CompressingByteBufferOutputStream baos = new CompressingByteBufferOutputStream(compressedBB.capacity());
-        try (SerializerOutputStream out = new SerializerOutputStream(baos)) {
-            serialize(out);
-        } catch (IOException | KryoException xcp) {
-            throw new RuntimeException("Byte Array [" + baos.size() + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
-        }
-
+        // kryo writes straight into a direct scratch buffer (and grows it if needed)
+        ByteBufferOutput output = new ByteBufferOutput(ScratchBuffers.borrow(MAX_BYTE_SIZE), -1);
         try {
-            baos.writeTo(compressedBB);
-        } catch (IOException xcp) {
-            throw new RuntimeException("Byte Array [" + baos.size() + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+            try (SerializerOutputStream out = new SerializerOutputStream(output)) {
+                serialize(out);
+            } catch (IOException | KryoException xcp) {
+                throw new RuntimeException("Byte Array [" + output.position() + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+            }
+
+            ByteBuffer uncompressed = output.getByteBuffer().duplicate();
+            uncompressed.position(0);
+            uncompressed.limit(output.position());
+            try {
+                compress(uncompressed, compressedBB);
+            } catch (IOException xcp) {
+                throw new RuntimeException("Byte Array [" + output.position() + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+            }
+        } finally {
+            // kryo might have replaced the buffer with a bigger one
+            ScratchBuffers.release(output.getByteBuffer());
         }
     }
 
@@ -238,17 +391,46 @@ abstract class DataStructure extends Sizable implements Persistable {
         // in that case we skip this code all together and don't call into
         // deserialize of the data structure either
         if (compressedBB.remaining() > 0) {
-            try (SerializerInputStream in = new SerializerInputStream(new DecompressingByteBufferInputStream(compressedBB))) {
+            boolean isRaw = isRawPayload(compressedBB);
+            ByteBuffer uncompressed;
+            try {
+                uncompressed = uncompress(compressedBB);
+            } catch (IOException xcp) {
+                throw new RuntimeException("ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+            }
+
+            try (SerializerInputStream in = new SerializerInputStream(new ByteBufferInput(uncompressed))) {
                 deserialize(in);
             } catch (IOException | KryoException | IllegalStateException xcp) {
-                compressedBB.rewind();
-                byte[] uncompressed = DecompressingByteBufferInputStream.readFrom(compressedBB);
-                int uncompressedLength = uncompressed.length;
-                throw new RuntimeException("Byte Array [" + uncompressedLength + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+                throw new RuntimeException("Byte Array [" + uncompressed.limit() + "] ByteBuffer [" + compressedBB.capacity() + "]", xcp);
+            } finally {
+                // raw payloads are read straight out of galaxy's buffer
+                if (!isRaw) {
+                    ScratchBuffers.release(uncompressed);
+                }
             }
         }
     }
 
+    // serializes this data structure exactly the way galaxy would
+    byte[] toBytes() {
+        ByteBuffer bb = ByteBuffer.allocateDirect(Math.max(size(), MAX_BYTE_SIZE));
+        write(bb);
+        bb.flip();
+        byte[] bytes = new byte[bb.remaining()];
+        bb.get(bytes);
+        return bytes;
+    }
+
+    // deserializes bytes that were produced by toBytes (or galaxy)
+    void read(byte[] bytes) {
+        // our decompression expects direct buffers -- just like the ones galaxy hands out
+        ByteBuffer bb = ByteBuffer.allocateDirect(bytes.length);
+        bb.put(bytes);
+        bb.flip();
+        read(bb);
+    }
+
     private <T extends DataStructure> ListenableFuture<Void> setAsync(long id, T o, Txn txn) {
         return store.setAsync(id, o, txn.getStoreTransaction());
     }
@@ -336,8 +518,8 @@ abstract class DataStructure extends Sizable implements Persistable {
         private Kryo kryo;
         private Output out;
 
-        private SerializerOutputStream(OutputStream o) {
-            out = new Output(o);
+        private SerializerOutputStream(Output o) {
+            out = o;
             kryo = kryoPool.borrow();
         }
 
@@ -378,13 +560,34 @@ abstract class DataStructure extends Sizable implements Persistable {
         }
     }
 
+    // the exact number of bytes writeObject(Object, Class) puts into the byte stream for this object
+    static int encodedSizeOf(Object o) {
+        if (o == null) {
+            // kryo marks nulls with a single byte
+            return 1;
+        }
+        Output out = sizingOutputs.get();
+        out.clear();
+        Kryo kryo = kryoPool.borrow();
+        try {
+            kryo.writeObjectOrNull(out, o, o.getClass());
+            return (int) out.total();
+        } finally {
+            kryoPool.release(kryo);
+        }
+    }
+
     static class SerializerInputStream extends InputStream {
         private final Kryo kryo;
         private final Input in;
 
         // visible for testing
         SerializerInputStream(InputStream i) {
-            in = new Input(i);
+            this(new Input(i));
+        }
+
+        private SerializerInputStream(Input i) {
+            in = i;
             kryo = kryoPool.borrow();
         }
 
@@ -413,6 +616,11 @@ abstract class DataStructure extends Sizable implements Persistable {
             return in.available();
         }
 
+        // number of bytes that were read from the stream so far
+        long bytesRead() {
+            return in.total();
+        }
+
         @Override
         public void close() throws IOException {
             try {
@@ -430,79 +638,117 @@ abstract class DataStructure extends Sizable implements Persistable {
     //////////////////////////////////////////////////////////////
     /////////////////////////////////////////////////
     //////////////////////////////////////
-    // These stream implementations let us deal with compressed and uncompressed
-    // various byte representations
-    // They will interfere with a ByteBuffer and Snappy
-    static class CompressingByteBufferOutputStream extends ByteArrayOutputStream {
-        private static final Logger logger = LoggerFactory.getLogger(CompressingByteBufferOutputStream.class);
+    // Compressing and decompressing goes straight from direct buffer to direct buffer
+    // Galaxy hands out direct buffers and Snappy only works on direct buffers
+    // Blocks are laid out like this:
+    // | 2 bytes length of the payload | payload |
+    // The highest bit of the length is set if the payload is stored raw (not compressed).
+    // Payloads are never longer than MAX_BYTE_SIZE which leaves that bit alone
+    // and blocks that were written before raw payloads existed are read as compressed.
+
+    private static void compress(ByteBuffer uncompressed, ByteBuffer out) throws IOException {
+        if (!out.isDirect()) {
+            throw new IllegalArgumentException("out is not direct ByteBuffer");
+        }
 
-        CompressingByteBufferOutputStream(int size) {
-            super(size);
+        int uncompressedLength = uncompressed.remaining();
+        int maxPayloadLength = out.capacity() - PAYLOAD_SIZE_HEADER_LENGTH;
+        if (uncompressedLength < MIN_COMPRESSIBLE_LENGTH && uncompressedLength <= maxPayloadLength) {
+            // snappy's framing eats up whatever it would save on tiny blocks
+            writeRawPayload(uncompressed, out);
+            return;
         }
 
-        synchronized void writeTo(ByteBuffer out) throws IOException {
-            if (!out.isDirect()) {
-                throw new IllegalArgumentException("out is not direct ByteBuffer");
+        int maxCompressedLength = Snappy.maxCompressedLength(uncompressedLength);
+        if (maxCompressedLength <= maxPayloadLength) {
+            // there's enough room to compress straight into galaxy's buffer
+            ByteBuffer payload = out.duplicate();
+            payload.clear();
+            payload.position(PAYLOAD_SIZE_HEADER_LENGTH);
+            int compressedLength = Snappy.compress(uncompressed.duplicate(), payload);
+            if (isWorthCompressing(uncompressedLength, compressedLength)) {
+                writePayloadSizeHeader(out, compressedLength, false);
+                out.position(PAYLOAD_SIZE_HEADER_LENGTH + compressedLength);
             } else {
-                // this makes a copy of the byte buffer
-                byte[] compressed = Snappy.rawCompress(buf, count);
-                try {
-                    if (compressed.length > out.capacity()) {
-                        // CRAP!!!
-                        // this puts us in a *very* uncomfortable situation
-                        // we simply can't write this block and need to explode this transaction
-                        String errorMessage = String.format("Data with length %d doesn't fit in buffer with size %d", compressed.length, out.capacity());
-                        throw new IllegalStateException(errorMessage);
-                    }
-
-                    // make the leading 2 bytes the size
-                    // of the compressed data
-                    byte[] payloadSizeHeader = Shorts.toByteArray((short)compressed.length);
-                    out.position(0);
-                    // make sure the limit of the byte buffer has the length
-                    // of the byte array we want to put in there
-                    out.limit(payloadSizeHeader.length + compressed.length);
-                    out.put(payloadSizeHeader, 0, payloadSizeHeader.length);
-                    // put my byte array at the beginning of the byte buffer
-                    out.put(compressed, 0, compressed.length);
-                } catch (BufferOverflowException | IllegalArgumentException | IllegalStateException xcp) {
-                    logger.error("Bytebuffer size [{}] pos [{}] lim [{}] compressed length [{}]", out.capacity(), out.position(), out.limit(), compressed.length, xcp);
-                    throw new IllegalStateException(xcp);
+                // the raw data fits as well (it's smaller than the compressed worst case)
+                // and simply overwrites what snappy produced
+                writeRawPayload(uncompressed, out);
+            }
+        } else {
+            // the worst case doesn't fit but the actual compressed data still might
+            ByteBuffer compressed = ScratchBuffers.borrow(maxCompressedLength);
+            try {
+                int compressedLength = Snappy.compress(uncompressed.duplicate(), compressed);
+                boolean compressedFits = compressedLength <= maxPayloadLength;
+                boolean rawFits = uncompressedLength <= maxPayloadLength;
+                if (rawFits && (!compressedFits || !isWorthCompressing(uncompressedLength, compressedLength))) {
+                    writeRawPayload(uncompressed, out);
+                } else if (compressedFits) {
+                    writePayloadSizeHeader(out, compressedLength, false);
+                    out.put(compressed);
+                } else {
+                    // CRAP!!!
+                    // this puts us in a *very* uncomfortable situation
+                    // we simply can't write this block and need to explode this transaction
+                    String errorMessage = String.format("Data with length %d doesn't fit in buffer with size %d", compressedLength, out.capacity());
+                    throw new IllegalStateException(errorMessage);
                 }
+            } catch (BufferOverflowException | IllegalArgumentException | IllegalStateException xcp) {
+                logger.error("Bytebuffer size [{}] pos [{}] lim [{}] compressed length [{}]", out.capacity(), out.position(), out.limit(), compressed.limit(), xcp);
+                throw new IllegalStateException(xcp);
+            } finally {
+                ScratchBuffers.release(compressed);
             }
         }
     }
 
-    static class DecompressingByteBufferInputStream extends ByteArrayInputStream {
-        DecompressingByteBufferInputStream(ByteBuffer in) {
-            super(readFrom(in));
+    // snappy needs to save at least an eighth of the block
+    // otherwise it's not worth paying for decompression on every read
+    private static boolean isWorthCompressing(int uncompressedLength, int compressedLength) {
+        return compressedLength <= uncompressedLength - (uncompressedLength / 8);
+    }
+
+    private static void writeRawPayload(ByteBuffer uncompressed, ByteBuffer out) {
+        writePayloadSizeHeader(out, uncompressed.remaining(), true);
+        out.put(uncompressed);
+    }
+
+    private static void writePayloadSizeHeader(ByteBuffer out, int payloadLength, boolean isRaw) {
+        out.position(0);
+        // make sure the limit of the byte buffer has the length
+        // of the data we want to put in there
+        out.limit(PAYLOAD_SIZE_HEADER_LENGTH + payloadLength);
+        int header = isRaw ? payloadLength | RAW_PAYLOAD_FLAG : payloadLength;
+        out.put(Shorts.toByteArray((short) header));
+    }
+
+    private static boolean isRawPayload(ByteBuffer in) {
+        int header = Shorts.fromBytes(in.get(in.position()), in.get(in.position() + 1)) & 0xFFFF;
+        return (header & RAW_PAYLOAD_FLAG) != 0;
+    }
+
+    // the returned buffer has its limit set to the end of the uncompressed data
+    // it's either borrowed from ScratchBuffers or (for raw payloads) a view into the buffer that was passed in
+    private static ByteBuffer uncompress(ByteBuffer in) throws IOException {
+        if (!in.isDirect()) {
+            throw new IllegalArgumentException("in is not direct ByteBuffer");
         }
 
-        private static byte[] readFrom(ByteBuffer in) {
-            if (!in.isDirect()) {
-                throw new IllegalArgumentException("in is not direct ByteBuffer");
-            } else {
-                // the leading 2 bytes are the length of
-                // the compressed array
-                byte[] payloadSizeHeader = new byte[2];
-                in.get(payloadSizeHeader);
-                short compressedArraySize = Shorts.fromBytes(payloadSizeHeader[0], payloadSizeHeader[1]);
-
-                // this makes a copy of the byte buffer
-                byte[] compressed = new byte[compressedArraySize];
-                in.get(compressed);
-                try {
-                    // beware: sometimes decompression leads to (an unknown number of) trailing zeros
-                    // those trailing zeros can cause a problem in the deserialize method of data structures
-                    // we can either a) take care of that in data structures or b) trim all trailing zeros here
-                    // but really only the data structure knows what the byte stream is supposed to look like
-                    // however you could expect trailing zeros to be an optional part of a data structure
-                    // which can have a default value
-                    return Snappy.uncompress(compressed);
-                } catch (IOException xcp) {
-                    throw new IllegalStateException(xcp);
-                }
-            }
+        // the leading 2 bytes are the length of
+        // the payload (and whether it's compressed or not)
+        int header = Shorts.fromBytes(in.get(), in.get()) & 0xFFFF;
+        int payloadLength = header & ~RAW_PAYLOAD_FLAG;
+        ByteBuffer payload = in.duplicate();
+        payload.limit(payload.position() + payloadLength);
+        in.position(in.position() + payloadLength);
+
+        if ((header & RAW_PAYLOAD_FLAG) != 0) {
+            // nothing to do -- kryo can read straight out of galaxy's buffer
+            return payload;
         }
+
+        ByteBuffer uncompressed = ScratchBuffers.borrow(Snappy.uncompressedLength(payload));
+        Snappy.uncompress(payload, uncompressed);
+        return uncompressed;
     }
 }
@@ -25,6 +25,8 @@ package org.carbon.copy.data.structures;
 public interface DataStructureFactory {
     Table newTable(Table.Builder builder, Txn txn);
     Table loadTable(long id);
+    // reads the table and everything in it as of the snapshot
+    Table loadTable(long id, ReadSnapshot readSnapshot);
     Table loadTableForWrites(long id, Txn txn);
 
     Index newIndex(Index.Builder builder, Txn txn);
@@ -22,6 +22,8 @@ import co.paralleluniverse.galaxy.Cluster;
 import co.paralleluniverse.galaxy.Store;
 import com.google.inject.Inject;
 
+import java.util.function.Supplier;
+
 class DataStructureFactoryImpl implements InternalDataStructureFactory {
     private final Store store;
     private final Cluster cluster;
@@ -41,7 +43,12 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
 
     @Override
     public <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlock(long id) {
-        return new DataBlock<>(store, id, true);
+        return loadSharedDataBlock(id);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadSharedDataBlock(long id) {
+        return DecodedBlockCache.get(store, id, () -> new DataBlock<>(store, id, true));
     }
 
     @Override
@@ -49,9 +56,14 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
         return new DataBlock<>(store, id, false);
     }
 
+    @Override
+    public <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlockProxy(long id, ReadSnapshot readSnapshot) {
+        return loadOnce(id, readSnapshot, () -> new DataBlock<>(store, id, false, readSnapshot));
+    }
+
     @Override
     public <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlockForWrites(long id, Txn txn) {
-        return new DataBlock<>(store, id, txn);
+        return txn.loadOnce(id, () -> new DataBlock<>(store, id, txn));
     }
 
     @Override
@@ -69,9 +81,14 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
         return new ChainingHash<>(store, this, id);
     }
 
+    @Override
+    public <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> loadChainingHash(long id, ReadSnapshot readSnapshot) {
+        return loadOnce(id, readSnapshot, () -> new ChainingHash<>(store, this, id, readSnapshot));
+    }
+
     @Override
     public <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> loadChainingHashForWrites(long id, Txn txn) {
-        return new ChainingHash<>(store, this, id, txn);
+        return txn.loadOnce(id, () -> new ChainingHash<>(store, this, id, txn));
     }
 
     @Override
@@ -101,7 +118,37 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
 
     @Override
     public <Key extends Comparable<Key>, Value> BTree<Key, Value> loadBTreeForWrites(long id, Txn txn) {
-        return new BTree<>(store, this, id, txn);
+        return txn.loadOnce(id, () -> new BTree<>(store, this, id, txn));
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> newSibPlusTreeNodeGroup(boolean isLeaf, Txn txn) {
+        return new SibPlusTreeNodeGroup<>(store, this, isLeaf, txn);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> loadSibPlusTreeNodeGroup(long id) {
+        return new SibPlusTreeNodeGroup<>(store, this, id, true);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> loadSibPlusTreeNodeGroupProxy(long id) {
+        return new SibPlusTreeNodeGroup<>(store, this, id, false);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> newSibPlusTree(Txn txn) {
+        return new SibPlusTree<>(store, this, txn);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> loadSibPlusTree(long id) {
+        return new SibPlusTree<>(store, this, id);
+    }
+
+    @Override
+    public <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> loadSibPlusTreeForWrites(long id, Txn txn) {
+        return txn.loadOnce(id, () -> new SibPlusTree<>(store, this, id, txn));
     }
 
     @Override
@@ -114,9 +161,14 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
         return new DistHash<>(store, this, cluster, messenger, id);
     }
 
+    @Override
+    public <Key extends Comparable<Key>, Value> DistHash<Key, Value> loadDistHash(long id, ReadSnapshot readSnapshot) {
+        return loadOnce(id, readSnapshot, () -> new DistHash<>(store, this, cluster, messenger, id, readSnapshot));
+    }
+
     @Override
     public <Key extends Comparable<Key>, Value> DistHash<Key, Value> loadDistHashForWrites(long id, Txn txn) {
-        return new DistHash(store, this, cluster, messenger, id, txn);
+        return txn.loadOnce(id, () -> new DistHash<>(store, this, cluster, messenger, id, txn));
     }
 
     @Override
@@ -129,9 +181,14 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
         return new Table(store, this, id);
     }
 
+    @Override
+    public Table loadTable(long id, ReadSnapshot readSnapshot) {
+        return loadOnce(id, readSnapshot, () -> new Table(store, this, id, readSnapshot));
+    }
+
     @Override
     public Table loadTableForWrites(long id, Txn txn) {
-        return new Table(store, this, id, txn);
+        return txn.loadOnce(id, () -> new Table(store, this, id, txn));
     }
 
     @Override
@@ -146,7 +203,7 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
 
     @Override
     public Index loadIndexForWrites(long id, Txn txn) {
-        return new Index(store, this, id, txn);
+        return txn.loadOnce(id, () -> new Index(store, this, id, txn));
     }
 
     @Override
@@ -161,6 +218,16 @@ class DataStructureFactoryImpl implements InternalDataStructureFactory {
 
     @Override
     public TempTable loadTempTableFromId(long id, Txn txn) {
-        return new TempTable(store, this, id, txn);
+        return txn.loadOnce(id, () -> new TempTable(store, this, id, txn));
+    }
+
+    @Override
+    public short getMyNodeId() {
+        return cluster.getMyNodeId();
+    }
+
+    // data structures that aren't read in a snapshot are loaded every time
+    private static <T extends DataStructure> T loadOnce(long id, ReadSnapshot readSnapshot, Supplier<T> loader) {
+        return (readSnapshot != null) ? readSnapshot.loadOnce(id, loader) : loader.get();
     }
 }
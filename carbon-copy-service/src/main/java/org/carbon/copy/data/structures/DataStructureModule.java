@@ -95,5 +95,13 @@ public class DataStructureModule extends AbstractModule {
         DistHash.GetResponseMessageListener getRespListener = new DistHash.GetResponseMessageListener(getProvider(org.carbon.copy.data.structures.Messenger.class));
         g.messenger().removeMessageListener(DistHash.GetResponseMessageListener.TOPIC, getRespListener);
         g.messenger().addMessageListener(DistHash.GetResponseMessageListener.TOPIC, getRespListener);
+
+        DistHash.ExecuteRequestMessageListener executeReqListener = new DistHash.ExecuteRequestMessageListener(getProvider(InternalDataStructureFactory.class), getProvider(TxnManager.class), getProvider(Messenger.class));
+        g.messenger().removeMessageListener(DistHash.ExecuteRequestMessageListener.TOPIC, executeReqListener);
+        g.messenger().addMessageListener(DistHash.ExecuteRequestMessageListener.TOPIC, executeReqListener);
+
+        DistHash.ExecuteResponseMessageListener executeRespListener = new DistHash.ExecuteResponseMessageListener(getProvider(org.carbon.copy.data.structures.Messenger.class));
+        g.messenger().removeMessageListener(DistHash.ExecuteResponseMessageListener.TOPIC, executeRespListener);
+        g.messenger().addMessageListener(DistHash.ExecuteResponseMessageListener.TOPIC, executeRespListener);
     }
 }
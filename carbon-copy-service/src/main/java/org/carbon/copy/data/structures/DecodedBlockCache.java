@@ -0,0 +1,119 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.AbstractCacheListener;
+import co.paralleluniverse.galaxy.Cache;
+import co.paralleluniverse.galaxy.CacheListener;
+import co.paralleluniverse.galaxy.Store;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.nio.ByteBuffer;
+import java.util.function.Supplier;
+
+/**
+ * Decompressing and deserializing a block isn't free. Hot blocks (think the catalog or column metadata)
+ * are read over and over again although they hardly ever change.
+ * This node-wide cache keeps deserialized blocks around as long as galaxy has the same version of them.
+ *
+ * Every lookup compares the version of the cached block with the version galaxy has right now.
+ * On top of that galaxy's cache listener throws out blocks that are invalidated, evicted or received anew
+ * so that they don't take up memory for nothing.
+ * Blocks waiting for group commit are newer than what galaxy has -- they're never cached.
+ *
+ * Cached blocks are shared by all readers on this node. That's why they can't be changed (see Txn).
+ * Only blocks that are stored in a single cache line can be cached this way. A data structure that is spread over
+ * multiple blocks (a hash, a table) can't be validated by looking at the version of a single block.
+ */
+class DecodedBlockCache {
+    private static final int MAX_NUM_BLOCKS = 10_000;
+
+    private static final com.google.common.cache.Cache<Long, CachedBlock> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_NUM_BLOCKS)
+            .recordStats()
+            .build();
+
+    private static final CacheListener invalidator = new AbstractCacheListener() {
+        @Override
+        public void invalidated(Cache cache, long id) {
+            invalidate(id);
+        }
+
+        @Override
+        public void received(Cache cache, long id, long version, ByteBuffer data) {
+            invalidate(id);
+        }
+
+        @Override
+        public void evicted(Cache cache, long id) {
+            invalidate(id);
+        }
+
+        @Override
+        public void killed(Cache cache, long id) {
+            invalidate(id);
+        }
+    };
+
+    private DecodedBlockCache() {}
+
+    @SuppressWarnings("unchecked")
+    static <T extends DataStructure> T get(Store store, long id, Supplier<T> loader) {
+        if (GroupCommitCoordinator.getParkedBlock(id) != null) {
+            return loader.get();
+        }
+
+        // galaxy says -1 if it doesn't have the block at all
+        long version = store.getVersion(id);
+        CachedBlock cached = cache.getIfPresent(id);
+        if (cached != null && cached.version == version) {
+            return (T) cached.ds;
+        }
+
+        T ds = loader.get();
+        ds.checkDataStructureRetrieved();
+        // only keep the block if nobody changed it while I was reading it
+        // (the first read of a block that wasn't here yet never makes it into the cache)
+        if (version >= 0 && store.getVersion(id) == version && GroupCommitCoordinator.getParkedBlock(id) == null) {
+            ds.markShared();
+            store.setListenerIfAbsent(id, invalidator);
+            cache.put(id, new CachedBlock(version, ds));
+        }
+        return ds;
+    }
+
+    static void invalidate(long id) {
+        cache.invalidate(id);
+    }
+
+    static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static class CachedBlock {
+        private final long version;
+        private final DataStructure ds;
+
+        CachedBlock(long version, DataStructure ds) {
+            this.version = version;
+            this.ds = ds;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import co.paralleluniverse.galaxy.Cluster;
 import co.paralleluniverse.galaxy.Store;
 import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.hash.Funnel;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
@@ -29,17 +30,27 @@ import com.google.inject.Provider;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * This is an implementation of a distributed hash map.
@@ -48,10 +59,20 @@ import java.util.concurrent.TimeoutException;
  * As galaxy sends messages using the same mechanism as it uses the reach consensus about data, messages
  * are pretty much guaranteed to arrive as long as data updates are delivered and ordered with those data updates.
  * In theory this means a nice order and *somewhat* consistent view on data.
+ * Writes are different though. They go straight into the partitions within the transaction of the caller
+ * (so that they commit and roll back with everything else the caller does).
  */
 class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
-    private final Funnel<Key> keyFunnel = (Funnel<Key>) (key, into) ->
+    // GUIDs are placed by their upper half only
+    // that's where partitioned GUIDs keep the hash of their partition key (see GUID.partitionedGUID)
+    // random GUIDs are just as random in their upper half
+    private final Funnel<Key> keyFunnel = (Funnel<Key>) (key, into) -> {
+        if (key instanceof GUID) {
+            into.putLong(((GUID) key).getMostSignificantBits());
+        } else {
             into.putString(key.toString(), Charsets.UTF_8);
+        }
+    };
 
     private final Funnel<Short> nodeInfoFunnel = (Funnel<Short>) (nodeId, into) ->
             into.putShort(nodeId);
@@ -59,7 +80,9 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
     private final InternalDataStructureFactory dsFactory;
     private final Cluster cluster;
     private final Messenger messenger;
-    private final HashFunction hf;
+    // every node needs to come up with the same node for the same key
+    // that's why the seed must not depend on the node I'm running on
+    private final HashFunction hf = Hashing.murmur3_128();
 
     private int hashTableSize;
     private HashMap<Short, Long> hashTable;
@@ -73,20 +96,24 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
         this.dsFactory = dsFactory;
         this.cluster = cluster;
         this.messenger = messenger;
-        this.hf = Hashing.murmur3_128(getMyNodeId(cluster));
 
         checkDataStructureRetrieved();
         txn.addToChangedObjects(this);
         txn.addToCreatedObjects(this);
+        // puts in the same transaction need to find partitions in this very instance (see lockedIn)
+        txn.loadOnce(getId(), () -> this);
     }
 
     DistHash(Store store, InternalDataStructureFactory dsFactory, Cluster cluster, Messenger messenger, long id) {
-        super(store, id);
+        this(store, dsFactory, cluster, messenger, id, (ReadSnapshot) null);
+    }
+
+    DistHash(Store store, InternalDataStructureFactory dsFactory, Cluster cluster, Messenger messenger, long id, ReadSnapshot readSnapshot) {
+        super(store, id, readSnapshot);
         this.dsFactory = dsFactory;
         this.cluster = cluster;
         this.messenger = messenger;
         asyncLoadForReads();
-        this.hf = Hashing.murmur3_128(getMyNodeId(cluster));
     }
 
     DistHash(Store store, InternalDataStructureFactory dsFactory, Cluster cluster, Messenger messenger, long id, Txn txn) {
@@ -95,26 +122,45 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
         this.cluster = cluster;
         this.messenger = messenger;
         asyncLoadForWrites(txn);
-        this.hf = Hashing.murmur3_128(getMyNodeId(cluster));
     }
 
     public void put(Key key, Value val, Txn txn) {
         if (txn == null) throw new IllegalArgumentException("Txn cannot be null");
         checkDataStructureRetrieved();
+        lockedIn(txn).putIntoPartition(key, val, txn);
+    }
+
+    // the first key on a node creates a new partition
+    // and this hash needs to be written to remember where it is
+    // yes, this pulls the lines of the partition over to the writing node (unlike reads and fragments)
+    // I can't route the write to the owner though: the owner would have to write in a txn of its own
+    // and that txn commits (or fails) independently of the caller's txn
+    // it would neither roll back with the caller nor hold the caller's locks and
+    // Table.insert's delete of the old row and put of the new one would stop being atomic
+    // galaxy hands ownership of the lines back as soon as the owner reads or writes them again
+    private void putIntoPartition(Key key, Value val, Txn txn) {
         Short nodeId = rendezVousHashTheKeyToANode(key);
         Long blockId = hashTable.get(nodeId);
-        try {
-            blockId = sendPutRequest(nodeId, key, val, blockId);
-        } catch (InterruptedException | ExecutionException | TimeoutException e) {
-            throw new RuntimeException(e);
+        ChainingHash<Key, Value> partition;
+        if (blockId == null) {
+            partition = dsFactory.newChainingHash(txn);
+            hashTable.put(nodeId, partition.getId());
+            hashTableSize = Math.max(hashTableSize, hashTable.size());
+            txn.addToChangedObjects(this);
+        } else {
+            partition = dsFactory.loadChainingHashForWrites(blockId, txn);
         }
-        hashTable.put(nodeId, blockId);
+        partition.put(key, val, txn);
     }
 
-    private Long sendPutRequest(Short nodeId, Key key, Value val, Long blockId) throws InterruptedException, ExecutionException, TimeoutException {
-        PutRequest pr = new PutRequest(key, val, blockId);
-        Future<Long> f = messenger.send(nodeId, pr);
-        return f.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+    // the map of partitions is read (or changed) only after I hold the lock on it
+    // otherwise two transactions could both add the same partition and one of them would get lost
+    // the lock is taken on this instance (it has the same id) and the map is read anew for the transaction
+    private DistHash<Key, Value> lockedIn(Txn txn) {
+        txn.addToLockedObjects(this);
+        DistHash<Key, Value> locked = dsFactory.loadDistHashForWrites(getId(), txn);
+        locked.checkDataStructureRetrieved();
+        return locked;
     }
 
     public Value get(Key key) {
@@ -134,6 +180,9 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
         // if the blockId is null, there's no record
         if (blockId == null) {
             return null;
+        } else if (getReadSnapshot() != null) {
+            // see execute
+            return dsFactory.<Key, Value>loadChainingHash(blockId, getReadSnapshot()).get(key);
         }
 
         GetRequest getReq = new GetRequest(key, blockId);
@@ -144,7 +193,17 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
     public boolean delete(Key key, Txn txn) {
         if (txn == null) throw new IllegalArgumentException("Txn cannot be null");
         checkDataStructureRetrieved();
-        return true;
+        return lockedIn(txn).deleteFromPartition(key, txn);
+    }
+
+    private boolean deleteFromPartition(Key key, Txn txn) {
+        Long blockId = hashTable.get(rendezVousHashTheKeyToANode(key));
+        if (blockId == null) {
+            return false;
+        }
+        ChainingHash<Key, Value> partition = dsFactory.loadChainingHashForWrites(blockId, txn);
+        // deleting a key that isn't there would still lock its data block
+        return partition.get(key) != null && partition.delete(key, txn);
     }
 
     /**
@@ -165,7 +224,7 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
                     do {
                         Long nextHashRoot = iterHashTable.get(iterHashTableIndex);
                         iterHashTableIndex++;
-                        ChainingHash<Key, Value> ch = dsFactory.loadChainingHash(nextHashRoot);
+                        ChainingHash<Key, Value> ch = dsFactory.loadChainingHash(nextHashRoot, getReadSnapshot());
                         iter = ch.keys().iterator();
                         if (iter.hasNext()) {
                             return true;
@@ -182,6 +241,180 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
         };
     }
 
+    /**
+     * Ships the fragment to every node that owns a partition of this hash and runs it there.
+     * Only the results of the fragment travel back (instead of every cache line of every partition).
+     * Nodes work on their partitions in parallel and send their results back in chunks (see ExecuteResponse).
+     * Results are handed out as soon as they're in -- node after node. Each node has TIMEOUT_SECS to send its next chunk.
+     * Closing the stream early stops listening for more chunks.
+     * Hashes that were loaded in a snapshot send the version of the snapshot along.
+     * Versions only make sense on the node that opened the snapshot (see VersionStore). Every other node reads the latest data
+     * and tells me which blocks it read. If none of them were changed by commits on this node since the snapshot was opened
+     * that's exactly what the snapshot sees. Otherwise (or if the node fails) I run the fragment against that node's partitions myself.
+     * Results of a node are handed out only after that check.
+     */
+    public <Result> Stream<Result> execute(Fragment<Result> fragment) {
+        return executeColocated(fragment);
+    }
+
+    /**
+     * Same as execute but the fragment gets to see the partitions of the other hashes as well.
+     * Partitions of different hashes on the same node hold the same keys (that's what rendez-vous hashing does for me).
+     * The same goes for partitioned GUIDs with the same partition key (see TupleJoinFragment).
+     * That's why joins on the key can be done on each node without moving any data between nodes.
+     * The fragment gets the partitions in this order: this hash first, then the others (null if a hash has no data on the node).
+     */
+    public <Result> Stream<Result> executeColocated(Fragment<Result> fragment, DistHash<?, ?>... others) {
+        checkDataStructureRetrieved();
+        List<DistHash<?, ?>> hashes = new ArrayList<>(others.length + 1);
+        hashes.add(this);
+        hashes.addAll(Arrays.asList(others));
+
+        Set<Short> nodes = new TreeSet<>();
+        for (DistHash<?, ?> hash : hashes) {
+            hash.checkDataStructureRetrieved();
+            if (hash.getReadSnapshot() != getReadSnapshot()) {
+                throw new IllegalArgumentException(hash + " wasn't read in the same snapshot as " + this);
+            }
+            nodes.addAll(hash.hashTable.keySet());
+        }
+
+        // fire off all requests first and only then start reading
+        List<ExecuteResults<Result>> resultsPerNode = new ArrayList<>(nodes.size());
+        for (Short nodeId : nodes) {
+            Long[] blockIds = new Long[hashes.size()];
+            for (int i = 0; i < blockIds.length; i++) {
+                blockIds[i] = hashes.get(i).hashTable.get(nodeId);
+            }
+            ExecuteRequest req = new ExecuteRequest(fragment, blockIds, (getReadSnapshot() != null) ? getReadSnapshot().getVersion() : null);
+            BlockingQueue<Object> chunks = messenger.sendStreaming(nodeId, req);
+            resultsPerNode.add(new ExecuteResults<>(nodeId, req.requestId, chunks, () -> executeInSnapshot(fragment, hashes, nodeId)));
+        }
+
+        // the nodes keep sending while I hand out the results of the first one
+        Iterator<Result> results = Iterators.concat(resultsPerNode.iterator());
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results, Spliterator.NONNULL), false)
+                .onClose(() -> resultsPerNode.forEach(nodeResults -> messenger.cancel(nodeResults.requestId)));
+    }
+
+    // this is the fallback if a node couldn't read its partitions as of the snapshot
+    // the fragment runs on this node against the partitions of the other node (which means their cache lines travel to me)
+    private <Result> List<Result> executeInSnapshot(Fragment<Result> fragment, List<DistHash<?, ?>> hashes, Short nodeId) {
+        List<ChainingHash> partitions = new ArrayList<>(hashes.size());
+        for (DistHash<?, ?> hash : hashes) {
+            Long blockId = hash.hashTable.get(nodeId);
+            partitions.add((blockId != null) ? dsFactory.loadChainingHash(blockId, getReadSnapshot()) : null);
+        }
+        return fragment.execute(partitions);
+    }
+
+    // hands out the results of one node chunk by chunk
+    // chunks might arrive in any order which is fine because results don't have an order
+    // but that's why I count chunks instead of stopping at the last one
+    // the timeout starts anew with every chunk -- a node that keeps sending is still alive
+    // and a node I'm not reading from yet doesn't run out of time because its chunks simply queue up
+    private class ExecuteResults<Result> implements Iterator<Result> {
+        private final short nodeId;
+        private final UUID requestId;
+        private final BlockingQueue<Object> chunks;
+        private final Supplier<List<Result>> executeInSnapshot;
+        private int numChunksReceived = 0;
+        // unknown until the last chunk is in
+        private int numChunks = -1;
+        private Iterator<Result> chunk = Collections.emptyIterator();
+
+        private ExecuteResults(short nodeId, UUID requestId, BlockingQueue<Object> chunks, Supplier<List<Result>> executeInSnapshot) {
+            this.nodeId = nodeId;
+            this.requestId = requestId;
+            this.chunks = chunks;
+            this.executeInSnapshot = executeInSnapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!chunk.hasNext()) {
+                if (numChunksReceived == numChunks) {
+                    messenger.cancel(requestId);
+                    return false;
+                } else if (getReadSnapshot() != null) {
+                    chunk = allResultsInSnapshot().iterator();
+                    continue;
+                }
+                ExecuteResponse resp = nextChunk();
+                if (resp.error != null) {
+                    messenger.cancel(requestId);
+                    throw new IllegalStateException("Fragment failed on node " + nodeId + ": " + resp.error);
+                }
+                countChunk(resp);
+                chunk = resp.<Result>getResults().iterator();
+            }
+            return true;
+        }
+
+        // results of a node that read the latest data are only what the snapshot sees
+        // if my commits didn't change any of the blocks the node read since the snapshot was opened
+        // I can't know that before the node is done
+        private List<Result> allResultsInSnapshot() {
+            List<Result> results = new ArrayList<>();
+            Long[] readBlockIds = null;
+            while (numChunksReceived != numChunks) {
+                ExecuteResponse resp = nextChunk();
+                if (resp.error != null) {
+                    // the node might have stumbled over a block that was deleted after the snapshot was opened
+                    return fallback();
+                }
+                countChunk(resp);
+                if (resp.isLast) {
+                    readBlockIds = resp.readBlockIds;
+                }
+                results.addAll(resp.getResults());
+            }
+            // the node that opened the snapshot reads as of the snapshot and doesn't send any ids
+            if (readBlockIds != null && !getReadSnapshot().isUnchangedInSnapshot(Arrays.asList(readBlockIds))) {
+                return fallback();
+            }
+            return results;
+        }
+
+        private List<Result> fallback() {
+            messenger.cancel(requestId);
+            List<Result> results = executeInSnapshot.get();
+            // no more chunks to wait for
+            numChunks = numChunksReceived;
+            return results;
+        }
+
+        private void countChunk(ExecuteResponse resp) {
+            numChunksReceived++;
+            if (resp.isLast) {
+                numChunks = resp.chunk + 1;
+            }
+        }
+
+        @Override
+        public Result next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return chunk.next();
+        }
+
+        private ExecuteResponse nextChunk() {
+            Object obj;
+            try {
+                obj = chunks.poll(TIMEOUT_SECS, TimeUnit.SECONDS);
+            } catch (InterruptedException xcp) {
+                messenger.cancel(requestId);
+                throw new RuntimeException(xcp);
+            }
+            if (obj == null) {
+                messenger.cancel(requestId);
+                throw new RuntimeException(new TimeoutException("Node " + nodeId + " didn't send any results for " + TIMEOUT_SECS + " seconds"));
+            }
+            return (ExecuteResponse) obj;
+        }
+    }
+
     // my little implementation of rendez-vous hashing
     Short rendezVousHashTheKeyToANode(Key key) {
         Set<Short> allNodes = getNodes();
@@ -205,7 +438,7 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
 
     private Set<Short> getNodes(Cluster cluster) {
         Set<Short> nodes = cluster.getNodes();
-        return (nodes.size() > 0) ? nodes : ImmutableSet.of(cluster.getMyNodeId());
+        return (nodes.size() > 0) ? nodes : ImmutableSet.of(getMyNodeId(cluster));
     }
 
     protected Set<Short> getNodes() {
@@ -246,6 +479,152 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
         }
     }
 
+    /////////////////////////////////////////////////////////////
+    //////////////////////////////////////////////
+    // fragments
+    // a fragment is a piece of a query that runs on the node that owns the data
+    // it travels to that node as a kryo-serialized object
+    // that means fragments need a no-arg constructor (it can be private)
+    // and must not hold on to anything that only makes sense on the node that created them
+
+    /**
+     * A piece of a query that runs on every node that owns data (see execute and executeColocated).
+     */
+    interface Fragment<Result> {
+        /**
+         * Partitions come in the order of the hashes the fragment runs against.
+         * A partition is null if the corresponding hash has no data on this node.
+         */
+        List<Result> execute(List<ChainingHash> partitions);
+    }
+
+    /**
+     * Returns the values of all rows that fall into all ranges projected to a couple of columns.
+     * This only works for hashes with tuples as values.
+     * Unlike the ranges in Table.scan these ranges actually filter. They're not just a hint.
+     */
+    static class TupleScanFragment implements Fragment<Tuple> {
+        // the ranges are flattened into arrays because kryo can't create ColumnRanges
+        private int[] rangeColumnIndexes;
+        private Comparable[] rangeFroms;
+        private Comparable[] rangeTos;
+        // null means all columns
+        private int[] columnIndexesToProjectTo;
+
+        // kryo needs this
+        private TupleScanFragment() {}
+
+        TupleScanFragment(int[] rangeColumnIndexes, Comparable[] rangeFroms, Comparable[] rangeTos, int[] columnIndexesToProjectTo) {
+            if (rangeColumnIndexes.length != rangeFroms.length || rangeColumnIndexes.length != rangeTos.length) {
+                throw new IllegalArgumentException("Ranges need a column, a lower and an upper bound each");
+            }
+            this.rangeColumnIndexes = rangeColumnIndexes;
+            this.rangeFroms = rangeFroms;
+            this.rangeTos = rangeTos;
+            this.columnIndexesToProjectTo = columnIndexesToProjectTo;
+        }
+
+        @Override
+        public List<Tuple> execute(List<ChainingHash> partitions) {
+            return scan(partitions.get(0));
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<Tuple> scan(ChainingHash partition) {
+            List<Tuple> results = new ArrayList<>();
+            if (partition == null) {
+                return results;
+            }
+            for (Object key : partition.keys()) {
+                Tuple tuple = (Tuple) partition.get((Comparable) key);
+                if (tuple != null && isInRanges(tuple)) {
+                    results.add(project(tuple));
+                }
+            }
+            return results;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean isInRanges(Tuple tuple) {
+            for (int i = 0; i < rangeColumnIndexes.length; i++) {
+                Comparable value = tuple.get(rangeColumnIndexes[i]);
+                if (value == null
+                        || (rangeFroms[i] != null && value.compareTo(rangeFroms[i]) < 0)
+                        || (rangeTos[i] != null && value.compareTo(rangeTos[i]) > 0)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Tuple project(Tuple tuple) {
+            if (columnIndexesToProjectTo == null) {
+                return tuple;
+            }
+            // a projected tuple still belongs to the same row
+            Tuple projected = new Tuple(tuple.getGuid(), columnIndexesToProjectTo.length);
+            for (int i = 0; i < columnIndexesToProjectTo.length; i++) {
+                projected.put(i, tuple.get(columnIndexesToProjectTo[i]));
+            }
+            return projected;
+        }
+    }
+
+    /**
+     * Joins the rows of two hashes of tuples on a column each.
+     * This only works if both columns decide which node a row lives on (the partition keys of partitioned tables, see GUID.partitionedGUID).
+     * Then all rows that join live on the same node and every node can join its partitions on its own.
+     * Each side is scanned with its own ranges and projection first (see TupleScanFragment).
+     * The key columns are positions in the projected tuples.
+     * Returns an array of the tuple of the first hash and the tuple of the second hash for every pair of rows that join.
+     */
+    static class TupleJoinFragment implements Fragment<Object[]> {
+        private TupleScanFragment left;
+        private int leftKey;
+        private TupleScanFragment right;
+        private int rightKey;
+
+        // kryo needs this
+        private TupleJoinFragment() {}
+
+        TupleJoinFragment(TupleScanFragment left, int leftKey, TupleScanFragment right, int rightKey) {
+            this.left = left;
+            this.leftKey = leftKey;
+            this.right = right;
+            this.rightKey = rightKey;
+        }
+
+        @Override
+        public List<Object[]> execute(List<ChainingHash> partitions) {
+            if (partitions.size() != 2) {
+                throw new IllegalArgumentException("I can only join two hashes but got " + partitions.size());
+            }
+            List<Object[]> results = new ArrayList<>();
+            if (partitions.get(0) == null || partitions.get(1) == null) {
+                return results;
+            }
+            // I hash the right side and probe with the left side
+            // nulls don't join with anything
+            Map<Object, List<Tuple>> rightRows = new HashMap<>();
+            for (Tuple tuple : right.scan(partitions.get(1))) {
+                Object key = tuple.get(rightKey);
+                if (key != null) {
+                    rightRows.computeIfAbsent(key, k -> new ArrayList<>()).add(tuple);
+                }
+            }
+            for (Tuple leftTuple : left.scan(partitions.get(0))) {
+                Object key = leftTuple.get(leftKey);
+                List<Tuple> matches = (key != null) ? rightRows.get(key) : null;
+                if (matches != null) {
+                    for (Tuple rightTuple : matches) {
+                        results.add(new Object[] { leftTuple, rightTuple });
+                    }
+                }
+            }
+            return results;
+        }
+    }
+
     /////////////////////////////////////////////////////////////
     //////////////////////////////////////////////
     // galaxy-specific messenger classes
@@ -262,6 +641,8 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
     private static final String PUT_RESPONSE_TOPIC = "resp:P";
     private static final String GET_REQUEST_TOPIC = "req:G";
     private static final String GET_RESPONSE_TOPIC = "resp:G";
+    private static final String EXECUTE_REQUEST_TOPIC = "req:E";
+    private static final String EXECUTE_RESPONSE_TOPIC = "resp:E";
 
     /**
      * This class is a data container for a put request.
@@ -350,6 +731,8 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
      * This listener receives a put request (including key and value).
      * The recipient of this message executes the request locally
      * and replies with the root of the hash containing the value.
+     * The put commits in a transaction of the recipient. That's why DistHash.put doesn't send these anymore
+     * and this listener is only around for nodes that still do.
      */
     static class PutRequestMessageListener extends BaseMessageListener {
         final static String TOPIC = PUT_REQUEST_TOPIC;
@@ -624,4 +1007,239 @@ class DistHash<Key extends Comparable<Key>, Value> extends DataStructure {
             }
         }
     }
+
+    static class ExecuteRequest extends BaseMessage {
+        // wire format:
+        //  1. request id
+        //  2. fragment
+        //  3. blockIds (one per hash, null if the hash has no data on the receiving node)
+        //  4. version of the snapshot of the sender (null if the hashes weren't read in a snapshot)
+        final Fragment fragment;
+        final Long[] blockIds;
+        final Long snapshotVersion;
+
+        ExecuteRequest(Fragment fragment, Long[] blockIds) {
+            this(fragment, blockIds, null);
+        }
+
+        ExecuteRequest(Fragment fragment, Long[] blockIds, Long snapshotVersion) {
+            this.fragment = fragment;
+            this.blockIds = blockIds;
+            this.snapshotVersion = snapshotVersion;
+        }
+
+        ExecuteRequest(byte[] bytes) {
+            try (In in = getIn(bytes)) {
+                this.requestId = (UUID) in.read();
+                this.fragment = (Fragment) in.read();
+                this.blockIds = (Long[]) in.read();
+                this.snapshotVersion = (Long) in.read();
+            } catch (Exception xcp) {
+                throw new RuntimeException(xcp);
+            }
+        }
+
+        @Override
+        String getTopic() {
+            return EXECUTE_REQUEST_TOPIC;
+        }
+
+        @Override
+        void toBytes(Out out) {
+            out.write(requestId);
+            out.write(fragment);
+            out.write(blockIds);
+            out.write(snapshotVersion);
+        }
+    }
+
+    /**
+     * Nodes send their results in chunks of up to CHUNK_SIZE results (see ExecuteRequestMessageListener).
+     * That way the sender can start working with the first results while the others are still on their way
+     * and no single message needs to hold all results of a node.
+     * A failing fragment is answered with one (last) chunk with the error.
+     */
+    static class ExecuteResponse extends BaseMessage {
+        // wire format:
+        //  1. request id
+        //  2. index of this chunk
+        //  3. whether this is the last chunk
+        //  4. results (null if the fragment failed)
+        //  5. error message (null if the fragment succeeded)
+        //  6. ids of the blocks the fragment read (only in the last chunk and only if the request was sent in a snapshot)
+        static final int CHUNK_SIZE = 1024;
+
+        final int chunk;
+        final boolean isLast;
+        final ArrayList results;
+        final String error;
+        final Long[] readBlockIds;
+
+        ExecuteResponse(int chunk, boolean isLast, ArrayList results, String error) {
+            this(chunk, isLast, results, error, null);
+        }
+
+        ExecuteResponse(int chunk, boolean isLast, ArrayList results, String error, Long[] readBlockIds) {
+            this.chunk = chunk;
+            this.isLast = isLast;
+            this.results = results;
+            this.error = error;
+            this.readBlockIds = readBlockIds;
+        }
+
+        ExecuteResponse(byte[] bytes) {
+            try (In in = getIn(bytes)) {
+                this.requestId = (UUID) in.read();
+                this.chunk = (Integer) in.read();
+                this.isLast = (Boolean) in.read();
+                this.results = (ArrayList) in.read();
+                this.error = (String) in.read();
+                this.readBlockIds = (Long[]) in.read();
+            } catch (Exception xcp) {
+                throw new RuntimeException(xcp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        <Result> List<Result> getResults() {
+            return (List<Result>) results;
+        }
+
+        @Override
+        String getTopic() {
+            return EXECUTE_RESPONSE_TOPIC;
+        }
+
+        @Override
+        void toBytes(Out out) {
+            out.write(requestId);
+            out.write(chunk);
+            out.write(isLast);
+            out.write(results);
+            out.write(error);
+            out.write(readBlockIds);
+        }
+    }
+
+    /**
+     * This listener receives a fragment and the ids of the partitions it should run against.
+     * The recipient runs the fragment against its local partitions and replies with the results in chunks (see ExecuteResponse).
+     * If the fragment blows up the recipient replies with the error (instead of leaving the sender hanging until it times out).
+     */
+    static class ExecuteRequestMessageListener extends BaseMessageListener {
+        final static String TOPIC = EXECUTE_REQUEST_TOPIC;
+
+        private final Provider<InternalDataStructureFactory> dsFactory;
+        private final Provider<TxnManager> txnManager;
+        private final Provider<Messenger> messenger;
+
+        ExecuteRequestMessageListener(Provider<InternalDataStructureFactory> dsFactory, Provider<TxnManager> txnManager, Provider<Messenger> messenger) {
+            this.dsFactory = dsFactory;
+            this.txnManager = txnManager;
+            this.messenger = messenger;
+        }
+
+        @Override
+        protected String getTopic() {
+            return TOPIC;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected void handle(short fromNode, byte[] bytes) throws IOException {
+            ExecuteRequest req = new ExecuteRequest(bytes);
+
+            List results;
+            Long[] readBlockIds = null;
+            ReadSnapshot snapshot = (req.snapshotVersion != null) ? joinSnapshot(fromNode, req.snapshotVersion) : null;
+            try {
+                List<ChainingHash> partitions = new ArrayList<>(req.blockIds.length);
+                for (Long blockId : req.blockIds) {
+                    partitions.add((blockId != null) ? loadChainingHash(blockId, snapshot) : null);
+                }
+                results = req.fragment.execute(partitions);
+                // if I couldn't read as of the snapshot, the sender needs to check whether the latest data is good enough
+                if (snapshot != null && snapshot.getVersion() == ReadSnapshot.LATEST) {
+                    readBlockIds = snapshot.getLoadedBlockIds().toArray(new Long[0]);
+                }
+            } catch (Exception xcp) {
+                replyTo(fromNode, req.requestId, new ExecuteResponse(0, true, null, String.valueOf(xcp)));
+                return;
+            } finally {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            }
+
+            // no results still make one (empty) chunk -- otherwise the sender would wait for the last chunk forever
+            int numChunks = Math.max(1, (results.size() + ExecuteResponse.CHUNK_SIZE - 1) / ExecuteResponse.CHUNK_SIZE);
+            for (int chunk = 0; chunk < numChunks; chunk++) {
+                int from = chunk * ExecuteResponse.CHUNK_SIZE;
+                int to = Math.min(results.size(), from + ExecuteResponse.CHUNK_SIZE);
+                boolean isLast = chunk == numChunks - 1;
+                replyTo(fromNode, req.requestId, new ExecuteResponse(chunk, isLast, new ArrayList(results.subList(from, to)), null, isLast ? readBlockIds : null));
+            }
+        }
+
+        // snapshot versions only make sense on the node that opened the snapshot (see VersionStore)
+        // all other nodes read the latest data
+        protected ReadSnapshot joinSnapshot(short fromNode, long snapshotVersion) {
+            boolean isMySnapshot = fromNode == dsFactory.get().getMyNodeId();
+            return txnManager.get().joinSnapshot(isMySnapshot ? snapshotVersion : ReadSnapshot.LATEST);
+        }
+
+        protected ChainingHash loadChainingHash(long blockId, ReadSnapshot snapshot) {
+            return dsFactory.get().loadChainingHash(blockId, snapshot);
+        }
+
+        protected void replyTo(short toNode, UUID requestId, BaseMessage messageToSend) {
+            messenger.get().replyTo(toNode, requestId, messageToSend);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ExecuteRequestMessageListener) {
+                ExecuteRequestMessageListener theOther = (ExecuteRequestMessageListener) obj;
+                return getTopic().equals(theOther.getTopic());
+            } else {
+                return false;
+            }
+        }
+    }
+
+    static class ExecuteResponseMessageListener extends BaseMessageListener {
+        final static String TOPIC = EXECUTE_RESPONSE_TOPIC;
+
+        private final Provider<Messenger> messenger;
+
+        ExecuteResponseMessageListener(Provider<Messenger> messenger) {
+            this.messenger = messenger;
+        }
+
+        @Override
+        protected String getTopic() {
+            return TOPIC;
+        }
+
+        @Override
+        protected void handle(short fromNode, byte[] bytes) throws IOException {
+            ExecuteResponse resp = new ExecuteResponse(bytes);
+            // every chunk (including errors) is handed to the sender as is (see ExecuteResults)
+            progress(resp.requestId, resp);
+        }
+
+        protected void progress(UUID requestId, ExecuteResponse chunk) {
+            messenger.get().progress(requestId, chunk);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj instanceof ExecuteResponseMessageListener) {
+                ExecuteResponseMessageListener theOther = (ExecuteResponseMessageListener) obj;
+                return getTopic().equals(theOther.getTopic());
+            } else {
+                return false;
+            }
+        }
+    }
 }
@@ -23,6 +23,8 @@ import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.io.Output;
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
@@ -44,6 +46,11 @@ public class GUID extends Sizable implements Comparable<GUID> {
         this.internalId = uuid;
     }
 
+    // for tuples that store their guid as two longs
+    GUID(long mostSignificantBits, long leastSignificantBits) {
+        this(new UUID(mostSignificantBits, leastSignificantBits));
+    }
+
     private GUID() {
         internalId = UUID.randomUUID();
         addObjectToObjectSize(internalId.getMostSignificantBits());
@@ -57,6 +64,50 @@ public class GUID extends Sizable implements Comparable<GUID> {
         return new GUID();
     }
 
+    /**
+     * GUIDs of rows with the same partition key share their upper half (a hash of the partition key).
+     * The lower half is random and keeps the rows apart.
+     * DistHash places GUIDs by their upper half. That's how all rows with the same partition key end up on the same node.
+     * The lower half carries a different variant than random GUIDs (see isPartitioned).
+     */
+    static GUID partitionedGUID(Comparable partitionKey) {
+        long random = UUID.randomUUID().getLeastSignificantBits();
+        return new GUID(partitionHash(partitionKey), (random & ~VARIANT_MASK) | PARTITIONED_VARIANT);
+    }
+
+    // random GUIDs are version 4 UUIDs and their variant bits are always 10
+    // partitioned GUIDs use the variant 110 (which is reserved and never handed out by UUID.randomUUID)
+    private static final long VARIANT_MASK = 0x7L << 61;
+    private static final long PARTITIONED_VARIANT = 0x6L << 61;
+
+    /**
+     * Returns true if this GUID was created by partitionedGUID (for any partition key).
+     * Only rows of partitioned tables have such GUIDs. New tuples never do.
+     */
+    boolean isPartitioned() {
+        return (getLeastSignificantBits() & VARIANT_MASK) == PARTITIONED_VARIANT;
+    }
+
+    /**
+     * Returns true if this GUID was created by partitionedGUID for this partition key.
+     */
+    boolean isInPartition(Comparable partitionKey) {
+        return getMostSignificantBits() == partitionHash(partitionKey);
+    }
+
+    // the string representation makes an int 5 and a long 5 land in the same partition
+    private static long partitionHash(Comparable partitionKey) {
+        return Hashing.murmur3_128().hashString(String.valueOf(partitionKey), Charsets.UTF_8).asLong();
+    }
+
+    long getMostSignificantBits() {
+        return internalId.getMostSignificantBits();
+    }
+
+    long getLeastSignificantBits() {
+        return internalId.getLeastSignificantBits();
+    }
+
     @Override
     public String toString() {
         return internalId.toString();
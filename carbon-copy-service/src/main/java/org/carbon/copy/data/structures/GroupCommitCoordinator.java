@@ -0,0 +1,239 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.Store;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.carbon.copy.data.structures.DataStructure.TIMEOUT_SECS;
+
+/**
+ * Lots of small transactions end up paying for their own round of writes each.
+ * Transactions that opt into group commit don't write their blocks themselves.
+ * They serialize their blocks and park the bytes here.
+ * Every now and then (GROUP_COMMIT_WINDOW_MICROS after the first transaction joined a group) all parked blocks are written.
+ * All transactions in a group are done when all blocks of the group are written.
+ *
+ * Transactions hand over their local locks as soon as their blocks are parked.
+ * The next transaction on this node can build on top of a parked block and end up in the same group.
+ * The remote lock of a parked block is only released once the block is written.
+ * That way other nodes can't read the old version of it from galaxy.
+ * Parked bytes are only visible to lock-free readers on this node (see DataStructure).
+ * If writing a group fails, all its blocks are unparked, their remote locks are released,
+ * and every transaction of the group fails.
+ */
+class GroupCommitCoordinator {
+    private static final Logger logger = LoggerFactory.getLogger(GroupCommitCoordinator.class);
+    static final long GROUP_COMMIT_WINDOW_MICROS = 1000;
+    // needs to be a power of two
+    private static final int NUM_WRITE_MUTEXES = 64;
+
+    // block id -> latest parked version of the block
+    private static final ConcurrentHashMap<Long, ParkedBlock> parkedBlocks = new ConcurrentHashMap<>();
+    // writing a block to galaxy and parking a newer version of it need to be ordered
+    // otherwise an older version could overtake a newer one on its way to galaxy
+    private static final Object[] writeMutexes = new Object[NUM_WRITE_MUTEXES];
+    static {
+        for (int i = 0; i < NUM_WRITE_MUTEXES; i++) {
+            writeMutexes[i] = new Object();
+        }
+    }
+
+    private static final ScheduledExecutorService flushExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("group-commit-flush-%d").build()
+    );
+
+    // guarded by this
+    private List<Participant> currentGroup = new LinkedList<>();
+
+    // parked bytes of a block
+    // null bytes mark a block that is going to be deleted
+    static class ParkedBlock {
+        private final byte[] bytes;
+
+        private ParkedBlock(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        boolean isDeleted() {
+            return bytes == null;
+        }
+
+        byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    // a transaction waiting for its blocks to be written
+    static class Participant {
+        private final Store store;
+        private final Set<Long> blockIds;
+        private final SettableFuture<Void> future = SettableFuture.create();
+
+        Participant(Store store, Set<Long> blockIds) {
+            this.store = store;
+            this.blockIds = blockIds;
+        }
+
+        ListenableFuture<Void> getFuture() {
+            return future;
+        }
+
+        Set<Long> getBlockIds() {
+            return blockIds;
+        }
+    }
+
+    // returns the bytes of a block that has been committed but not written yet (or null)
+    static ParkedBlock getParkedBlock(long blockId) {
+        return parkedBlocks.isEmpty() ? null : parkedBlocks.get(blockId);
+    }
+
+    // needs to be called while holding the local lock on the block
+    static void park(long blockId, byte[] bytes) {
+        synchronized (writeMutexFor(blockId)) {
+            parkedBlocks.put(blockId, new ParkedBlock(bytes));
+        }
+    }
+
+    // is called by the lock table while holding the stripe of the block (see TxnManagerImpl.unpark)
+    // a newer version of the block might have been parked in the meantime and stays
+    static void unpark(long blockId, ParkedBlock parkedBlock) {
+        parkedBlocks.remove(blockId, parkedBlock);
+    }
+
+    // transactions that don't group commit write their blocks straight to galaxy
+    // they need to make sure an older parked version of the block doesn't overwrite theirs later
+    // needs to be called while holding the local lock on the block
+    static ListenableFuture writeThrough(long blockId, Supplier<ListenableFuture> write) {
+        if (parkedBlocks.isEmpty()) {
+            return write.get();
+        }
+
+        synchronized (writeMutexFor(blockId)) {
+            parkedBlocks.remove(blockId);
+            return write.get();
+        }
+    }
+
+    // all blocks of the participant need to be parked already
+    // the future of the participant completes when all blocks of its group are written
+    void join(Participant participant) {
+        boolean isFirst;
+        synchronized (this) {
+            isFirst = currentGroup.isEmpty();
+            currentGroup.add(participant);
+        }
+
+        if (isFirst) {
+            flushExecutor.schedule(this::flush, GROUP_COMMIT_WINDOW_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void flush() {
+        List<Participant> group;
+        synchronized (this) {
+            group = currentGroup;
+            currentGroup = new LinkedList<>();
+        }
+
+        if (group.isEmpty()) {
+            return;
+        }
+
+        Store store = group.get(0).store;
+        Set<Long> blockIds = new HashSet<>();
+        group.forEach(p -> blockIds.addAll(p.blockIds));
+
+        List<ListenableFuture<Void>> writes = new LinkedList<>();
+        Map<Long, ParkedBlock> writtenBlocks = new ConcurrentHashMap<>();
+        try {
+            for (Long blockId : blockIds) {
+                synchronized (writeMutexFor(blockId)) {
+                    ParkedBlock parkedBlock = parkedBlocks.get(blockId);
+                    // the block might have been written by an earlier group
+                    // or by a transaction that didn't group commit
+                    if (parkedBlock != null) {
+                        writtenBlocks.put(blockId, parkedBlock);
+                        writes.add(parkedBlock.isDeleted()
+                                ? store.delAsync(blockId, null)
+                                : store.setAsync(blockId, parkedBlock.getBytes(), null)
+                        );
+                    }
+                }
+            }
+        } catch (Exception xcp) {
+            writes.add(Futures.immediateFailedFuture(xcp));
+        }
+
+        ListenableFuture<List<Void>> allWrites = Futures.withTimeout(Futures.allAsList(writes), TIMEOUT_SECS, TimeUnit.SECONDS, flushExecutor);
+        Futures.addCallback(allWrites, new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(List<Void> result) {
+                // galaxy has the blocks now
+                // unless somebody parked a newer version in the meantime
+                unparkAll(store, writtenBlocks);
+                group.forEach(p -> p.future.set(null));
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // there's no telling what galaxy has
+                // but holding on to the blocks would get this node stuck for good
+                logger.error("Writing group of {} transactions failed", group.size(), t);
+                unparkAll(store, writtenBlocks);
+                group.forEach(p -> p.future.setException(t));
+            }
+        }, MoreExecutors.directExecutor());
+    }
+
+    private static void unparkAll(Store store, Map<Long, ParkedBlock> blocks) {
+        blocks.forEach((blockId, parkedBlock) -> {
+            try {
+                if (TxnManagerImpl.unpark(blockId, parkedBlock)) {
+                    store.release(blockId);
+                }
+            } catch (Exception xcp) {
+                logger.error("Releasing block {} failed", blockId, xcp);
+            }
+        });
+    }
+
+    private static Object writeMutexFor(long blockId) {
+        return writeMutexes[(int) (blockId ^ (blockId >>> 32)) & (NUM_WRITE_MUTEXES - 1)];
+    }
+}
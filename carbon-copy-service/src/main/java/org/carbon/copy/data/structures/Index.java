@@ -20,24 +20,37 @@ package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.galaxy.Store;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class Index extends TopLevelDataStructure {
+    /**
+     * The tree implementation an index is backed by.
+     * The BTree is the default. The SIB+ tree packs many more keys into a cache line
+     * and therefore needs to fetch fewer cache lines per lookup.
+     */
+    public enum BackingTree {
+        BTREE,
+        SIB_PLUS_TREE
+    }
+
     // this tree holds the index data
-    private BTree<Tuple, GUID> bTree;
+    private SortedDataStructure<Tuple, GUID> tree;
+    private BackingTree backingTree = BackingTree.BTREE;
 
     Index(Store store, InternalDataStructureFactory dsFactory, Builder builder, Txn txn) {
         super(store, dsFactory, txn, builder.getName());
+        backingTree = builder.getBackingTree();
         // create new tree
-        bTree = dsFactory.newBTree(txn);
-        txn.addToChangedObjects(bTree);
+        tree = newTree(backingTree, txn);
+        txn.addToChangedObjects((DataStructure) tree);
         // wait for it to be upserted and
         // have an id
-        bTree.checkDataStructureRetrieved();
-        addObjectToObjectSize(bTree.getId());
+        addObjectToObjectSize(tree.getId());
+        addObjectToObjectSize(backingTree.ordinal());
         // only then upsert yourself
         asyncUpsert(txn);
         addColumns(txn, builder.getColumnMetadata());
@@ -56,24 +69,51 @@ public class Index extends TopLevelDataStructure {
     public void insert(Tuple tuple, GUID guid, Txn txn) {
         checkDataStructureRetrieved();
         verifyDataColumnTypes(tuple);
-        bTree.put(tuple, guid, txn);
+        tree.put(tuple, guid, txn);
     }
 
     public GUID get(Tuple tuple) {
         checkDataStructureRetrieved();
         verifyDataColumnTypes(tuple);
-        return bTree.get(tuple);
+        return tree.get(tuple);
     }
 
     public Iterable<GUID> get(Tuple fromTuple, Tuple toTuple) {
         checkDataStructureRetrieved();
         verifyDataColumnTypes(fromTuple);
         verifyDataColumnTypes(toTuple);
-        return bTree.get(fromTuple, toTuple);
+        return tree.get(fromTuple, toTuple);
     }
 
     public Stream<Tuple> keys() {
-        return StreamSupport.stream(bTree.keys().spliterator(), false);
+        return StreamSupport.stream(tree.keys().spliterator(), false);
+    }
+
+    public BackingTree getBackingTree() {
+        checkDataStructureRetrieved();
+        return backingTree;
+    }
+
+    private SortedDataStructure<Tuple, GUID> newTree(BackingTree backingTree, Txn txn) {
+        switch (backingTree) {
+            case SIB_PLUS_TREE:
+                return dsFactory.newSibPlusTree(txn);
+            case BTREE:
+                return dsFactory.newBTree(txn);
+            default:
+                throw new IllegalArgumentException("Unknown tree type " + backingTree);
+        }
+    }
+
+    private SortedDataStructure<Tuple, GUID> loadTree(BackingTree backingTree, long id) {
+        switch (backingTree) {
+            case SIB_PLUS_TREE:
+                return dsFactory.loadSibPlusTree(id);
+            case BTREE:
+                return dsFactory.loadBTree(id);
+            default:
+                throw new IllegalArgumentException("Unknown tree type " + backingTree);
+        }
     }
 
     public static Builder newBuilder(String name) {
@@ -83,11 +123,17 @@ public class Index extends TopLevelDataStructure {
     public static class Builder {
         private List<Tuple> columnMetadata = new ArrayList<>();
         private final String name;
+        private BackingTree backingTree = BackingTree.BTREE;
 
         private Builder(String name) {
             this.name = name;
         }
 
+        public Index.Builder withBackingTree(BackingTree backingTree) {
+            this.backingTree = backingTree;
+            return this;
+        }
+
         public Index.Builder withColumn(String name, int index, Class type) {
             Tuple col = new Tuple(3);
             col.put(0, name);
@@ -108,6 +154,10 @@ public class Index extends TopLevelDataStructure {
         private String getName() {
             return name;
         }
+
+        private BackingTree getBackingTree() {
+            return backingTree;
+        }
     }
 
     /////////////////////////////////////////////////////////////
@@ -117,8 +167,11 @@ public class Index extends TopLevelDataStructure {
     @Override
     void serialize(SerializerOutputStream out) {
         super.serialize(out);
-        if (bTree != null) {
-            out.writeObject(bTree.getId());
+        if (tree != null) {
+            out.writeObject(tree.getId());
+            // indexes that were written before there was a choice
+            // don't have this and are backed by a BTree
+            out.writeObject(backingTree.ordinal());
         }
     }
 
@@ -126,6 +179,12 @@ public class Index extends TopLevelDataStructure {
     void deserialize(SerializerInputStream in) {
         super.deserialize(in);
         Long tmp = (Long) in.readObject();
-        bTree = dsFactory.loadBTree(tmp);
+        try {
+            Integer treeType = (in.available() > 0) ? (Integer) in.readObject() : null;
+            backingTree = (treeType != null) ? BackingTree.values()[treeType] : BackingTree.BTREE;
+        } catch (IOException xcp) {
+            throw new RuntimeException(xcp);
+        }
+        tree = loadTree(backingTree, tmp);
     }
 }
@@ -30,11 +30,15 @@ public interface InternalDataStructureFactory extends DataStructureFactory {
     <Key extends Comparable<Key>, Value> DataBlock<Key, Value> newDataBlock(Txn txn);
     <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlock(long id);
     <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlockProxy(long id);
+    <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlockProxy(long id, ReadSnapshot readSnapshot);
     <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadDataBlockForWrites(long id, Txn txn);
+    // shared by all readers on this node -- don't change it (see DecodedBlockCache)
+    <Key extends Comparable<Key>, Value> DataBlock<Key, Value> loadSharedDataBlock(long id);
 
     <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> newChainingHash(Txn txn);
     <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> newChainingHashWithNumBuckets(int numBuckets, Txn txn);
     <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> loadChainingHash(long id);
+    <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> loadChainingHash(long id, ReadSnapshot readSnapshot);
     <Key extends Comparable<Key>, Value> ChainingHash<Key, Value> loadChainingHashForWrites(long id, Txn txn);
 
     <Key extends Comparable<Key>, Value> BTreeNode<Key, Value> newBTreeNode(int numChildren, Txn txn);
@@ -45,7 +49,19 @@ public interface InternalDataStructureFactory extends DataStructureFactory {
     <Key extends Comparable<Key>, Value> BTree<Key, Value> loadBTree(long id);
     <Key extends Comparable<Key>, Value> BTree<Key, Value> loadBTreeForWrites(long id, Txn txn);
 
+    <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> newSibPlusTreeNodeGroup(boolean isLeaf, Txn txn);
+    <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> loadSibPlusTreeNodeGroup(long id);
+    <Key extends Comparable<Key>, Value> SibPlusTreeNodeGroup<Key, Value> loadSibPlusTreeNodeGroupProxy(long id);
+
+    <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> newSibPlusTree(Txn txn);
+    <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> loadSibPlusTree(long id);
+    <Key extends Comparable<Key>, Value> SibPlusTree<Key, Value> loadSibPlusTreeForWrites(long id, Txn txn);
+
     <Key extends Comparable<Key>, Value> DistHash<Key, Value> newDistHash(Txn txn);
     <Key extends Comparable<Key>, Value> DistHash<Key, Value> loadDistHash(long id);
+    <Key extends Comparable<Key>, Value> DistHash<Key, Value> loadDistHash(long id, ReadSnapshot readSnapshot);
     <Key extends Comparable<Key>, Value> DistHash<Key, Value> loadDistHashForWrites(long id, Txn txn);
+
+    // the node this factory hands out data structures on
+    short getMyNodeId();
 }
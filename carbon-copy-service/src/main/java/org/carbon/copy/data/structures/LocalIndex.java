@@ -0,0 +1,227 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A node-local, in-memory ordered index over one column of a table.
+ * It maps column values to the GUIDs of the rows carrying them and lets us answer range predicates
+ * without walking cache lines at all.
+ *
+ * Nothing about this index lives in galaxy. It's built lazily the first time somebody asks for it
+ * (which after a restart means it's rebuilt from the table) and is kept up to date by
+ * inserts that commit on this node.
+ * That's also its limitation: rows that were inserted on other nodes after the index was built don't show up.
+ * Every node counts its inserts into a table with local indexes though (see Table.insert).
+ * An index remembers the counts of all other nodes when it's built. If any of them moved on since,
+ * the index is incomplete and is rebuilt before it's used.
+ * Hence this only pays off on tables that are written on the same node they are read on.
+ */
+class LocalIndex {
+    // node-wide registry of all local indexes
+    // table id -> column name -> local index
+    private static final ConcurrentHashMap<Long, ConcurrentHashMap<String, LocalIndex>> localIndexes = new ConcurrentHashMap<>();
+
+    private final int columnIndex;
+    private final SkipList<Tuple, GUID> skipList = new SkipList<>();
+    // rows without a value in this column
+    // they have no place in the skip list but ordered scans still need to find them
+    private final Set<GUID> nullGuids = ConcurrentHashMap.newKeySet();
+    // guid -> the value the row is indexed under (empty for rows without a value)
+    // that's how I find the old entry when a row is overwritten
+    private final ConcurrentHashMap<GUID, Optional<Tuple>> indexedValues = new ConcurrentHashMap<>();
+    // counter id -> number of inserts of the other nodes when the index was built (see Table.getRemoteInsertCounts)
+    private final Map<Long, Long> remoteInsertCounts;
+    private final CountDownLatch built = new CountDownLatch(1);
+    // rows the build has indexed so far (there's only one thread building an index)
+    // threads waiting for the build keep waiting as long as this keeps moving
+    private volatile long numRowsBuilt = 0;
+    // set if building the index failed
+    // threads that waited for the build need to fail as well instead of using half an index
+    private volatile RuntimeException buildFailure;
+
+    private LocalIndex(int columnIndex, Map<Long, Long> remoteInsertCounts) {
+        this.columnIndex = columnIndex;
+        this.remoteInsertCounts = remoteInsertCounts;
+    }
+
+    /**
+     * Returns an index that knows about all rows of this table (and maybe a few more).
+     * Indexes that missed inserts of other nodes are thrown away and built anew.
+     */
+    static LocalIndex getOrBuild(Table table, String columnName, int columnIndex) {
+        Map<String, LocalIndex> indexesForTable = localIndexes.computeIfAbsent(table.getId(), id -> new ConcurrentHashMap<>());
+        // the counts are taken before the table is scanned
+        // inserts of other nodes that are counted by then are in the table as well
+        Map<Long, Long> remoteInsertCounts = table.getRemoteInsertCounts();
+        while (true) {
+            LocalIndex index = indexesForTable.get(columnName);
+            if (index == null) {
+                LocalIndex newIndex = new LocalIndex(columnIndex, remoteInsertCounts);
+                index = indexesForTable.putIfAbsent(columnName, newIndex);
+                if (index == null) {
+                    // I won the race and get to build the index
+                    // inserts that commit while I'm scanning the table are added by onInsert
+                    // they are newer than whatever I read from the table and win (see add)
+                    index = newIndex;
+                    try {
+                        table.keys().forEach(guid -> {
+                            newIndex.add(table.getMutable(guid), false);
+                            newIndex.numRowsBuilt++;
+                        });
+                    } catch (RuntimeException xcp) {
+                        indexesForTable.remove(columnName, newIndex);
+                        newIndex.buildFailure = xcp;
+                        throw xcp;
+                    } finally {
+                        newIndex.built.countDown();
+                    }
+                }
+            }
+            index.waitUntilBuilt();
+            if (index.isComplete(remoteInsertCounts)) {
+                return index;
+            }
+            // somebody inserted rows on another node
+            indexesForTable.remove(columnName, index);
+        }
+    }
+
+    /**
+     * Returns false if there's an index on this column that missed inserts of other nodes.
+     * That index is thrown away right away and the next scan that needs it builds it anew.
+     * Columns that aren't indexed yet count as complete -- their index is built from the table the first time it's used.
+     */
+    static boolean isComplete(long tableId, String columnName, Map<Long, Long> remoteInsertCounts) {
+        Map<String, LocalIndex> indexesForTable = localIndexes.get(tableId);
+        LocalIndex index = (indexesForTable != null) ? indexesForTable.get(columnName) : null;
+        if (index == null || index.built.getCount() > 0 || index.isComplete(remoteInsertCounts)) {
+            return true;
+        }
+        indexesForTable.remove(columnName, index);
+        return false;
+    }
+
+    /**
+     * Is called after a transaction that inserted this tuple committed on this node.
+     */
+    static void onInsert(long tableId, Tuple tuple) {
+        Map<String, LocalIndex> indexesForTable = localIndexes.get(tableId);
+        if (indexesForTable != null) {
+            indexesForTable.values().forEach(index -> index.add(tuple, true));
+        }
+    }
+
+    /**
+     * Is called after a transaction that deleted this table committed.
+     */
+    static void onDrop(long tableId) {
+        localIndexes.remove(tableId);
+    }
+
+    /**
+     * Both ends of the range are inclusive. Passing null leaves this end of the range open.
+     */
+    Iterable<GUID> get(Comparable from, Comparable to) {
+        return skipList.get(
+                (from != null) ? Tuple.builder().add(from).build() : null,
+                (to != null) ? Tuple.builder().add(to).build() : null
+        );
+    }
+
+    /**
+     * Returns all values in this column along with the GUIDs of their rows ordered by value.
+     * Overwrites that committed on other nodes aren't known to this index.
+     * Callers need to check whether the row still has the value.
+     */
+    Stream<Map.Entry<Comparable, GUID>> entries() {
+        return StreamSupport.stream(skipList.entries(null, null).spliterator(), false)
+                .map(entry -> new AbstractMap.SimpleImmutableEntry<>(entry.getKey().get(0), entry.getValue()));
+    }
+
+    /**
+     * Returns the GUIDs of all rows that had no value in this column when they were indexed.
+     */
+    Stream<GUID> nullGuids() {
+        return nullGuids.stream();
+    }
+
+    // rows that are indexed already are only replaced by an overwrite
+    // the build doesn't replace anything because onInsert might have seen a newer version of the row already
+    private void add(Tuple tuple, boolean isOverwrite) {
+        if (tuple == null) {
+            return;
+        }
+        Optional<Tuple> value = Optional.ofNullable((tuple.get(columnIndex) != null) ? tuple.subTuple(columnIndex, columnIndex + 1) : null);
+        // compute makes sure nobody else changes the entries of this row in the meantime
+        indexedValues.compute(tuple.getGuid(), (guid, previous) -> {
+            if (previous != null && (!isOverwrite || previous.equals(value))) {
+                return previous;
+            }
+            if (previous != null) {
+                if (previous.isPresent()) {
+                    skipList.delete(previous.get(), guid);
+                } else {
+                    nullGuids.remove(guid);
+                }
+            }
+            if (value.isPresent()) {
+                skipList.insert(value.get(), guid);
+            } else {
+                nullGuids.add(guid);
+            }
+            return value;
+        });
+    }
+
+    // counts only ever go up and nodes that insert for the first time add a counter
+    // that's why any difference means the index missed inserts
+    private boolean isComplete(Map<Long, Long> currentRemoteInsertCounts) {
+        return remoteInsertCounts.equals(currentRemoteInsertCounts);
+    }
+
+    // building an index on a big table takes a while
+    // I only give up on a build that didn't get any further for TIMEOUT_SECS
+    private void waitUntilBuilt() {
+        try {
+            long lastNumRowsBuilt = numRowsBuilt;
+            while (!built.await(DataStructure.TIMEOUT_SECS, TimeUnit.SECONDS)) {
+                long currentNumRowsBuilt = numRowsBuilt;
+                if (currentNumRowsBuilt == lastNumRowsBuilt) {
+                    throw new IllegalStateException("Building local index on column " + columnIndex + " is stuck after " + currentNumRowsBuilt + " rows");
+                }
+                lastNumRowsBuilt = currentNumRowsBuilt;
+            }
+            if (buildFailure != null) {
+                throw new IllegalStateException("Building local index on column " + columnIndex + " failed", buildFailure);
+            }
+        } catch (InterruptedException xcp) {
+            throw new RuntimeException(xcp);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+/**
+ * A snapshot of how much threads on this node have been fighting over local block locks.
+ * All numbers are counted since the node started.
+ */
+public class LockContentionStats {
+    private final long acquisitions;
+    private final long contendedAcquisitions;
+    private final long timeouts;
+    private final long aborts;
+    private final long totalWaitMillis;
+
+    LockContentionStats(long acquisitions, long contendedAcquisitions, long timeouts, long aborts, long totalWaitMillis) {
+        this.acquisitions = acquisitions;
+        this.contendedAcquisitions = contendedAcquisitions;
+        this.timeouts = timeouts;
+        this.aborts = aborts;
+        this.totalWaitMillis = totalWaitMillis;
+    }
+
+    // all attempts to lock a block
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    // attempts that found the block locked by somebody else and had to wait
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions;
+    }
+
+    // attempts that gave up waiting
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    // attempts of younger transactions that ran into an older transaction and were aborted
+    public long getAborts() {
+        return aborts;
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "acquisitions: " + acquisitions
+                + " contended: " + contendedAcquisitions
+                + " timeouts: " + timeouts
+                + " aborts: " + aborts
+                + " waited: " + totalWaitMillis + "ms";
+    }
+}
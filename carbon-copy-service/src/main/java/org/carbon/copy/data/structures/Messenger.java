@@ -1,6 +1,7 @@
 package org.carbon.copy.data.structures;
 
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
 
 /**
@@ -8,6 +9,7 @@ import java.util.concurrent.Future;
  * The added value by this implementation is bookkeeping around requests and responses
  * which are embedded in more handy and native java primitives (such as Futures).
  * Right now this messenger assumes you only do request-response-style communication.
+ * The only exception are requests that are answered with many responses (see sendStreaming).
  * More complicated protocols are not supported.
  */
 interface Messenger {
@@ -28,4 +30,22 @@ interface Messenger {
      * of the corresponding Future.
      */
     void complete(UUID requestId, Object result);
+
+    /**
+     * Same as send but the recipient can answer with any number of responses.
+     * Every response that is handed over with progress ends up in the queue (in the order they arrive).
+     * It's up to the holder of the queue to tell when all responses are in and to call cancel then.
+     */
+    BlockingQueue<Object> sendStreaming(short toNode, BaseMessage message);
+
+    /**
+     * This hands one of many responses of a request sent with sendStreaming to the holder of the queue.
+     * Responses for requests nobody listens to anymore are dropped.
+     */
+    void progress(UUID requestId, Object result);
+
+    /**
+     * Stops listening for responses to this request.
+     */
+    void cancel(UUID requestId);
 }
@@ -5,8 +5,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 
 class MessengerImpl implements Messenger {
     private static final Logger logger = LoggerFactory.getLogger(MessengerImpl.class);
@@ -15,6 +17,9 @@ class MessengerImpl implements Messenger {
     // the response is expected to have the same request id in it's body
     // this way we can look up the corresponding future in the map and release the caller
     private static final ConcurrentHashMap<UUID, CarbonCopyFuture> inProgressRequests = new ConcurrentHashMap<>(16, 0.75f, 8);
+    // same thing for requests that are answered with many responses
+    // they stay in here until the sender has seen enough and cancels them
+    private static final ConcurrentHashMap<UUID, BlockingQueue<Object>> inProgressStreams = new ConcurrentHashMap<>(16, 0.75f, 8);
     private co.paralleluniverse.galaxy.Messenger messenger;
 
     @Inject
@@ -58,4 +63,34 @@ class MessengerImpl implements Messenger {
             logger.warn("Couldn't find future with id " + requestId);
         }
     }
+
+    @Override
+    public BlockingQueue<Object> sendStreaming(short toNode, BaseMessage messageToSend) {
+        BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+        // same as in send
+        UUID requestId;
+        do {
+            requestId = UUID.randomUUID();
+        } while(inProgressRequests.containsKey(requestId) || inProgressStreams.putIfAbsent(requestId, queue) != null);
+
+        messageToSend.setRequestId(requestId);
+        messageToSend.send(messenger, toNode);
+        return queue;
+    }
+
+    @Override
+    public void progress(UUID requestId, Object result) {
+        BlockingQueue<Object> queue = inProgressStreams.get(requestId);
+        // the sender might have stopped listening before all responses came in
+        // there's no point in complaining about that
+        if (queue != null) {
+            queue.offer(result);
+        }
+    }
+
+    @Override
+    public void cancel(UUID requestId) {
+        inProgressStreams.remove(requestId);
+    }
 }
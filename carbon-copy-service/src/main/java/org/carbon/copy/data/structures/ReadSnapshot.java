@@ -0,0 +1,127 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.common.io.Persistable;
+import co.paralleluniverse.galaxy.Store;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * A consistent, read-only view of all data as it was committed on this node when the snapshot was opened.
+ * Data structures loaded with a snapshot don't see any changes that were committed after that
+ * and they never wait for writers to finish their commit.
+ * Keeping a snapshot open makes every commit on this node hold on to the previous versions of the blocks it changes.
+ * That's why you want to close snapshots as soon as you're done with them.
+ */
+public class ReadSnapshot implements AutoCloseable {
+    // reading at this version means reading whatever was committed last (see TxnManager.joinSnapshot)
+    static final long LATEST = Long.MAX_VALUE;
+
+    private final VersionStore versionStore;
+    private final long version;
+    // snapshots that join a snapshot opened elsewhere don't pin their version
+    // the snapshot they joined does that for them
+    private final boolean isPinned;
+    private final AtomicBoolean isClosed = new AtomicBoolean(false);
+    // block id -> data structure loaded in this snapshot
+    // the data in a snapshot never changes so there's no point in loading a block twice
+    private final Map<Long, DataStructure> loadedObjects = new ConcurrentHashMap<>();
+
+    ReadSnapshot(VersionStore versionStore, long version) {
+        this(versionStore, version, true);
+    }
+
+    ReadSnapshot(VersionStore versionStore, long version, boolean isPinned) {
+        this.versionStore = versionStore;
+        this.version = version;
+        this.isPinned = isPinned;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // the factory loads every block at most once per snapshot
+    // (no computeIfAbsent because loading a data structure might load other data structures)
+    @SuppressWarnings("unchecked")
+    <T extends DataStructure> T loadOnce(long id, Supplier<T> loader) {
+        DataStructure ds = loadedObjects.get(id);
+        if (ds == null) {
+            DataStructure loaded = loader.get();
+            ds = loadedObjects.putIfAbsent(id, loaded);
+            if (ds == null) {
+                ds = loaded;
+            }
+        }
+        return (T) ds;
+    }
+
+    <T extends DataStructure> ListenableFuture<Persistable> asyncLoad(Store store, long id, T o) {
+        if (isClosed.get()) {
+            throw new IllegalStateException("Snapshot " + version + " is closed already");
+        }
+
+        // the block might have been deleted after the snapshot was opened
+        // in that case there's no current version but (hopefully) a pre-image
+        ListenableFuture<byte[]> current = Futures.catching(store.getAsync(id), Exception.class, xcp -> null, MoreExecutors.directExecutor());
+        return Futures.transform(current, (byte[] bytes) -> {
+            byte[] bytesInSnapshot = versionStore.resolve(id, version, bytes);
+            if (bytesInSnapshot == null) {
+                throw new IllegalStateException("Block " + id + " doesn't exist in snapshot " + version);
+            }
+            o.read(bytesInSnapshot);
+            return o;
+        }, MoreExecutors.directExecutor());
+    }
+
+    // ids of all blocks that were read in this snapshot so far
+    Set<Long> getLoadedBlockIds() {
+        return new HashSet<>(loadedObjects.keySet());
+    }
+
+    /**
+     * Returns true if none of these blocks were changed by commits on this node after this snapshot was opened.
+     * Reading these blocks without the snapshot gives the same bytes then (see VersionStore about commits of other nodes).
+     */
+    boolean isUnchangedInSnapshot(Collection<Long> blockIds) {
+        return !versionStore.hasPreImagesNewerThan(blockIds, version);
+    }
+
+    @Override
+    public void close() {
+        if (isClosed.compareAndSet(false, true) && isPinned) {
+            versionStore.closeSnapshot(version);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ReadSnapshot - " + version;
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Direct buffers that are reused for serializing and compressing blocks.
+ * Allocating direct buffers is expensive and every block that is read or written needs a few of them.
+ * Just like with the KryoPool you borrow a buffer and release it when you're done.
+ * Borrowing while you're holding a buffer already (say deserializing a block loads another block)
+ * simply hands out a different buffer.
+ * The pool is shared by all threads and only keeps a few buffers per core around.
+ * Lots of threads (e.g. galaxy's) don't pin lots of direct memory that way.
+ * When the pool runs dry, buffers are allocated and left to the garbage collector.
+ */
+class ScratchBuffers {
+    // big enough for most blocks uncompressed
+    private static final int MIN_CAPACITY = 4 * Sizable.MAX_BYTE_SIZE;
+    // kryo grows buffers for big blocks
+    // I don't want to keep those around
+    private static final int MAX_POOLED_CAPACITY = 4 * MIN_CAPACITY;
+    private static final int MAX_POOLED_BUFFERS = 4 * Runtime.getRuntime().availableProcessors();
+
+    private static final ArrayBlockingQueue<ByteBuffer> buffers = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    private ScratchBuffers() {}
+
+    // the buffer is cleared (position 0, limit capacity)
+    static ByteBuffer borrow(int capacity) {
+        ByteBuffer bb = buffers.poll();
+        if (bb == null || bb.capacity() < capacity) {
+            // buffers that are too small are dropped
+            // the bigger buffer takes their place when it's released
+            bb = ByteBuffer.allocateDirect(Math.max(capacity, MIN_CAPACITY));
+        }
+        bb.clear();
+        return bb;
+    }
+
+    // a full pool simply drops the buffer
+    static void release(ByteBuffer bb) {
+        if (bb.isDirect() && bb.capacity() <= MAX_POOLED_CAPACITY) {
+            buffers.offer(bb);
+        }
+    }
+}
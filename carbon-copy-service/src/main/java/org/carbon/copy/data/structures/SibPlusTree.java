@@ -0,0 +1,249 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.Store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The idea of a SIB+ tree is to be cache conscious: the unit of I/O should be as full as possible
+ * and searching inside of it should be cheap.
+ * For us the unit of I/O is a galaxy cache line.
+ * Hence every node group (see SibPlusTreeNodeGroup) maps to exactly one cache line and
+ * holds as many sorted keys as fit into it. The BTree on the other hand
+ * spends an entire cache line on a handful of entries and walks them linearly.
+ *
+ * Semantically this tree behaves like the BTree: keys are unique and a put on an existing key
+ * overrides the value.
+ */
+class SibPlusTree<Key extends Comparable<Key>, Value> extends DataStructure implements SortedDataStructure<Key, Value> {
+    // a node group splits when it has more entries than this
+    // or when it doesn't fit into a cache line anymore (whatever comes first)
+    static final int MAX_ENTRIES_PER_NODE_GROUP = 64;
+
+    private final InternalDataStructureFactory dsFactory;
+    private SibPlusTreeNodeGroup<Key, Value> root;
+    // height of the tree -- a tree with only a leaf group has height 0
+    private int height;
+
+    SibPlusTree(Store store, InternalDataStructureFactory dsFactory, Txn txn) {
+        super(store);
+        this.dsFactory = dsFactory;
+        asyncUpsert(txn);
+        root = dsFactory.newSibPlusTreeNodeGroup(true, txn);
+        addObjectToObjectSize(height);
+        root.checkDataStructureRetrieved();
+        addObjectToObjectSize(root.getId());
+        txn.addToCreatedObjects(this);
+        // puts only touch the tree itself when the root splits
+        // hence I make sure the tree is written at least once with a root in it
+        txn.addToChangedObjects(this);
+    }
+
+    SibPlusTree(Store store, InternalDataStructureFactory dsFactory, long id) {
+        super(store, id);
+        this.dsFactory = dsFactory;
+        asyncLoadForReads();
+    }
+
+    SibPlusTree(Store store, InternalDataStructureFactory dsFactory, long id, Txn txn) {
+        super(store, id);
+        this.dsFactory = dsFactory;
+        asyncLoadForWrites(txn);
+    }
+
+    @Override
+    public Value get(Key key) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        checkDataStructureRetrieved();
+        SibPlusTreeNodeGroup<Key, Value> leaf = findLeaf(key, null);
+        int idx = leaf.lowerBound(key);
+        if (idx < leaf.getNumKeys() && leaf.getKeyAt(idx).compareTo(key) == 0) {
+            return leaf.getValueAt(idx);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Iterable<Value> get(Key fromKey, Key toKey) {
+        if (fromKey == null || toKey == null) throw new IllegalArgumentException("Keys cannot be null");
+        checkDataStructureRetrieved();
+        SibPlusTreeNodeGroup<Key, Value> leaf = findLeaf(fromKey, null);
+        int idx = leaf.lowerBound(fromKey);
+        return () -> new LeafIterator<Value>(leaf, idx, toKey) {
+            @Override
+            Value extract(SibPlusTreeNodeGroup<Key, Value> group, int i) {
+                return group.getValueAt(i);
+            }
+        };
+    }
+
+    @Override
+    public void put(Key key, Value value, Txn txn) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        checkDataStructureRetrieved();
+        List<SibPlusTreeNodeGroup<Key, Value>> path = new ArrayList<>(height + 1);
+        SibPlusTreeNodeGroup<Key, Value> leaf = findLeaf(key, path);
+
+        int idx = leaf.lowerBound(key);
+        if (idx < leaf.getNumKeys() && leaf.getKeyAt(idx).compareTo(key) == 0) {
+            // overrides don't change the shape of the tree
+            leaf.setValueAt(idx, value, txn);
+            if (!leaf.isFull()) return;
+        } else {
+            leaf.insertEntryAt(idx, key, value, txn);
+        }
+
+        // walk up the path and split groups as long as they overflow
+        SibPlusTreeNodeGroup<Key, Value> group = leaf;
+        int level = path.size() - 1;
+        while (group.isFull()) {
+            SibPlusTreeNodeGroup<Key, Value> right = group.split(txn);
+            Key separator = right.getKeyAt(0);
+            if (level == 0) {
+                // the root split
+                SibPlusTreeNodeGroup<Key, Value> newRoot = dsFactory.newSibPlusTreeNodeGroup(false, txn);
+                newRoot.checkDataStructureRetrieved();
+                newRoot.insertChildAt(0, group.getKeyAt(0), group, txn);
+                newRoot.insertChildAt(1, separator, right, txn);
+                txn.addToChangedObjects(this);
+                root = newRoot;
+                height++;
+                return;
+            } else {
+                SibPlusTreeNodeGroup<Key, Value> parent = path.get(level - 1);
+                parent.insertChildAt(parent.childIndexFor(separator) + 1, separator, right, txn);
+                group = parent;
+                level--;
+            }
+        }
+    }
+
+    @Override
+    public void delete(Key key, Txn txn) {
+        if (key == null) throw new IllegalArgumentException("Key cannot be null");
+        checkDataStructureRetrieved();
+        SibPlusTreeNodeGroup<Key, Value> leaf = findLeaf(key, null);
+        int idx = leaf.lowerBound(key);
+        if (idx < leaf.getNumKeys() && leaf.getKeyAt(idx).compareTo(key) == 0) {
+            // I don't merge groups that run low
+            // keeping them around is cheaper than shuffling cache lines around
+            leaf.removeEntryAt(idx, txn);
+        }
+    }
+
+    @Override
+    public Iterable<Key> keys() {
+        checkDataStructureRetrieved();
+        SibPlusTreeNodeGroup<Key, Value> group = root;
+        for (int i = 0; i < height; i++) {
+            group = group.getChildAt(0);
+        }
+        SibPlusTreeNodeGroup<Key, Value> first = group;
+
+        return () -> new LeafIterator<Key>(first, 0, null) {
+            @Override
+            Key extract(SibPlusTreeNodeGroup<Key, Value> group, int i) {
+                return group.getKeyAt(i);
+            }
+        };
+    }
+
+    int getHeight() {
+        checkDataStructureRetrieved();
+        return height;
+    }
+
+    // descends to the leaf group the key belongs to
+    // if a path is passed in, all groups on the way down are added to it
+    private SibPlusTreeNodeGroup<Key, Value> findLeaf(Key key, List<SibPlusTreeNodeGroup<Key, Value>> path) {
+        SibPlusTreeNodeGroup<Key, Value> group = root;
+        group.checkDataStructureRetrieved();
+        for (int i = 0; i < height; i++) {
+            if (path != null) path.add(group);
+            group = group.getChildAt(group.childIndexFor(key));
+        }
+        if (path != null) path.add(group);
+        return group;
+    }
+
+    /**
+     * Walks the leaf groups from left to right starting at the given position.
+     * Stops after the upper bound (if there is one).
+     */
+    private abstract class LeafIterator<T> implements Iterator<T> {
+        private SibPlusTreeNodeGroup<Key, Value> group;
+        private int idx;
+        private final Key upperBound;
+
+        LeafIterator(SibPlusTreeNodeGroup<Key, Value> group, int idx, Key upperBound) {
+            this.group = group;
+            this.idx = idx;
+            this.upperBound = upperBound;
+        }
+
+        @Override
+        public boolean hasNext() {
+            // groups can be empty after deletes
+            // skip over all of them
+            while (group != null && idx >= group.getNumKeys()) {
+                group = group.getNext();
+                idx = 0;
+            }
+            return group != null && (upperBound == null || group.getKeyAt(idx).compareTo(upperBound) <= 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            T t = extract(group, idx);
+            idx++;
+            return t;
+        }
+
+        abstract T extract(SibPlusTreeNodeGroup<Key, Value> group, int idx);
+    }
+
+    /////////////////////////////////////////////////////////////
+    //////////////////////////////////////////////
+    // galaxy-specific serialization overrides
+
+    @Override
+    void serialize(SerializerOutputStream out) {
+        if (root != null) {
+            out.writeObject(root.getId());
+            out.writeObject(height);
+        }
+    }
+
+    @Override
+    void deserialize(SerializerInputStream in) {
+        Long rootId = (Long) in.readObject();
+        if (rootId != null) {
+            root = dsFactory.loadSibPlusTreeNodeGroup(rootId);
+        }
+        Integer height = (Integer) in.readObject();
+        this.height = (height != null) ? height : 0;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.Store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * A node group is exactly one galaxy cache line.
+ * The SIB+ tree paper packs sibling nodes next to each other so that a parent only needs to know
+ * where the group starts. In galaxy the only thing that's contiguous is a cache line.
+ * That's why a node group here is a single sorted run of keys that fills up one cache line
+ * and is binary searched once it's fetched.
+ * Leaf groups carry values and a pointer to their right sibling,
+ * internal groups carry the ids of their child groups.
+ */
+class SibPlusTreeNodeGroup<Key extends Comparable<Key>, Value> extends DataStructure {
+    private final InternalDataStructureFactory dsFactory;
+    private boolean isLeaf;
+    private final ArrayList<Key> keys = new ArrayList<>();
+    // only used in leaf groups
+    private final ArrayList<Value> values = new ArrayList<>();
+    // only used in internal groups
+    private final ArrayList<SibPlusTreeNodeGroup<Key, Value>> children = new ArrayList<>();
+    // only used in leaf groups
+    private SibPlusTreeNodeGroup<Key, Value> next;
+
+    SibPlusTreeNodeGroup(Store store, InternalDataStructureFactory dsFactory, long id, boolean shouldLoad) {
+        super(store, id);
+        this.dsFactory = dsFactory;
+        if (shouldLoad) {
+            asyncLoadForReads();
+        }
+    }
+
+    SibPlusTreeNodeGroup(Store store, InternalDataStructureFactory dsFactory, boolean isLeaf, Txn txn) {
+        super(store);
+        this.dsFactory = dsFactory;
+        this.isLeaf = isLeaf;
+        asyncUpsert(txn);
+        // happens after upsert is kicked off
+        addObjectToObjectSize(1);
+        txn.addToCreatedObjects(this);
+    }
+
+    boolean isLeaf() {
+        checkDataStructureRetrieved();
+        return isLeaf;
+    }
+
+    int getNumKeys() {
+        checkDataStructureRetrieved();
+        return keys.size();
+    }
+
+    Key getKeyAt(int idx) {
+        checkDataStructureRetrieved();
+        return keys.get(idx);
+    }
+
+    Value getValueAt(int idx) {
+        checkDataStructureRetrieved();
+        return values.get(idx);
+    }
+
+    SibPlusTreeNodeGroup<Key, Value> getChildAt(int idx) {
+        checkDataStructureRetrieved();
+        return ensureLoaded(children.get(idx));
+    }
+
+    /**
+     * Contrary to the BTree this does load the next group.
+     */
+    SibPlusTreeNodeGroup<Key, Value> getNext() {
+        checkDataStructureRetrieved();
+        return (next != null) ? ensureLoaded(next) : null;
+    }
+
+    /**
+     * Index of the first key that is greater or equal than the key passed in.
+     * Returns getNumKeys() if all keys are smaller.
+     */
+    int lowerBound(Key key) {
+        checkDataStructureRetrieved();
+        int lo = 0;
+        int hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys.get(mid).compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the child group to descend to.
+     * That is the last key that is less or equal than the key passed in.
+     * If there's no such key, we descend into the left-most child.
+     */
+    int childIndexFor(Key key) {
+        checkDataStructureRetrieved();
+        int lo = 0;
+        int hi = keys.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys.get(mid).compareTo(key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return Math.max(lo - 1, 0);
+    }
+
+    void setValueAt(int idx, Value value, Txn txn) {
+        checkDataStructureRetrieved();
+        txn.addToChangedObjects(this);
+        subtractObjectToObjectSize(values.get(idx));
+        addObjectToObjectSize(value);
+        values.set(idx, value);
+    }
+
+    void insertEntryAt(int idx, Key key, Value value, Txn txn) {
+        checkDataStructureRetrieved();
+        txn.addToChangedObjects(this);
+        keys.add(idx, key);
+        values.add(idx, value);
+        addObjectToObjectSize(key);
+        addObjectToObjectSize(value);
+    }
+
+    void insertChildAt(int idx, Key key, SibPlusTreeNodeGroup<Key, Value> child, Txn txn) {
+        checkDataStructureRetrieved();
+        txn.addToChangedObjects(this);
+        keys.add(idx, key);
+        children.add(idx, child);
+        addObjectToObjectSize(key);
+        addObjectToObjectSize(child.getId());
+    }
+
+    void removeEntryAt(int idx, Txn txn) {
+        checkDataStructureRetrieved();
+        txn.addToChangedObjects(this);
+        subtractObjectToObjectSize(keys.remove(idx));
+        subtractObjectToObjectSize(values.remove(idx));
+    }
+
+    /**
+     * A group is full when it either has too many entries or
+     * when it doesn't fit into a cache line anymore.
+     * A group with a single entry can't be split any further.
+     */
+    boolean isFull() {
+        checkDataStructureRetrieved();
+        return keys.size() > 1 && (keys.size() > SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP || !isUnderMaxByteSize(0));
+    }
+
+    /**
+     * Moves the upper half of this group into a new group and returns the new group.
+     * The first key of the returned group is the separator the parent needs to know about.
+     */
+    SibPlusTreeNodeGroup<Key, Value> split(Txn txn) {
+        checkDataStructureRetrieved();
+        txn.addToChangedObjects(this);
+        SibPlusTreeNodeGroup<Key, Value> right = dsFactory.newSibPlusTreeNodeGroup(isLeaf, txn);
+        right.checkDataStructureRetrieved();
+        int half = keys.size() / 2;
+        int total = keys.size();
+        for (int i = half; i < total; i++) {
+            if (isLeaf) {
+                right.insertEntryAt(i - half, keys.get(i), values.get(i), txn);
+            } else {
+                right.insertChildAt(i - half, keys.get(i), children.get(i), txn);
+            }
+        }
+
+        for (int i = total - 1; i >= half; i--) {
+            subtractObjectToObjectSize(keys.remove(i));
+            if (isLeaf) {
+                subtractObjectToObjectSize(values.remove(i));
+            } else {
+                subtractObjectToObjectSize(children.remove(i).getId());
+            }
+        }
+
+        if (isLeaf) {
+            right.next = next;
+            next = right;
+            if (right.next == null) {
+                addObjectToObjectSize(right.getId());
+            } else {
+                right.addObjectToObjectSize(right.next.getId());
+            }
+        }
+        return right;
+    }
+
+    // freshly created groups are not loaded until their creation finished
+    // I need to be careful to not load them from galaxy again
+    // because that would throw away everything that's been put into them so far
+    private SibPlusTreeNodeGroup<Key, Value> ensureLoaded(SibPlusTreeNodeGroup<Key, Value> group) {
+        if (!group.isLoaded() && !group.checkDataStructureRetrieved()) {
+            group.asyncLoadForReads();
+        }
+        return group;
+    }
+
+    /////////////////////////////////////////////////////////////
+    //////////////////////////////////////////////
+    // galaxy-specific serialization overrides
+
+    @Override
+    void serialize(SerializerOutputStream out) {
+        out.writeObject(isLeaf ? 1 : 0);
+        out.writeObject(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            out.writeObject(keys.get(i));
+            if (isLeaf) {
+                out.writeObject(values.get(i));
+            } else {
+                out.writeObject(children.get(i).getId(), Long.class);
+            }
+        }
+        if (isLeaf) {
+            out.writeObject((next != null) ? next.getId() : null, Long.class);
+        }
+    }
+
+    @Override
+    void clearState() {
+        keys.clear();
+        values.clear();
+        children.clear();
+        next = null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    void deserialize(SerializerInputStream in) {
+        try {
+            Integer leafFlag = (Integer) in.readObject();
+            isLeaf = leafFlag == null || leafFlag == 1;
+            addObjectToObjectSize(1);
+            Integer tmp = (Integer) in.readObject();
+            int numKeys = (tmp != null) ? tmp : 0;
+
+            for (int i = 0; i < numKeys && in.available() > 0; i++) {
+                Key key = (Key) in.readObject();
+                keys.add(key);
+                addObjectToObjectSize(key);
+                if (isLeaf) {
+                    Value value = (Value) in.readObject();
+                    values.add(value);
+                    addObjectToObjectSize(value);
+                } else {
+                    Long childId = in.readObject(Long.class);
+                    children.add(dsFactory.loadSibPlusTreeNodeGroupProxy(childId));
+                    addObjectToObjectSize(childId);
+                }
+            }
+
+            if (isLeaf && in.available() > 0) {
+                Long nextId = in.readObject(Long.class);
+                addObjectToObjectSize(nextId);
+                if (nextId != null) {
+                    next = dsFactory.loadSibPlusTreeNodeGroupProxy(nextId);
+                }
+            }
+        } catch (IOException xcp) {
+            throw new RuntimeException(xcp);
+        }
+    }
+}
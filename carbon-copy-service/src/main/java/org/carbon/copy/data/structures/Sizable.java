@@ -19,8 +19,8 @@
 package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.common.io.Persistable;
-import org.xerial.snappy.Snappy;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
 
 /**
@@ -33,10 +33,11 @@ abstract class Sizable {
     static final short MAX_BYTE_SIZE = 32768
             - 2 // two leading bytes to decode the payload data size
             ;
+    private static final int PAYLOAD_SIZE_HEADER_LENGTH = 2;
 
-    // actually there's a +1 is for the kryo byte to identify the class
-    // however I hope that compression and not having the +1
-    // even out in the long run :)
+    // kryo writes a byte to identify the class in front of every object
+    // blocks aren't always compressed anymore so I can't hope for compression to even that out
+    private static final int KRYO_CLASS_ID_SIZE  = 1;
     private static final int LONG_FIELD_SIZE     = 8;
     private static final int INT_FIELD_SIZE      = 4;
     private static final int SHORT_FIELD_SIZE    = 2;
@@ -57,11 +58,10 @@ abstract class Sizable {
         // 16: for a few leading bytes to put the number of elements in the object somewhere
         // obviously this is a very non-scientific approach
         //
-        // since we default to compression, we need to calculate the biggest compressed size
-        // this sometimes yields counter-intuitive results where the compressed size
-        // is greater than the uncompressed size
-        // it could be worth (in the long run) doing compression in certain cases and not always
-        return Snappy.maxCompressedLength(magicSize());
+        // blocks are only compressed if that makes them smaller
+        // otherwise they are written raw -- hence the uncompressed size (plus the leading length bytes)
+        // is all the room a block ever needs
+        return PAYLOAD_SIZE_HEADER_LENGTH + magicSize();
     }
 
     private int magicSize() {
@@ -77,6 +77,11 @@ abstract class Sizable {
         currentObjectSize = Math.max(newSize, 0);
     }
 
+    // for data structures that know exactly how many bytes they add (or remove)
+    void addBytesToObjectSize(int bytes) {
+        currentObjectSize = Math.max(0, currentObjectSize + bytes);
+    }
+
     void addObjectToObjectSize(Object o) {
         currentObjectSize += sizeOfObject(o);
     }
@@ -87,11 +92,15 @@ abstract class Sizable {
 
     int sizeOfObject(Object o) {
         if (o == null) return 0;
+        return KRYO_CLASS_ID_SIZE + sizeOfValue(o);
+    }
+
+    private int sizeOfValue(Object o) {
         Class type = o.getClass();
         if (Integer.class.equals(type)) {
             return INT_FIELD_SIZE;
         } else if (String.class.equals(type)) {
-            return ((String)o).getBytes().length;
+            return ((String)o).getBytes(StandardCharsets.UTF_8).length;
         } else if (Long.class.equals(type)) {
             return LONG_FIELD_SIZE;
         } else if (Short.class.equals(type)) {
@@ -118,7 +127,9 @@ abstract class Sizable {
     }
 
     boolean isUnderMaxByteSize(int addSize) {
-        return Snappy.maxCompressedLength(magicSize() + addSize) < getMaxByteSize();
+        // no need to reserve room for snappy's worst case
+        // incompressible blocks are written raw
+        return magicSize() + addSize < getMaxByteSize();
     }
 
     int getMaxByteSize() {
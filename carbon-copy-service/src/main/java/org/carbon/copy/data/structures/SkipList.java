@@ -0,0 +1,324 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import com.google.common.base.Optional;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicMarkableReference;
+
+/**
+ * A lock-free skip list that keeps (key, value) pairs ordered by key first and value second.
+ * The same key can be inserted with many different values. That makes it a good fit for a secondary index
+ * where many rows share the same column value.
+ *
+ * Concurrency works the way it does in the ConcurrentSkipListMap:
+ * all forward pointers are CAS'ed in and deletes happen in two steps.
+ * First the forward pointers of a node are marked (that's the logical delete)
+ * and then the node is unlinked by whoever walks by next (that's the physical delete).
+ * The algorithm I'm following is the LockFreeSkipList from "The Art of Multiprocessor Programming"
+ * by Herlihy and Shavit.
+ *
+ * This list is not persisted in galaxy! It's purely node-local and is rebuilt when needed.
+ * That also means iterators are weakly consistent. They see all nodes that were there when they started
+ * and may or may not see nodes that were inserted while iterating.
+ */
+public class SkipList<Key extends Comparable<Key>, Value extends Comparable<Value>> {
+    private static final int MAX_LEVEL = 32;
+    private static final double P = 0.25;
+
+    private static class Node<Key, Value> {
+        final Key key;
+        final Value value;
+        final AtomicMarkableReference<Node<Key, Value>>[] forward;
+
+        @SuppressWarnings("unchecked")
+        Node(Key key, Value value, int level) {
+            this.key = key;
+            this.value = value;
+            this.forward = (AtomicMarkableReference<Node<Key, Value>>[]) new AtomicMarkableReference[level];
+            for (int i = 0; i < level; i++) {
+                forward[i] = new AtomicMarkableReference<>(null, false);
+            }
+        }
+
+        int getLevel() {
+            return forward.length;
+        }
+
+        boolean isDeleted() {
+            return forward[0].isMarked();
+        }
+    }
+
+    // the head is a sentinel that compares less than everything else
+    // the end of the list is just a null pointer
+    private final Node<Key, Value> head = new Node<>(null, null, MAX_LEVEL);
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    private int getRandomLevel() {
+        int level = 1;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (level < MAX_LEVEL && random.nextDouble() < P) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Returns false if this exact pair of key and value was in the list already.
+     */
+    public boolean insert(Key key, Value value) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key and value cannot be null");
+        int level = getRandomLevel();
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] preds = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] succs = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+
+        while (true) {
+            if (find(key, value, preds, succs)) {
+                return false;
+            }
+
+            Node<Key, Value> newNode = new Node<>(key, value, level);
+            for (int i = 0; i < level; i++) {
+                newNode.forward[i].set(succs[i], false);
+            }
+
+            // linking in the bottom level makes the node part of the list
+            if (!preds[0].forward[0].compareAndSet(succs[0], newNode, false, false)) {
+                continue;
+            }
+            size.incrementAndGet();
+
+            // all other levels are just shortcuts
+            // if somebody gets in my way I search again and retry
+            for (int i = 1; i < level; i++) {
+                while (true) {
+                    Node<Key, Value> succ = succs[i];
+                    AtomicMarkableReference<Node<Key, Value>> ref = newNode.forward[i];
+                    // somebody deleted my node already -- no point in linking it any further
+                    if (ref.isMarked()) return true;
+                    Node<Key, Value> currentSucc = ref.getReference();
+                    if (currentSucc != succ && !ref.compareAndSet(currentSucc, succ, false, false)) continue;
+                    if (preds[i].forward[i].compareAndSet(succ, newNode, false, false)) break;
+                    find(key, value, preds, succs);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Removes one exact pair of key and value.
+     * Returns false if the pair wasn't in the list or somebody else was faster deleting it.
+     */
+    public boolean delete(Key key, Value value) {
+        if (key == null || value == null) throw new IllegalArgumentException("Key and value cannot be null");
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] preds = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] succs = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+
+        if (!find(key, value, preds, succs)) {
+            return false;
+        }
+
+        Node<Key, Value> nodeToDelete = succs[0];
+        // mark all shortcuts top down
+        boolean[] marked = { false };
+        for (int i = nodeToDelete.getLevel() - 1; i >= 1; i--) {
+            Node<Key, Value> succ = nodeToDelete.forward[i].get(marked);
+            while (!marked[0]) {
+                nodeToDelete.forward[i].attemptMark(succ, true);
+                succ = nodeToDelete.forward[i].get(marked);
+            }
+        }
+
+        // whoever marks the bottom level owns the delete
+        Node<Key, Value> succ = nodeToDelete.forward[0].get(marked);
+        while (true) {
+            boolean iMarkedIt = nodeToDelete.forward[0].compareAndSet(succ, succ, false, true);
+            succ = nodeToDelete.forward[0].get(marked);
+            if (iMarkedIt) {
+                size.decrementAndGet();
+                // unlink the node physically
+                find(key, value, preds, succs);
+                return true;
+            } else if (marked[0]) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Deletes all values for this key.
+     */
+    public void delete(Key key) {
+        for (Value value : search(key)) {
+            delete(key, value);
+        }
+    }
+
+    /**
+     * Returns the smallest value for this key if there is one.
+     */
+    public Optional<Value> floor(Key key) {
+        Node<Key, Value> x = firstNodeNotLessThan(key);
+        return (x != null && x.key.compareTo(key) == 0) ? Optional.of(x.value) : Optional.absent();
+    }
+
+    public Set<Value> search(Key key) {
+        Set<Value> resultSet = new HashSet<>();
+        for (Value value : get(key, key)) {
+            resultSet.add(value);
+        }
+        return resultSet.isEmpty() ? Collections.emptySet() : resultSet;
+    }
+
+    /**
+     * Returns all values whose keys fall into this range.
+     * Both ends of the range are inclusive. Passing null for either end leaves this end of the range open.
+     * The values come back ordered by key.
+     */
+    public Iterable<Value> get(Key fromKey, Key toKey) {
+        return () -> new Iterator<Value>() {
+            private Node<Key, Value> x = (fromKey != null) ? firstNodeNotLessThan(fromKey) : head.forward[0].getReference();
+
+            @Override
+            public boolean hasNext() {
+                // skip over everything that's logically deleted
+                while (x != null && x.isDeleted()) {
+                    x = x.forward[0].getReference();
+                }
+                return x != null && (toKey == null || x.key.compareTo(toKey) <= 0);
+            }
+
+            @Override
+            public Value next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Value v = x.value;
+                x = x.forward[0].getReference();
+                return v;
+            }
+        };
+    }
+
+    /**
+     * Same as get(fromKey, toKey) but returns the keys alongside the values.
+     */
+    public Iterable<Map.Entry<Key, Value>> entries(Key fromKey, Key toKey) {
+        return () -> new Iterator<Map.Entry<Key, Value>>() {
+            private Node<Key, Value> x = (fromKey != null) ? firstNodeNotLessThan(fromKey) : head.forward[0].getReference();
+
+            @Override
+            public boolean hasNext() {
+                // skip over everything that's logically deleted
+                while (x != null && x.isDeleted()) {
+                    x = x.forward[0].getReference();
+                }
+                return x != null && (toKey == null || x.key.compareTo(toKey) <= 0);
+            }
+
+            @Override
+            public Map.Entry<Key, Value> next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                Map.Entry<Key, Value> entry = new AbstractMap.SimpleImmutableEntry<>(x.key, x.value);
+                x = x.forward[0].getReference();
+                return entry;
+            }
+        };
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // a null value compares less than all values of the same key
+    // that way I can find the first node with a particular key
+    private int compare(Node<Key, Value> node, Key key, Value value) {
+        int cmp = node.key.compareTo(key);
+        if (cmp != 0) return cmp;
+        return (value == null) ? 1 : node.value.compareTo(value);
+    }
+
+    private Node<Key, Value> firstNodeNotLessThan(Key key) {
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] preds = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+        @SuppressWarnings("unchecked")
+        Node<Key, Value>[] succs = (Node<Key, Value>[]) new Node[MAX_LEVEL];
+        find(key, null, preds, succs);
+        return succs[0];
+    }
+
+    // Fills preds and succs with the nodes right before and right after (key, value) on every level.
+    // While doing so it unlinks all nodes that are marked as deleted.
+    // Returns true if the exact pair was found.
+    private boolean find(Key key, Value value, Node<Key, Value>[] preds, Node<Key, Value>[] succs) {
+        boolean[] marked = { false };
+        retry:
+        while (true) {
+            Node<Key, Value> pred = head;
+            Node<Key, Value> curr = null;
+            for (int i = MAX_LEVEL - 1; i >= 0; i--) {
+                curr = pred.forward[i].getReference();
+                while (curr != null) {
+                    Node<Key, Value> succ = curr.forward[i].get(marked);
+                    if (marked[0]) {
+                        // curr is deleted -- unlink it or start over if somebody changed pred in the meantime
+                        if (!pred.forward[i].compareAndSet(curr, succ, false, false)) {
+                            continue retry;
+                        }
+                        curr = succ;
+                    } else if (compare(curr, key, value) < 0) {
+                        pred = curr;
+                        curr = succ;
+                    } else {
+                        break;
+                    }
+                }
+                preds[i] = pred;
+                succs[i] = curr;
+            }
+            return value != null && curr != null && compare(curr, key, value) == 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size() * 32);
+        Node<Key, Value> x = head.forward[0].getReference();
+        while (x != null) {
+            if (!x.isDeleted()) {
+                sb.append(x.key.toString()).append(" ==> ");
+            }
+            x = x.forward[0].getReference();
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+/**
+ * The things an Index needs from the tree that backs it.
+ * This lets me swap out the tree implementation underneath an index
+ * without the index (or anybody using it) knowing.
+ */
+interface SortedDataStructure<Key extends Comparable<Key>, Value> {
+    long getId();
+
+    Value get(Key key);
+
+    /**
+     * Both ends of the range are inclusive.
+     */
+    Iterable<Value> get(Key fromKey, Key toKey);
+
+    void put(Key key, Value value, Txn txn);
+
+    void delete(Key key, Txn txn);
+
+    Iterable<Key> keys();
+}
@@ -20,35 +20,106 @@ package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.galaxy.Store;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 public class Table extends TopLevelDataStructure {
     // this data holds all the data
+    // (unless the table stores its data in columns)
     private ChainingHash<GUID, Tuple> data;
+    // columns that are hot enough to deserve a node-local ordered index
+    private final Set<String> localIndexColumns = new HashSet<>();
+    // node id -> id of the block that counts the inserts of that node into a table with local indexes
+    // that's how local indexes find out whether they missed inserts of other nodes (see LocalIndex)
+    // every node counts in a block of its own so that inserts on different nodes don't queue up behind one lock
+    // the table itself is only written when a node inserts for the first time
+    private final Map<Short, Long> insertCounterIds = new HashMap<>();
 
-    private Table(Store store, InternalDataStructureFactory dsFactory, Txn txn, String dsName) {
+    // columnar tables keep rows in row groups
+    // every column of a row group lives in its own ColumnChunk
+    // scans only need to load the chunks of the columns they're interested in
+    private boolean isColumnar = false;
+    private int lastRowGroup = 0;
+    // guid -> row group (upper 32 bits) and row inside the row group (lower 32 bits)
+    private ChainingHash<GUID, Long> rowLocations;
+    // row group -> guids of all rows in the row group
+    private ChainingHash<Integer, ColumnChunk> guidChunks;
+    // one hash per column: row group -> values of that column
+    private final List<ChainingHash<Integer, ColumnChunk>> columnChunks = new ArrayList<>();
+    // row group -> number of rows followed by min, max and null count of every column (see newZoneMap)
+    // a lot of these fit into a block, checking them is way cheaper than loading the chunks
+    private ChainingHash<Integer, Tuple> zoneMaps;
+
+    // partitioned tables spread their rows over all nodes
+    // all rows with the same value in the partition key column live on the same node (see GUID.partitionedGUID)
+    private String partitionKeyColumn;
+    private DistHash<GUID, Tuple> partitionedData;
+
+    private Table(Store store, InternalDataStructureFactory dsFactory, Txn txn, String dsName, Set<String> localIndexColumns, boolean isColumnar, String partitionKeyColumn, int numColumns) {
         super(store, dsFactory, txn, dsName);
         // create new data
-        data = dsFactory.newChainingHash(txn);
-        txn.addToChangedObjects(data);
-        // wait for it to be upserted and
-        // have an id
-        data.checkDataStructureRetrieved();
-        addObjectToObjectSize(data.getId());
+        if (partitionKeyColumn != null) {
+            this.partitionKeyColumn = partitionKeyColumn;
+            partitionedData = dsFactory.newDistHash(txn);
+            addObjectToObjectSize(partitionKeyColumn);
+            addObjectToObjectSize(partitionedData.getId());
+        } else if (isColumnar) {
+            this.isColumnar = true;
+            rowLocations = newChainingHash(txn);
+            guidChunks = newChainingHash(txn);
+            for (int i = 0; i < numColumns; i++) {
+                columnChunks.add(newChainingHash(txn));
+            }
+            zoneMaps = newChainingHash(txn);
+            addObjectToObjectSize(lastRowGroup);
+            addObjectToObjectSize(numColumns);
+        } else {
+            data = newChainingHash(txn);
+        }
+        addObjectToObjectSize(isColumnar);
+        this.localIndexColumns.addAll(localIndexColumns);
+        this.localIndexColumns.forEach(this::addObjectToObjectSize);
+        addObjectToObjectSize(this.localIndexColumns.size());
+        if (!this.localIndexColumns.isEmpty()) {
+            addObjectToObjectSize(insertCounterIds.size());
+        }
         // only then upsert yourself
         asyncUpsert(txn);
     }
 
     Table(Store store, InternalDataStructureFactory dsFactory, Builder builder, Txn txn) {
-        this(store, dsFactory, txn, builder.getName());
+        this(store, dsFactory, txn, builder.getName(), builder.getLocalIndexColumns(), builder.isColumnar(), builder.getPartitionKeyColumn(), builder.getColumnMetadata().length);
         addColumns(txn, builder.getColumnMetadata());
     }
 
+    private <K extends Comparable<K>, V> ChainingHash<K, V> newChainingHash(Txn txn) {
+        ChainingHash<K, V> hash = dsFactory.newChainingHash(txn);
+        txn.addToChangedObjects(hash);
+        // wait for it to be upserted and
+        // have an id
+        hash.checkDataStructureRetrieved();
+        addObjectToObjectSize(hash.getId());
+        return hash;
+    }
+
     Table(Store store, InternalDataStructureFactory dsFactory, long id) {
-        super(store, dsFactory, id);
+        this(store, dsFactory, id, (ReadSnapshot) null);
+    }
+
+    Table(Store store, InternalDataStructureFactory dsFactory, long id, ReadSnapshot readSnapshot) {
+        super(store, dsFactory, id, readSnapshot);
         asyncLoadForReads();
     }
 
@@ -60,11 +131,420 @@ public class Table extends TopLevelDataStructure {
     public GUID insert(Tuple tuple, Txn txn) {
         checkDataStructureRetrieved();
         verifyDataColumnTypes(tuple);
-        data.put(tuple.getGuid(), tuple, txn);
-        return tuple.getGuid();
+        Tuple row = (partitionedData != null) ? withPartitionedGuid(tuple) : tuple;
+        if (partitionedData != null) {
+            GUID previousGuid = tuple.getGuid();
+            if (previousGuid != null && previousGuid.isPartitioned() && !previousGuid.equals(row.getGuid())) {
+                // the row moves to the partition of its new partition key
+                // and mustn't stay behind in the old one
+                // only tuples that were read from a partitioned table have a partitioned GUID
+                // new tuples come with a random GUID and there's nothing to delete for them
+                partitionedData.delete(previousGuid, txn);
+            }
+            partitionedData.put(row.getGuid(), row, txn);
+        } else if (isColumnar) {
+            insertIntoColumns(row, txn);
+        } else {
+            data.put(row.getGuid(), row, txn);
+        }
+        if (!localIndexColumns.isEmpty()) {
+            countInsert(txn);
+            long tableId = getId();
+            txn.onCommit(() -> LocalIndex.onInsert(tableId, row));
+        }
+        return row.getGuid();
+    }
+
+    // other nodes learn about my inserts through the counter of my node
+    // the counter is loaded once per transaction which means it's written once no matter how many rows the transaction inserts
+    private void countInsert(Txn txn) {
+        short nodeId = dsFactory.getMyNodeId();
+        Long counterId = insertCounterIds.get(nodeId);
+        DataBlock<Short, Long> counter;
+        if (counterId == null) {
+            counter = dsFactory.newDataBlock(txn);
+            insertCounterIds.put(nodeId, counter.getId());
+            addObjectToObjectSize(nodeId);
+            addObjectToObjectSize(counter.getId());
+            txn.addToChangedObjects(this);
+        } else {
+            counter = dsFactory.loadDataBlockForWrites(counterId, txn);
+        }
+        Long numInserts = counter.get(nodeId);
+        counter.put(nodeId, (numInserts != null) ? numInserts + 1 : 1L, txn);
+    }
+
+    // rows that were read from this table keep their GUID (and are overwritten)
+    // new rows get a GUID that puts them into the partition of their partition key
+    private Tuple withPartitionedGuid(Tuple tuple) {
+        Comparable partitionKey = tuple.get(getColumnIndexForName(partitionKeyColumn));
+        GUID guid = tuple.getGuid();
+        return (guid != null && guid.isInPartition(partitionKey)) ? tuple : tuple.withGuid(GUID.partitionedGUID(partitionKey));
+    }
+
+    /**
+     * Returns the GUIDs of all rows whose value in this column lies within the range.
+     * Both ends of the range are inclusive. Passing null leaves this end of the range open.
+     * Columns with a local index are answered from that index (ordered by column value),
+     * all other columns fall back to scanning the table.
+     * Local indexes that missed inserts of other nodes are built anew first.
+     * Rows found in a local index are checked against this table (and the snapshot it was read in) before they're handed out.
+     */
+    public Stream<GUID> rangeScan(String columnName, Comparable from, Comparable to) {
+        checkDataStructureRetrieved();
+        String upperCaseColumnName = columnName.toUpperCase();
+        int columnIndex = getColumnIndexForName(upperCaseColumnName);
+        if (columnIndex < 0) {
+            throw new IllegalArgumentException("Unknown column " + columnName);
+        }
+
+        if (localIndexColumns.contains(upperCaseColumnName)) {
+            LocalIndex localIndex = LocalIndex.getOrBuild(this, upperCaseColumnName, columnIndex);
+            // same as in scanInOrder
+            // the local index might know rows that aren't in this table (yet) or that have a different value by now
+            return StreamSupport.stream(localIndex.get(from, to).spliterator(), false)
+                    .filter(guid -> {
+                        Tuple row = getMutable(guid);
+                        return row != null && isInRange(row.get(columnIndex), from, to);
+                    });
+        } else if (partitionedData != null) {
+            // every node looks at its own rows and only sends me the GUIDs
+            return partitionedData.execute(newScanFragment(Collections.singletonList(new ColumnRange(columnIndex, from, to)), new int[0]))
+                    .map(Tuple::getGuid);
+        } else {
+            return keys().filter(guid -> isInRange(getMutable(guid).get(columnIndex), from, to));
+        }
+    }
+
+    /**
+     * Returns all rows ordered by their value in this column (smallest first).
+     * Rows without a value come first or last.
+     * The column needs to have a local index (see Builder.withLocalIndex) that hands out the rows in order.
+     * If the index missed inserts of other nodes it's built anew first.
+     */
+    public Stream<Tuple> scanInOrder(String columnName, boolean isNullsFirst) {
+        checkDataStructureRetrieved();
+        String upperCaseColumnName = columnName.toUpperCase();
+        int columnIndex = getColumnIndexForName(upperCaseColumnName);
+        if (columnIndex < 0 || !localIndexColumns.contains(upperCaseColumnName)) {
+            throw new IllegalArgumentException("Column " + columnName + " doesn't have a local index");
+        }
+
+        LocalIndex localIndex = LocalIndex.getOrBuild(this, upperCaseColumnName, columnIndex);
+        // the local index might know rows that aren't in this table (yet)
+        // or that have a different value by now
+        Stream<Tuple> rowsWithValues = localIndex.entries()
+                .map(entry -> {
+                    Tuple row = get(entry.getValue());
+                    return (row != null && entry.getKey().equals(row.get(columnIndex))) ? row : null;
+                })
+                .filter(Objects::nonNull);
+        Stream<Tuple> rowsWithoutValues = localIndex.nullGuids()
+                .map(this::get)
+                .filter(row -> row != null && row.get(columnIndex) == null);
+        return isNullsFirst ? Stream.concat(rowsWithoutValues, rowsWithValues) : Stream.concat(rowsWithValues, rowsWithoutValues);
+    }
+
+    /**
+     * Same as scanInOrder(columnName, isNullsFirst) but hands out the rows in batches.
+     */
+    public Stream<TupleBatch> scanBatchesInOrder(String columnName, boolean isNullsFirst) {
+        return TupleBatch.batches(scanInOrder(columnName, isNullsFirst));
+    }
+
+    private void insertIntoColumns(Tuple tuple, Txn txn) {
+        GUID guid = tuple.getGuid();
+        Long location = rowLocations.get(guid);
+        int rowGroup;
+        int row;
+        List<ColumnChunk> chunks;
+        if (location != null) {
+            // the row exists already and its values are overwritten
+            rowGroup = (int) (location >>> 32);
+            row = (int) location.longValue();
+            chunks = getChunks(rowGroup);
+        } else {
+            // every new row locks the table
+            // that way concurrent inserts into the same table queue up behind each other
+            // instead of handing out the same row twice
+            // the table itself only needs to be written when a new row group is started though
+            txn.addToLockedObjects(this);
+            ColumnChunk guidChunk = guidChunks.get(lastRowGroup);
+            chunks = getChunks(lastRowGroup);
+            if (guidChunk != null && isRowGroupFull(guidChunk, chunks)) {
+                lastRowGroup++;
+                txn.addToChangedObjects(this);
+                guidChunk = null;
+                chunks = Collections.nCopies(columnChunks.size(), null);
+            }
+            rowGroup = lastRowGroup;
+            row = (guidChunk != null) ? guidChunk.getNumRows() : 0;
+            guidChunks.put(rowGroup, withValue(guidChunk, row, guid), txn);
+            rowLocations.put(guid, ((long) rowGroup << 32) | row, txn);
+        }
+
+        List<ColumnChunk> newChunks = new ArrayList<>(columnChunks.size());
+        for (int i = 0; i < columnChunks.size(); i++) {
+            ColumnChunk newChunk = withValue(chunks.get(i), row, tuple.get(i));
+            columnChunks.get(i).put(rowGroup, newChunk, txn);
+            newChunks.add(newChunk);
+        }
+        if (zoneMaps != null) {
+            zoneMaps.put(rowGroup, newZoneMap(newChunks), txn);
+        }
+    }
+
+    private List<ColumnChunk> getChunks(int rowGroup) {
+        List<ColumnChunk> chunks = new ArrayList<>(columnChunks.size());
+        for (ChainingHash<Integer, ColumnChunk> hash : columnChunks) {
+            chunks.add(hash.get(rowGroup));
+        }
+        return chunks;
+    }
+
+    private static Tuple newZoneMap(List<ColumnChunk> chunks) {
+        Tuple zoneMap = new Tuple(null, 1 + 3 * chunks.size());
+        zoneMap.putInt(0, chunks.isEmpty() ? 0 : chunks.get(0).getNumRows());
+        for (int i = 0; i < chunks.size(); i++) {
+            ColumnChunk chunk = chunks.get(i);
+            zoneMap.put(1 + 3 * i, chunk.getMin());
+            zoneMap.put(2 + 3 * i, chunk.getMax());
+            zoneMap.putInt(3 + 3 * i, chunk.getNullCount());
+        }
+        return zoneMap;
+    }
+
+    // false if there's no way any row of this row group is in all ranges
+    private static boolean mightMatch(Tuple zoneMap, List<ColumnRange> ranges) {
+        int numRows = zoneMap.getInt(0);
+        for (ColumnRange range : ranges) {
+            int column = range.getColumnIndex();
+            // nulls are never part of a range
+            boolean isAllNulls = zoneMap.getInt(3 + 3 * column) >= numRows;
+            if (isAllNulls || !range.mightOverlap(zoneMap.get(1 + 3 * column), zoneMap.get(2 + 3 * column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRowGroupFull(ColumnChunk guidChunk, List<ColumnChunk> chunks) {
+        if (guidChunk.isFull()) {
+            return true;
+        }
+        for (ColumnChunk chunk : chunks) {
+            if (chunk != null && chunk.isFull()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ColumnChunk withValue(ColumnChunk chunk, int row, Comparable value) {
+        return ((chunk != null) ? chunk : new ColumnChunk()).with(row, value);
+    }
+
+    /**
+     * Returns all rows of the table. Only the columns with the given indexes are guaranteed to be filled in.
+     * Tables that store their data in columns only load these columns and leave all others null.
+     */
+    public Stream<Tuple> scan(Collection<Integer> columnIndexes) {
+        return scan(columnIndexes, Collections.emptyList());
+    }
+
+    /**
+     * Returns all rows of the table. Only the columns with the given indexes are guaranteed to be filled in.
+     * Tables that store their data in columns skip row groups that don't have any rows inside of all the ranges.
+     * All other rows are returned though -- the ranges are merely a hint and callers still need to filter rows.
+     * Partitioned tables drop rows outside of the ranges on the nodes that own them (before they travel over the network).
+     */
+    public Stream<Tuple> scan(Collection<Integer> columnIndexes, List<ColumnRange> ranges) {
+        checkDataStructureRetrieved();
+        if (partitionedData != null) {
+            return scanPartitions(columnIndexes, ranges);
+        } else if (!isColumnar) {
+            return keys().map(this::get);
+        }
+        return scanBatches(columnIndexes, ranges).flatMap(TupleBatch::stream);
+    }
+
+    /**
+     * Same as scan(columnIndexes, ranges) but hands out the rows in batches of up to TupleBatch.MAX_SIZE rows.
+     * Tables that store their data in columns hand out one batch per row group.
+     */
+    public Stream<TupleBatch> scanBatches(Collection<Integer> columnIndexes, List<ColumnRange> ranges) {
+        checkDataStructureRetrieved();
+        if (partitionedData != null) {
+            return TupleBatch.batches(scanPartitions(columnIndexes, ranges));
+        } else if (!isColumnar) {
+            return TupleBatch.batches(keys().map(this::get));
+        }
+
+        List<Integer> columns = new ArrayList<>(columnIndexes);
+        return IntStream.rangeClosed(0, lastRowGroup)
+                .boxed()
+                .filter(rowGroup -> {
+                    // tables that were written before zone maps existed don't have them
+                    if (ranges.isEmpty() || zoneMaps == null) {
+                        return true;
+                    }
+                    Tuple zoneMap = zoneMaps.get(rowGroup);
+                    return zoneMap == null || mightMatch(zoneMap, ranges);
+                })
+                .map(rowGroup -> readRowGroup(rowGroup, columns))
+                .filter(Objects::nonNull);
+    }
+
+    // every node that owns a partition filters and projects its own rows
+    // all nodes do that at the same time and only the rows that made it travel back to me
+    // the results of all nodes are simply handed out one after the other
+    private Stream<Tuple> scanPartitions(Collection<Integer> columnIndexes, List<ColumnRange> ranges) {
+        int[] columns = columnIndexes.stream().mapToInt(Integer::intValue).toArray();
+        int numColumns = getColumnNames().size();
+        return partitionedData.execute(newScanFragment(ranges, columns))
+                .map(projected -> unproject(projected, columns, numColumns));
+    }
+
+    /**
+     * Joins the rows of this table with the rows of the other table on their partition keys.
+     * Both tables need to be partitioned. Rows with the same partition key live on the same node no matter which table they belong to.
+     * That's why every node joins its own rows and only the pairs of rows that join travel back to me.
+     * Only the columns with the given indexes are guaranteed to be filled in.
+     * Just like scan on partitioned tables the ranges of either table actually filter (on the nodes that own the rows).
+     * Returns an array of the row of this table and the row of the other table for every pair of rows that join.
+     * Both tables need to be read in the same snapshot (or both without one).
+     */
+    public Stream<Tuple[]> joinOnPartitionKey(Collection<Integer> columnIndexes, List<ColumnRange> ranges, Table other, Collection<Integer> otherColumnIndexes, List<ColumnRange> otherRanges) {
+        checkDataStructureRetrieved();
+        other.checkDataStructureRetrieved();
+        if (partitionedData == null || other.partitionedData == null) {
+            throw new IllegalArgumentException("Only partitioned tables can be joined on their partition keys");
+        }
+        // the partition keys are always fetched -- the join needs them
+        int[] columns = withColumn(columnIndexes, getColumnIndexForName(partitionKeyColumn));
+        int[] otherColumns = withColumn(otherColumnIndexes, other.getColumnIndexForName(other.partitionKeyColumn));
+        DistHash.TupleJoinFragment fragment = new DistHash.TupleJoinFragment(
+                newScanFragment(ranges, columns), columns.length - 1,
+                newScanFragment(otherRanges, otherColumns), otherColumns.length - 1);
+        int numColumns = getColumnNames().size();
+        int otherNumColumns = other.getColumnNames().size();
+        return partitionedData.executeColocated(fragment, other.partitionedData)
+                .map(pair -> new Tuple[] { unproject((Tuple) pair[0], columns, numColumns), unproject((Tuple) pair[1], otherColumns, otherNumColumns) });
+    }
+
+    private static int[] withColumn(Collection<Integer> columnIndexes, int columnIndex) {
+        return IntStream.concat(columnIndexes.stream().mapToInt(Integer::intValue), IntStream.of(columnIndex)).toArray();
+    }
+
+    // put the columns back where callers expect them
+    private static Tuple unproject(Tuple projected, int[] columns, int numColumns) {
+        Tuple row = new Tuple(projected.getGuid(), numColumns);
+        for (int i = 0; i < columns.length; i++) {
+            row.put(columns[i], projected.get(i));
+        }
+        return row;
+    }
+
+    private static DistHash.TupleScanFragment newScanFragment(List<ColumnRange> ranges, int[] columnIndexesToProjectTo) {
+        int[] rangeColumnIndexes = new int[ranges.size()];
+        Comparable[] rangeFroms = new Comparable[ranges.size()];
+        Comparable[] rangeTos = new Comparable[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            rangeColumnIndexes[i] = ranges.get(i).getColumnIndex();
+            rangeFroms[i] = ranges.get(i).getFrom();
+            rangeTos[i] = ranges.get(i).getTo();
+        }
+        return new DistHash.TupleScanFragment(rangeColumnIndexes, rangeFroms, rangeTos, columnIndexesToProjectTo);
+    }
+
+    private TupleBatch readRowGroup(int rowGroup, List<Integer> columns) {
+        ColumnChunk guids = guidChunks.get(rowGroup);
+        if (guids == null) {
+            return null;
+        }
+
+        int numRows = guids.getNumRows();
+        Tuple[] rows = new Tuple[numRows];
+        for (int row = 0; row < numRows; row++) {
+            rows[row] = new Tuple((GUID) guids.get(row), columnChunks.size());
+        }
+        // one column after the other
+        for (Integer column : columns) {
+            ColumnChunk chunk = columnChunks.get(column).get(rowGroup);
+            for (int row = 0; chunk != null && row < numRows && row < chunk.getNumRows(); row++) {
+                chunk.copyTo(row, rows[row], column);
+            }
+        }
+        return new TupleBatch(rows, numRows);
+    }
+
+    /**
+     * Returns all rows of the table.
+     */
+    public Stream<Tuple> scan() {
+        int numColumns = isColumnar ? columnChunks.size() : (partitionedData != null) ? getColumnNames().size() : 0;
+        return scan(IntStream.range(0, numColumns).boxed().collect(Collectors.toList()));
+    }
+
+    public boolean isColumnar() {
+        return isColumnar;
+    }
+
+    /**
+     * Returns the name of the column that decides which node a row lives on (or null if the table isn't partitioned).
+     */
+    public String getPartitionKeyColumn() {
+        return partitionKeyColumn;
+    }
+
+    public Set<String> getLocalIndexColumns() {
+        checkDataStructureRetrieved();
+        return new HashSet<>(localIndexColumns);
+    }
+
+    /**
+     * Can the local index on this column be used right away?
+     * Local indexes only see inserts that commit on this node. If the index on this column missed inserts
+     * (of other nodes) this returns false. Using the index anyway would mean building it from scratch.
+     */
+    public boolean isLocalIndexComplete(String columnName) {
+        checkDataStructureRetrieved();
+        String upperCaseColumnName = columnName.toUpperCase();
+        return localIndexColumns.contains(upperCaseColumnName) && LocalIndex.isComplete(getId(), upperCaseColumnName, getRemoteInsertCounts());
+    }
+
+    // counter id -> number of inserts for all nodes but mine
+    // a node that inserted for the first time shows up with a new counter
+    // local indexes see the inserts of my own node anyway (see LocalIndex.onInsert)
+    Map<Long, Long> getRemoteInsertCounts() {
+        checkDataStructureRetrieved();
+        short myNodeId = dsFactory.getMyNodeId();
+        Map<Long, Long> remoteInsertCounts = new HashMap<>();
+        insertCounterIds.forEach((nodeId, counterId) -> {
+            if (nodeId != myNodeId) {
+                Long numInserts = dsFactory.<Short, Long>loadDataBlock(counterId).get(nodeId);
+                remoteInsertCounts.put(counterId, (numInserts != null) ? numInserts : 0L);
+            }
+        });
+        return remoteInsertCounts;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static boolean isInRange(Comparable value, Comparable from, Comparable to) {
+        return value != null
+                && (from == null || value.compareTo(from) >= 0)
+                && (to == null || value.compareTo(to) <= 0);
     }
 
     public Stream<GUID> keys() {
+        if (isColumnar) {
+            return IntStream.rangeClosed(0, lastRowGroup)
+                    .mapToObj(guidChunks::get)
+                    .filter(Objects::nonNull)
+                    .flatMap(guids -> IntStream.range(0, guids.getNumRows()).mapToObj(row -> (GUID) guids.get(row)));
+        } else if (partitionedData != null) {
+            return partitionedData.execute(newScanFragment(Collections.emptyList(), new int[0])).map(Tuple::getGuid);
+        }
         return StreamSupport.stream(data.keys().spliterator(), false);
     }
 
@@ -75,7 +555,26 @@ public class Table extends TopLevelDataStructure {
 
     Tuple getMutable(GUID guid) {
         checkDataStructureRetrieved();
-        return data.get(guid);
+        if (partitionedData != null) {
+            return partitionedData.get(guid);
+        } else if (!isColumnar) {
+            return data.get(guid);
+        }
+
+        Long location = rowLocations.get(guid);
+        if (location == null) {
+            return null;
+        }
+        int rowGroup = (int) (location >>> 32);
+        int row = (int) location.longValue();
+        Tuple tuple = new Tuple(guid, columnChunks.size());
+        for (int i = 0; i < columnChunks.size(); i++) {
+            ColumnChunk chunk = columnChunks.get(i).get(rowGroup);
+            if (chunk != null && row < chunk.getNumRows()) {
+                chunk.copyTo(row, tuple, i);
+            }
+        }
+        return tuple;
     }
 
 //    @Override
@@ -117,12 +616,46 @@ public class Table extends TopLevelDataStructure {
 
     public static class Builder {
         private List<Tuple> columnMetadata = new ArrayList<>();
+        private final Set<String> localIndexColumns = new HashSet<>();
         private final String name;
+        private boolean isColumnar = false;
+        private String partitionKeyColumn;
 
         private Builder(String name) {
             this.name = name.toUpperCase();
         }
 
+        /**
+         * Keeps a node-local ordered index on this column (see LocalIndex).
+         */
+        public Builder withLocalIndex(String columnName) {
+            localIndexColumns.add(columnName.toUpperCase());
+            return this;
+        }
+
+        /**
+         * Stores the data of this table column by column instead of row by row.
+         * Scans that only need a few columns of a wide table load a lot less data this way.
+         * On the flip side inserts and lookups by GUID touch one block per column.
+         */
+        public Builder withColumnarStorage() {
+            isColumnar = true;
+            return this;
+        }
+
+        /**
+         * Spreads the rows of this table over all nodes of the cluster (see DistHash).
+         * Rows with the same value in this column live on the same node.
+         * Scans run on all nodes in parallel and only rows that pass the ranges of the scan travel over the network.
+         * Every node writes its own rows in its own transaction. That means inserts are visible before the
+         * transaction commits and aren't rolled back with it.
+         * Rows keep their partition key. Changing it means inserting a new row.
+         */
+        public Builder withPartitionKey(String columnName) {
+            partitionKeyColumn = columnName.toUpperCase();
+            return this;
+        }
+
         public Builder withColumn(String name, int index, Class type) {
             Tuple col = new Tuple(3);
             col.put(0, name.toUpperCase());
@@ -143,6 +676,30 @@ public class Table extends TopLevelDataStructure {
         private String getName() {
             return name;
         }
+
+        private boolean isColumnar() {
+            return isColumnar;
+        }
+
+        private String getPartitionKeyColumn() {
+            if (partitionKeyColumn == null) {
+                return null;
+            } else if (isColumnar) {
+                throw new IllegalArgumentException("Partitioned tables can't store their data in columns");
+            } else if (columnMetadata.stream().noneMatch(col -> partitionKeyColumn.equals(col.get(0)))) {
+                throw new IllegalArgumentException("Can't partition by unknown column " + partitionKeyColumn);
+            }
+            return partitionKeyColumn;
+        }
+
+        private Set<String> getLocalIndexColumns() {
+            for (String columnName : localIndexColumns) {
+                if (columnMetadata.stream().noneMatch(col -> columnName.equals(col.get(0)))) {
+                    throw new IllegalArgumentException("Can't create local index on unknown column " + columnName);
+                }
+            }
+            return localIndexColumns;
+        }
     }
 
     /////////////////////////////////////////////////////////////
@@ -152,15 +709,100 @@ public class Table extends TopLevelDataStructure {
     @Override
     void serialize(SerializerOutputStream out) {
         super.serialize(out);
-        if (data != null) {
-            out.writeObject(data.getId());
+        if (data != null || isColumnar || partitionedData != null) {
+            out.writeObject((data != null) ? data.getId() : null);
+            out.writeObject(localIndexColumns.size());
+            localIndexColumns.forEach(out::writeObject);
+            if (!localIndexColumns.isEmpty()) {
+                out.writeObject(insertCounterIds.size());
+                insertCounterIds.forEach((nodeId, counterId) -> {
+                    out.writeObject(nodeId);
+                    out.writeObject(counterId);
+                });
+            }
+            out.writeObject(isColumnar);
+            if (isColumnar) {
+                out.writeObject(lastRowGroup);
+                out.writeObject(rowLocations.getId());
+                out.writeObject(guidChunks.getId());
+                out.writeObject(columnChunks.size());
+                columnChunks.forEach(chunks -> out.writeObject(chunks.getId()));
+                if (zoneMaps != null) {
+                    out.writeObject(zoneMaps.getId());
+                }
+            } else if (partitionedData != null) {
+                out.writeObject(partitionKeyColumn);
+                out.writeObject(partitionedData.getId());
+            }
         }
     }
 
+    private <K extends Comparable<K>, V> ChainingHash<K, V> loadChainingHash(Long id) {
+        addObjectToObjectSize(id);
+        return dsFactory.loadChainingHash(id, getReadSnapshot());
+    }
+
+    @Override
+    void clearState() {
+        localIndexColumns.clear();
+        insertCounterIds.clear();
+        columnChunks.clear();
+        partitionKeyColumn = null;
+        partitionedData = null;
+    }
+
     @Override
     void deserialize(SerializerInputStream in) {
         super.deserialize(in);
         Long tmp = (Long) in.readObject();
-        data = dsFactory.loadChainingHash(tmp);
+        data = (tmp != null) ? dsFactory.loadChainingHash(tmp, getReadSnapshot()) : null;
+        addObjectToObjectSize(tmp);
+        try {
+            // tables that were written before local indexes existed
+            // end right here
+            Integer numLocalIndexColumns = (in.available() > 0) ? (Integer) in.readObject() : null;
+            for (int i = 0; numLocalIndexColumns != null && i < numLocalIndexColumns; i++) {
+                String columnName = (String) in.readObject();
+                localIndexColumns.add(columnName);
+                addObjectToObjectSize(columnName);
+            }
+            addObjectToObjectSize(localIndexColumns.size());
+            if (!localIndexColumns.isEmpty()) {
+                int numInsertCounters = (Integer) in.readObject();
+                for (int i = 0; i < numInsertCounters; i++) {
+                    Short nodeId = (Short) in.readObject();
+                    Long counterId = (Long) in.readObject();
+                    insertCounterIds.put(nodeId, counterId);
+                    addObjectToObjectSize(nodeId);
+                    addObjectToObjectSize(counterId);
+                }
+                addObjectToObjectSize(numInsertCounters);
+            }
+
+            // so do tables that were written before columnar storage existed
+            isColumnar = (in.available() > 0) && (Boolean) in.readObject();
+            addObjectToObjectSize(isColumnar);
+            if (isColumnar) {
+                lastRowGroup = (Integer) in.readObject();
+                rowLocations = loadChainingHash((Long) in.readObject());
+                guidChunks = loadChainingHash((Long) in.readObject());
+                int numColumns = (Integer) in.readObject();
+                for (int i = 0; i < numColumns; i++) {
+                    columnChunks.add(loadChainingHash((Long) in.readObject()));
+                }
+                zoneMaps = (in.available() > 0) ? loadChainingHash((Long) in.readObject()) : null;
+                addObjectToObjectSize(lastRowGroup);
+                addObjectToObjectSize(numColumns);
+            } else if (in.available() > 0) {
+                // only partitioned tables have anything after that
+                partitionKeyColumn = (String) in.readObject();
+                Long partitionedDataId = (Long) in.readObject();
+                partitionedData = dsFactory.loadDistHash(partitionedDataId, getReadSnapshot());
+                addObjectToObjectSize(partitionKeyColumn);
+                addObjectToObjectSize(partitionedDataId);
+            }
+        } catch (IOException xcp) {
+            throw new RuntimeException(xcp);
+        }
     }
 }
@@ -52,7 +52,11 @@ public abstract class TopLevelDataStructure extends DataStructure {
     }
 
     TopLevelDataStructure(Store store, InternalDataStructureFactory dsFactory, long id) {
-        super(store, id);
+        this(store, dsFactory, id, null);
+    }
+
+    TopLevelDataStructure(Store store, InternalDataStructureFactory dsFactory, long id, ReadSnapshot readSnapshot) {
+        super(store, id, readSnapshot);
         this.dsFactory = dsFactory;
     }
 
@@ -169,6 +173,6 @@ public abstract class TopLevelDataStructure extends DataStructure {
     void deserialize(SerializerInputStream in) {
         this.name = (String) in.readObject();
         Long tmp = (Long) in.readObject();
-        columnMetadata = dsFactory.loadChainingHash(tmp);
+        columnMetadata = dsFactory.loadChainingHash(tmp, getReadSnapshot());
     }
 }
@@ -26,55 +26,213 @@ import com.esotericsoftware.kryo.io.Output;
 import org.apache.commons.lang3.StringUtils;
 
 import javax.annotation.Nonnull;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Vector;
 
 @DefaultSerializer(Tuple.TupleSerializer.class)
 public class Tuple extends Sizable implements Comparable<Tuple> {
+    // what is stored in a column
+    // these double as type tags in the serialized format (see TupleSerializer)
+    private static final byte KIND_NULL    = -1;
+    private static final byte KIND_OBJECT  = 0;
+    private static final byte KIND_STRING  = 1;
+    private static final byte KIND_INT     = 2;
+    private static final byte KIND_LONG    = 3;
+    private static final byte KIND_DOUBLE  = 4;
+    private static final byte KIND_FLOAT   = 5;
+    private static final byte KIND_SHORT   = 6;
+    private static final byte KIND_BYTE    = 7;
+    private static final byte KIND_BOOLEAN = 8;
+    private static final byte KIND_CHAR    = 9;
+
     private GUID guid;
     // some sort of tuple metadata
     // a mapping of column name to index
     // and tuple size
     private int tupleSize;
-    private ArrayList<Comparable> data;
+    // every column lives in one of these two arrays (depending on its kind)
+    // numbers, booleans and chars are kept as raw bits in the longs -- no boxing
+    // strings and everything else are kept in the objects
+    private byte[] kinds;
+    private long[] primitives;
+    private Comparable[] objects;
 
     /**
-     * Private ctor for serializer use only.
+     * Private ctor for serializer and copies only.
      */
-    @SuppressWarnings("unused")
-    private Tuple(GUID guid, ArrayList<Comparable> data, int tupleSize) {
+    private Tuple(GUID guid, byte[] kinds, long[] primitives, Comparable[] objects) {
         this.guid = guid;
-        this.data = data;
-        this.tupleSize = tupleSize;
+        this.kinds = kinds;
+        this.primitives = primitives;
+        this.objects = objects;
+        this.tupleSize = kinds.length;
     }
 
     public Tuple(int size) {
-        tupleSize = size;
-        Vector<Comparable> v = new Vector<>(tupleSize);
-        v.setSize(tupleSize);
-        data = new ArrayList<>(v);
-        guid = GUID.randomGUID();
+        this(GUID.randomGUID(), newKinds(size), new long[size], new Comparable[size]);
+    }
+
+    // tuples that belong to a row that already exists (or to no row at all)
+    Tuple(GUID guid, int size) {
+        this(guid, newKinds(size), new long[size], new Comparable[size]);
+    }
+
+    private static byte[] newKinds(int size) {
+        byte[] kinds = new byte[size];
+        Arrays.fill(kinds, KIND_NULL);
+        return kinds;
     }
 
     public GUID getGuid() {
         return guid;
     }
 
+    /**
+     * Boxes primitive values. Use the typed getters (getLong, getDouble, ...) if you know the type of the column.
+     */
     public Comparable get(int idx) {
-        return data.get(idx);
+        long bits = primitives[idx];
+        switch (kinds[idx]) {
+            case KIND_NULL:
+                return null;
+            case KIND_INT:
+                return (int) bits;
+            case KIND_LONG:
+                return bits;
+            case KIND_DOUBLE:
+                return Double.longBitsToDouble(bits);
+            case KIND_FLOAT:
+                return Float.intBitsToFloat((int) bits);
+            case KIND_SHORT:
+                return (short) bits;
+            case KIND_BYTE:
+                return (byte) bits;
+            case KIND_BOOLEAN:
+                return bits != 0;
+            case KIND_CHAR:
+                return (char) bits;
+            default:
+                return objects[idx];
+        }
+    }
+
+    public boolean isNull(int idx) {
+        return kinds[idx] == KIND_NULL;
+    }
+
+    /**
+     * Works for all integral columns (int, long, short, byte, char).
+     */
+    public long getLong(int idx) {
+        switch (kinds[idx]) {
+            case KIND_INT:
+            case KIND_LONG:
+            case KIND_SHORT:
+            case KIND_BYTE:
+            case KIND_CHAR:
+                return primitives[idx];
+            default:
+                throw new IllegalStateException("Column " + idx + " doesn't hold an integral value");
+        }
+    }
+
+    public int getInt(int idx) {
+        return (int) getLong(idx);
+    }
+
+    /**
+     * Works for all numeric columns.
+     */
+    public double getDouble(int idx) {
+        switch (kinds[idx]) {
+            case KIND_DOUBLE:
+                return Double.longBitsToDouble(primitives[idx]);
+            case KIND_FLOAT:
+                return Float.intBitsToFloat((int) primitives[idx]);
+            default:
+                return getLong(idx);
+        }
+    }
+
+    public boolean getBoolean(int idx) {
+        if (kinds[idx] != KIND_BOOLEAN) {
+            throw new IllegalStateException("Column " + idx + " doesn't hold a boolean");
+        }
+        return primitives[idx] != 0;
+    }
+
+    public String getString(int idx) {
+        if (kinds[idx] != KIND_STRING) {
+            throw new IllegalStateException("Column " + idx + " doesn't hold a string");
+        }
+        return (String) objects[idx];
     }
 
     public void put(int idx, Comparable o) {
-        Comparable existingO = data.get(idx);
-        if (existingO != null) {
-            subtractObjectToObjectSize(existingO);
+        if (o == null) {
+            set(idx, KIND_NULL, 0L, null);
+            return;
+        }
+
+        Class klass = o.getClass();
+        if (Integer.class.equals(klass)) {
+            set(idx, KIND_INT, (Integer) o, null);
+        } else if (Long.class.equals(klass)) {
+            set(idx, KIND_LONG, (Long) o, null);
+        } else if (Double.class.equals(klass)) {
+            set(idx, KIND_DOUBLE, Double.doubleToRawLongBits((Double) o), null);
+        } else if (Float.class.equals(klass)) {
+            set(idx, KIND_FLOAT, Float.floatToRawIntBits((Float) o), null);
+        } else if (Short.class.equals(klass)) {
+            set(idx, KIND_SHORT, (Short) o, null);
+        } else if (Byte.class.equals(klass)) {
+            set(idx, KIND_BYTE, (Byte) o, null);
+        } else if (Boolean.class.equals(klass)) {
+            set(idx, KIND_BOOLEAN, ((Boolean) o) ? 1L : 0L, null);
+        } else if (Character.class.equals(klass)) {
+            set(idx, KIND_CHAR, (Character) o, null);
+        } else if (String.class.equals(klass)) {
+            set(idx, KIND_STRING, 0L, o);
+        } else {
+            set(idx, KIND_OBJECT, 0L, o);
+        }
+    }
+
+    public void putLong(int idx, long value) {
+        set(idx, KIND_LONG, value, null);
+    }
+
+    public void putInt(int idx, int value) {
+        set(idx, KIND_INT, value, null);
+    }
+
+    public void putDouble(int idx, double value) {
+        set(idx, KIND_DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    // all writes go through here
+    // anonymous immutable copies override this to do nothing
+    void set(int idx, byte kind, long bits, Comparable object) {
+        int oldSize = sizeOfColumn(idx);
+        kinds[idx] = kind;
+        primitives[idx] = bits;
+        objects[idx] = object;
+        addBytesToObjectSize(sizeOfColumn(idx) - oldSize);
+    }
+
+    private int sizeOfColumn(int idx) {
+        switch (kinds[idx]) {
+            case KIND_NULL:
+                return 0;
+            case KIND_STRING:
+            case KIND_OBJECT:
+                return sizeOfObject(objects[idx]);
+            default:
+                // well...this is a guess
+                // but it's the same guess sizeOfObject would make for most boxed values
+                return 8;
         }
-        addObjectToObjectSize(o);
-        data.set(idx, o);
     }
 
     public int getTupleSize() {
@@ -82,22 +240,24 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
     }
 
     Tuple subTuple(int from, int to) {
-        int size = to - from;
-        ArrayList<Comparable> newData = new ArrayList<>(size);
-        for (int i = from; i < to; i++) {
-            newData.add(data.get(i));
-        }
-        return new Tuple(guid, newData, size);
+        return new Tuple(
+                guid,
+                Arrays.copyOfRange(kinds, from, to),
+                Arrays.copyOfRange(primitives, from, to),
+                Arrays.copyOfRange(objects, from, to)
+        );
     }
 
     public Object[] toObjectArray() {
-        ArrayList<Object> l = new ArrayList<>(data);
         // TODO -- think about what you actually want here
         // either you expose the internal guid to everybody as part of the result set
         // or you keep it to yourself
         // if you decide to put it in though you need to go and adapt the calcite row types accordingly
-        //l.add(0, guid);
-        return l.toArray();
+        Object[] values = new Object[tupleSize];
+        for (int i = 0; i < tupleSize; i++) {
+            values[i] = get(i);
+        }
+        return values;
     }
 
     public Tuple subTuple(Integer... indexes) {
@@ -105,17 +265,38 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
     }
 
     public Tuple subTuple(List<Integer> indexes) {
-        ArrayList<Comparable> newData = new ArrayList<>(indexes.size());
-        for (Integer index : indexes) {
-            newData.add(data.get(index));
+        int size = indexes.size();
+        byte[] newKinds = new byte[size];
+        long[] newPrimitives = new long[size];
+        Comparable[] newObjects = new Comparable[size];
+        for (int i = 0; i < size; i++) {
+            int index = indexes.get(i);
+            newKinds[i] = kinds[index];
+            newPrimitives[i] = primitives[index];
+            newObjects[i] = objects[index];
         }
-        return new Tuple(guid, newData, indexes.size());
+        return new Tuple(guid, newKinds, newPrimitives, newObjects);
+    }
+
+    // a tuple you can change without changing this one
+    Tuple copy() {
+        return new Tuple(guid, kinds.clone(), primitives.clone(), objects.clone());
+    }
+
+    // copies a column into another tuple without boxing it
+    void copyColumnTo(int idx, Tuple target, int targetIdx) {
+        target.set(targetIdx, kinds[idx], primitives[idx], objects[idx]);
+    }
+
+    // a (mutable) copy of this tuple that belongs to a different row
+    Tuple withGuid(GUID guid) {
+        return new Tuple(guid, kinds.clone(), primitives.clone(), objects.clone());
     }
 
     Tuple immutableCopy() {
-        return new Tuple(guid, new ArrayList<>(data), tupleSize) {
+        return new Tuple(guid, kinds.clone(), primitives.clone(), objects.clone()) {
             @Override
-            public void put(int idx, Comparable o) { }
+            void set(int idx, byte kind, long bits, Comparable object) { }
         };
     }
 
@@ -123,15 +304,26 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
     @Override
     public int compareTo(@Nonnull Tuple o) {
         for (int i = 0; i < tupleSize; i++) {
-            if (data.get(i) != null && o.data.get(i) != null) {
-                int cmp = data.get(i).compareTo(o.data.get(i));
+            byte kind = kinds[i];
+            byte otherKind = o.kinds[i];
+            if (kind != KIND_NULL && otherKind != KIND_NULL) {
+                int cmp;
+                if (kind == otherKind && kind > KIND_STRING) {
+                    // both are primitives of the same kind
+                    // no need to box anything
+                    cmp = comparePrimitives(kind, primitives[i], o.primitives[i]);
+                } else if (kind == otherKind) {
+                    cmp = objects[i].compareTo(o.objects[i]);
+                } else {
+                    cmp = get(i).compareTo(o.get(i));
+                }
                 if (cmp != 0) {
                     return cmp;
                 }
             // the last two if clauses will sort nulls to the back
-            } else if (data.get(i) != null) {
+            } else if (kind != KIND_NULL) {
                 return -1;
-            } else if (o.data.get(i) != null) {
+            } else if (otherKind != KIND_NULL) {
                 return 1;
             }
         }
@@ -140,6 +332,18 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
         return 0;
     }
 
+    private static int comparePrimitives(byte kind, long bits, long otherBits) {
+        switch (kind) {
+            case KIND_DOUBLE:
+                return Double.compare(Double.longBitsToDouble(bits), Double.longBitsToDouble(otherBits));
+            case KIND_FLOAT:
+                return Float.compare(Float.intBitsToFloat((int) bits), Float.intBitsToFloat((int) otherBits));
+            default:
+                // integral values and booleans (false < true) are stored as they would compare
+                return Long.compare(bits, otherBits);
+        }
+    }
+
     @Override
     public boolean equals(Object other) {
         if (other == null) return false;
@@ -152,14 +356,41 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
     public int hashCode() {
         int hash = 3;
         for (int i = 0; i < tupleSize; i++) {
-            hash += 51 * (data.get(i) != null ? data.get(i).hashCode() : 0);
+            hash += 51 * hashCodeOfColumn(i);
         }
         return hash;
     }
 
+    // the same hash codes the boxed values would have
+    private int hashCodeOfColumn(int idx) {
+        long bits = primitives[idx];
+        switch (kinds[idx]) {
+            case KIND_NULL:
+                return 0;
+            case KIND_INT:
+                return Integer.hashCode((int) bits);
+            case KIND_LONG:
+                return Long.hashCode(bits);
+            case KIND_DOUBLE:
+                return Double.hashCode(Double.longBitsToDouble(bits));
+            case KIND_FLOAT:
+                return Float.hashCode(Float.intBitsToFloat((int) bits));
+            case KIND_SHORT:
+                return Short.hashCode((short) bits);
+            case KIND_BYTE:
+                return Byte.hashCode((byte) bits);
+            case KIND_BOOLEAN:
+                return Boolean.hashCode(bits != 0);
+            case KIND_CHAR:
+                return Character.hashCode((char) bits);
+            default:
+                return objects[idx].hashCode();
+        }
+    }
+
     @Override
     public String toString() {
-        return StringUtils.join(data, " - ");
+        return StringUtils.join(toObjectArray(), " - ");
     }
 
     public static Builder builder() {
@@ -184,34 +415,152 @@ public class Tuple extends Sizable implements Comparable<Tuple> {
         }
     }
 
+    /**
+     * Tuples are laid out like this:
+     * | format | guid (2 longs) | number of columns | null bitmap | type tag and value of every non-null column |
+     * Ints and longs are written as varints and strings with a varint length. Types that don't have a tag
+     * go through kryo as usual. Tuples that were written before this format existed start with kryo's class
+     * information of the guid instead of the format byte and are still read the old way.
+     */
     public final static class TupleSerializer extends Serializer<Tuple> {
+        // kryo writes class information as varint of the class id plus 2 (0 for null)
+        // hence a leading 1 never shows up in the old format
+        private static final byte COMPACT_FORMAT = 1;
+
         @Override
         public void write(Kryo kryo, Output output, Tuple tuple) {
-            kryo.writeClassAndObject(output, tuple.guid);
-            output.writeInt(tuple.data.size());
-            for (int i = 0; i < tuple.data.size(); i++) {
-                kryo.writeClassAndObject(output, tuple.data.get(i));
+            output.writeByte(COMPACT_FORMAT);
+            output.writeBoolean(tuple.guid != null);
+            if (tuple.guid != null) {
+                output.writeLong(tuple.guid.getMostSignificantBits());
+                output.writeLong(tuple.guid.getLeastSignificantBits());
+            }
+
+            int size = tuple.tupleSize;
+            output.writeVarInt(size, true);
+            byte[] nullBitmap = new byte[(size + 7) / 8];
+            for (int i = 0; i < size; i++) {
+                if (tuple.kinds[i] == KIND_NULL) {
+                    nullBitmap[i / 8] |= 1 << (i % 8);
+                }
+            }
+            output.writeBytes(nullBitmap);
+
+            for (int i = 0; i < size; i++) {
+                byte kind = tuple.kinds[i];
+                if (kind != KIND_NULL) {
+                    // the kind of a column doubles as its type tag
+                    output.writeByte(kind);
+                    writeValue(kryo, output, kind, tuple.primitives[i], tuple.objects[i]);
+                }
+            }
+        }
+
+        private static void writeValue(Kryo kryo, Output output, byte kind, long bits, Comparable object) {
+            switch (kind) {
+                case KIND_STRING:
+                    output.writeString((String) object);
+                    break;
+                case KIND_INT:
+                    output.writeVarInt((int) bits, false);
+                    break;
+                case KIND_LONG:
+                    output.writeVarLong(bits, false);
+                    break;
+                case KIND_DOUBLE:
+                    output.writeLong(bits);
+                    break;
+                case KIND_FLOAT:
+                    output.writeInt((int) bits);
+                    break;
+                case KIND_SHORT:
+                    output.writeShort((int) bits);
+                    break;
+                case KIND_BYTE:
+                    output.writeByte((int) bits);
+                    break;
+                case KIND_BOOLEAN:
+                    output.writeBoolean(bits != 0);
+                    break;
+                case KIND_CHAR:
+                    output.writeChar((char) bits);
+                    break;
+                default:
+                    kryo.writeClassAndObject(output, object);
             }
         }
 
         @Override
         public Tuple read(Kryo kryo, Input input, Class<Tuple> aClass) {
-            GUID guid = (GUID) kryo.readClassAndObject(input);
-            int size = input.readInt();
-            Vector<Object> v = new Vector<>(size);
-            v.setSize(size);
-            ArrayList<Object> data = new ArrayList<>(v);
+            byte format = input.readByte();
+            if (format != COMPACT_FORMAT) {
+                return readLegacy(kryo, input, format);
+            }
+
+            GUID guid = input.readBoolean() ? new GUID(input.readLong(), input.readLong()) : null;
+            int size = input.readVarInt(true);
+            byte[] nullBitmap = input.readBytes((size + 7) / 8);
+            byte[] kinds = new byte[size];
+            long[] primitives = new long[size];
+            Comparable[] objects = new Comparable[size];
             for (int i = 0; i < size; i++) {
-                data.set(i, kryo.readClassAndObject(input));
+                boolean isNull = (nullBitmap[i / 8] & (1 << (i % 8))) != 0;
+                if (isNull) {
+                    kinds[i] = KIND_NULL;
+                } else {
+                    kinds[i] = input.readByte();
+                    readValue(kryo, input, kinds[i], i, primitives, objects);
+                }
+            }
+            return new Tuple(guid, kinds, primitives, objects);
+        }
+
+        private static void readValue(Kryo kryo, Input input, byte kind, int idx, long[] primitives, Comparable[] objects) {
+            switch (kind) {
+                case KIND_STRING:
+                    objects[idx] = input.readString();
+                    break;
+                case KIND_INT:
+                    primitives[idx] = input.readVarInt(false);
+                    break;
+                case KIND_LONG:
+                    primitives[idx] = input.readVarLong(false);
+                    break;
+                case KIND_DOUBLE:
+                    primitives[idx] = input.readLong();
+                    break;
+                case KIND_FLOAT:
+                    primitives[idx] = input.readInt();
+                    break;
+                case KIND_SHORT:
+                    primitives[idx] = input.readShort();
+                    break;
+                case KIND_BYTE:
+                    primitives[idx] = input.readByte();
+                    break;
+                case KIND_BOOLEAN:
+                    primitives[idx] = input.readBoolean() ? 1L : 0L;
+                    break;
+                case KIND_CHAR:
+                    primitives[idx] = input.readChar();
+                    break;
+                case KIND_OBJECT:
+                    objects[idx] = (Comparable) kryo.readClassAndObject(input);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown type tag " + kind);
             }
+        }
 
-            try {
-                Constructor<Tuple> ctor = aClass.getDeclaredConstructor(GUID.class, ArrayList.class, int.class);
-                ctor.setAccessible(true);
-                return ctor.newInstance(guid, data, size);
-            } catch (InstantiationException | IllegalAccessException | InvocationTargetException | NoSuchMethodException e) {
-                throw new RuntimeException(e);
+        // the first byte was the class information of the guid
+        private static Tuple readLegacy(Kryo kryo, Input input, byte guidClass) {
+            GUID guid = (guidClass == Kryo.NULL) ? null : kryo.readObject(input, GUID.class);
+            int size = input.readInt();
+            Tuple tuple = new Tuple(guid, newKinds(size), new long[size], new Comparable[size]);
+            for (int i = 0; i < size; i++) {
+                tuple.put(i, (Comparable) kryo.readClassAndObject(input));
             }
+            return tuple;
         }
     }
 }
@@ -0,0 +1,120 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A batch of rows handed out by scans.
+ * Filters don't move rows around. They merely shrink the selection vector that points to the rows still in the batch.
+ * That way a predicate can run over a whole batch in one tight loop instead of being called once per row.
+ */
+public final class TupleBatch {
+    public static final int MAX_SIZE = 1024;
+
+    private final Tuple[] rows;
+    // positions of the selected rows in rows
+    // only the first size entries are valid
+    private final int[] selection;
+    private int size;
+
+    TupleBatch(Tuple[] rows, int numRows) {
+        this.rows = rows;
+        this.selection = new int[numRows];
+        for (int i = 0; i < numRows; i++) {
+            selection[i] = i;
+        }
+        this.size = numRows;
+    }
+
+    /**
+     * Number of selected rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the i-th selected row.
+     */
+    public Tuple get(int i) {
+        return rows[selection[i]];
+    }
+
+    /**
+     * Raw access for code that filters a batch (see CompilerUtil).
+     * Filters compact the selection in place and call setSize afterwards.
+     */
+    public Tuple[] getRows() {
+        return rows;
+    }
+
+    public int[] getSelection() {
+        return selection;
+    }
+
+    public void setSize(int size) {
+        if (size < 0 || size > this.size) {
+            throw new IllegalArgumentException("A batch can only shrink. Size " + this.size + " can't become " + size);
+        }
+        this.size = size;
+    }
+
+    /**
+     * Returns the selected rows.
+     */
+    public Stream<Tuple> stream() {
+        return IntStream.range(0, size).mapToObj(this::get);
+    }
+
+    /**
+     * Cuts a stream of rows into batches.
+     * Closing the stream of batches closes the stream of rows.
+     */
+    static Stream<TupleBatch> batches(Stream<Tuple> rows) {
+        Iterator<Tuple> rowIterator = rows.iterator();
+        Iterator<TupleBatch> batchIterator = new Iterator<TupleBatch>() {
+            @Override
+            public boolean hasNext() {
+                return rowIterator.hasNext();
+            }
+
+            @Override
+            public TupleBatch next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Tuple[] batch = new Tuple[MAX_SIZE];
+                int numRows = 0;
+                while (numRows < MAX_SIZE && rowIterator.hasNext()) {
+                    batch[numRows++] = rowIterator.next();
+                }
+                return new TupleBatch(batch, numRows);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(batchIterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(rows::close);
+    }
+}
@@ -20,24 +20,49 @@ package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.galaxy.Store;
 import co.paralleluniverse.galaxy.StoreTransaction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static org.carbon.copy.data.structures.DataStructure.TIMEOUT_SECS;
 
 public class Txn {
     private static Logger logger = LoggerFactory.getLogger(Txn.class);
+    // only used to time out commits that galaxy never calls back on
+    private static final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("txn-commit-timeout-%d").build()
+    );
+    // validating and writing blocks once galaxy handed out the locks is real work (serializing, sometimes blocking)
+    // that doesn't belong on galaxy's callback threads
+    private static final ExecutorService commitExecutor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("txn-commit-%d").build()
+    );
 
     private final Store store;
     // the TxnManagerImpl is the place where local locking happens and multiple threads coordinate
@@ -54,13 +79,60 @@ public class Txn {
     // but is interesting in case we need to roll back a transaction ... in that case we have to delete
     // all the data structures in this set
     private final Set<DataStructure> createdObjects = new HashSet<>();
+    // ids of all blocks this transaction holds the local lock of
+    // this transaction (not the thread working on it) owns these locks
+    // an async commit might release them on a different thread
+    // and the thread that started it might already work on the next transaction in the meantime
+    private final Set<Long> lockedBlocks = new HashSet<>();
+    // these actions run after this transaction committed successfully
+    // they are meant to maintain node-local (non-galaxy) state such as local indexes
+    private final List<Runnable> onCommitActions = new LinkedList<>();
     // this boolean indicates whether this transaction has been committed or rolled back on
     // you can't reuse a Txn object ever!
     private boolean txnEnded = false;
+    // older transactions (smaller timestamps) win when transactions fight over locks
+    private final long timestamp;
+    // deferred transactions don't lock blocks when they touch them
+    // they remember the version of every block they touched and lock everything in one go when they commit
+    private final boolean defersLocking;
+    // block ids are sorted so that deferred transactions lock blocks in the same order
+    private final Set<Long> deferredLocks = new TreeSet<>();
+    // block id -> version of the block when this transaction read it first
+    // this is the read set of a deferred transaction (blocks it only read as well as blocks it changed)
+    // blocks are loaded asynchronously that's why this needs to be concurrent
+    private final Map<Long, ReadVersion> readVersions = new ConcurrentHashMap<>();
+    // block id -> data structure that was loaded for writes in this transaction
+    // loading the same block twice isn't only wasteful
+    // the two copies would also overwrite each other's changes at commit
+    private final Map<Long, DataStructure> loadedObjects = new HashMap<>();
+    // data structures this transaction changed without having loaded them itself
+    private final Set<DataStructure> capturedObjects = new HashSet<>();
 
-    Txn(Store store, TxnManagerImpl txnManager) {
+    Txn(Store store, TxnManagerImpl txnManager, long timestamp) {
+        this(store, txnManager, timestamp, false);
+    }
+
+    Txn(Store store, TxnManagerImpl txnManager, long timestamp, boolean defersLocking) {
         this.store = store;
         this.txnManager = txnManager;
+        this.timestamp = timestamp;
+        this.defersLocking = defersLocking;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    boolean isEnded() {
+        return txnEnded;
+    }
+
+    private void end() {
+        txnEnded = true;
+    }
+
+    boolean defersLocking() {
+        return defersLocking;
     }
 
     // As opposed to the rest of the application this class (as well as the TxnManager internally) is
@@ -78,66 +150,295 @@ public class Txn {
     //      - this might include deleting all newly created cache lines
     // 5. release the exclusive, node-internal transaction lock
     public void commit() throws IOException {
+        waitForCommit(commitAsync());
+    }
+
+    /**
+     * Commits this transaction together with other transactions on this node (see GroupCommitCoordinator).
+     * This is meant for lots of small transactions that would otherwise pay for their own round of writes.
+     * The blocks are written to galaxy a little later together with the blocks of all other transactions in the group.
+     * Local locks are released as soon as the blocks are parked so that the next transaction on this node can go ahead.
+     * Other nodes can't get the blocks until the whole group has been written.
+     * If writing the group fails, this transaction fails and all blocks of the group are released (see GroupCommitCoordinator).
+     */
+    public void groupCommit() throws IOException {
+        waitForCommit(groupCommitAsync());
+    }
+
+    private void waitForCommit(ListenableFuture<Void> commitFuture) throws IOException {
+        try {
+            // every block gets its own timeout in the pipeline
+            // this is just a safety net in case galaxy never calls back
+            commitFuture.get(TIMEOUT_SECS * 2, TimeUnit.SECONDS);
+        } catch (ExecutionException xcp) {
+            throw (xcp.getCause() instanceof IOException) ? (IOException) xcp.getCause() : new IOException(xcp.getCause());
+        } catch (InterruptedException | TimeoutException xcp) {
+            throw new IOException(xcp);
+        }
+    }
+
+    /**
+     * Same as commit but doesn't block.
+     * Each block goes through its own pipeline of double-checking the lock and writing (or deleting) it.
+     * That way serializing and writing one block overlaps with the network round trips of other blocks.
+     * The returned future fails with an IOException if the commit failed.
+     * Locks are released and on-commit actions have run by the time the future completes.
+     */
+    public ListenableFuture<Void> commitAsync() {
         if (txnEnded) {
-            throw new IOException("Txn ended already! You can't reuse a Txn ever!");
+            return Futures.immediateFailedFuture(new IOException("Txn ended already! You can't reuse a Txn ever!"));
         }
+        end();
 
+        VersionStore.CommitVersion commitVersion = txnManager.getVersionStore().beginCommit();
+        ListenableFuture<List<Object>> allBlocksFuture;
         try {
-            // in a first step we try to acquire locks for all objects in our transaction
-            doubleCheckAllBlocksArePinned();
-
-            // this is a very naive implementation for now
-            // all the work is happening at commit time
-            // this is pretty pessimistic
-            // it might be better to do this as early as
-            // when we are getting the lock on the object
-            List<ListenableFuture> writingFutures = new LinkedList<>();
-
-            writingFutures.addAll(
-                    changedObjects.stream()
-                            .filter(ds -> !deletedObjects.contains(ds))
-                            .map(ds -> ds.asyncUpsert(ds, this))
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList())
-            );
-
-            writingFutures.addAll(
-                    deletedObjects.stream()
-                            .map(ds -> ds.asyncDelete(ds, this))
-                            .filter(Objects::nonNull)
-                            .collect(Collectors.toList())
-            );
-
-            writingFutures.forEach(f -> wait(f, TIMEOUT_SECS));
-
+            if (defersLocking) {
+                // nothing is written before I know that none of the blocks changed under my feet
+                allBlocksFuture = Futures.transformAsync(lockDeferredBlocksAsync(), ignored -> {
+                    validateReadVersions();
+                    return writeBlocksAsync(commitVersion);
+                }, commitExecutor);
+            } else {
+                allBlocksFuture = writeBlocksAsync(commitVersion);
+            }
         } catch (Exception xcp) {
-            logger.error("Committing txn failed with {} {} {}", changedObjects, createdObjects, deletedObjects);
-            throw new IOException(xcp);
-        } finally {
-            releaseAllTheBlocksYouHave();
-            txnEnded = true;
+            allBlocksFuture = Futures.immediateFailedFuture(xcp);
         }
+
+        SettableFuture<Void> commitFuture = SettableFuture.create();
+        Futures.addCallback(allBlocksFuture, new FutureCallback<List<Object>>() {
+            @Override
+            public void onSuccess(List<Object> result) {
+                // galaxy has the latest version of all of these
+                changedObjects.forEach(DataStructure::markClean);
+                try {
+                    endCommit(commitVersion);
+                } catch (Exception xcp) {
+                    onCommitActions.clear();
+                    commitFuture.setException(new IOException(xcp));
+                    return;
+                }
+                runOnCommitActions();
+                commitFuture.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                logger.error("Committing txn failed with {} {} {}", changedObjects, createdObjects, deletedObjects);
+                try {
+                    discardCapturedChanges();
+                    endCommit(commitVersion);
+                } finally {
+                    onCommitActions.clear();
+                    commitFuture.setException(new IOException(t));
+                }
+            }
+        }, MoreExecutors.directExecutor());
+        return commitFuture;
     }
 
-    private void doubleCheckAllBlocksArePinned() {
-        List<ListenableFuture> lockingFutures = new LinkedList<>();
+    private ListenableFuture<List<Object>> writeBlocksAsync(VersionStore.CommitVersion commitVersion) {
+        // before I overwrite anything readers with an open snapshot might still need
+        // the current version of the blocks
+        return Futures.transformAsync(stashPreImagesAsync(commitVersion), ignored -> writeStashedBlocksAsync(), commitExecutor);
+    }
 
-        lockingFutures.addAll(
+    private ListenableFuture<List<Object>> writeStashedBlocksAsync() {
+        List<ListenableFuture<Object>> blockFutures = new LinkedList<>();
+        blockFutures.addAll(
                 changedObjects.stream()
                         .filter(ds -> !deletedObjects.contains(ds))
+                        .filter(DataStructure::isDirty)
                         .sorted(Comparator.comparingLong(DataStructure::getId))
-                        .map(ds -> asyncLockBlocks(ds.getId()))
+                        .map(ds -> pipeline(ds.getId(), () -> ds.asyncUpsert(ds, this)))
                         .collect(Collectors.toList())
         );
 
-        lockingFutures.addAll(
+        blockFutures.addAll(
                 deletedObjects.stream()
                         .sorted(Comparator.comparingLong(DataStructure::getId))
-                        .map(ds -> asyncLockBlocks(ds.getId()))
+                        .map(ds -> pipeline(ds.getId(), () -> ds.asyncDelete(ds, this)))
                         .collect(Collectors.toList())
         );
 
-        lockingFutures.forEach(f -> wait(f, TIMEOUT_SECS));
+        return Futures.allAsList(blockFutures);
+    }
+
+    // takes the local locks of the blocks I'm going to write one after the other (they are cheap)
+    // and asks galaxy for all the remote locks at once
+    // that way a transaction pays for one network round trip no matter how many blocks it touched
+    // blocks that were only read aren't locked
+    // once I hold the locks, a shared get brings galaxy's copy of them (and their version) up to date
+    // that's all I need to validate them
+    private ListenableFuture<List<byte[]>> lockDeferredBlocksAsync() {
+        List<ListenableFuture<byte[]>> remoteLocks = new LinkedList<>();
+        for (long blockId : deferredLocks) {
+            if (txnManager.lockLocally(blockId, this, timestamp)) {
+                remoteLocks.add(txnManager.lockRemotelyAsync(blockId));
+            }
+            lockedBlocks.add(blockId);
+        }
+        ListenableFuture<List<byte[]>> allLocks = Futures.withTimeout(Futures.allAsList(remoteLocks), TIMEOUT_SECS, TimeUnit.SECONDS, timeoutExecutor);
+        return Futures.transformAsync(allLocks, ignored -> refreshReadOnlyBlocksAsync(), commitExecutor);
+    }
+
+    private ListenableFuture<List<byte[]>> refreshReadOnlyBlocksAsync() {
+        List<ListenableFuture<byte[]>> reads = readVersions.keySet().stream()
+                .filter(blockId -> !deferredLocks.contains(blockId))
+                // a block that can't be read anymore (e.g. because it was deleted) fails validation
+                .map(blockId -> Futures.catching(store.getAsync(blockId), Exception.class, xcp -> null, MoreExecutors.directExecutor()))
+                .collect(Collectors.toList());
+        return Futures.withTimeout(Futures.allAsList(reads), TIMEOUT_SECS, TimeUnit.SECONDS, timeoutExecutor);
+    }
+
+    // I'm holding the locks of all blocks I'm going to write now
+    // if any block changed since I've seen it, my changes are based on outdated data
+    // a block I only read that somebody else on this node holds the lock of is about to change
+    private void validateReadVersions() {
+        readVersions.forEach((blockId, readVersion) -> {
+            boolean isOnlyRead = !deferredLocks.contains(blockId);
+            if (!readVersion.isCurrent(store, blockId) || (isOnlyRead && txnManager.isLockedByOthers(blockId, this))) {
+                txnManager.countAbort();
+                throw new TxnAbortedException("Block " + blockId + " changed after transaction " + timestamp + " read it");
+            }
+        });
+    }
+
+    /**
+     * Same as groupCommit but doesn't block.
+     * The returned future completes when all blocks of the group have been written.
+     */
+    public ListenableFuture<Void> groupCommitAsync() {
+        if (txnEnded) {
+            return Futures.immediateFailedFuture(new IOException("Txn ended already! You can't reuse a Txn ever!"));
+        }
+        end();
+
+        VersionStore.CommitVersion commitVersion = txnManager.getVersionStore().beginCommit();
+        GroupCommitCoordinator.Participant participant;
+        try {
+            if (defersLocking) {
+                // locking and refreshing read blocks are two round trips
+                lockDeferredBlocksAsync().get(TIMEOUT_SECS * 2, TimeUnit.SECONDS);
+                validateReadVersions();
+            }
+            stashPreImagesAsync(commitVersion).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+
+            // serialize everything first
+            // I don't want to park half a transaction if serialization blows up
+            Map<Long, byte[]> blocksToPark = new HashMap<>();
+            changedObjects.stream()
+                    .filter(ds -> !deletedObjects.contains(ds))
+                    .filter(DataStructure::isDirty)
+                    .forEach(ds -> blocksToPark.put(ds.getId(), ds.toBytes()));
+            deletedObjects.forEach(ds -> blocksToPark.put(ds.getId(), null));
+
+            // I'm holding all the locks while parking
+            blocksToPark.forEach(GroupCommitCoordinator::park);
+            changedObjects.forEach(DataStructure::markClean);
+            participant = new GroupCommitCoordinator.Participant(store, blocksToPark.keySet());
+        } catch (Exception xcp) {
+            logger.error("Committing txn failed with {} {} {}", changedObjects, createdObjects, deletedObjects);
+            discardCapturedChanges();
+            endCommit(commitVersion);
+            onCommitActions.clear();
+            return Futures.immediateFailedFuture(new IOException(xcp));
+        }
+
+        txnManager.getGroupCommitCoordinator().join(participant);
+        // other transactions on this node can build on top of my parked blocks right away
+        // (and might end up in the same group)
+        // the parked blocks keep their remote locks until they're written
+        try {
+            endCommit(commitVersion);
+        } catch (Exception xcp) {
+            logger.error("Ending commit failed", xcp);
+        }
+
+        SettableFuture<Void> commitFuture = SettableFuture.create();
+        Futures.addCallback(participant.getFuture(), new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                // galaxy has all blocks of the group now
+                runOnCommitActions();
+                commitFuture.set(null);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                // the coordinator unparked the blocks and released them already
+                logger.error("Group commit failed for {}", participant.getBlockIds(), t);
+                onCommitActions.clear();
+                commitFuture.setException(new IOException(t));
+            }
+        }, MoreExecutors.directExecutor());
+        return commitFuture;
+    }
+
+    // double-check the lock on a block and then write (or delete) it
+    // this is a very naive implementation for now
+    // all the work is happening at commit time
+    // this is pretty pessimistic
+    // it might be better to do this as early as
+    // when we are getting the lock on the object
+    @SuppressWarnings("unchecked")
+    private ListenableFuture<Object> pipeline(long blockId, Supplier<ListenableFuture> write) {
+        ListenableFuture<Object> written = Futures.transformAsync(asyncLockBlocks(blockId), bytes -> {
+            // there might be an older version of this block waiting to be group committed
+            ListenableFuture f = GroupCommitCoordinator.writeThrough(blockId, write);
+            return (f != null) ? (ListenableFuture<Object>) f : Futures.<Object>immediateFuture(null);
+        }, commitExecutor);
+        // don't hold on to the locks forever if galaxy never comes back
+        return Futures.withTimeout(written, TIMEOUT_SECS, TimeUnit.SECONDS, timeoutExecutor);
+    }
+
+    private void endCommit(VersionStore.CommitVersion commitVersion) {
+        try {
+            txnManager.getVersionStore().endCommit(commitVersion);
+        } finally {
+            releaseAllTheBlocksYouHave();
+        }
+    }
+
+    private void runOnCommitActions() {
+        try {
+            // the data is committed at this point
+            // failing an action doesn't roll anything back
+            onCommitActions.forEach(Runnable::run);
+        } catch (Exception xcp) {
+            logger.error("Running on-commit actions failed", xcp);
+        } finally {
+            onCommitActions.clear();
+        }
+    }
+
+    // blocks that were created in this transaction didn't exist before
+    // so there's nothing to remember for them
+    private ListenableFuture<List<Object>> stashPreImagesAsync(VersionStore.CommitVersion commitVersion) {
+        if (!commitVersion.capturesPreImages()) {
+            return Futures.immediateFuture(Collections.emptyList());
+        }
+
+        VersionStore versionStore = txnManager.getVersionStore();
+        Set<DataStructure> touchedObjects = changedObjects.stream()
+                .filter(DataStructure::isDirty)
+                .collect(Collectors.toSet());
+        touchedObjects.addAll(deletedObjects);
+        touchedObjects.removeAll(createdObjects);
+        List<ListenableFuture<Object>> stashed = new LinkedList<>();
+        for (DataStructure ds : touchedObjects) {
+            long blockId = ds.getId();
+            // I'm holding the exclusive lock on this block so this read is local
+            // unless the block is parked and waits to be written by group commit
+            GroupCommitCoordinator.ParkedBlock parkedBlock = GroupCommitCoordinator.getParkedBlock(blockId);
+            ListenableFuture<byte[]> bytes = (parkedBlock != null) ? Futures.immediateFuture(parkedBlock.getBytes()) : store.getAsync(blockId);
+            stashed.add(Futures.transform(bytes, (byte[] b) -> {
+                versionStore.addPreImage(blockId, commitVersion, b);
+                return null;
+            }, MoreExecutors.directExecutor()));
+        }
+        return Futures.allAsList(stashed);
     }
 
     private void wait(ListenableFuture f, int timeoutSecs) {
@@ -165,8 +466,10 @@ public class Txn {
         } catch (Exception xcp) {
             throw new IOException(xcp);
         } finally {
+            discardCapturedChanges();
             releaseAllTheBlocksYouHave();
-            txnEnded = true;
+            onCommitActions.clear();
+            end();
         }
     }
 
@@ -189,52 +492,168 @@ public class Txn {
     // This method needs to be called by data structures so that the transaction knows
     // that this data structure needs to be serialized and updated
     void addToChangedObjects(DataStructure ds) {
+        checkChangeable(ds);
+        adopt(ds);
         deletedObjects.remove(ds);
-        txnManager.lock(ds.getId());
+        lock(ds);
+        ds.markDirty();
         changedObjects.add(ds);
     }
 
+    // This method can be called by data structures that might or might not change.
+    // It takes the lock on the data structure (so nobody else can change it under our feet)
+    // but the data structure is only written if it is added to the changed objects as well.
+    void addToLockedObjects(DataStructure ds) {
+        checkChangeable(ds);
+        lock(ds);
+    }
+
     // This method needs to be called by data structures so that the transaction knows
     // that this data structure will be deleted
     void addToDeletedObjects(DataStructure ds) {
+        checkChangeable(ds);
+        adopt(ds);
         changedObjects.remove(ds);
-        txnManager.lock(ds.getId());
+        lock(ds);
         deletedObjects.add(ds);
+        if (ds instanceof Table) {
+            // local indexes of a table that's gone are of no use to anybody
+            long tableId = ds.getId();
+            onCommit(() -> LocalIndex.onDrop(tableId));
+        }
+    }
+
+    // Data structures this transaction changes without having loaded them itself
+    // (e.g. ones captured by a doTransactionally lambda) join its identity map. Loading them again in this transaction hands out the same object.
+    // If this transaction fails, their changes are discarded (see discardCapturedChanges).
+    private void adopt(DataStructure ds) {
+        if (loadedObjects.putIfAbsent(ds.getId(), ds) != ds) {
+            capturedObjects.add(ds);
+        }
+    }
+
+    // the data structures this transaction loaded itself go away with it
+    // all others are put back to what was committed last
+    private void discardCapturedChanges() {
+        try {
+            capturedObjects.stream()
+                    .filter(ds -> !createdObjects.contains(ds))
+                    .forEach(DataStructure::discardChanges);
+        } catch (Exception xcp) {
+            logger.error("Discarding changes of {} failed", capturedObjects, xcp);
+        } finally {
+            capturedObjects.clear();
+            loadedObjects.clear();
+        }
+    }
+
+    // Data structures read in a snapshot might be outdated.
+    // Writing them back would overwrite whatever happened after the snapshot was opened.
+    // Shared data structures are read by everybody on this node. Changing them would leak uncommitted data.
+    private void checkChangeable(DataStructure ds) {
+        if (ds.getReadSnapshot() != null) {
+            throw new IllegalStateException("Can't change " + ds + " that was read in " + ds.getReadSnapshot());
+        } else if (ds.isShared()) {
+            throw new IllegalStateException("Can't change " + ds + " that is shared by all readers on this node");
+        }
+    }
+
+    // Registers an action that is run after this transaction committed.
+    // Rolled back transactions simply drop these actions.
+    void onCommit(Runnable action) {
+        onCommitActions.add(action);
     }
 
     // This method needs to be called by data structures so that the transaction knows
     // that this data structure is newly created just now.
     // This is mostly interesting for the rollback case.
     void addToCreatedObjects(DataStructure ds) {
-        txnManager.lock(ds.getId());
+        lock(ds);
         createdObjects.add(ds);
     }
 
-    private void releaseAllTheBlocksYouHave() {
-        // dedup all the ids
-        Set<Long> allTheLockedIds = new HashSet<>();
-        allTheLockedIds.addAll(
-                changedObjects.stream()
-                        .map(DataStructure::getId)
-                        .collect(Collectors.toSet())
-        );
-        allTheLockedIds.addAll(
-                deletedObjects.stream()
-                        .map(DataStructure::getId)
-                        .collect(Collectors.toSet())
-        );
-        allTheLockedIds.addAll(
-                createdObjects.stream()
-                        .map(DataStructure::getId)
-                        .collect(Collectors.toSet())
-        );
+    private void lock(DataStructure ds) {
+        long blockId = ds.getId();
+        if (defersLocking) {
+            deferredLocks.add(blockId);
+            // blocks that were loaded know the version they were read in
+            // all others (e.g. blocks created in this transaction) are as old as they get right now
+            ReadVersion readVersion = ds.getReadVersion();
+            readVersions.putIfAbsent(blockId, (readVersion != null) ? readVersion : ReadVersion.capture(store, blockId));
+            return;
+        }
 
+        txnManager.lock(blockId, this, timestamp);
+        lockedBlocks.add(blockId);
+    }
+
+    // the factory loads every block at most once per transaction
+    // (no computeIfAbsent because loading a data structure might load other data structures)
+    @SuppressWarnings("unchecked")
+    <T extends DataStructure> T loadOnce(long id, Supplier<T> loader) {
+        DataStructure ds = loadedObjects.get(id);
+        if (ds == null) {
+            ds = loader.get();
+            loadedObjects.put(id, ds);
+        }
+        return (T) ds;
+    }
+
+    // remembers the version of a block the first time this transaction reads it
+    // data structures call this when they loaded a block with this transaction
+    // blocks read without the transaction aren't part of its read set
+    void recordReadVersion(long blockId, ReadVersion readVersion) {
+        if (defersLocking && !txnEnded && readVersion != null) {
+            readVersions.putIfAbsent(blockId, readVersion);
+        }
+    }
+
+    // galaxy bumps the version of a block every time it is written
+    // blocks that are parked for group commit are written later though
+    // that's why I need to remember which parked bytes I've seen as well
+    static class ReadVersion {
+        private final long version;
+        private final GroupCommitCoordinator.ParkedBlock parkedBlock;
+
+        private ReadVersion(long version, GroupCommitCoordinator.ParkedBlock parkedBlock) {
+            this.version = version;
+            this.parkedBlock = parkedBlock;
+        }
+
+        // this needs to be called right before the block is read
+        static ReadVersion capture(Store store, long blockId) {
+            return new ReadVersion(store.getVersion(blockId), GroupCommitCoordinator.getParkedBlock(blockId));
+        }
+
+        // galaxy says -1 for blocks that aren't in its cache (yet)
+        // that's why the version of a block read from galaxy is taken once the read is done
+        // if the block was cached before and changed while I was reading it, I keep the older version
+        // validation fails needlessly then (but it doesn't miss the change)
+        static ReadVersion afterLoad(ReadVersion beforeLoad, Store store, long blockId) {
+            long version = store.getVersion(blockId);
+            return (beforeLoad.version >= 0 && beforeLoad.version != version)
+                    ? beforeLoad
+                    : new ReadVersion(version, beforeLoad.parkedBlock);
+        }
+
+        // the parked bytes to read instead of asking galaxy (or null)
+        GroupCommitCoordinator.ParkedBlock getParkedBlock() {
+            return parkedBlock;
+        }
+
+        boolean isCurrent(Store store, long blockId) {
+            return store.getVersion(blockId) == version && GroupCommitCoordinator.getParkedBlock(blockId) == parkedBlock;
+        }
+    }
+
+    private void releaseAllTheBlocksYouHave() {
         try {
             // this calls into the TxnManager to release blocks from this transaction
             // we might still choose to hold on to the remote lock and pass the local lock
             // to a different thread
-            allTheLockedIds.forEach(txnManager::release);
+            lockedBlocks.forEach(blockId -> txnManager.release(blockId, this));
         } finally {
+            lockedBlocks.clear();
             changedObjects.clear();
             deletedObjects.clear();
             createdObjects.clear();
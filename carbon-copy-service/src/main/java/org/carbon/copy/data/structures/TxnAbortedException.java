@@ -16,22 +16,15 @@
  *
  */
 
-package org.carbon.copy.data.structures.experimental.sibplustree;
+package org.carbon.copy.data.structures;
 
-class Breadcrumb<K extends Comparable<K>> {
-    final InternalNodeGroup<K> ing;
-    final NodeIdxAndIdx indexes;
-    private Breadcrumb(InternalNodeGroup<K> ing, NodeIdxAndIdx indexes) {
-        this.ing = ing;
-        this.indexes = indexes;
-    }
-
-    @Override
-    public String toString() {
-        return indexes.toString() + "_" + ing.toString();
-    }
-
-    static <K extends Comparable<K>> Breadcrumb<K> of(InternalNodeGroup<K> ing, NodeIdxAndIdx indexes) {
-        return new Breadcrumb<>(ing, indexes);
+/**
+ * Is thrown when a transaction asks for a lock that is held by an older transaction.
+ * Instead of waiting (and potentially deadlocking) the younger transaction gives up right away.
+ * The transaction needs to be rolled back and can be retried (TxnManager.doTransactionally does that for you).
+ */
+public class TxnAbortedException extends RuntimeException {
+    TxnAbortedException(String message) {
+        super(message);
     }
 }
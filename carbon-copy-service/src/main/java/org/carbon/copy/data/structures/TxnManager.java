@@ -23,5 +23,23 @@ import java.util.function.Consumer;
 
 public interface TxnManager {
     Txn beginTransaction();
+    /**
+     * Runs the lambda in a new transaction and commits it.
+     * Aborted transactions are retried, meaning the lambda might run multiple times.
+     * Load every structure inside the lambda with the Txn it is given.
+     * Structures captured from outside the lambda are put back to what was committed last when an attempt fails,
+     * but anything else the lambda changes outside of its transaction is not.
+     */
     void doTransactionally(Consumer<Txn> lambda) throws IOException;
+    // deferred transactions don't lock anything until they commit (see Txn)
+    // their read set is every block loaded with the transaction (loading for writes doesn't lock anything either)
+    Txn beginDeferredTransaction();
+    // same contract as doTransactionally
+    void doDeferredTransactionally(Consumer<Txn> lambda) throws IOException;
+    // don't forget to close the snapshot when you're done reading
+    ReadSnapshot beginSnapshot();
+    // reads as of a snapshot that somebody else on this node holds open (closing this one doesn't close that snapshot)
+    // ReadSnapshot.LATEST reads whatever was committed last and keeps track of the blocks read (see DistHash.ExecuteRequest)
+    ReadSnapshot joinSnapshot(long version);
+    LockContentionStats getLockContentionStats();
 }
@@ -19,17 +19,19 @@
 package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.galaxy.Store;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
 import java.io.IOException;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
@@ -42,13 +44,51 @@ import static org.carbon.copy.data.structures.DataStructure.TIMEOUT_SECS;
  * I got around to implement a bookkeeping structure that let's us figure out whether a block has been locked locally already.
  * This way we're a) able to run multiple independent transactions concurrently and b) introduce a blocking call only when
  * a transaction wants a block that has been locked already.
+ *
+ * The bookkeeping structure is a striped lock table. Each block id hashes to one stripe.
+ * A stripe is a small open addressing hash table that maps block ids to their current owner.
+ * Locking a free block is a single insert into a primitive array, no objects are created.
+ * Threads that find a block owned by somebody else wait on the condition of the stripe until the block is handed over.
+ *
+ * Transactions lock blocks one by one as they touch them. That means two transactions can easily end up
+ * waiting for each other. Instead of finding out the hard way (after a timeout) I use wait-die:
+ * every transaction gets a timestamp when it begins. An older transaction waits for a younger one to release a block.
+ * A younger transaction that wants a block of an older transaction is aborted right away (TxnAbortedException).
+ * Waits only ever go from old to young so there can't be a cycle. doTransactionally retries aborted transactions
+ * with their original timestamp -- this way every transaction eventually becomes the oldest and goes through.
  */
 class TxnManagerImpl implements TxnManager {
     private static Logger logger = LoggerFactory.getLogger(TxnManagerImpl.class);
+    // needs to be a power of two
+    private static final int NUM_STRIPES = 256;
     // this contains the node-wide set of blocks that are engaged in a transaction
-    // if a transaction tries to pin a block that is already in this set,
+    // if a transaction tries to pin a block that is already in this table,
     // the transaction steps on somebody else's foot
-    private static final ConcurrentHashMap<Long, LocalLock> blocksToLocalLocks = new ConcurrentHashMap<>(16, 0.75f, 8);
+    private static final LockStripe[] lockStripes = new LockStripe[NUM_STRIPES];
+    static {
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            lockStripes[i] = new LockStripe();
+        }
+    }
+
+    // node-wide bookkeeping of previous versions of blocks for read snapshots
+    private static final VersionStore versionStore = new VersionStore();
+
+    // node-wide batching of commits that opted into group commit
+    private static final GroupCommitCoordinator groupCommitCoordinator = new GroupCommitCoordinator();
+
+    // node-wide contention metrics
+    private static final LongAdder acquisitions = new LongAdder();
+    private static final LongAdder contendedAcquisitions = new LongAdder();
+    private static final LongAdder timeouts = new LongAdder();
+    private static final LongAdder aborts = new LongAdder();
+    private static final LongAdder waitNanos = new LongAdder();
+
+    // lockers without a timestamp (e.g. tests) always wait
+    static final long NO_TIMESTAMP = -1;
+    private static final AtomicLong lastTimestamp = new AtomicLong(0);
+    // how often doTransactionally tries to run a transaction that keeps being aborted
+    static final int MAX_TXN_ATTEMPTS = 10;
 
     private final Store store;
 
@@ -57,19 +97,95 @@ class TxnManagerImpl implements TxnManager {
         this.store = store;
     }
 
+    // aborted transactions are retried (meaning the lambda might run multiple times)
     public void doTransactionally(Consumer<Txn> lambda) throws IOException {
-        Txn txn = beginTransaction();
+        doTransactionally(lambda, false);
+    }
+
+    public void doDeferredTransactionally(Consumer<Txn> lambda) throws IOException {
+        doTransactionally(lambda, true);
+    }
+
+    private void doTransactionally(Consumer<Txn> lambda, boolean defersLocking) throws IOException {
+        // retries keep the timestamp of the first attempt
+        // that way they are getting older and older and eventually win
+        long timestamp = nextTimestamp();
+        for (int attempt = 1; ; attempt++) {
+            Txn txn = new Txn(store, this, timestamp, defersLocking);
+            try {
+                lambda.accept(txn);
+                txn.commit();
+                return;
+            } catch (Exception xcp) {
+                if (!txn.isEnded()) {
+                    txn.rollback();
+                }
+
+                if (isAborted(xcp) && attempt < MAX_TXN_ATTEMPTS) {
+                    backOff(attempt);
+                } else {
+                    throw new IOException(xcp);
+                }
+            }
+        }
+    }
+
+    public Txn beginTransaction() {
+        return new Txn(store, this, nextTimestamp(), false);
+    }
+
+    public Txn beginDeferredTransaction() {
+        return new Txn(store, this, nextTimestamp(), true);
+    }
+
+    private static long nextTimestamp() {
+        return lastTimestamp.incrementAndGet();
+    }
+
+    private static boolean isAborted(Throwable t) {
+        while (t != null) {
+            if (t instanceof TxnAbortedException) return true;
+            t = t.getCause();
+        }
+        return false;
+    }
+
+    // give the older transaction a moment to finish
+    private static void backOff(int attempt) throws IOException {
         try {
-            lambda.accept(txn);
-            txn.commit();
-        } catch (Exception xcp) {
-            txn.rollback();
+            Thread.sleep(1 + ThreadLocalRandom.current().nextInt(1 << Math.min(attempt, 7)));
+        } catch (InterruptedException xcp) {
             throw new IOException(xcp);
         }
     }
 
-    public Txn beginTransaction() {
-        return new Txn(store, this);
+    @Override
+    public ReadSnapshot beginSnapshot() {
+        return versionStore.openSnapshot();
+    }
+
+    @Override
+    public ReadSnapshot joinSnapshot(long version) {
+        return new ReadSnapshot(versionStore, version, false);
+    }
+
+    VersionStore getVersionStore() {
+        return versionStore;
+    }
+
+    GroupCommitCoordinator getGroupCommitCoordinator() {
+        return groupCommitCoordinator;
+    }
+
+    @Override
+    public LockContentionStats getLockContentionStats() {
+        return new LockContentionStats(
+                acquisitions.sum(),
+                contendedAcquisitions.sum(),
+                timeouts.sum(),
+                aborts.sum(),
+                TimeUnit.NANOSECONDS.toMillis(waitNanos.sum())
+        );
     }
 
     // this is a blocking call!
@@ -77,40 +193,56 @@ class TxnManagerImpl implements TxnManager {
     // there is a local lock that coordinates multiple threads inside the same node / JVM
     // and then there's the remote lock that is a galaxy feature ensuring that only one node in the cluster
     // has ownership of the block and is allowed to change it
+    // lockers without a transaction (e.g. tests) own the lock with their thread
     void lock(long blockId) {
-        LocalLock ll = tryGetLocalLock(blockId);
-        Future<byte[]> remoteFuture = tryGetRemoteLock(blockId);
+        lock(blockId, Thread.currentThread(), NO_TIMESTAMP);
+    }
 
-        try {
-            if (ll == null || ll.amIHoldingTheLock()) {
-                // there was no previous local lock that means we have it
-                remoteFuture.get(TIMEOUT_SECS, TimeUnit.SECONDS);
-            } else {
-                // somebody else is holding a lock on this block
-                // that means we play the waiting game
-                Future<Void> f = new LocalAndRemoteLockFuture(remoteFuture, ll);
-                waitFor(f);
-                // recursive call into myself in order to attempt
-                lock(blockId);
+    // the owner is whoever is allowed to release the lock again
+    // transactions own their locks themselves (a thread might start the next transaction before the commit of the last one finished)
+    // the timestamp is the one of the transaction asking for the lock
+    void lock(long blockId, Object owner, long timestamp) {
+        // if I had the local lock already, I also have the remote lock
+        if (lockLocally(blockId, owner, timestamp)) {
+            try {
+                lockRemotelyAsync(blockId).get(TIMEOUT_SECS, TimeUnit.SECONDS);
+            } catch (InterruptedException | ExecutionException | TimeoutException xcp) {
+                // don't leave the block locked locally if I didn't get it remotely
+                release(blockId, owner);
+                throw new RuntimeException(xcp);
             }
-        } catch (InterruptedException | ExecutionException | TimeoutException xcp) {
+        }
+    }
+
+    // the two halves of lock for callers that want to get lots of remote locks in one go
+    // returns true if the local lock was newly acquired (and the remote lock still needs to be taken)
+    boolean lockLocally(long blockId, Object owner, long timestamp) {
+        try {
+            return stripeFor(blockId).acquire(blockId, owner, timestamp, this);
+        } catch (InterruptedException | TimeoutException xcp) {
             throw new RuntimeException(xcp);
         }
     }
 
-    // visible for testing
-    protected void waitFor(Future f) throws InterruptedException, ExecutionException, TimeoutException {
-        f.get(TIMEOUT_SECS, TimeUnit.SECONDS);
+    ListenableFuture<byte[]> lockRemotelyAsync(long blockId) {
+        return store.getxAsync(blockId, null);
     }
 
-    private LocalLock tryGetLocalLock(long blockId) {
-        return blocksToLocalLocks.putIfAbsent(blockId, new LocalLock(blockId));
+    // deferred transactions don't lock blocks they only read
+    // somebody else holding the local lock of such a block is likely to change it
+    boolean isLockedByOthers(long blockId, Object owner) {
+        return stripeFor(blockId).isLockedByOthers(blockId, owner);
     }
 
-    private Future<byte[]> tryGetRemoteLock(long blockId) {
-        return store.getxAsync(blockId, null);
+    // transactions that find out at commit time that they have to give up count as aborts too
+    void countAbort() {
+        aborts.increment();
     }
 
+    // visible for testing
+    // is called (while holding the stripe) right before a thread starts waiting for a block
+    protected void aboutToWait(long blockId) { }
+
     // this method releases the local lock a thread has
     // that will enable other threads to grab the local lock and more changes to the
     // block that was previously locked
@@ -118,128 +250,248 @@ class TxnManagerImpl implements TxnManager {
     // meaning before releasing the remote lock as well, we check whether other threads want the lock as well
     // if so, we pass on the local lock while retaining the remote lock
     void release(long blockId) {
-        // release local lock first
-        LocalLock ll = releaseLocalLock(blockId);
-        // find out whether there's a waitlist for this block
-        // we might piggy back on this remote lock while we have it
-        if (!ll.hasThreadsWaiting()) {
-            // release remote lock
+        release(blockId, Thread.currentThread());
+    }
+
+    // releasing can happen on a different thread than locking (e.g. when a commit finishes asynchronously)
+    // that's why the owner needs to be passed in
+    // blocks parked for group commit keep their remote lock until they're written (see GroupCommitCoordinator)
+    void release(long blockId, Object owner) {
+        boolean releasesRemoteLock = stripeFor(blockId).release(blockId, owner);
+        if (releasesRemoteLock) {
             releaseRemoteLock(blockId);
         }
     }
 
-    private LocalLock releaseLocalLock(long blockId) {
-        LocalLock ll = blocksToLocalLocks.remove(blockId);
-        ll.release();
-        return ll;
+    // group commit calls this once a parked block has been written (or writing it failed)
+    // returns true if nobody on this node holds or waits for the local lock anymore
+    // in that case the remote lock the parked block kept needs to be released by the caller
+    static boolean unpark(long blockId, GroupCommitCoordinator.ParkedBlock parkedBlock) {
+        return stripeFor(blockId).unpark(blockId, parkedBlock);
     }
 
     private void releaseRemoteLock(long blockId) {
         store.release(blockId);
     }
 
-    /**
-     * Convenience class around a ReentrantLock. It practically makes the lock feel like a future.
-     */
-    private static class LocalLock {
-        private final ReentrantLock innerLock = new ReentrantLock();
-        private final long blockId;
-
-        LocalLock(long blockId) {
-            this.blockId = blockId;
-            innerLock.lock();
-        }
+    private static LockStripe stripeFor(long blockId) {
+        return lockStripes[mix(blockId) & (NUM_STRIPES - 1)];
+    }
 
-        boolean amIHoldingTheLock() {
-            return innerLock.isHeldByCurrentThread();
-        }
+    private static int mix(long blockId) {
+        long h = blockId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
 
-        boolean hasThreadsWaiting() {
-            return innerLock.hasQueuedThreads();
-        }
+    /**
+     * One stripe of the lock table.
+     * It's a linear probing hash table over primitive arrays. All access is guarded by the stripe mutex.
+     * A block that is released while others are waiting for it stays in the table as UNOWNED
+     * until one of the waiters picks it up. That way the waiters keep their spot and the remote lock can be
+     * passed on without being released.
+     */
+    private static class LockStripe {
+        private static final Object UNOWNED = new Object();
+
+        private final ReentrantLock mutex = new ReentrantLock();
+        private final Condition blockReleased = mutex.newCondition();
+        private long[] blockIds = new long[16];
+        // a null owner marks an empty slot
+        private Object[] owners = new Object[16];
+        private long[] ownerTimestamps = new long[16];
+        private int[] numWaiters = new int[16];
+        private int size = 0;
+
+        // returns true if the lock was acquired just now
+        // and false if the owner was holding it already
+        boolean acquire(long blockId, Object owner, long timestamp, TxnManagerImpl txnManager) throws InterruptedException, TimeoutException {
+            boolean abandoned = false;
+            mutex.lock();
+            try {
+                acquisitions.increment();
+                int slot = indexOf(blockId);
+                if (slot < 0) {
+                    insert(blockId, owner, timestamp);
+                    return true;
+                } else if (owners[slot] == owner) {
+                    ownerTimestamps[slot] = older(ownerTimestamps[slot], timestamp);
+                    return false;
+                } else if (owners[slot] == UNOWNED) {
+                    owners[slot] = owner;
+                    ownerTimestamps[slot] = timestamp;
+                    return true;
+                }
 
-        String getCurrentLockOwner() {
-            return blockId + " - " + innerLock.toString() + " - " + innerLock.getHoldCount();
+                // somebody else is holding a lock on this block
+                contendedAcquisitions.increment();
+                // the young die
+                checkWaitDie(blockId, slot, timestamp);
+                // the old play the waiting game
+                long start = System.nanoTime();
+                long remainingNanos = TimeUnit.SECONDS.toNanos(TIMEOUT_SECS);
+                numWaiters[slot]++;
+                try {
+                    txnManager.aboutToWait(blockId);
+                    while (true) {
+                        remainingNanos = blockReleased.awaitNanos(remainingNanos);
+                        // slots move around when other blocks are removed from the stripe
+                        slot = indexOf(blockId);
+                        if (owners[slot] == UNOWNED) {
+                            owners[slot] = owner;
+                            ownerTimestamps[slot] = timestamp;
+                            return true;
+                        } else if (remainingNanos <= 0) {
+                            timeouts.increment();
+                            throw new TimeoutException("Couldn't acquire lock for block " + blockId + " held by " + owners[slot]);
+                        }
+                        // the block might have been handed over to an older transaction
+                        checkWaitDie(blockId, slot, timestamp);
+                    }
+                } finally {
+                    waitNanos.add(System.nanoTime() - start);
+                    slot = indexOf(blockId);
+                    numWaiters[slot]--;
+                    if (numWaiters[slot] == 0 && owners[slot] == UNOWNED) {
+                        // I was the last one waiting and didn't get the lock
+                        // nobody is going to pick up the remote lock (unless the block is still parked)
+                        remove(slot);
+                        abandoned = GroupCommitCoordinator.getParkedBlock(blockId) == null;
+                    }
+                }
+            } finally {
+                mutex.unlock();
+                if (abandoned) {
+                    txnManager.releaseRemoteLock(blockId);
+                }
+            }
         }
 
-        void lock(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            boolean haveLock = innerLock.tryLock(timeout, unit);
-            // try to behave like a future
-            if (!haveLock) {
-                throw new TimeoutException("Couldn't acquire lock from " + getCurrentLockOwner());
-            }
-            if (innerLock.getHoldCount() > 1) {
-                logger.warn("LocalLock {} is being acquired more than once", getCurrentLockOwner());
+        private void checkWaitDie(long blockId, int slot, long timestamp) {
+            long ownerTimestamp = ownerTimestamps[slot];
+            if (timestamp != NO_TIMESTAMP && ownerTimestamp != NO_TIMESTAMP && timestamp > ownerTimestamp) {
+                aborts.increment();
+                throw new TxnAbortedException("Transaction " + timestamp + " wants block " + blockId + " held by older transaction " + ownerTimestamp);
             }
         }
 
-        void lock() throws InterruptedException, ExecutionException {
-            innerLock.lockInterruptibly();
+        private long older(long timestamp1, long timestamp2) {
+            if (timestamp1 == NO_TIMESTAMP) return timestamp2;
+            if (timestamp2 == NO_TIMESTAMP) return timestamp1;
+            return Math.min(timestamp1, timestamp2);
         }
 
-        void release() {
-            if (amIHoldingTheLock()) {
-                innerLock.unlock();
-                if (innerLock.getHoldCount() > 0) {
-                    logger.warn("LocalLock {} is still being held more than once", getCurrentLockOwner());
+        // returns true if the remote lock needs to be released as well
+        // it doesn't if the lock has been handed over to a waiting thread or the block is still parked
+        boolean release(long blockId, Object owner) {
+            mutex.lock();
+            try {
+                int slot = indexOf(blockId);
+                if (slot < 0 || owners[slot] != owner) {
+                    throw new IllegalStateException("Can't release a lock you don't own: " + blockId + " - " + ((slot < 0) ? "unlocked" : owners[slot]));
+                }
+
+                if (numWaiters[slot] > 0) {
+                    owners[slot] = UNOWNED;
+                    blockReleased.signalAll();
+                    return false;
+                } else {
+                    remove(slot);
+                    return GroupCommitCoordinator.getParkedBlock(blockId) == null;
                 }
-            } else {
-                throw new IllegalStateException("Can't release a lock you don't own: " + getCurrentLockOwner());
+            } finally {
+                mutex.unlock();
             }
         }
-    }
 
-    /**
-     * A convenience future that warps around a local lock and a remote lock.
-     * It hugs both the remote future and the local lock and tries to provide an easier to use interface.
-     * Looks like a future, behaves like a future, is a future.
-     */
-    private static class LocalAndRemoteLockFuture implements Future<Void> {
-        private final Future<byte[]> remoteLockingFuture;
-        private final LocalLock localLock;
-
-        LocalAndRemoteLockFuture(Future<byte[]> remoteLockingFuture, LocalLock localLock) {
-            this.remoteLockingFuture = remoteLockingFuture;
-            this.localLock = localLock;
+        boolean isLockedByOthers(long blockId, Object owner) {
+            mutex.lock();
+            try {
+                int slot = indexOf(blockId);
+                return slot >= 0 && owners[slot] != owner;
+            } finally {
+                mutex.unlock();
+            }
         }
 
-        @Override
-        public boolean cancel(boolean mayInterruptIfRunning) {
-            return remoteLockingFuture.cancel(mayInterruptIfRunning);
+        // the parked block goes away under the stripe mutex
+        // that way either release or unpark sees that the remote lock is up for grabs
+        boolean unpark(long blockId, GroupCommitCoordinator.ParkedBlock parkedBlock) {
+            mutex.lock();
+            try {
+                GroupCommitCoordinator.unpark(blockId, parkedBlock);
+                return indexOf(blockId) < 0 && GroupCommitCoordinator.getParkedBlock(blockId) == null;
+            } finally {
+                mutex.unlock();
+            }
         }
 
-        @Override
-        public boolean isCancelled() {
-            return remoteLockingFuture.isCancelled();
+        private int indexOf(long blockId) {
+            int mask = owners.length - 1;
+            int i = (mix(blockId) >>> 8) & mask;
+            while (owners[i] != null) {
+                if (blockIds[i] == blockId) return i;
+                i = (i + 1) & mask;
+            }
+            return -1;
         }
 
-        @Override
-        public boolean isDone() {
-            return remoteLockingFuture.isDone();
+        private void insert(long blockId, Object owner, long timestamp) {
+            if ((size + 1) * 2 > owners.length) {
+                grow();
+            }
+            int mask = owners.length - 1;
+            int i = (mix(blockId) >>> 8) & mask;
+            while (owners[i] != null) {
+                i = (i + 1) & mask;
+            }
+            blockIds[i] = blockId;
+            owners[i] = owner;
+            ownerTimestamps[i] = timestamp;
+            numWaiters[i] = 0;
+            size++;
         }
 
-        @Override
-        public Void get() throws InterruptedException, ExecutionException {
-            localLock.lock();
-            remoteLockingFuture.get();
-            return null;
+        // backward shift deletion keeps probe sequences intact without tombstones
+        private void remove(int slot) {
+            int mask = owners.length - 1;
+            int hole = slot;
+            owners[hole] = null;
+            numWaiters[hole] = 0;
+            int i = (hole + 1) & mask;
+            while (owners[i] != null) {
+                int home = (mix(blockIds[i]) >>> 8) & mask;
+                // the entry can move into the hole if the hole lies between its home and where it is now
+                if (((i - home) & mask) >= ((i - hole) & mask)) {
+                    blockIds[hole] = blockIds[i];
+                    owners[hole] = owners[i];
+                    ownerTimestamps[hole] = ownerTimestamps[i];
+                    numWaiters[hole] = numWaiters[i];
+                    owners[i] = null;
+                    numWaiters[i] = 0;
+                    hole = i;
+                }
+                i = (i + 1) & mask;
+            }
+            size--;
         }
 
-        @Override
-        public Void get(long timeout, @Nonnull TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-            long before = System.currentTimeMillis();
-            localLock.lock(timeout, unit);
-
-            // lots of math in order to find out how much time is still left on the timeout
-            // however we want to at least wait five more milliseconds though
-            // maybe the remote future finished already and we can proceed and salvage the transaction
-            long stillToWait = Math.max(
-                    unit.toMillis(timeout) - (System.currentTimeMillis() - before),
-                    5
-            );
-
-            remoteLockingFuture.get(stillToWait, TimeUnit.MILLISECONDS);
-            return null;
+        private void grow() {
+            long[] oldBlockIds = blockIds;
+            Object[] oldOwners = owners;
+            long[] oldOwnerTimestamps = ownerTimestamps;
+            int[] oldNumWaiters = numWaiters;
+            blockIds = new long[oldBlockIds.length * 2];
+            owners = new Object[oldOwners.length * 2];
+            ownerTimestamps = new long[oldOwnerTimestamps.length * 2];
+            numWaiters = new int[oldNumWaiters.length * 2];
+            size = 0;
+            for (int j = 0; j < oldOwners.length; j++) {
+                if (oldOwners[j] != null) {
+                    insert(oldBlockIds[j], oldOwners[j], oldOwnerTimestamps[j]);
+                    numWaiters[indexOf(oldBlockIds[j])] = oldNumWaiters[j];
+                }
+            }
+            logger.info("Growing lock stripe to {} slots", owners.length);
         }
     }
 }
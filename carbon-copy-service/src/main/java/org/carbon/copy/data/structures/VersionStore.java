@@ -0,0 +1,181 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.carbon.copy.data.structures.DataStructure.TIMEOUT_SECS;
+
+/**
+ * Node-local multi-version bookkeeping that backs read snapshots.
+ * Galaxy only ever knows the latest version of a cache line. Every commit on this node gets a version number
+ * and, while there are snapshots open, right before the commit overwrites or deletes a cache line
+ * I stash away the bytes of that line as they were before the commit (the pre-image).
+ * A snapshot pins the version that was committed last when it was opened. Reading a block in a snapshot
+ * means taking the oldest pre-image that was stashed by a commit newer than the snapshot
+ * or, if there's no such pre-image, the current bytes of the cache line.
+ * Pre-images are dropped as soon as no open snapshot can possibly look at them anymore.
+ *
+ * This only versions commits that happen on this node. Writes coming in from other nodes are not versioned.
+ */
+class VersionStore {
+    // everything below is guarded by this
+    private long lastAllocatedVersion = 0;
+    private final TreeSet<Long> inFlightCommits = new TreeSet<>();
+    private int numInFlightCommitsWithoutPreImages = 0;
+    private int numOpenSnapshots = 0;
+    // snapshot version -> number of snapshots open on that version
+    private final TreeMap<Long, Integer> openSnapshotVersions = new TreeMap<>();
+
+    // block id -> (version of the commit that overwrote the block -> bytes of the block before that commit)
+    private final ConcurrentHashMap<Long, ConcurrentNavigableMap<Long, byte[]>> preImages = new ConcurrentHashMap<>();
+
+    static class CommitVersion {
+        private final long version;
+        private final boolean capturesPreImages;
+
+        private CommitVersion(long version, boolean capturesPreImages) {
+            this.version = version;
+            this.capturesPreImages = capturesPreImages;
+        }
+
+        long getVersion() {
+            return version;
+        }
+
+        boolean capturesPreImages() {
+            return capturesPreImages;
+        }
+    }
+
+    // is called by a commit before it writes anything
+    synchronized CommitVersion beginCommit() {
+        long version = ++lastAllocatedVersion;
+        // nobody is going to ask for older versions if there are no snapshots
+        // in that case commits get away without reading their pre-images
+        boolean capturesPreImages = numOpenSnapshots > 0;
+        inFlightCommits.add(version);
+        if (!capturesPreImages) {
+            numInFlightCommitsWithoutPreImages++;
+        }
+        return new CommitVersion(version, capturesPreImages);
+    }
+
+    // needs to be called before the commit starts writing the block
+    void addPreImage(long blockId, CommitVersion commitVersion, byte[] bytes) {
+        if (commitVersion.capturesPreImages() && bytes != null) {
+            preImages.computeIfAbsent(blockId, id -> new ConcurrentSkipListMap<>()).put(commitVersion.getVersion(), bytes);
+        }
+    }
+
+    // is called after all writes of a commit are done (successfully or not)
+    synchronized void endCommit(CommitVersion commitVersion) {
+        inFlightCommits.remove(commitVersion.getVersion());
+        if (!commitVersion.capturesPreImages()) {
+            numInFlightCommitsWithoutPreImages--;
+            notifyAll();
+        } else {
+            prunePreImages();
+        }
+    }
+
+    synchronized ReadSnapshot openSnapshot() {
+        // from now on all new commits keep their pre-images around
+        numOpenSnapshots++;
+        // but commits that are running already don't
+        // I can't pin a version until they're done
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECS);
+        try {
+            while (numInFlightCommitsWithoutPreImages > 0) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMillis <= 0) {
+                    numOpenSnapshots--;
+                    throw new IllegalStateException("Timed out waiting for " + numInFlightCommitsWithoutPreImages + " commits to finish");
+                }
+                wait(remainingMillis);
+            }
+        } catch (InterruptedException xcp) {
+            numOpenSnapshots--;
+            throw new RuntimeException(xcp);
+        }
+
+        long version = latestVisibleVersion();
+        openSnapshotVersions.merge(version, 1, Integer::sum);
+        return new ReadSnapshot(this, version);
+    }
+
+    synchronized void closeSnapshot(long version) {
+        numOpenSnapshots--;
+        openSnapshotVersions.computeIfPresent(version, (v, count) -> (count > 1) ? count - 1 : null);
+        prunePreImages();
+    }
+
+    // resolves the bytes a block had in a snapshot
+    // "current" are the bytes of the block that were read from galaxy (or null if the block couldn't be read)
+    // it's important that they were read *before* calling this method:
+    // a commit stashes its pre-image before it touches a block, so if current contains changes of
+    // a commit that is newer than the snapshot, I'm guaranteed to find the pre-image here
+    byte[] resolve(long blockId, long snapshotVersion, byte[] current) {
+        ConcurrentNavigableMap<Long, byte[]> versions = preImages.get(blockId);
+        if (versions != null) {
+            Map.Entry<Long, byte[]> e = versions.higherEntry(snapshotVersion);
+            if (e != null) {
+                return e.getValue();
+            }
+        }
+        return current;
+    }
+
+    // true if any of these blocks was changed by a commit newer than the version
+    // the pre-images of these commits stick around as long as a snapshot on the version is open
+    boolean hasPreImagesNewerThan(Collection<Long> blockIds, long version) {
+        for (Long blockId : blockIds) {
+            ConcurrentNavigableMap<Long, byte[]> versions = preImages.get(blockId);
+            if (versions != null && versions.higherKey(version) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // visible for testing
+    int getNumPreImages() {
+        return preImages.values().stream().mapToInt(Map::size).sum();
+    }
+
+    // the most recent version of which all commits are done
+    private long latestVisibleVersion() {
+        return inFlightCommits.isEmpty() ? lastAllocatedVersion : inFlightCommits.first() - 1;
+    }
+
+    // a pre-image stashed by commit v is only interesting to snapshots older than v
+    // snapshots opened in the future will be at least at the latest visible version
+    private void prunePreImages() {
+        long oldestVersion = openSnapshotVersions.isEmpty() ? latestVisibleVersion() : Math.min(openSnapshotVersions.firstKey(), latestVisibleVersion());
+        preImages.values().forEach(versions -> versions.headMap(oldestVersion, true).clear());
+        preImages.values().removeIf(Map::isEmpty);
+    }
+}
@@ -81,15 +81,28 @@ abstract class AbstractEndToEndTest {
     }
 
     Table createDummyTable() throws IOException {
-        String tableName = "NARF_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().replaceAll("-", "");
-        return createDummyTable(tableName, 1, 2, 3);
+        return createDummyTable(newDummyTableBuilder(), 1, 2, 3);
+    }
+
+    // same as the dummy table but TUP_NUM has a local index
+    Table createDummyTableWithLocalIndex() throws IOException {
+        return createDummyTable(newDummyTableBuilder().withLocalIndex("TUP_NUM"), 1, 2, 3);
+    }
+
+    // same as the dummy table but the rows are partitioned by TUP_NUM
+    Table createPartitionedDummyTable(int... ids) throws IOException {
+        return createDummyTable(newDummyTableBuilder().withPartitionKey("TUP_NUM"), ids);
     }
 
-    private Table createDummyTable(String tableName, int... ids) throws IOException {
-        Table.Builder tableBuilder = Table.newBuilder(tableName.toUpperCase())
+    private Table.Builder newDummyTableBuilder() {
+        String tableName = "NARF_" + System.currentTimeMillis() + "_" + UUID.randomUUID().toString().replaceAll("-", "");
+        return Table.newBuilder(tableName.toUpperCase())
                 .withColumn("TUP_NUM".toUpperCase(), Integer.class)
                 .withColumn("MOEP".toUpperCase(), String.class)
                 .withColumn("FOO".toUpperCase(), String.class);
+    }
+
+    private Table createDummyTable(Table.Builder tableBuilder, int... ids) throws IOException {
 
         Txn txn = txnManager.beginTransaction();
         Table table = dsFactory.newTable(tableBuilder, txn);
@@ -26,10 +26,16 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class InterfaceTest extends AbstractEndToEndTest {
@@ -155,4 +161,161 @@ public class InterfaceTest extends AbstractEndToEndTest {
             }
         }
     }
+
+    @Test
+    public void testCountWithFilter() throws Exception {
+        Table t = createDummyTable();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT COUNT(*) FROM " + t.getName() + " WHERE moep = '__moep__'";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    assertTrue(resultSet.next());
+                    assertEquals(2, resultSet.getLong(1));
+                    assertFalse(resultSet.next());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAggregateWithGroupBy() throws Exception {
+        Table t = createDummyTable();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT moep, COUNT(*), SUM(tup_num), MIN(tup_num), MAX(tup_num) FROM " + t.getName() + " GROUP BY moep";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    Map<String, List<Long>> groups = new HashMap<>();
+                    while (resultSet.next()) {
+                        groups.put(resultSet.getString(1), Arrays.asList(resultSet.getLong(2), resultSet.getLong(3), resultSet.getLong(4), resultSet.getLong(5)));
+                    }
+
+                    assertEquals(2, groups.size());
+                    assertEquals(Arrays.asList(1L, 2L, 2L, 2L), groups.get("moep"));
+                    assertEquals(Arrays.asList(2L, 4L, 1L, 3L), groups.get("__moep__"));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLimit() throws Exception {
+        Table t = createDummyTable();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT tup_num FROM " + t.getName() + " LIMIT 2";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    Set<Integer> tupNums = new HashSet<>();
+                    while (resultSet.next()) {
+                        tupNums.add(resultSet.getInt("tup_num"));
+                    }
+                    assertEquals(2, tupNums.size());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOrderByWithLimit() throws Exception {
+        Table t = createDummyTable();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT tup_num, moep FROM " + t.getName() + " ORDER BY tup_num DESC LIMIT 2";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    List<Integer> tupNums = new ArrayList<>();
+                    while (resultSet.next()) {
+                        tupNums.add(resultSet.getInt("tup_num"));
+                    }
+                    assertEquals(Arrays.asList(3, 2), tupNums);
+                }
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT tup_num FROM " + t.getName() + " WHERE moep = '__moep__' ORDER BY tup_num LIMIT 1 OFFSET 1";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    assertTrue(resultSet.next());
+                    assertEquals(3, resultSet.getInt("tup_num"));
+                    assertFalse(resultSet.next());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testHashJoin() throws Exception {
+        Table t1 = createDummyTable();
+        Table t2 = createDummyTable();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT a.tup_num, b.foo FROM " + t1.getName() + " a JOIN " + t2.getName() + " b ON a.tup_num = b.tup_num WHERE b.moep = 'moep'";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    assertTrue(resultSet.next());
+                    assertEquals(2, resultSet.getInt("tup_num"));
+                    assertEquals("2_tup_foo", resultSet.getString("foo"));
+                    assertFalse(resultSet.next());
+                }
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT a.tup_num, b.tup_num FROM " + t1.getName() + " a JOIN " + t2.getName() + " b ON a.moep = b.moep";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    int count = 0;
+                    while (resultSet.next()) {
+                        count++;
+                    }
+                    // 1 and 3 are "__moep__" (2 x 2 rows), 2 is "moep" (1 x 1 row)
+                    assertEquals(5, count);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIndexJoin() throws Exception {
+        Table outer = createDummyTable();
+        Table inner = createDummyTableWithLocalIndex();
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT a.tup_num, b.foo FROM " + outer.getName() + " a JOIN " + inner.getName() + " b ON a.tup_num = b.tup_num WHERE b.moep = '__moep__'";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    Map<Integer, String> rows = new HashMap<>();
+                    while (resultSet.next()) {
+                        rows.put(resultSet.getInt("tup_num"), resultSet.getString("foo"));
+                    }
+                    Map<Integer, String> expected = new HashMap<>();
+                    expected.put(1, "1_tup_foo");
+                    expected.put(3, "3_tup_foo");
+                    assertEquals(expected, rows);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testColocatedJoin() throws Exception {
+        Table t1 = createPartitionedDummyTable(1, 2, 3, 4);
+        Table t2 = createPartitionedDummyTable(2, 3, 4, 5);
+        try (Connection connection = getCalciteConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                String sql = "SELECT a.tup_num, b.foo FROM " + t1.getName() + " a JOIN " + t2.getName() + " b ON a.tup_num = b.tup_num WHERE b.moep = '__moep__'";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    Map<Integer, String> rows = new HashMap<>();
+                    while (resultSet.next()) {
+                        rows.put(resultSet.getInt("tup_num"), resultSet.getString("foo"));
+                    }
+                    // 5 is "__moep__" as well but it's not in the first table
+                    Map<Integer, String> expected = new HashMap<>();
+                    expected.put(3, "3_tup_foo");
+                    assertEquals(expected, rows);
+                }
+            }
+
+            try (Statement statement = connection.createStatement()) {
+                String sql = "EXPLAIN PLAN FOR SELECT a.tup_num, b.foo FROM " + t1.getName() + " a JOIN " + t2.getName() + " b ON a.tup_num = b.tup_num";
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    assertTrue(resultSet.next());
+                    assertTrue(resultSet.getString(1).contains("ColocatedJoin"));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,132 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.Store;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+public class ColumnChunkTest {
+    @Test
+    public void testMinMaxAndNulls() {
+        ColumnChunk chunk = new ColumnChunk()
+                .with(0, 17)
+                .with(1, null)
+                .with(2, -3)
+                .with(3, 42);
+
+        assertEquals(4, chunk.getNumRows());
+        assertEquals(1, chunk.getNullCount());
+        assertEquals(-3, chunk.getMin());
+        assertEquals(42, chunk.getMax());
+        assertNull(chunk.get(1));
+
+        // overwriting a null
+        ColumnChunk chunk2 = chunk.with(1, 5);
+        assertEquals(4, chunk2.getNumRows());
+        assertEquals(0, chunk2.getNullCount());
+        assertEquals(Integer.valueOf(5), chunk2.get(1));
+        // chunks don't change in place
+        assertNull(chunk.get(1));
+    }
+
+    @Test
+    public void testAppendingToTheSameChunkTwice() {
+        ColumnChunk chunk = new ColumnChunk().with(0, 17);
+        ColumnChunk chunk2 = chunk.with(1, 18);
+        // the second append can't reuse the values of the first one
+        ColumnChunk chunk3 = chunk.with(1, 19);
+
+        assertEquals(1, chunk.getNumRows());
+        assertEquals(Integer.valueOf(18), chunk2.get(1));
+        assertEquals(Integer.valueOf(19), chunk3.get(1));
+        assertEquals(Integer.valueOf(17), chunk3.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRowsAreAppendedInOrder() {
+        new ColumnChunk().with(1, 17);
+    }
+
+    @Test
+    public void testFull() {
+        ColumnChunk chunk = new ColumnChunk();
+        for (int i = 0; i < ColumnChunk.MAX_ROWS - 1; i++) {
+            chunk = chunk.with(i, (long) i);
+        }
+        assertFalse(chunk.isFull());
+        assertTrue(chunk.with(ColumnChunk.MAX_ROWS - 1, 1L).isFull());
+
+        // big values fill up a chunk early
+        ColumnChunk bigChunk = new ColumnChunk();
+        String bigValue = new String(new char[1024]).replace('\0', 'x');
+        int i = 0;
+        while (!bigChunk.isFull()) {
+            bigChunk = bigChunk.with(i++, bigValue);
+        }
+        assertTrue(bigChunk.getNumRows() < ColumnChunk.MAX_ROWS);
+    }
+
+    @Test
+    public void testSerialization() {
+        DataBlock<Integer, ColumnChunk> db = newDataBlock();
+        db.innerPut(0, new ColumnChunk().with(0, "narf").with(1, null).with(2, "moep"));
+        DataBlock<Integer, ColumnChunk> db2 = newDataBlock();
+        db2.read(db.toBytes());
+
+        ColumnChunk chunk = db2.get(0);
+        assertEquals(3, chunk.getNumRows());
+        assertEquals(1, chunk.getNullCount());
+        assertEquals("moep", chunk.getMin());
+        assertEquals("narf", chunk.getMax());
+        assertEquals("narf", chunk.get(0));
+        assertNull(chunk.get(1));
+        assertEquals("moep", chunk.get(2));
+    }
+
+    @Test
+    public void testAppendingToADeserializedChunk() {
+        DataBlock<Integer, ColumnChunk> db = newDataBlock();
+        ColumnChunk chunk = new ColumnChunk().with(0, 1L).with(1, 2L);
+        // only the rows of the chunk are written -- not the row somebody else appended
+        chunk.with(2, 3L);
+        db.innerPut(0, chunk);
+        DataBlock<Integer, ColumnChunk> db2 = newDataBlock();
+        db2.read(db.toBytes());
+
+        ColumnChunk chunk2 = db2.get(0).with(2, 4L);
+        assertEquals(3, chunk2.getNumRows());
+        assertEquals(1L, chunk2.get(0));
+        assertEquals(4L, chunk2.get(2));
+        assertEquals(4L, chunk2.getMax());
+    }
+
+    private <Key extends Comparable<Key>, Value> DataBlock<Key, Value> newDataBlock() {
+        Txn txn = Mockito.mock(Txn.class);
+        when(txn.getStoreTransaction()).thenReturn(null);
+        Store s = Mockito.mock(Store.class);
+        return new DataBlock<>(s, txn);
+    }
+}
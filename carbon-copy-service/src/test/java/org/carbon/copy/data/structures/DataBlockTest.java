@@ -70,8 +70,8 @@ public class DataBlockTest {
 
         ByteBuffer bb = ByteBuffer.allocateDirect(DataStructure.MAX_BYTE_SIZE);
         db.write(bb);
-        assertEquals(78, db.size());
-        assertEquals(14, bb.position());
+        assertEquals(34, db.size());
+        assertEquals(12, bb.position());
         assertTrue(DataStructure.MAX_BYTE_SIZE > bb.remaining());
 
         bb.rewind();
@@ -93,7 +93,7 @@ public class DataBlockTest {
 
         ByteBuffer bb2 = ByteBuffer.allocateDirect(DataStructure.MAX_BYTE_SIZE);
         db3.write(bb2);
-        assertEquals(189, db3.size());
+        assertEquals(146, db3.size());
         assertTrue(1665 >= bb2.position());
         assertTrue(DataStructure.MAX_BYTE_SIZE > bb2.remaining());
         bb2.rewind();
@@ -114,7 +114,7 @@ public class DataBlockTest {
         DataBlock<Integer, Integer> db = new DataBlock<Integer, Integer>(s, txn) {
             @Override
             int getMaxByteSize() {
-                return 80;
+                return 36;
             }
         };
 
@@ -220,6 +220,112 @@ public class DataBlockTest {
         assertEquals(1, Collections.frequency(allKeys, 5));
     }
 
+    @Test
+    public void testWriteReadThroughSmallAndLargeBuffers() {
+        DataBlock<String, Long> db = newDataBlock();
+        for (long i = 0; i < 500; i++) {
+            db.innerPut("key_" + i, i);
+        }
+
+        // too small to compress into directly
+        ByteBuffer small = ByteBuffer.allocateDirect(db.size());
+        db.write(small);
+        small.flip();
+        // big enough to compress straight into the buffer
+        ByteBuffer large = ByteBuffer.allocateDirect(db.size() * 4);
+        db.write(large);
+        large.flip();
+        assertEquals(small.limit(), large.limit());
+
+        for (ByteBuffer bb : new ByteBuffer[] { small, large }) {
+            DataBlock<String, Long> db2 = newDataBlock();
+            db2.read(bb);
+            for (long i = 0; i < 500; i++) {
+                assertEquals(Long.valueOf(i), db2.get("key_" + i));
+            }
+        }
+    }
+
+    @Test
+    public void testOnlyCompressibleBlocksAreCompressed() {
+        // tiny blocks are written raw
+        DataBlock<Integer, Integer> tiny = newDataBlock();
+        tiny.innerPut(5, 5);
+        ByteBuffer tinyBB = ByteBuffer.allocateDirect(tiny.size());
+        tiny.write(tinyBB);
+        assertTrue(isRawPayload(tinyBB));
+
+        // random strings don't compress well either
+        DataBlock<String, String> random = newDataBlock();
+        while (random.innerPutIfPossible(UUID.randomUUID().toString(), UUID.randomUUID().toString()));
+        ByteBuffer randomBB = ByteBuffer.allocateDirect(random.size());
+        random.write(randomBB);
+        assertTrue(isRawPayload(randomBB));
+        assertTrue(randomBB.position() <= random.size());
+
+        // the same string over and over again does
+        DataBlock<Integer, String> repetitive = newDataBlock();
+        for (int i = 0; i < 100; i++) {
+            repetitive.innerPut(i, "hello hello hello hello hello");
+        }
+        ByteBuffer repetitiveBB = ByteBuffer.allocateDirect(repetitive.size());
+        repetitive.write(repetitiveBB);
+        assertFalse(isRawPayload(repetitiveBB));
+        assertTrue(repetitiveBB.position() < repetitive.size() / 2);
+
+        for (ByteBuffer bb : new ByteBuffer[] { tinyBB, randomBB, repetitiveBB }) {
+            bb.flip();
+        }
+        DataBlock<Integer, Integer> tiny2 = newDataBlock();
+        tiny2.read(tinyBB);
+        assertEquals(Integer.valueOf(5), tiny2.get(5));
+        DataBlock<String, String> random2 = newDataBlock();
+        random2.read(randomBB);
+        random.keys().forEach(k -> assertEquals(random.get(k), random2.get(k)));
+        DataBlock<Integer, String> repetitive2 = newDataBlock();
+        repetitive2.read(repetitiveBB);
+        assertEquals("hello hello hello hello hello", repetitive2.get(99));
+    }
+
+    @Test
+    public void testSizeTracksOverwritesAndDeletes() {
+        DataBlock<String, String> db = newDataBlock();
+        int emptySize = db.size();
+        db.innerPut("a", "value");
+        db.innerPut("b", "value");
+        int sizeWithTwo = db.size();
+
+        // overwriting with a value of the same size doesn't change anything
+        db.innerPut("a", "other");
+        assertEquals(sizeWithTwo, db.size());
+        // longer values add only the difference
+        db.innerPut("a", "a longer value");
+        assertEquals(sizeWithTwo + "a longer value".length() - "other".length(), db.size());
+
+        // the size survives a round trip
+        DataBlock<String, String> db2 = newDataBlock();
+        db2.read(db.toBytes());
+        assertEquals(db.size(), db2.size());
+
+        // deleting the first and the last node gets us back to where we started
+        assertTrue(db.innerDelete("b"));
+        assertTrue(db.innerDelete("a"));
+        assertEquals(emptySize, db.size());
+    }
+
+    @Test
+    public void testBlocksPackTightly() {
+        DataBlock<String, String> db = newDataBlock();
+        while (db.innerPutIfPossible(UUID.randomUUID().toString(), UUID.randomUUID().toString()));
+        byte[] bytes = db.toBytes();
+        assertTrue(bytes.length <= db.size());
+        assertTrue(bytes.length > DataStructure.MAX_BYTE_SIZE * 95 / 100);
+    }
+
+    private static boolean isRawPayload(ByteBuffer bb) {
+        return (bb.get(0) & 0x80) != 0;
+    }
+
     private <Key extends Comparable<Key>, Value> DataBlock<Key, Value> newDataBlock() {
         Txn txn = Mockito.mock(Txn.class);
         when(txn.getStoreTransaction()).thenReturn(null);
@@ -25,10 +25,18 @@ import org.junit.Test;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyString;
 
@@ -59,6 +67,54 @@ public class DistHashTest {
 //        long deepSize = sizeOf.deepSizeOf(someObject);
     }
 
+    @Test
+    public void testPartitionedGuidPlacement() {
+        DistHash<GUID, Tuple> dh = new DistHash<GUID, Tuple>(Mockito.mock(Store.class), Mockito.mock(InternalDataStructureFactory.class), Mockito.mock(Cluster.class), Mockito.mock(Messenger.class), Mockito.mock(Txn.class)) {
+            @Override
+            protected Set<Short> getNodes() {
+                return ImmutableSet.of(
+                        (short)1,
+                        (short)45,
+                        (short)123
+                );
+            }
+
+            @Override
+            protected short getMyNodeId(Cluster cluster) {
+                return (short)456;
+            }
+        };
+
+        // all rows with the same partition key end up on the same node
+        Set<Short> nodesForSameKey = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            GUID guid = GUID.partitionedGUID("some_key");
+            assertTrue(guid.isInPartition("some_key"));
+            nodesForSameKey.add(dh.rendezVousHashTheKeyToANode(guid));
+        }
+        assertEquals(1, nodesForSameKey.size());
+
+        // while different partition keys spread out
+        Set<Short> nodesForDifferentKeys = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            nodesForDifferentKeys.add(dh.rendezVousHashTheKeyToANode(GUID.partitionedGUID(i)));
+        }
+        assertEquals(3, nodesForDifferentKeys.size());
+        assertTrue(GUID.partitionedGUID(5).isInPartition(5L));
+        assertTrue(!GUID.partitionedGUID(5).isInPartition(6));
+    }
+
+    @Test
+    public void testPartitionedGuids() {
+        GUID guid = GUID.partitionedGUID("some_key");
+        assertTrue(guid.isPartitioned());
+        assertTrue(guid.isInPartition("some_key"));
+        // new tuples never look like rows of a partitioned table
+        for (int i = 0; i < 100; i++) {
+            assertFalse(GUID.randomGUID().isPartitioned());
+        }
+    }
+
     @Test
     public void testSerialization() {
         String key = "some_string";
@@ -186,4 +242,218 @@ public class DistHashTest {
         };
         getResponseListener.messageReceived((short)17, messageBuffer[0].toByteArray());
     }
+
+    @Test
+    public void testExecuteSerialization() {
+        UUID requestId = UUID.randomUUID();
+        DistHash.TupleScanFragment fragment = new DistHash.TupleScanFragment(new int[] { 0 }, new Comparable[] { 3 }, new Comparable[] { null }, new int[] { 1 });
+        DistHash.ExecuteRequest executeReq = new DistHash.ExecuteRequest(fragment, new Long[] { 123L, null });
+        executeReq.setRequestId(requestId);
+        DistHash.ExecuteRequest executeReq2 = new DistHash.ExecuteRequest(executeReq.toByteArray());
+        assertEquals(requestId, executeReq2.requestId);
+        assertTrue(executeReq2.fragment instanceof DistHash.TupleScanFragment);
+        assertArrayEquals(executeReq.blockIds, executeReq2.blockIds);
+        assertNull(executeReq2.snapshotVersion);
+        assertEquals(Long.valueOf(42L), new DistHash.ExecuteRequest(new DistHash.ExecuteRequest(fragment, new Long[] { 123L }, 42L).toByteArray()).snapshotVersion);
+
+        ArrayList<Object> results = new ArrayList<>(Arrays.asList("narf", 17));
+        DistHash.ExecuteResponse executeResp = new DistHash.ExecuteResponse(3, true, results, null);
+        DistHash.ExecuteResponse executeResp2 = new DistHash.ExecuteResponse(executeResp.toByteArray());
+        assertEquals(3, executeResp2.chunk);
+        assertTrue(executeResp2.isLast);
+        assertEquals(results, executeResp2.results);
+        assertNull(executeResp2.error);
+        assertNull(executeResp2.readBlockIds);
+        assertArrayEquals(new Long[] { 5L, 6L }, new DistHash.ExecuteResponse(new DistHash.ExecuteResponse(0, true, results, null, new Long[] { 5L, 6L }).toByteArray()).readBlockIds);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testExecuteRequestResponse() throws IOException {
+        UUID initialRequestId = UUID.randomUUID();
+        // use this to stash the message from the mock
+        // it can reach into the closure
+        BaseMessage[] messageBuffer = new BaseMessage[1];
+
+        // only the second and third tuple are in the range and only the second column survives the projection
+        DistHash.TupleScanFragment fragment = new DistHash.TupleScanFragment(new int[] { 0 }, new Comparable[] { 2 }, new Comparable[] { null }, new int[] { 1 });
+        DistHash.ExecuteRequest request = new DistHash.ExecuteRequest(fragment, new Long[] { 123L });
+        request.setRequestId(initialRequestId);
+
+        DistHash.ExecuteRequestMessageListener executeRequestListener = new DistHash.ExecuteRequestMessageListener(null, null, null) {
+            @Override
+            protected ChainingHash loadChainingHash(long blockId, ReadSnapshot snapshot) {
+                assertEquals(123L, blockId);
+                return mockPartition(1, 2, 3);
+            }
+
+            @Override
+            protected void replyTo(short toNode, UUID requestId, BaseMessage messageToSend) {
+                messageToSend.setRequestId(requestId);
+                messageBuffer[0] = messageToSend;
+            }
+        };
+        executeRequestListener.messageReceived((short)15, request.toByteArray());
+
+        DistHash.ExecuteResponseMessageListener executeResponseListener = new DistHash.ExecuteResponseMessageListener(null) {
+            @Override
+            protected void progress(UUID requestId, DistHash.ExecuteResponse chunk) {
+                assertEquals(initialRequestId, requestId);
+                // few results fit into one chunk
+                assertEquals(0, chunk.chunk);
+                assertTrue(chunk.isLast);
+                Set<Object> values = new HashSet<>();
+                for (Object tuple : (List<Object>) chunk.results) {
+                    values.add(((Tuple) tuple).get(0));
+                }
+                assertEquals(new HashSet<>(Arrays.asList("value_2", "value_3")), values);
+            }
+        };
+        executeResponseListener.messageReceived((short)17, messageBuffer[0].toByteArray());
+    }
+
+    @Test
+    public void testResultsAreSentInChunks() throws IOException {
+        List<DistHash.ExecuteResponse> chunks = new ArrayList<>();
+        Integer[] ids = new Integer[2 * DistHash.ExecuteResponse.CHUNK_SIZE + 1];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+
+        DistHash.TupleScanFragment fragment = new DistHash.TupleScanFragment(new int[0], new Comparable[0], new Comparable[0], null);
+        DistHash.ExecuteRequest request = new DistHash.ExecuteRequest(fragment, new Long[] { 123L });
+        request.setRequestId(UUID.randomUUID());
+
+        DistHash.ExecuteRequestMessageListener executeRequestListener = new DistHash.ExecuteRequestMessageListener(null, null, null) {
+            @Override
+            protected ChainingHash loadChainingHash(long blockId, ReadSnapshot snapshot) {
+                return mockPartition(ids);
+            }
+
+            @Override
+            protected void replyTo(short toNode, UUID requestId, BaseMessage messageToSend) {
+                chunks.add((DistHash.ExecuteResponse) messageToSend);
+            }
+        };
+        executeRequestListener.messageReceived((short)15, request.toByteArray());
+
+        assertEquals(3, chunks.size());
+        int numResults = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            assertEquals(i, chunks.get(i).chunk);
+            assertEquals(i == chunks.size() - 1, chunks.get(i).isLast);
+            numResults += chunks.get(i).results.size();
+        }
+        assertEquals(ids.length, numResults);
+        assertEquals(1, chunks.get(2).results.size());
+    }
+
+    @Test
+    public void testFragmentInSnapshotOfAnotherNode() throws IOException {
+        List<DistHash.ExecuteResponse> chunks = new ArrayList<>();
+        DistHash.TupleScanFragment fragment = new DistHash.TupleScanFragment(new int[0], new Comparable[0], new Comparable[0], null);
+        DistHash.ExecuteRequest request = new DistHash.ExecuteRequest(fragment, new Long[] { 123L, 456L }, 42L);
+        request.setRequestId(UUID.randomUUID());
+
+        DistHash.ExecuteRequestMessageListener executeRequestListener = new DistHash.ExecuteRequestMessageListener(null, null, null) {
+            @Override
+            protected ReadSnapshot joinSnapshot(short fromNode, long snapshotVersion) {
+                assertEquals(42L, snapshotVersion);
+                // the snapshot was opened on another node
+                return new ReadSnapshot(new VersionStore(), ReadSnapshot.LATEST, false);
+            }
+
+            @Override
+            protected ChainingHash loadChainingHash(long blockId, ReadSnapshot snapshot) {
+                assertEquals(ReadSnapshot.LATEST, snapshot.getVersion());
+                return snapshot.loadOnce(blockId, () -> mockPartition(1, 2));
+            }
+
+            @Override
+            protected void replyTo(short toNode, UUID requestId, BaseMessage messageToSend) {
+                chunks.add((DistHash.ExecuteResponse) messageToSend);
+            }
+        };
+        executeRequestListener.messageReceived((short)15, request.toByteArray());
+
+        // the sender learns which blocks were read so that it can check them against its snapshot
+        assertEquals(1, chunks.size());
+        assertEquals(2, chunks.get(0).results.size());
+        assertEquals(new HashSet<>(Arrays.asList(123L, 456L)), new HashSet<>(Arrays.asList(chunks.get(0).readBlockIds)));
+    }
+
+    @Test
+    public void testFailingFragment() throws IOException {
+        BaseMessage[] messageBuffer = new BaseMessage[1];
+
+        // a join needs two partitions
+        DistHash.ExecuteRequest request = new DistHash.ExecuteRequest(newJoinFragment(), new Long[] { 123L });
+        request.setRequestId(UUID.randomUUID());
+
+        DistHash.ExecuteRequestMessageListener executeRequestListener = new DistHash.ExecuteRequestMessageListener(null, null, null) {
+            @Override
+            protected ChainingHash loadChainingHash(long blockId, ReadSnapshot snapshot) {
+                return mockPartition(1);
+            }
+
+            @Override
+            protected void replyTo(short toNode, UUID requestId, BaseMessage messageToSend) {
+                messageToSend.setRequestId(requestId);
+                messageBuffer[0] = messageToSend;
+            }
+        };
+        executeRequestListener.messageReceived((short)15, request.toByteArray());
+
+        DistHash.ExecuteResponseMessageListener executeResponseListener = new DistHash.ExecuteResponseMessageListener(null) {
+            @Override
+            protected void progress(UUID requestId, DistHash.ExecuteResponse chunk) {
+                assertTrue(chunk.isLast);
+                assertNull(chunk.results);
+                assertTrue(chunk.error.contains("two hashes"));
+            }
+        };
+        executeResponseListener.messageReceived((short)17, messageBuffer[0].toByteArray());
+    }
+
+    @Test
+    public void testTupleJoinFragment() {
+        List<ChainingHash> partitions = Arrays.asList(mockPartition(1, 2, 3), mockPartition(2, 3, 4));
+        List<Object[]> rows = newJoinFragment().execute(partitions);
+        assertEquals(2, rows.size());
+        Set<Object> ids = new HashSet<>();
+        for (Object[] row : rows) {
+            Tuple left = (Tuple) row[0];
+            Tuple right = (Tuple) row[1];
+            // both sides are projected to their value and the key
+            assertEquals(2, left.getTupleSize());
+            assertEquals(left.get(1), right.get(1));
+            assertEquals("value_" + left.get(1), left.get(0));
+            assertEquals("value_" + right.get(1), right.get(0));
+            ids.add(left.get(1));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(2, 3)), ids);
+
+        // a node without data of one of the hashes doesn't join anything
+        assertTrue(newJoinFragment().execute(Arrays.asList(mockPartition(1), null)).isEmpty());
+    }
+
+    // joins two partitions of mocked rows on their ids
+    private static DistHash.TupleJoinFragment newJoinFragment() {
+        DistHash.TupleScanFragment scan = new DistHash.TupleScanFragment(new int[0], new Comparable[0], new Comparable[0], new int[] { 1, 0 });
+        return new DistHash.TupleJoinFragment(scan, 1, scan, 1);
+    }
+
+    // a partition that maps every id to a tuple of id and "value_" + id
+    @SuppressWarnings("unchecked")
+    private static ChainingHash mockPartition(Integer... ids) {
+        ChainingHash hash = Mockito.mock(ChainingHash.class);
+        Mockito.when(hash.keys()).thenReturn(Arrays.asList(ids));
+        for (Integer id : ids) {
+            Tuple tuple = new Tuple(2);
+            tuple.put(0, id);
+            tuple.put(1, "value_" + id);
+            Mockito.when(hash.get(id)).thenReturn(tuple);
+        }
+        return hash;
+    }
 }
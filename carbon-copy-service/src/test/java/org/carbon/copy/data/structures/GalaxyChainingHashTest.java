@@ -28,6 +28,7 @@ import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -51,6 +52,29 @@ public class GalaxyChainingHashTest extends GalaxyBaseTest {
         assertNull(db2.get(125));
     }
 
+    @Test
+    public void testOnlyChangedBlocksAreDirty() throws IOException {
+        Txn t = txnManager.beginTransaction();
+        ChainingHash<Integer, Long> hash = dsFactory.newChainingHash(t);
+        hash.put(123, 123L, t);
+        t.commit();
+        assertFalse(hash.isDirty());
+
+        // the bucket exists already
+        // that means only the data block changes
+        t = txnManager.beginTransaction();
+        ChainingHash<Integer, Long> hash2 = dsFactory.loadChainingHashForWrites(hash.getId(), t);
+        hash2.put(123, 456L, t);
+        assertFalse(hash2.isDirty());
+        // deleting a key that doesn't exist doesn't change anything
+        assertFalse(hash2.delete(789, t));
+        assertFalse(hash2.isDirty());
+        t.commit();
+
+        ChainingHash<Integer, Long> hash3 = dsFactory.loadChainingHash(hash.getId());
+        assertEquals(Long.valueOf(456), hash3.get(123));
+    }
+
     @Test
     public void testPutGetDelete() throws IOException {
         int count = 123;
@@ -30,7 +30,9 @@ import java.util.Set;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -57,6 +59,36 @@ public class GalaxyDataBlockTest extends GalaxyBaseTest {
         assertNull(db2.get(125));
     }
 
+    @Test
+    public void testDecodedBlocksAreSharedUntilTheyChange() throws IOException {
+        Txn t = txnManager.beginTransaction();
+        DataBlock<Integer, Long> db = dsFactory.newDataBlock(t);
+        db.put(1, 1L, t);
+        t.commit();
+
+        DataBlock<Integer, Long> db2 = dsFactory.loadDataBlock(db.getId());
+        assertSame(db2, dsFactory.loadDataBlock(db.getId()));
+
+        // nobody gets to change a shared block
+        Txn t2 = txnManager.beginTransaction();
+        try {
+            db2.put(2, 2L, t2);
+            fail();
+        } catch (IllegalStateException xcp) {
+            t2.rollback();
+        }
+
+        Txn t3 = txnManager.beginTransaction();
+        DataBlock<Integer, Long> db3 = dsFactory.loadDataBlockForWrites(db.getId(), t3);
+        db3.put(2, 2L, t3);
+        t3.commit();
+
+        DataBlock<Integer, Long> db4 = dsFactory.loadDataBlock(db.getId());
+        assertNotSame(db2, db4);
+        assertNull(db2.get(2));
+        assertEquals(Long.valueOf(2), db4.get(2));
+    }
+
     @Test(expected = IOException.class)
     public void testDoubleCommit() throws IOException {
         Txn t = txnManager.beginTransaction();
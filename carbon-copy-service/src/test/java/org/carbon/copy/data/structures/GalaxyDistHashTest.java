@@ -39,8 +39,10 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -131,6 +133,43 @@ public class GalaxyDistHashTest extends GalaxyBaseTest {
         assertTrue(values.isEmpty());
     }
 
+    @Test
+    public void testDeletingValues() throws IOException {
+        Txn txn = txnManager.beginTransaction();
+        DistHash<Integer, String> dh = dsFactory.newDistHash(txn);
+        dh.put(123, "narf", txn);
+        dh.put(456, "zort", txn);
+        txn.commit();
+
+        Txn txn2 = txnManager.beginTransaction();
+        DistHash<Integer, String> dh2 = dsFactory.loadDistHash(dh.getId());
+        assertTrue(dh2.delete(123, txn2));
+        assertFalse(dh2.delete(789, txn2));
+        txn2.commit();
+
+        DistHash<Integer, String> dh3 = dsFactory.loadDistHash(dh.getId());
+        assertNull(dh3.get(123));
+        assertEquals("zort", dh3.get(456));
+    }
+
+    @Test
+    public void testPutsRollBackWithTheTxn() throws IOException {
+        Txn txn = txnManager.beginTransaction();
+        DistHash<Integer, String> dh = dsFactory.newDistHash(txn);
+        dh.put(123, "narf", txn);
+        txn.commit();
+
+        Txn txn2 = txnManager.beginTransaction();
+        DistHash<Integer, String> dh2 = dsFactory.loadDistHash(dh.getId());
+        dh2.put(123, "zort", txn2);
+        dh2.put(456, "poit", txn2);
+        txn2.rollback();
+
+        DistHash<Integer, String> dh3 = dsFactory.loadDistHash(dh.getId());
+        assertEquals("narf", dh3.get(123));
+        assertNull(dh3.get(456));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testNewDistHashRollback() throws IOException {
         Random r = new Random();
@@ -144,6 +183,63 @@ public class GalaxyDistHashTest extends GalaxyBaseTest {
         dsFactory.loadDistHash(blockId);
     }
 
+    @Test
+    public void testExecuteFragment() throws IOException {
+        Txn txn = txnManager.beginTransaction();
+        DistHash<Integer, Tuple> dh = dsFactory.newDistHash(txn);
+        for (int i = 0; i < 100; i++) {
+            Tuple tuple = new Tuple(2);
+            tuple.put(0, i);
+            tuple.put(1, "value_" + i);
+            dh.put(i, tuple, txn);
+        }
+        txn.commit();
+
+        DistHash.TupleScanFragment fragment = new DistHash.TupleScanFragment(new int[] { 0 }, new Comparable[] { 90 }, new Comparable[] { null }, new int[] { 1 });
+        Set<Comparable> values = dh.execute(fragment)
+                .map(tuple -> tuple.get(0))
+                .collect(Collectors.toSet());
+        assertEquals(10, values.size());
+        for (int i = 90; i < 100; i++) {
+            assertTrue(values.contains("value_" + i));
+        }
+    }
+
+    @Test
+    public void testColocatedJoin() throws IOException {
+        Txn txn = txnManager.beginTransaction();
+        DistHash<GUID, Tuple> dh1 = dsFactory.newDistHash(txn);
+        DistHash<GUID, Tuple> dh2 = dsFactory.newDistHash(txn);
+        for (int i = 0; i < 100; i++) {
+            // rows with the same partition key end up on the same node no matter which hash they're in
+            dh1.put(GUID.partitionedGUID(i), row(i, "left_" + i), txn);
+            // only every other key is in the second hash
+            if (i % 2 == 0) {
+                dh2.put(GUID.partitionedGUID(i), row(i, "right_" + i), txn);
+            }
+        }
+        txn.commit();
+
+        DistHash.TupleScanFragment scan = new DistHash.TupleScanFragment(new int[0], new Comparable[0], new Comparable[0], null);
+        List<Object[]> rows = dh1.executeColocated(new DistHash.TupleJoinFragment(scan, 0, scan, 0), dh2).collect(Collectors.toList());
+        assertEquals(50, rows.size());
+        for (Object[] row : rows) {
+            Tuple left = (Tuple) row[0];
+            Tuple right = (Tuple) row[1];
+            assertEquals(0, (Integer) left.get(0) % 2);
+            assertEquals(left.get(0), right.get(0));
+            assertEquals("left_" + left.get(0), left.get(1));
+            assertEquals("right_" + right.get(0), right.get(1));
+        }
+    }
+
+    private static Tuple row(int id, String value) {
+        Tuple tuple = new Tuple(2);
+        tuple.put(0, id);
+        tuple.put(1, value);
+        return tuple;
+    }
+
     @Test
     public void testMultiThreadedPuttingAndGetting() throws IOException, InterruptedException {
         Random r = new Random();
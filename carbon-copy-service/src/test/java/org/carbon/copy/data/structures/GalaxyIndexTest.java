@@ -114,4 +114,36 @@ public class GalaxyIndexTest extends GalaxyBaseTest {
         assertEquals("foo", columnNames.get(1));
         assertEquals("foobar", columnNames.get(2));
     }
+
+    @Test
+    public void testIndexBackedBySibPlusTree() throws IOException {
+        Index.Builder indexBuilder = Index.newBuilder("narf")
+                .withColumn("number", Integer.class)
+                .withColumn("foo", String.class)
+                .withBackingTree(Index.BackingTree.SIB_PLUS_TREE);
+
+        int count = SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP * 2;
+        List<GUID> assertionGUIDs = new ArrayList<>();
+        Txn txn = txnManager.beginTransaction();
+        Index idx = dsFactory.newIndex(indexBuilder, txn);
+        for (int i = 0; i < count; i++) {
+            GUID guid = GUID.randomGUID();
+            assertionGUIDs.add(guid);
+            idx.insert(Tuple.builder().add(i).add("foo_" + i).build(), guid, txn);
+        }
+        txn.commit();
+
+        Index loadedIdx = dsFactory.loadIndex(idx.getId());
+        assertEquals(Index.BackingTree.SIB_PLUS_TREE, loadedIdx.getBackingTree());
+        assertEquals(assertionGUIDs.get(7), loadedIdx.get(Tuple.builder().add(7).add("foo_7").build()));
+
+        Tuple fromTup = Tuple.builder().add(10).add("").build();
+        Tuple toTup = Tuple.builder().add(19).add("zzz").build();
+        int assertionCounter = 10;
+        for (GUID guid : loadedIdx.get(fromTup, toTup)) {
+            assertEquals(assertionGUIDs.get(assertionCounter), guid);
+            assertionCounter++;
+        }
+        assertEquals(20, assertionCounter);
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import com.google.inject.Inject;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GalaxySibPlusTreeTest extends GalaxyBaseTest {
+    @Inject
+    private InternalDataStructureFactory dsFactory;
+
+    @Inject
+    private TxnManager txnManager;
+
+    @Test
+    public void testBasicWithOneNodeGroup() throws IOException {
+        long treeId;
+        Txn txn = txnManager.beginTransaction();
+        SibPlusTree<String, String> t = dsFactory.newSibPlusTree(txn);
+        t.put("key_1", "value_1", txn);
+        t.put("key_2", "value_2", txn);
+        t.put("key_3", "value_3", txn);
+        treeId = t.getId();
+        txn.commit();
+
+        SibPlusTree<String, String> t2 = dsFactory.loadSibPlusTree(treeId);
+        assertEquals("value_2", t2.get("key_2"));
+        assertEquals("value_3", t2.get("key_3"));
+        assertEquals("value_1", t2.get("key_1"));
+        assertNull(t2.get("key_4"));
+        assertEquals(0, t2.getHeight());
+    }
+
+    @Test
+    public void testRandomInsertsWithMultipleNodeGroups() throws IOException {
+        long treeId;
+        int count = SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP * 5;
+        List<Integer> numbers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            numbers.add(i);
+        }
+        Collections.shuffle(numbers, new Random(17));
+
+        Txn txn = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t = dsFactory.newSibPlusTree(txn);
+        for (Integer i : numbers) {
+            t.put(i, "value_" + i, txn);
+        }
+        treeId = t.getId();
+        txn.commit();
+
+        SibPlusTree<Integer, String> t2 = dsFactory.loadSibPlusTree(treeId);
+        assertTrue(t2.getHeight() > 0);
+        for (int i = 0; i < count; i++) {
+            assertEquals("value_" + i, t2.get(i));
+        }
+
+        int assertionCount = 0;
+        for (Integer i : t2.keys()) {
+            assertEquals(Integer.valueOf(assertionCount), i);
+            assertionCount++;
+        }
+        assertEquals(count, assertionCount);
+    }
+
+    @Test
+    public void testRangeScanAcrossNodeGroups() throws IOException {
+        long treeId;
+        int count = SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP * 3;
+        Txn txn = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t = dsFactory.newSibPlusTree(txn);
+        for (int i = 0; i < count; i++) {
+            // only even numbers
+            t.put(i * 2, "value_" + (i * 2), txn);
+        }
+        treeId = t.getId();
+        txn.commit();
+
+        SibPlusTree<Integer, String> t2 = dsFactory.loadSibPlusTree(treeId);
+        int from = 11;
+        int to = count + 10;
+        int expected = 12;
+        for (String value : t2.get(from, to)) {
+            assertEquals("value_" + expected, value);
+            expected += 2;
+        }
+        assertEquals(to + 2, expected);
+    }
+
+    @Test
+    public void testCreateReadWriteRead() throws IOException {
+        long treeId;
+        int count = SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP * 3;
+        Txn txn1 = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t1 = dsFactory.newSibPlusTree(txn1);
+        for (int i = 0; i < count; i++) {
+            t1.put(i, "value_" + i, txn1);
+        }
+        treeId = t1.getId();
+        txn1.commit();
+
+        Txn txn2 = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t2 = dsFactory.loadSibPlusTreeForWrites(treeId, txn2);
+        for (int i = 0; i < count; i++) {
+            t2.put(i, "value_" + (-i), txn2);
+        }
+        txn2.commit();
+
+        SibPlusTree<Integer, String> t3 = dsFactory.loadSibPlusTree(treeId);
+        for (int i = 0; i < count; i++) {
+            assertEquals("value_" + (-i), t3.get(i));
+        }
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        long treeId;
+        int count = SibPlusTree.MAX_ENTRIES_PER_NODE_GROUP * 2;
+        Txn txn1 = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t1 = dsFactory.newSibPlusTree(txn1);
+        for (int i = 0; i < count; i++) {
+            t1.put(i, "value_" + i, txn1);
+        }
+        treeId = t1.getId();
+        txn1.commit();
+
+        Txn txn2 = txnManager.beginTransaction();
+        SibPlusTree<Integer, String> t2 = dsFactory.loadSibPlusTreeForWrites(treeId, txn2);
+        for (int i = 0; i < count; i += 2) {
+            t2.delete(i, txn2);
+        }
+        txn2.commit();
+
+        SibPlusTree<Integer, String> t3 = dsFactory.loadSibPlusTree(treeId);
+        int numKeys = 0;
+        for (Integer i : t3.keys()) {
+            assertEquals(1, i % 2);
+            numKeys++;
+        }
+        assertEquals(count / 2, numKeys);
+        assertNull(t3.get(0));
+        assertEquals("value_1", t3.get(1));
+    }
+}
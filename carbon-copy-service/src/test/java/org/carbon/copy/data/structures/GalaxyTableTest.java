@@ -22,10 +22,20 @@ import com.google.inject.Inject;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class GalaxyTableTest extends GalaxyBaseTest {
     @Inject
@@ -133,4 +143,378 @@ public class GalaxyTableTest extends GalaxyBaseTest {
         assertEquals("MOEP", cols.get(1));
         assertEquals("FOO", cols.get(2));
     }
+
+    @Test
+    public void testRangeScanWithLocalIndex() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("id", Integer.class)
+                .withColumn("moep", String.class)
+                .withLocalIndex("id");
+
+        Txn txn1 = txnManager.beginTransaction();
+        Table table1 = dsFactory.newTable(tableBuilder, txn1);
+        for (int i = 0; i < 50; i++) {
+            table1.insert(Tuple.builder().add(i).add("moep_" + i).build(), txn1);
+        }
+        txn1.commit();
+        long tableId = table1.getId();
+
+        // the first range scan builds the local index from galaxy
+        Table table2 = dsFactory.loadTable(tableId);
+        List<Integer> ids = table2.rangeScan("id", 10, 19)
+                .map(guid -> (Integer) table2.get(guid).get(0))
+                .collect(Collectors.toList());
+        assertEquals(10, ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            // the local index returns rows ordered by the column value
+            assertEquals(Integer.valueOf(10 + i), ids.get(i));
+        }
+
+        // inserts that commit later are visible in the local index
+        Txn txn2 = txnManager.beginTransaction();
+        Table table3 = dsFactory.loadTableForWrites(tableId, txn2);
+        table3.insert(Tuple.builder().add(15).add("another moep").build(), txn2);
+        txn2.commit();
+        assertEquals(11, table2.rangeScan("id", 10, 19).count());
+
+        // overwrites move the row in the local index
+        GUID guidOfTwelve = table2.rangeScan("id", 12, 12).findFirst().get();
+        Txn txn3 = txnManager.beginTransaction();
+        Table table4 = dsFactory.loadTableForWrites(tableId, txn3);
+        Tuple changed = table4.get(guidOfTwelve).copy();
+        changed.put(0, 112);
+        table4.insert(changed, txn3);
+        txn3.commit();
+        assertEquals(0, table2.rangeScan("id", 12, 12).count());
+        assertEquals(Collections.singletonList(guidOfTwelve), table2.rangeScan("id", 112, 112).collect(Collectors.toList()));
+
+        // an index that missed an insert (of another node) isn't used for lookups as is
+        Table table5 = dsFactory.loadTable(tableId);
+        assertFalse(LocalIndex.isComplete(tableId, "ID", withInsertOfAnotherNode(table5.getRemoteInsertCounts())));
+        assertEquals(Collections.singletonList(guidOfTwelve), table5.rangeScan("id", 112, 112).collect(Collectors.toList()));
+        assertEquals(10, table5.rangeScan("id", 10, 19).count());
+        assertTrue(table5.isLocalIndexComplete("id"));
+
+        // rows that committed after a snapshot was opened are in the local index but not in the snapshot
+        try (ReadSnapshot snapshot = txnManager.beginSnapshot()) {
+            Txn txn4 = txnManager.beginTransaction();
+            Table table6 = dsFactory.loadTableForWrites(tableId, txn4);
+            table6.insert(Tuple.builder().add(16).add("yet another moep").build(), txn4);
+            txn4.commit();
+            assertEquals(11, table2.rangeScan("id", 10, 19).count());
+            assertEquals(10, dsFactory.loadTable(tableId, snapshot).rangeScan("id", 10, 19).count());
+        }
+
+        // columns without a local index still work
+        assertEquals(50, table2.rangeScan("moep", "moep_", "moep_999").count());
+    }
+
+    @Test
+    public void testScanInOrder() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("id", Integer.class)
+                .withColumn("moep", String.class)
+                .withLocalIndex("id");
+
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(i);
+        }
+        Collections.shuffle(ids);
+
+        Txn txn1 = txnManager.beginTransaction();
+        Table table1 = dsFactory.newTable(tableBuilder, txn1);
+        GUID guidOfFive = null;
+        for (Integer id : ids) {
+            GUID guid = table1.insert(Tuple.builder().add(id).add("moep_" + id).build(), txn1);
+            if (id == 5) {
+                guidOfFive = guid;
+            }
+        }
+        Tuple withoutId = new Tuple(2);
+        withoutId.put(1, "no id");
+        table1.insert(withoutId, txn1);
+        txn1.commit();
+        long tableId = table1.getId();
+
+        Table table2 = dsFactory.loadTable(tableId);
+        List<Comparable> sortedIds = table2.scanInOrder("id", false).map(row -> row.get(0)).collect(Collectors.toList());
+        assertEquals(31, sortedIds.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i, sortedIds.get(i));
+        }
+        assertNull(sortedIds.get(30));
+        assertNull(table2.scanInOrder("id", true).findFirst().get().get(0));
+
+        // overwritten rows show up with their new value only
+        Txn txn2 = txnManager.beginTransaction();
+        Table table3 = dsFactory.loadTableForWrites(tableId, txn2);
+        Tuple changed = table3.get(guidOfFive).copy();
+        changed.put(0, 100);
+        table3.insert(changed, txn2);
+        txn2.commit();
+
+        Table table4 = dsFactory.loadTable(tableId);
+        List<Comparable> newSortedIds = table4.scanInOrder("id", false).map(row -> row.get(0)).collect(Collectors.toList());
+        assertEquals(31, newSortedIds.size());
+        assertFalse(newSortedIds.contains(5));
+        assertEquals(100, newSortedIds.get(29));
+
+        // inserts that committed on this node keep the local index complete
+        assertTrue(table4.isLocalIndexComplete("id"));
+        // an index that missed an insert (of another node) can't be used as is
+        assertFalse(LocalIndex.isComplete(tableId, "ID", withInsertOfAnotherNode(table4.getRemoteInsertCounts())));
+        // ...it's built anew the next time somebody needs it
+        assertTrue(table4.isLocalIndexComplete("id"));
+        assertEquals(newSortedIds, table4.scanInOrder("id", false).map(row -> row.get(0)).collect(Collectors.toList()));
+
+        try {
+            table4.scanInOrder("moep", false);
+            fail();
+        } catch (IllegalArgumentException xcp) {
+            // no local index no order
+        }
+    }
+
+    @Test
+    public void testReadSnapshotDoesNotSeeLaterCommits() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("id", Integer.class)
+                .withColumn("name", String.class);
+
+        Txn txn = txnManager.beginTransaction();
+        Table table = dsFactory.newTable(tableBuilder, txn);
+        Tuple tup1 = new Tuple(2);
+        tup1.put(0, 1);
+        tup1.put(1, "one");
+        GUID guid1 = table.insert(tup1, txn);
+        txn.commit();
+        long tableId = table.getId();
+
+        try (ReadSnapshot snapshot = txnManager.beginSnapshot()) {
+            Txn txn2 = txnManager.beginTransaction();
+            Table tableForWrites = dsFactory.loadTableForWrites(tableId, txn2);
+            Tuple tup2 = new Tuple(2);
+            tup2.put(0, 2);
+            tup2.put(1, "two");
+            GUID guid2 = tableForWrites.insert(tup2, txn2);
+            txn2.commit();
+
+            Table tableInSnapshot = dsFactory.loadTable(tableId, snapshot);
+            assertEquals(1, tableInSnapshot.keys().count());
+            assertEquals("one", tableInSnapshot.get(guid1).get(1));
+            assertNull(tableInSnapshot.get(guid2));
+
+            Table latestTable = dsFactory.loadTable(tableId);
+            assertEquals(2, latestTable.keys().count());
+            assertEquals("two", latestTable.get(guid2).get(1));
+
+            // snapshots are read-only
+            Txn txn3 = txnManager.beginTransaction();
+            try {
+                tableInSnapshot.insert(tup2, txn3);
+                fail();
+            } catch (IllegalStateException xcp) {
+                // expected
+            } finally {
+                txn3.rollback();
+            }
+        }
+    }
+
+    @Test
+    public void testColumnarTable() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("id", Integer.class)
+                .withColumn("name", String.class)
+                .withColumn("score", Double.class)
+                .withColumnarStorage();
+
+        // enough rows for a couple of row groups
+        int numRows = ColumnChunk.MAX_ROWS * 2 + 17;
+        List<GUID> guids = new ArrayList<>();
+        Txn txn = txnManager.beginTransaction();
+        Table table = dsFactory.newTable(tableBuilder, txn);
+        for (int i = 0; i < numRows; i++) {
+            guids.add(table.insert(Tuple.builder().add(i).add("name_" + i).add(i * 0.5d).build(), txn));
+        }
+        txn.commit();
+        long tableId = table.getId();
+
+        Table table2 = dsFactory.loadTable(tableId);
+        assertTrue(table2.isColumnar());
+        assertEquals(numRows, table2.keys().count());
+        Tuple t = table2.get(guids.get(300));
+        assertEquals(Integer.valueOf(300), t.get(0));
+        assertEquals("name_300", t.get(1));
+        assertEquals(Double.valueOf(150.0d), t.get(2));
+
+        // scans only fill in the columns they're asked for
+        List<Tuple> rows = table2.scan(Collections.singletonList(1)).collect(Collectors.toList());
+        assertEquals(numRows, rows.size());
+        for (Tuple row : rows) {
+            assertNull(row.get(0));
+            assertTrue(((String) row.get(1)).startsWith("name_"));
+            assertNull(row.get(2));
+        }
+        assertEquals(numRows, table2.scan().filter(row -> row.get(2) != null).count());
+
+        // inserting an existing row overwrites it
+        Txn txn2 = txnManager.beginTransaction();
+        Table table3 = dsFactory.loadTableForWrites(tableId, txn2);
+        Tuple changed = table3.get(guids.get(5)).copy();
+        changed.put(1, "changed");
+        table3.insert(changed, txn2);
+        txn2.commit();
+        Table table4 = dsFactory.loadTable(tableId);
+        assertEquals(numRows, table4.keys().count());
+        assertEquals("changed", table4.get(guids.get(5)).get(1));
+        assertEquals(Integer.valueOf(5), table4.get(guids.get(5)).get(0));
+    }
+
+    @Test
+    public void testZoneMapsSkipRowGroups() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("ts", Long.class)
+                .withColumn("name", String.class)
+                .withColumnarStorage();
+
+        // time-like and increasing so that every row group covers its own range
+        int numRows = ColumnChunk.MAX_ROWS * 3;
+        Txn txn = txnManager.beginTransaction();
+        Table table = dsFactory.newTable(tableBuilder, txn);
+        for (int i = 0; i < numRows; i++) {
+            table.insert(Tuple.builder().add(1000L + i).add("name_" + i).build(), txn);
+        }
+        txn.commit();
+
+        Table table2 = dsFactory.loadTable(table.getId());
+        List<Integer> columns = Arrays.asList(0, 1);
+
+        // only the row group in the middle can contain this value
+        long value = 1000L + ColumnChunk.MAX_ROWS + 5;
+        List<Tuple> rows = table2.scan(columns, Collections.singletonList(new ColumnRange(0, value, value)))
+                .collect(Collectors.toList());
+        assertEquals(ColumnChunk.MAX_ROWS, rows.size());
+        assertEquals(1, rows.stream().filter(row -> Long.valueOf(value).equals(row.get(0))).count());
+
+        // open ranges work too
+        assertEquals(ColumnChunk.MAX_ROWS, table2.scan(columns, Collections.singletonList(new ColumnRange(0, null, 1000L))).count());
+        assertEquals(ColumnChunk.MAX_ROWS * 2, table2.scan(columns, Collections.singletonList(new ColumnRange(0, 1000L + ColumnChunk.MAX_ROWS, null))).count());
+
+        // all ranges need to match
+        List<ColumnRange> ranges = Arrays.asList(new ColumnRange(0, null, 1000L), new ColumnRange(0, 1000L + numRows, null));
+        assertEquals(0, table2.scan(columns, ranges).count());
+
+        // no ranges no skipping
+        assertEquals(numRows, table2.scan(columns, Collections.emptyList()).count());
+    }
+
+    @Test
+    public void testPartitionedTable() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("customer", String.class)
+                .withColumn("amount", Integer.class)
+                .withColumn("note", String.class)
+                .withPartitionKey("customer");
+
+        int numRows = 500;
+        List<GUID> guids = new ArrayList<>();
+        Txn txn = txnManager.beginTransaction();
+        Table table = dsFactory.newTable(tableBuilder, txn);
+        for (int i = 0; i < numRows; i++) {
+            guids.add(table.insert(Tuple.builder().add("customer_" + (i % 7)).add(i).add("note_" + i).build(), txn));
+        }
+        txn.commit();
+        long tableId = table.getId();
+
+        // the guid of a row is derived from its partition key
+        assertTrue(guids.get(14).isInPartition("customer_0"));
+        assertFalse(guids.get(15).isInPartition("customer_0"));
+
+        Table table2 = dsFactory.loadTable(tableId);
+        assertEquals("CUSTOMER", table2.getPartitionKeyColumn());
+        assertEquals(numRows, table2.keys().count());
+        Tuple t = table2.get(guids.get(300));
+        assertEquals("customer_6", t.get(0));
+        assertEquals(Integer.valueOf(300), t.get(1));
+        assertEquals("note_300", t.get(2));
+
+        // scans only fill in the columns they're asked for
+        List<Tuple> rows = table2.scan(Collections.singletonList(1)).collect(Collectors.toList());
+        assertEquals(numRows, rows.size());
+        for (Tuple row : rows) {
+            assertNull(row.get(0));
+            assertTrue(row.get(1) != null);
+            assertNull(row.get(2));
+        }
+        assertEquals(numRows, table2.scan().filter(row -> row.get(2) != null).count());
+
+        // unlike other tables partitioned tables only return rows inside of the ranges
+        assertEquals(10, table2.scan(Arrays.asList(0, 1), Collections.singletonList(new ColumnRange(1, 100, 109))).count());
+        assertEquals(71, table2.scan(Arrays.asList(0, 1), Collections.singletonList(new ColumnRange(0, "customer_3", "customer_3"))).count());
+        assertEquals(3, table2.rangeScan("amount", null, 2).count());
+
+        // inserting an existing row overwrites it
+        Txn txn2 = txnManager.beginTransaction();
+        Table table3 = dsFactory.loadTableForWrites(tableId, txn2);
+        Tuple changed = table3.get(guids.get(5)).copy();
+        changed.put(2, "changed");
+        assertEquals(guids.get(5), table3.insert(changed, txn2));
+        txn2.commit();
+        Table table4 = dsFactory.loadTable(tableId);
+        assertEquals(numRows, table4.keys().count());
+        assertEquals("changed", table4.get(guids.get(5)).get(2));
+
+        // changing the partition key moves the row to another partition
+        try (ReadSnapshot snapshot = txnManager.beginSnapshot()) {
+            Txn txn3 = txnManager.beginTransaction();
+            Table table5 = dsFactory.loadTableForWrites(tableId, txn3);
+            Tuple moved = table5.get(guids.get(6)).copy();
+            moved.put(0, "customer_new");
+            GUID movedGuid = table5.insert(moved, txn3);
+            txn3.commit();
+            assertFalse(guids.get(6).equals(movedGuid));
+            Table table6 = dsFactory.loadTable(tableId);
+            assertEquals(numRows, table6.keys().count());
+            assertNull(table6.get(guids.get(6)));
+            assertEquals("customer_new", table6.get(movedGuid).get(0));
+
+            // the snapshot still sees the row where it was
+            Table tableInSnapshot = dsFactory.loadTable(tableId, snapshot);
+            assertEquals(numRows, tableInSnapshot.keys().count());
+            assertEquals("customer_6", tableInSnapshot.get(guids.get(6)).get(0));
+            assertNull(tableInSnapshot.get(movedGuid));
+            assertEquals(0, tableInSnapshot.scan(Arrays.asList(0, 1), Collections.singletonList(new ColumnRange(0, "customer_new", "customer_new"))).count());
+        }
+
+        // inserts into partitions roll back with the transaction
+        Txn txn4 = txnManager.beginTransaction();
+        Table table7 = dsFactory.loadTableForWrites(tableId, txn4);
+        GUID rolledBack = table7.insert(Tuple.builder().add("customer_0").add(-1).add("rolled back").build(), txn4);
+        txn4.rollback();
+        Table table8 = dsFactory.loadTable(tableId);
+        assertEquals(numRows, table8.keys().count());
+        assertNull(table8.get(rolledBack));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionByUnknownColumn() throws IOException {
+        Table.Builder tableBuilder = Table.newBuilder("narf_" + UUID.randomUUID().toString())
+                .withColumn("customer", String.class)
+                .withPartitionKey("narf");
+        Txn txn = txnManager.beginTransaction();
+        try {
+            dsFactory.newTable(tableBuilder, txn);
+        } finally {
+            txn.rollback();
+        }
+    }
+
+    // pretends that another node inserted a row
+    private static Map<Long, Long> withInsertOfAnotherNode(Map<Long, Long> remoteInsertCounts) {
+        Map<Long, Long> counts = new HashMap<>(remoteInsertCounts);
+        counts.merge(-1L, 1L, Long::sum);
+        return counts;
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import co.paralleluniverse.galaxy.Store;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.Futures;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class GroupCommitCoordinatorTest {
+    @Test
+    public void testFailedFlushReleasesEverything() throws Exception {
+        long blockId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+        byte[] bytes = new byte[] { 1, 2, 3 };
+        Store store = Mockito.mock(Store.class);
+        when(store.setAsync(blockId, bytes, null)).thenReturn(Futures.immediateFailedFuture(new IOException("galaxy is gone")));
+
+        GroupCommitCoordinator.park(blockId, bytes);
+        GroupCommitCoordinator.Participant participant = new GroupCommitCoordinator.Participant(store, ImmutableSet.of(blockId));
+        new GroupCommitCoordinator().join(participant);
+
+        try {
+            participant.getFuture().get(60, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException xcp) {
+            assertEquals("galaxy is gone", xcp.getCause().getMessage());
+        }
+
+        // nobody on this node holds the block anymore
+        // so the block is unparked and the remote lock is gone too
+        assertNull(GroupCommitCoordinator.getParkedBlock(blockId));
+        verify(store).release(blockId);
+    }
+}
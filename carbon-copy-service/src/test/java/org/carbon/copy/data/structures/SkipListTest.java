@@ -16,7 +16,7 @@
  *
  */
 
-package org.carbon.copy.data.structures.experimental;
+package org.carbon.copy.data.structures;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.io.ByteBufferOutput;
@@ -25,12 +25,18 @@ import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class SkipListTest {
@@ -104,6 +110,72 @@ public class SkipListTest {
         umo.release();
     }
 
+    @Test
+    public void testDuplicateKeysAndRange() throws Exception {
+        SkipList<Integer, String> sl = new SkipList<>();
+        for (int i = 0; i < 100; i++) {
+            sl.insert(i % 10, "value_" + i);
+        }
+        // the same pair doesn't go in twice
+        assertFalse(sl.insert(3, "value_3"));
+        assertEquals(100, sl.size());
+        assertEquals(10, sl.search(7).size());
+
+        int count = 0;
+        int lastKey = 3;
+        for (String value : sl.get(3, 5)) {
+            int key = Integer.valueOf(value.substring("value_".length())) % 10;
+            assertTrue(key >= lastKey && key <= 5);
+            lastKey = key;
+            count++;
+        }
+        assertEquals(30, count);
+
+        sl.delete(4);
+        assertEquals(90, sl.size());
+        assertEquals(0, sl.search(4).size());
+        assertEquals(Optional.absent(), sl.floor(4));
+    }
+
+    @Test
+    public void testConcurrentInsertsAndDeletes() throws Exception {
+        int numThreads = 8;
+        int countPerThread = 2000;
+        SkipList<Integer, Integer> sl = new SkipList<>();
+        ExecutorService es = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; t++) {
+                int threadId = t;
+                futures.add(es.submit(() -> {
+                    for (int i = 0; i < countPerThread; i++) {
+                        sl.insert(i, threadId);
+                    }
+                    // every thread deletes its own odd entries again
+                    for (int i = 1; i < countPerThread; i += 2) {
+                        assertTrue(sl.delete(i, threadId));
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            es.shutdown();
+        }
+
+        assertEquals(numThreads * countPerThread / 2, sl.size());
+        int count = 0;
+        for (Integer threadId : sl.get(null, null)) {
+            assertTrue(threadId >= 0 && threadId < numThreads);
+            count++;
+        }
+        assertEquals(numThreads * countPerThread / 2, count);
+        for (int i = 0; i < countPerThread; i++) {
+            assertEquals((i % 2 == 0) ? numThreads : 0, sl.search(i).size());
+        }
+    }
+
     private <K, V> Map.Entry<K, V> getIthElement(Map<K, V> m, int i) {
         i = i % m.size();
         for (Map.Entry<K, V> e : m.entrySet()) {
@@ -112,4 +184,30 @@ public class SkipListTest {
         }
         return null;
     }
+
+    @Test
+    public void testEntries() {
+        SkipList<Integer, String> sl = new SkipList<>();
+        sl.insert(3, "c");
+        sl.insert(1, "a");
+        sl.insert(2, "b2");
+        sl.insert(2, "b1");
+        sl.delete(3, "c");
+
+        List<String> entries = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : sl.entries(null, null)) {
+            entries.add(entry.getKey() + "=" + entry.getValue());
+        }
+        assertEquals(3, entries.size());
+        assertEquals("1=a", entries.get(0));
+        assertEquals("2=b1", entries.get(1));
+        assertEquals("2=b2", entries.get(2));
+
+        int count = 0;
+        for (Map.Entry<Integer, String> entry : sl.entries(2, 2)) {
+            assertEquals(Integer.valueOf(2), entry.getKey());
+            count++;
+        }
+        assertEquals(2, count);
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ *
+ *  Copyright 2017 Marco Helmich
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+
+package org.carbon.copy.data.structures;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TupleBatchTest {
+    @Test
+    public void testBatches() {
+        int numRows = TupleBatch.MAX_SIZE * 2 + 17;
+        AtomicBoolean isClosed = new AtomicBoolean(false);
+        Stream<Tuple> rows = IntStream.range(0, numRows).mapToObj(this::newRow).onClose(() -> isClosed.set(true));
+
+        List<TupleBatch> batches;
+        try (Stream<TupleBatch> stream = TupleBatch.batches(rows)) {
+            batches = stream.collect(Collectors.toList());
+        }
+        assertTrue(isClosed.get());
+        assertEquals(3, batches.size());
+        assertEquals(TupleBatch.MAX_SIZE, batches.get(0).size());
+        assertEquals(TupleBatch.MAX_SIZE, batches.get(1).size());
+        assertEquals(17, batches.get(2).size());
+
+        // rows stay in order
+        int expected = 0;
+        for (TupleBatch batch : batches) {
+            for (int i = 0; i < batch.size(); i++) {
+                assertEquals(expected++, batch.get(i).getInt(0));
+            }
+        }
+    }
+
+    @Test
+    public void testSelection() {
+        TupleBatch batch = TupleBatch.batches(IntStream.range(0, 10).mapToObj(this::newRow)).findFirst().get();
+        // keep the even rows only
+        int[] selection = batch.getSelection();
+        int selected = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.getRows()[selection[i]].getInt(0) % 2 == 0) {
+                selection[selected++] = selection[i];
+            }
+        }
+        batch.setSize(selected);
+
+        assertEquals(5, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(i * 2, batch.get(i).getInt(0));
+        }
+
+        try {
+            batch.setSize(6);
+            fail();
+        } catch (IllegalArgumentException xcp) {
+            // batches only ever shrink
+        }
+    }
+
+    private Tuple newRow(int i) {
+        Tuple tuple = new Tuple(1);
+        tuple.putInt(0, i);
+        return tuple;
+    }
+}
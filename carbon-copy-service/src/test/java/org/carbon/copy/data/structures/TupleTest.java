@@ -18,6 +18,9 @@
 
 package org.carbon.copy.data.structures;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import org.junit.Test;
 
 import java.util.ArrayList;
@@ -25,6 +28,9 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class TupleTest {
     @Test
@@ -132,6 +138,123 @@ public class TupleTest {
         assertEquals(1, ts.get(7).get(1));
     }
 
+    @Test
+    public void testTypedAccess() {
+        Tuple t = newTuple(5);
+        t.putLong(0, 1508000000000L);
+        t.putInt(1, -3);
+        t.putDouble(2, 2.5d);
+        t.put(3, "narf");
+
+        assertEquals(1508000000000L, t.getLong(0));
+        assertEquals(-3, t.getInt(1));
+        assertEquals(-3L, t.getLong(1));
+        assertEquals(2.5d, t.getDouble(2), 0.0d);
+        assertEquals(-3.0d, t.getDouble(1), 0.0d);
+        assertEquals("narf", t.getString(3));
+        assertTrue(t.isNull(4));
+        assertFalse(t.isNull(0));
+
+        // typed and boxed puts end up in the same place
+        assertEquals(Long.valueOf(1508000000000L), t.get(0));
+        assertEquals(Integer.valueOf(-3), t.get(1));
+        Tuple t2 = newTuple(5);
+        t2.put(0, 1508000000000L);
+        t2.put(1, -3);
+        t2.put(2, 2.5d);
+        t2.put(3, "narf");
+        assertEquals(t, t2);
+        assertEquals(t.hashCode(), t2.hashCode());
+
+        // immutable copies stay immutable
+        Tuple copy = t.immutableCopy();
+        copy.putLong(0, 5L);
+        copy.put(3, "moep");
+        assertEquals(1508000000000L, copy.getLong(0));
+        assertEquals("narf", copy.getString(3));
+    }
+
+    @Test
+    public void testCompareNegativeAndFloatingPointValues() {
+        List<Tuple> ts = new ArrayList<>();
+        for (int i = -5; i < 5; i++) {
+            Tuple t = newTuple(2);
+            t.put(0, (long) i);
+            t.put(1, i * 0.5d);
+            ts.add(t);
+        }
+
+        Collections.shuffle(ts);
+        Collections.sort(ts);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Long.valueOf(i - 5), ts.get(i).get(0));
+            assertEquals(Double.valueOf((i - 5) * 0.5d), ts.get(i).get(1));
+        }
+    }
+
+    @Test
+    public void testSerialization() {
+        Tuple t = newTuple(12);
+        t.put(0, "narf");
+        t.put(1, -17);
+        t.put(2, Long.MAX_VALUE);
+        t.put(3, 3.14d);
+        t.put(4, 2.5f);
+        t.put(5, (short) 7);
+        t.put(6, (byte) 8);
+        t.put(7, true);
+        t.put(8, 'x');
+        t.put(9, null);
+        t.put(10, "sch\u00f6n");
+        t.put(11, t.getGuid());
+
+        Tuple t2 = roundTrip(t);
+        assertEquals(t.getGuid(), t2.getGuid());
+        assertEquals(t.getTupleSize(), t2.getTupleSize());
+        for (int i = 0; i < t.getTupleSize(); i++) {
+            assertEquals(t.get(i), t2.get(i));
+        }
+    }
+
+    @Test
+    public void testReadOldFormat() {
+        Tuple t = newTuple(3);
+        t.put(0, "narf");
+        t.put(1, 17);
+
+        // this is how tuples used to be written
+        Output out = new Output(1024);
+        Tuple t2;
+        Kryo kryo = DataStructure.kryoPool.borrow();
+        try {
+            kryo.writeClassAndObject(out, t.getGuid());
+            out.writeInt(3);
+            kryo.writeClassAndObject(out, "narf");
+            kryo.writeClassAndObject(out, 17);
+            kryo.writeClassAndObject(out, null);
+            t2 = new Tuple.TupleSerializer().read(kryo, new Input(out.toBytes()), Tuple.class);
+        } finally {
+            DataStructure.kryoPool.release(kryo);
+        }
+
+        assertEquals(t.getGuid(), t2.getGuid());
+        assertEquals("narf", t2.get(0));
+        assertEquals(17, t2.get(1));
+        assertNull(t2.get(2));
+    }
+
+    private Tuple roundTrip(Tuple t) {
+        Output out = new Output(1024);
+        Kryo kryo = DataStructure.kryoPool.borrow();
+        try {
+            kryo.writeClassAndObject(out, t);
+            return (Tuple) kryo.readClassAndObject(new Input(out.toBytes()));
+        } finally {
+            DataStructure.kryoPool.release(kryo);
+        }
+    }
+
     private Tuple newTuple(int size) {
         return new Tuple(size);
     }
@@ -19,26 +19,32 @@
 package org.carbon.copy.data.structures;
 
 import co.paralleluniverse.galaxy.Store;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.inject.Inject;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TxnManagerTest extends GalaxyBaseTest {
 
@@ -94,6 +100,362 @@ public class TxnManagerTest extends GalaxyBaseTest {
         assertNull(db.get(5));
     }
 
+    @Test
+    public void testCommitAsync() throws Exception {
+        TxnManagerImpl impl = (TxnManagerImpl) txnManager;
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, String> db = dsFactory.newDataBlock(txn);
+        for (int i = 0; i < 10; i++) {
+            db.put(i, "value_" + i, txn);
+        }
+        long dbId = db.getId();
+        txn.commitAsync().get(60, TimeUnit.SECONDS);
+
+        DataBlock<Integer, String> db2 = dsFactory.loadDataBlock(dbId);
+        assertEquals("value_7", db2.get(7));
+
+        // the commit released all locks
+        // even though it might have finished on a different thread
+        ExecutorService es = Executors.newFixedThreadPool(1);
+        try {
+            es.submit(() -> {
+                impl.lock(dbId);
+                impl.release(dbId);
+            }).get(60, TimeUnit.SECONDS);
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    @Test
+    public void testSecondTxnOnTheSameThreadDoesNotShareLocks() throws Exception {
+        long dbId = createNewDataBlockAndGetId();
+
+        // the first transaction holds on to its locks until its commit finished
+        // and that might happen on a different thread
+        Txn txn1 = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(dbId, txn1);
+        db1.put(1, 100, txn1);
+
+        // same thread but a different transaction
+        // it doesn't get to go ahead with the block of the first one
+        Txn txn2 = txnManager.beginTransaction();
+        try {
+            DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(dbId, txn2);
+            db2.put(2, 200, txn2);
+            fail();
+        } catch (TxnAbortedException xcp) {
+            // the younger transaction dies
+        } finally {
+            txn2.rollback();
+        }
+
+        txn1.commitAsync().get(60, TimeUnit.SECONDS);
+        DataBlock<Integer, Integer> db3 = dsFactory.loadDataBlock(dbId);
+        assertEquals(Integer.valueOf(100), db3.get(1));
+        assertNull(db3.get(2));
+
+        // releasing the second transaction didn't take the locks of the first one
+        // and the block can be locked again
+        txnManager.doTransactionally(txn3 -> {
+            DataBlock<Integer, Integer> db4 = dsFactory.loadDataBlockForWrites(dbId, txn3);
+            db4.put(3, 300, txn3);
+        });
+        assertEquals(Integer.valueOf(300), dsFactory.<Integer, Integer>loadDataBlock(dbId).get(3));
+    }
+
+    @Test
+    public void testGroupCommit() throws Exception {
+        long dbId1 = createNewDataBlockAndGetId();
+        long dbId2 = createNewDataBlockAndGetId();
+
+        Txn txn1 = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(dbId1, txn1);
+        db1.put(1, 100, txn1);
+        ListenableFuture<Void> f1 = txn1.groupCommitAsync();
+
+        // the local lock is handed over as soon as the block is parked
+        // the second transaction builds on top of the parked block before the group is written
+        Txn txn2 = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db21 = dsFactory.loadDataBlockForWrites(dbId1, txn2);
+        assertEquals(Integer.valueOf(100), db21.get(1));
+        db21.put(21, 2100, txn2);
+        DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(dbId2, txn2);
+        db2.put(2, 200, txn2);
+        ListenableFuture<Void> f2 = txn2.groupCommitAsync();
+
+        f1.get(60, TimeUnit.SECONDS);
+        f2.get(60, TimeUnit.SECONDS);
+
+        Txn txn3 = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db3 = dsFactory.loadDataBlockForWrites(dbId1, txn3);
+        assertEquals(Integer.valueOf(100), db3.get(1));
+        db3.put(3, 300, txn3);
+        txn3.groupCommit();
+
+        DataBlock<Integer, Integer> db4 = dsFactory.loadDataBlock(dbId1);
+        assertEquals(Integer.valueOf(100), db4.get(1));
+        assertEquals(Integer.valueOf(2100), db4.get(21));
+        assertEquals(Integer.valueOf(300), db4.get(3));
+        assertEquals(Integer.valueOf(200), dsFactory.<Integer, Integer>loadDataBlock(dbId2).get(2));
+    }
+
+    @Test
+    public void testYoungerTxnDiesAndIsRetried() throws Exception {
+        long dbId = createNewDataBlockAndGetId();
+        ExecutorService es = Executors.newFixedThreadPool(1);
+        CountDownLatch abortedLatch = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger(0);
+
+        // the older transaction holds on to the block
+        Txn olderTxn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(dbId, olderTxn);
+        db1.put(1, 100, olderTxn);
+
+        try {
+            Future<?> f = es.submit(() -> {
+                txnManager.doTransactionally(txn -> {
+                    if (attempts.incrementAndGet() > 1) {
+                        abortedLatch.countDown();
+                    }
+                    DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(dbId, txn);
+                    db2.put(2, 200, txn);
+                });
+                return null;
+            });
+
+            // the younger transaction doesn't wait for the older one
+            assertTrue(abortedLatch.await(60, TimeUnit.SECONDS));
+            olderTxn.commit();
+            f.get(60, TimeUnit.SECONDS);
+        } finally {
+            es.shutdown();
+        }
+
+        assertTrue(attempts.get() > 1);
+        assertTrue(txnManager.getLockContentionStats().getAborts() > 0);
+        DataBlock<Integer, Integer> db3 = dsFactory.loadDataBlock(dbId);
+        assertEquals(Integer.valueOf(100), db3.get(1));
+        assertEquals(Integer.valueOf(200), db3.get(2));
+    }
+
+    @Test
+    public void testRetriedTxnDiscardsChangesOfCapturedDataStructures() throws Exception {
+        long capturedId = createNewDataBlockAndGetId();
+        long contendedId = createNewDataBlockAndGetId();
+        ExecutorService es = Executors.newFixedThreadPool(1);
+        CountDownLatch abortedLatch = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger(0);
+
+        // this data block is loaded outside of the lambda and changed inside
+        Txn setupTxn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> captured = dsFactory.loadDataBlockForWrites(capturedId, setupTxn);
+        captured.put(1, 0, setupTxn);
+        setupTxn.commit();
+
+        Txn olderTxn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(contendedId, olderTxn);
+        db1.put(1, 100, olderTxn);
+
+        try {
+            Future<?> f = es.submit(() -> {
+                txnManager.doTransactionally(txn -> {
+                    if (attempts.incrementAndGet() > 1) {
+                        abortedLatch.countDown();
+                    }
+                    // the increment happens before the transaction dies
+                    captured.put(1, captured.get(1) + 1, txn);
+                    DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(contendedId, txn);
+                    db2.put(2, 200, txn);
+                });
+                return null;
+            });
+
+            assertTrue(abortedLatch.await(60, TimeUnit.SECONDS));
+            olderTxn.commit();
+            f.get(60, TimeUnit.SECONDS);
+        } finally {
+            es.shutdown();
+        }
+
+        // every failed attempt put the captured data block back to what was committed
+        assertTrue(attempts.get() > 1);
+        assertEquals(Integer.valueOf(1), captured.get(1));
+        assertEquals(Integer.valueOf(1), dsFactory.<Integer, Integer>loadDataBlock(capturedId).get(1));
+        assertEquals(Integer.valueOf(200), dsFactory.<Integer, Integer>loadDataBlock(contendedId).get(2));
+    }
+
+    @Test
+    public void testDeferredTxnDoesNotLockBeforeCommit() throws Exception {
+        long dbId = createNewDataBlockAndGetId();
+
+        Txn deferredTxn = txnManager.beginDeferredTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(dbId, deferredTxn);
+        db1.put(1, 100, deferredTxn);
+
+        // the deferred transaction doesn't hold any locks
+        // that's why this transaction goes right ahead
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(dbId, txn);
+        db2.put(2, 200, txn);
+        txn.commit();
+
+        // ...but now the deferred transaction is based on outdated data
+        try {
+            deferredTxn.commit();
+            fail();
+        } catch (IOException xcp) {
+            assertTrue(xcp.getCause() instanceof TxnAbortedException);
+        }
+
+        txnManager.doDeferredTransactionally(txn3 -> {
+            DataBlock<Integer, Integer> db3 = dsFactory.loadDataBlockForWrites(dbId, txn3);
+            db3.put(3, 300, txn3);
+        });
+
+        DataBlock<Integer, Integer> db4 = dsFactory.loadDataBlock(dbId);
+        assertNull(db4.get(1));
+        assertEquals(Integer.valueOf(200), db4.get(2));
+        assertEquals(Integer.valueOf(300), db4.get(3));
+    }
+
+    @Test
+    public void testDeferredTxnValidatesBlocksItOnlyRead() throws Exception {
+        long readDbId = createNewDataBlockAndGetId();
+        long writtenDbId = createNewDataBlockAndGetId();
+
+        // the deferred transaction decides what to write based on a block it only reads
+        Txn deferredTxn = txnManager.beginDeferredTransaction();
+        DataBlock<Integer, Integer> readDb = dsFactory.loadDataBlockForWrites(readDbId, deferredTxn);
+        assertNull(readDb.get(1));
+        DataBlock<Integer, Integer> writtenDb = dsFactory.loadDataBlockForWrites(writtenDbId, deferredTxn);
+        writtenDb.put(1, 100, deferredTxn);
+
+        // somebody changes the block that was read
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db = dsFactory.loadDataBlockForWrites(readDbId, txn);
+        db.put(1, 200, txn);
+        txn.commit();
+
+        try {
+            deferredTxn.commit();
+            fail();
+        } catch (IOException xcp) {
+            assertTrue(xcp.getCause() instanceof TxnAbortedException);
+        }
+        assertNull(dsFactory.<Integer, Integer>loadDataBlock(writtenDbId).get(1));
+    }
+
+    @Test
+    public void testDeferredTxnDoesNotLockBlocksItOnlyRead() throws Exception {
+        long readDbId = createNewDataBlockAndGetId();
+        long writtenDbId = createNewDataBlockAndGetId();
+
+        Txn deferredTxn = txnManager.beginDeferredTransaction();
+        assertNull(dsFactory.<Integer, Integer>loadDataBlockForWrites(readDbId, deferredTxn).get(1));
+        DataBlock<Integer, Integer> writtenDb = dsFactory.loadDataBlockForWrites(writtenDbId, deferredTxn);
+        writtenDb.put(1, 100, deferredTxn);
+
+        // a younger transaction is about to change the block that was read
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db = dsFactory.loadDataBlockForWrites(readDbId, txn);
+        db.put(1, 200, txn);
+
+        // the older deferred transaction doesn't wait for the lock of a block it only read
+        // it gives up right away
+        try {
+            deferredTxn.commit();
+            fail();
+        } catch (IOException xcp) {
+            assertTrue(xcp.getCause() instanceof TxnAbortedException);
+        }
+
+        txn.commit();
+        assertEquals(Integer.valueOf(200), dsFactory.<Integer, Integer>loadDataBlock(readDbId).get(1));
+        assertNull(dsFactory.<Integer, Integer>loadDataBlock(writtenDbId).get(1));
+    }
+
+    @Test
+    public void testDeferredTxnOnlyValidatesItsOwnReads() throws Exception {
+        long readDbId = createNewDataBlockAndGetId();
+        long writtenDbId = createNewDataBlockAndGetId();
+
+        Txn deferredTxn = txnManager.beginDeferredTransaction();
+        DataBlock<Integer, Integer> writtenDb = dsFactory.loadDataBlockForWrites(writtenDbId, deferredTxn);
+        writtenDb.put(1, 100, deferredTxn);
+
+        // another deferred transaction on the same thread reads a block
+        Txn otherTxn = txnManager.beginDeferredTransaction();
+        assertNull(dsFactory.<Integer, Integer>loadDataBlockForWrites(readDbId, otherTxn).get(1));
+        // and so does somebody without a transaction
+        assertNull(dsFactory.<Integer, Integer>loadDataBlock(readDbId).get(1));
+
+        // somebody changes the block that was read
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db = dsFactory.loadDataBlockForWrites(readDbId, txn);
+        db.put(1, 200, txn);
+        txn.commit();
+
+        // none of these reads are part of the read set of the first transaction
+        deferredTxn.commit();
+        assertEquals(Integer.valueOf(100), dsFactory.<Integer, Integer>loadDataBlock(writtenDbId).get(1));
+
+        try {
+            otherTxn.commit();
+            fail();
+        } catch (IOException xcp) {
+            assertTrue(xcp.getCause() instanceof TxnAbortedException);
+        }
+    }
+
+    @Test
+    public void testBlocksAreLoadedOncePerTxnAndSnapshot() throws Exception {
+        long dbId = createNewDataBlockAndGetId();
+
+        Txn txn = txnManager.beginTransaction();
+        DataBlock<Integer, Integer> db1 = dsFactory.loadDataBlockForWrites(dbId, txn);
+        db1.put(1, 100, txn);
+        DataBlock<Integer, Integer> db2 = dsFactory.loadDataBlockForWrites(dbId, txn);
+        assertSame(db1, db2);
+        assertEquals(Integer.valueOf(100), db2.get(1));
+        txn.commit();
+
+        try (ReadSnapshot snapshot = txnManager.beginSnapshot()) {
+            DataBlock<Integer, Integer> db3 = dsFactory.loadDataBlockProxy(dbId, snapshot);
+            assertSame(db3, dsFactory.loadDataBlockProxy(dbId, snapshot));
+            assertEquals(Integer.valueOf(100), db3.get(1));
+        }
+    }
+
+    @Test
+    public void testJoinedSnapshots() throws Exception {
+        long dbId = createNewDataBlockAndGetId();
+        long otherDbId = createNewDataBlockAndGetId();
+
+        try (ReadSnapshot snapshot = txnManager.beginSnapshot()) {
+            Txn txn = txnManager.beginTransaction();
+            dsFactory.<Integer, Integer>loadDataBlockForWrites(dbId, txn).put(1, 100, txn);
+            txn.commit();
+
+            // joining the snapshot reads what the snapshot sees
+            try (ReadSnapshot joined = txnManager.joinSnapshot(snapshot.getVersion())) {
+                assertNull(dsFactory.<Integer, Integer>loadDataBlockProxy(dbId, joined).get(1));
+            }
+            // reading the latest data sees the commit
+            // and the snapshot can tell that the block changed
+            try (ReadSnapshot latest = txnManager.joinSnapshot(ReadSnapshot.LATEST)) {
+                assertEquals(Integer.valueOf(100), dsFactory.<Integer, Integer>loadDataBlockProxy(dbId, latest).get(1));
+                dsFactory.<Integer, Integer>loadDataBlockProxy(otherDbId, latest).get(1);
+                assertEquals(new HashSet<>(Arrays.asList(dbId, otherDbId)), latest.getLoadedBlockIds());
+            }
+            assertFalse(snapshot.isUnchangedInSnapshot(Arrays.asList(dbId, otherDbId)));
+            assertTrue(snapshot.isUnchangedInSnapshot(Collections.singletonList(otherDbId)));
+
+            // closing the joined snapshots didn't close the snapshot
+            assertNull(dsFactory.<Integer, Integer>loadDataBlockProxy(dbId, snapshot).get(1));
+        }
+    }
+
     @Test
     public void testLocalLocksDoubleLockingSameThread() throws IOException {
         long dbId = createNewDataBlockAndGetId();
@@ -147,9 +509,9 @@ public class TxnManagerTest extends GalaxyBaseTest {
         CountDownLatch addToWaitingListLatch = new CountDownLatch(1);
         TxnManagerImpl impl = new TxnManagerImpl(store) {
             @Override
-            protected void waitFor(Future f) throws InterruptedException, ExecutionException, TimeoutException {
+            protected void aboutToWait(long blockId) {
                 addToWaitingListLatch.countDown();
-                super.waitFor(f);
+                super.aboutToWait(blockId);
             }
         };
         ExecutorService es = Executors.newFixedThreadPool(1);
@@ -168,6 +530,35 @@ public class TxnManagerTest extends GalaxyBaseTest {
         assertEquals(1, succeedingCallable.exceptionLatch.getCount());
     }
 
+    @Test
+    public void testLockContentionIsCounted() throws IOException, InterruptedException {
+        long dbId = createNewDataBlockAndGetId();
+        CountDownLatch addToWaitingListLatch = new CountDownLatch(1);
+        TxnManagerImpl impl = new TxnManagerImpl(store) {
+            @Override
+            protected void aboutToWait(long blockId) {
+                addToWaitingListLatch.countDown();
+            }
+        };
+        LockContentionStats before = impl.getLockContentionStats();
+        ExecutorService es = Executors.newFixedThreadPool(1);
+        SucceedingToLockCallable succeedingCallable = new SucceedingToLockCallable(dbId, impl);
+
+        try {
+            impl.lock(dbId);
+            es.submit(succeedingCallable);
+            assertTrue(addToWaitingListLatch.await(60, TimeUnit.SECONDS));
+            impl.release(dbId);
+            assertTrue(succeedingCallable.gotLockLatch.await(60, TimeUnit.SECONDS));
+        } finally {
+            es.shutdown();
+        }
+
+        LockContentionStats after = impl.getLockContentionStats();
+        assertTrue(after.getAcquisitions() >= before.getAcquisitions() + 2);
+        assertTrue(after.getContendedAcquisitions() >= before.getContendedAcquisitions() + 1);
+    }
+
     private static class SucceedingToLockCallable implements Callable<Void> {
         private final CountDownLatch exceptionLatch = new CountDownLatch(1);
         private final CountDownLatch gotLockLatch = new CountDownLatch(1);